@@ -1,6 +1,15 @@
 package it.spaghettisource.broadcastsync;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+
+import it.spaghettisource.broadcastsync.infrastructure.OverloadPolicy;
+import it.spaghettisource.broadcastsync.infrastructure.SendOverloadPolicy;
+import it.spaghettisource.broadcastsync.infrastructure.TransportMode;
+import it.spaghettisource.broadcastsync.infrastructure.WaitStrategyType;
 
 /**
  * Configuration used by the BroadCastSync
@@ -13,6 +22,10 @@ public class BroadCastSyncConfig {
 
 	//server
 	private int serverPort;
+	private boolean enableNioReceiver;
+	private int receiveBufferPoolSize;
+	private boolean useDirectBuffer;
+	private int receiverThreads;
 	
 	//heartbeat
 	private boolean enableHeartbeat;		
@@ -21,13 +34,74 @@ public class BroadCastSyncConfig {
 	//client
 	private int clientPort;	
 	private String broadcastAddress;
+	private int senderChannels;
+	private int outboundQueueCapacity;
+	private SendOverloadPolicy sendOverloadPolicy;
+	private boolean enableBundling;
+	private long bundleLingerMillis;
+	private boolean enablePacing;
+	private long pacingBytesPerSecond;
+	private long pacingPacketsPerSecond;
+	private int pacingBurstPackets;
+	private boolean enableAdaptivePacing;
+	
+	//multicast
+	private TransportMode transportMode;
+	private String multicastGroup;
+	private String multicastInterface;
+	private int multicastTimeToLive;
+	private Map<String, String> multicastChannels;
+	private List<String> subscribedChannels;
+	
+	//unicast
+	private List<String> staticPeers;
+	private long peerExpirationMillis;
+	
+	//retransmission
+	private boolean enableRetransmission;
+	private long retransmitBufferSize;
+	private long nackDelayMillis;
+	private int nackMaxRetries;
+	
+	//forward error correction
+	private boolean enableFec;
+	private int fecGroupSize;
+	
+	//sequence of the messages of every sender
+	private boolean enableSenderSequence;
+	private boolean orderedDelivery;
+	private long reorderWaitMillis;
+	
+	//flow control
+	private boolean enableFlowControl;
+	private int flowControlPercentile;
+	private int flowControlQueueFillPercent;
+	
+	//queue between the UdpServer and the DatagramSequentializer
+	private int queueCapacity;
+	private WaitStrategyType queueWaitStrategy;
+	private OverloadPolicy overloadPolicy;
 	
 	//data protocol
 	private int datagramPacketBufferSize;
+	private int wireProtocolVersion;
 	
 	//DatagramSequentializer
 	private long payloadExpirationTime;
 	private long cleaningExpiredMessageIntervalTimeMillis;
+	private int reassemblyWorkers;
+	private boolean preserveSenderOrder;
+	private boolean resolvePeerNames;
+	private long peerNameCacheTtlMillis;
+	private int peerNameCacheSize;
+	private long reassemblyMemoryBudget;
+	private long reassemblySenderMemoryBudget;
+	private int maxMessageSize;
+	
+	//dispatch of the messages to the MessageHandler
+	private boolean enableAsyncDispatch;
+	private int dispatchThreads;
+	private boolean dispatchVirtualThreads;
 	
 	//i18n for the messages, like exception messages
 	private String language;	
@@ -61,6 +135,52 @@ public class BroadCastSyncConfig {
 		this.serverPort = serverPort;
 	}
 	
+	/**
+	 * @return true if the UdpServer receive the datagrams with a DatagramChannel in a pool of reusable buffer, false to use the blocking DatagramSocket
+	 */
+	public boolean isEnableNioReceiver() {
+		return enableNioReceiver;
+	}
+
+	public void setEnableNioReceiver(boolean enableNioReceiver) {
+		this.enableNioReceiver = enableNioReceiver;
+	}
+
+	/**
+	 * @return the min amount of receive buffers retained by the pool of the NIO receiver, 
+	 * the pool is always big enough to hold all the datagrams that can wait in the queues, see {@link it.spaghettisource.broadcastsync.infrastructure.ReceiveBufferPool}
+	 */
+	public int getReceiveBufferPoolSize() {
+		return receiveBufferPoolSize;
+	}
+
+	public void setReceiveBufferPoolSize(int receiveBufferPoolSize) {
+		this.receiveBufferPoolSize = receiveBufferPoolSize;
+	}
+
+	/**
+	 * @return true if the receive buffers of the NIO receiver are allocated outside of the java heap
+	 */
+	public boolean isUseDirectBuffer() {
+		return useDirectBuffer;
+	}
+
+	public void setUseDirectBuffer(boolean useDirectBuffer) {
+		this.useDirectBuffer = useDirectBuffer;
+	}
+
+	/**
+	 * @return the amount of receiver threads, each one with its own socket bound on the server port with SO_REUSEPORT. 
+	 * It is effective only with the NIO receiver and when the datagrams are sent directly to this node, see {@link it.spaghettisource.broadcastsync.infrastructure.UdpServer}
+	 */
+	public int getReceiverThreads() {
+		return receiverThreads;
+	}
+
+	public void setReceiverThreads(int receiverThreads) {
+		this.receiverThreads = receiverThreads;
+	}
+
 	public int getClientPort() {
 		return clientPort;
 	}
@@ -69,6 +189,343 @@ public class BroadCastSyncConfig {
 		this.clientPort = clientPort;
 	}
 
+	/**
+	 * @return the amount of DatagramChannel used by the UdpClient, the threads that send messages are spread across the channels
+	 */
+	public int getSenderChannels() {
+		return senderChannels;
+	}
+
+	public void setSenderChannels(int senderChannels) {
+		this.senderChannels = senderChannels;
+	}
+
+	/**
+	 * @return the capacity of the queue of the messages sent asynchronously, it is rounded up to the next power of two
+	 */
+	public int getOutboundQueueCapacity() {
+		return outboundQueueCapacity;
+	}
+
+	public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+		this.outboundQueueCapacity = outboundQueueCapacity;
+	}
+
+	/**
+	 * @return what happens to a message sent asynchronously when the queue is full
+	 */
+	public SendOverloadPolicy getSendOverloadPolicy() {
+		return sendOverloadPolicy;
+	}
+
+	public void setSendOverloadPolicy(SendOverloadPolicy sendOverloadPolicy) {
+		this.sendOverloadPolicy = sendOverloadPolicy;
+	}
+
+	/**
+	 * @return true to pack several small messages in one datagram, the messages wait at most {@link BroadCastSyncConfig#getBundleLingerMillis()} before to be sent.
+	 * the receivers must use a version of BroadCastSync able to unpack the bundles
+	 */
+	public boolean isEnableBundling() {
+		return enableBundling;
+	}
+
+	public void setEnableBundling(boolean enableBundling) {
+		this.enableBundling = enableBundling;
+	}
+
+	/**
+	 * @return max time that a small message waits in the bundle before to be sent
+	 */
+	public long getBundleLingerMillis() {
+		return bundleLingerMillis;
+	}
+
+	public void setBundleLingerMillis(long bundleLingerMillis) {
+		this.bundleLingerMillis = bundleLingerMillis;
+	}
+
+	/**
+	 * @return true to space the datagrams of the messages bigger than one datagram, see {@link it.spaghettisource.broadcastsync.infrastructure.SendPacer}
+	 */
+	public boolean isEnablePacing() {
+		return enablePacing;
+	}
+
+	public void setEnablePacing(boolean enablePacing) {
+		this.enablePacing = enablePacing;
+	}
+
+	/**
+	 * @return max bytes per second sent for the messages bigger than one datagram, 0 for no limit
+	 */
+	public long getPacingBytesPerSecond() {
+		return pacingBytesPerSecond;
+	}
+
+	public void setPacingBytesPerSecond(long pacingBytesPerSecond) {
+		this.pacingBytesPerSecond = pacingBytesPerSecond;
+	}
+
+	/**
+	 * @return max datagrams per second sent for the messages bigger than one datagram, 0 for no limit
+	 */
+	public long getPacingPacketsPerSecond() {
+		return pacingPacketsPerSecond;
+	}
+
+	public void setPacingPacketsPerSecond(long pacingPacketsPerSecond) {
+		this.pacingPacketsPerSecond = pacingPacketsPerSecond;
+	}
+
+	/**
+	 * @return amount of full datagrams that can be sent without waiting after a pause
+	 */
+	public int getPacingBurstPackets() {
+		return pacingBurstPackets;
+	}
+
+	public void setPacingBurstPackets(int pacingBurstPackets) {
+		this.pacingBurstPackets = pacingBurstPackets;
+	}
+
+	/**
+	 * @return true to reduce the pacing rate when the receivers report a loss and increase it again when they don't lose datagrams.
+	 * the loss is reported by the heartbeats with {@link #isEnableFlowControl()}, otherwise by the NACKs then {@link #isEnableRetransmission()} is needed
+	 */
+	public boolean isEnableAdaptivePacing() {
+		return enableAdaptivePacing;
+	}
+
+	public void setEnableAdaptivePacing(boolean enableAdaptivePacing) {
+		this.enableAdaptivePacing = enableAdaptivePacing;
+	}
+
+	/**
+	 * @return how the datagrams are delivered, in broadcast to the {@link BroadCastSyncConfig#getBroadcastAddress()}, in multicast to the groups 
+	 * or in unicast to the {@link BroadCastSyncConfig#getStaticPeers()}
+	 */
+	public TransportMode getTransportMode() {
+		return transportMode;
+	}
+
+	public void setTransportMode(TransportMode transportMode) {
+		this.transportMode = transportMode;
+	}
+
+	/**
+	 * @return the multicast group of the messages sent without a channel and of the heartbeats, joined by all the nodes
+	 */
+	public String getMulticastGroup() {
+		return multicastGroup;
+	}
+
+	public void setMulticastGroup(String multicastGroup) {
+		this.multicastGroup = multicastGroup;
+	}
+
+	/**
+	 * @return name or address of the network interface used for the multicast, null to use the interface of the local host
+	 */
+	public String getMulticastInterface() {
+		return multicastInterface;
+	}
+
+	public void setMulticastInterface(String multicastInterface) {
+		this.multicastInterface = multicastInterface;
+	}
+
+	/**
+	 * @return the time to live of the multicast datagrams, 1 keeps them in the local network
+	 */
+	public int getMulticastTimeToLive() {
+		return multicastTimeToLive;
+	}
+
+	public void setMulticastTimeToLive(int multicastTimeToLive) {
+		this.multicastTimeToLive = multicastTimeToLive;
+	}
+
+	/**
+	 * @return the multicast group of every logical channel, the key is the name of the channel
+	 */
+	public Map<String, String> getMulticastChannels() {
+		return multicastChannels;
+	}
+
+	public void setMulticastChannels(Map<String, String> multicastChannels) {
+		this.multicastChannels = multicastChannels;
+	}
+
+	/**
+	 * @return the channels received by this node, null to receive all the channels in {@link BroadCastSyncConfig#getMulticastChannels()}
+	 */
+	public List<String> getSubscribedChannels() {
+		return subscribedChannels;
+	}
+
+	public void setSubscribedChannels(List<String> subscribedChannels) {
+		this.subscribedChannels = subscribedChannels;
+	}
+
+	/**
+	 * @return the peers that receive the messages in {@link TransportMode#UNICAST}, every peer is a host or host:port, without port the {@link BroadCastSyncConfig#getServerPort()} is used
+	 */
+	public List<String> getStaticPeers() {
+		return staticPeers;
+	}
+
+	public void setStaticPeers(List<String> staticPeers) {
+		this.staticPeers = staticPeers;
+	}
+
+	/**
+	 * @return time after the last heartbeat when a peer can't be addressed anymore by its instance ID
+	 */
+	public long getPeerExpirationMillis() {
+		return peerExpirationMillis;
+	}
+
+	public void setPeerExpirationMillis(long peerExpirationMillis) {
+		this.peerExpirationMillis = peerExpirationMillis;
+	}
+
+	/**
+	 * @return true to send again the chunks lost of the messages bigger than one datagram, the receivers request them with a NACK. 
+	 * it must be enabled on the senders and on the receivers
+	 */
+	public boolean isEnableRetransmission() {
+		return enableRetransmission;
+	}
+
+	public void setEnableRetransmission(boolean enableRetransmission) {
+		this.enableRetransmission = enableRetransmission;
+	}
+
+	/**
+	 * @return max bytes of the messages sent recently kept by the sender to retransmit their chunks
+	 */
+	public long getRetransmitBufferSize() {
+		return retransmitBufferSize;
+	}
+
+	public void setRetransmitBufferSize(long retransmitBufferSize) {
+		this.retransmitBufferSize = retransmitBufferSize;
+	}
+
+	/**
+	 * @return time without new chunks after which a receiver requests the chunks missing of a message
+	 */
+	public long getNackDelayMillis() {
+		return nackDelayMillis;
+	}
+
+	public void setNackDelayMillis(long nackDelayMillis) {
+		this.nackDelayMillis = nackDelayMillis;
+	}
+
+	/**
+	 * @return max amount of requests sent for the same message
+	 */
+	public int getNackMaxRetries() {
+		return nackMaxRetries;
+	}
+
+	public void setNackMaxRetries(int nackMaxRetries) {
+		this.nackMaxRetries = nackMaxRetries;
+	}
+
+	/**
+	 * @return true to send a parity datagram for every group of datagrams of the messages bigger than one datagram, 
+	 * the receivers rebuild one datagram lost in each group without requesting it. it must be enabled on the senders
+	 */
+	public boolean isEnableFec() {
+		return enableFec;
+	}
+
+	public void setEnableFec(boolean enableFec) {
+		this.enableFec = enableFec;
+	}
+
+	/**
+	 * @return amount of datagrams protected by one parity datagram, the overhead on the network is 1 / fecGroupSize
+	 */
+	public int getFecGroupSize() {
+		return fecGroupSize;
+	}
+
+	public void setFecGroupSize(int fecGroupSize) {
+		this.fecGroupSize = fecGroupSize;
+	}
+
+	/**
+	 * @return true to number the messages of the sender in its message IDs and to detect on the receiver the messages lost or reordered of every sender. 
+	 * on the receiver the datagrams are routed to the DatagramSequentializer by sender address
+	 */
+	public boolean isEnableSenderSequence() {
+		return enableSenderSequence;
+	}
+
+	public void setEnableSenderSequence(boolean enableSenderSequence) {
+		this.enableSenderSequence = enableSenderSequence;
+	}
+
+	/**
+	 * @return true to deliver the messages of every sender in the order they are sent, used only if {@link BroadCastSyncConfig#isEnableSenderSequence()} is true
+	 */
+	public boolean isOrderedDelivery() {
+		return orderedDelivery;
+	}
+
+	public void setOrderedDelivery(boolean orderedDelivery) {
+		this.orderedDelivery = orderedDelivery;
+	}
+
+	/**
+	 * @return max time a message received out of order waits the messages that precede it, then they are considered lost
+	 */
+	public long getReorderWaitMillis() {
+		return reorderWaitMillis;
+	}
+
+	public void setReorderWaitMillis(long reorderWaitMillis) {
+		this.reorderWaitMillis = reorderWaitMillis;
+	}
+
+	/**
+	 * @return true to send in the heartbeats the fill level of the queue and the drop rate of this node, 
+	 * and to adapt the send rate to the state of the other nodes. it requires the heartbeat and it must be enabled on all the nodes
+	 */
+	public boolean isEnableFlowControl() {
+		return enableFlowControl;
+	}
+
+	public void setEnableFlowControl(boolean enableFlowControl) {
+		this.enableFlowControl = enableFlowControl;
+	}
+
+	/**
+	 * @return percentile of the receivers whose state decides the send rate, 100 to follow the slowest receiver
+	 */
+	public int getFlowControlPercentile() {
+		return flowControlPercentile;
+	}
+
+	public void setFlowControlPercentile(int flowControlPercentile) {
+		this.flowControlPercentile = flowControlPercentile;
+	}
+
+	/**
+	 * @return fill level in percent of the queue of a receiver over which the receiver is considered congested, a receiver that drops datagrams is always congested
+	 */
+	public int getFlowControlQueueFillPercent() {
+		return flowControlQueueFillPercent;
+	}
+
+	public void setFlowControlQueueFillPercent(int flowControlQueueFillPercent) {
+		this.flowControlQueueFillPercent = flowControlQueueFillPercent;
+	}
+
 	public int getDatagramPacketBufferSize() {
 		return datagramPacketBufferSize;
 	}
@@ -77,6 +534,51 @@ public class BroadCastSyncConfig {
 		this.datagramPacketBufferSize = datagramPacketBufferSize;
 	}
 
+	/**
+	 * @return version of the header of the datagrams sent, 1 for the header of 32 bytes or 2 for the compact header. 
+	 * the datagrams of both the versions are always received, then the nodes can move to the version 2 one at time
+	 */
+	public int getWireProtocolVersion() {
+		return wireProtocolVersion;
+	}
+
+	public void setWireProtocolVersion(int wireProtocolVersion) {
+		this.wireProtocolVersion = wireProtocolVersion;
+	}
+
+	/**
+	 * @return the max amount of datagrams waiting to be processed, rounded up to the next power of two
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * @return how the DatagramSequentializer waits when there are no datagrams to process
+	 */
+	public WaitStrategyType getQueueWaitStrategy() {
+		return queueWaitStrategy;
+	}
+
+	public void setQueueWaitStrategy(WaitStrategyType queueWaitStrategy) {
+		this.queueWaitStrategy = queueWaitStrategy;
+	}
+
+	/**
+	 * @return what the receiver does with a datagram when the queue is full
+	 */
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+		this.overloadPolicy = overloadPolicy;
+	}
+
 	public String getBroadcastAddress() {
 		return broadcastAddress;
 	}
@@ -93,6 +595,9 @@ public class BroadCastSyncConfig {
 		this.payloadExpirationTime = payloadExpirationTime;
 	}
 	
+	/**
+	 * @return the tick of the wheel that discards the expired payloads, a payload is discarded at most one tick after its expiration time
+	 */
 	public long getCleaningExpiredMessageIntervalTimeMillis() {
 		return cleaningExpiredMessageIntervalTimeMillis;
 	}
@@ -101,6 +606,130 @@ public class BroadCastSyncConfig {
 		this.cleaningExpiredMessageIntervalTimeMillis = cleaningExpiredMessageIntervalTimeMillis;
 	}
 	
+	/**
+	 * @return amount of DatagramSequentializer threads that rebuild the messages in parallel, 
+	 * with more than one worker the {@link it.spaghettisource.broadcastsync.handler.MessageHandler} is called by several threads and must be thread safe
+	 */
+	public int getReassemblyWorkers() {
+		return reassemblyWorkers;
+	}
+
+	public void setReassemblyWorkers(int reassemblyWorkers) {
+		this.reassemblyWorkers = reassemblyWorkers;
+	}
+
+	/**
+	 * @return true if all the messages of the same sender are rebuilt by the same worker, 
+	 * then they are delivered in the order they are completed, false to spread the messages on all the workers
+	 */
+	public boolean isPreserveSenderOrder() {
+		return preserveSenderOrder;
+	}
+
+	public void setPreserveSenderOrder(boolean preserveSenderOrder) {
+		this.preserveSenderOrder = preserveSenderOrder;
+	}
+	
+	/**
+	 * @return true to resolve the canonical host name of the peers in background, false to use always the textual address as name
+	 */
+	public boolean isResolvePeerNames() {
+		return resolvePeerNames;
+	}
+
+	public void setResolvePeerNames(boolean resolvePeerNames) {
+		this.resolvePeerNames = resolvePeerNames;
+	}
+
+	/**
+	 * @return time after that the name of a peer is resolved again
+	 */
+	public long getPeerNameCacheTtlMillis() {
+		return peerNameCacheTtlMillis;
+	}
+
+	public void setPeerNameCacheTtlMillis(long peerNameCacheTtlMillis) {
+		this.peerNameCacheTtlMillis = peerNameCacheTtlMillis;
+	}
+
+	/**
+	 * @return max amount of peer names stored in the cache
+	 */
+	public int getPeerNameCacheSize() {
+		return peerNameCacheSize;
+	}
+
+	public void setPeerNameCacheSize(int peerNameCacheSize) {
+		this.peerNameCacheSize = peerNameCacheSize;
+	}
+
+	/**
+	 * @return max amount of bytes held by all the messages in reassembly, when exceeded the oldest messages are discarded
+	 */
+	public long getReassemblyMemoryBudget() {
+		return reassemblyMemoryBudget;
+	}
+
+	public void setReassemblyMemoryBudget(long reassemblyMemoryBudget) {
+		this.reassemblyMemoryBudget = reassemblyMemoryBudget;
+	}
+
+	/**
+	 * @return max amount of bytes held by the messages in reassembly of the same sender, when exceeded the oldest messages of the sender are discarded
+	 */
+	public long getReassemblySenderMemoryBudget() {
+		return reassemblySenderMemoryBudget;
+	}
+
+	public void setReassemblySenderMemoryBudget(long reassemblySenderMemoryBudget) {
+		this.reassemblySenderMemoryBudget = reassemblySenderMemoryBudget;
+	}
+
+	/**
+	 * @return max size in bytes of a received message, the bigger messages are discarded
+	 */
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	public void setMaxMessageSize(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+	
+	/**
+	 * @return true to call the MessageHandler on a dedicated executor instead of the DatagramSequentializer thread,
+	 * the messages of the same sender are always delivered in FIFO order
+	 */
+	public boolean isEnableAsyncDispatch() {
+		return enableAsyncDispatch;
+	}
+
+	public void setEnableAsyncDispatch(boolean enableAsyncDispatch) {
+		this.enableAsyncDispatch = enableAsyncDispatch;
+	}
+
+	/**
+	 * @return amount of threads of the executor that call the MessageHandler
+	 */
+	public int getDispatchThreads() {
+		return dispatchThreads;
+	}
+
+	public void setDispatchThreads(int dispatchThreads) {
+		this.dispatchThreads = dispatchThreads;
+	}
+
+	/**
+	 * @return true to call the MessageHandler with virtual threads, used only if the JVM supports them
+	 */
+	public boolean isDispatchVirtualThreads() {
+		return dispatchVirtualThreads;
+	}
+
+	public void setDispatchVirtualThreads(boolean dispatchVirtualThreads) {
+		this.dispatchVirtualThreads = dispatchVirtualThreads;
+	}
+	
 	public boolean isEnableHeartbeat() {
 		return enableHeartbeat;
 	}
@@ -140,13 +769,62 @@ public class BroadCastSyncConfig {
 	public static BroadCastSyncConfig buildDefault() {
 		BroadCastSyncConfig config = new BroadCastSyncConfig();
 		config.serverPort = 4445;
+		config.enableNioReceiver = true;
+		config.receiveBufferPoolSize = 256;
+		config.useDirectBuffer = false;
+		config.receiverThreads = 1;
 		config.clientPort = 4446;		
+		config.senderChannels = 4;
+		config.outboundQueueCapacity = 1024;
+		config.sendOverloadPolicy = SendOverloadPolicy.BLOCK;
+		config.enableBundling = false;
+		config.bundleLingerMillis = 2;
+		config.enablePacing = false;
+		config.pacingBytesPerSecond = 12_500_000;
+		config.pacingPacketsPerSecond = 0;
+		config.pacingBurstPackets = 32;
+		config.enableAdaptivePacing = false;
+		config.transportMode = TransportMode.BROADCAST;
+		config.multicastGroup = "239.255.0.1";
+		config.multicastInterface = null;
+		config.multicastTimeToLive = 1;
+		config.multicastChannels = new HashMap<>();
+		config.subscribedChannels = null;
+		config.staticPeers = new ArrayList<>();
+		config.peerExpirationMillis = 10000;
+		config.enableRetransmission = false;
+		config.retransmitBufferSize = 8 * 1024 * 1024;
+		config.nackDelayMillis = 50;
+		config.nackMaxRetries = 3;
+		config.enableFec = false;
+		config.fecGroupSize = 8;
+		config.enableSenderSequence = false;
+		config.orderedDelivery = false;
+		config.reorderWaitMillis = 100;
+		config.enableFlowControl = false;
+		config.flowControlPercentile = 100;
+		config.flowControlQueueFillPercent = 50;
 		config.datagramPacketBufferSize = 1024;
+		config.wireProtocolVersion = 1;
+		config.queueCapacity = 4096;
+		config.queueWaitStrategy = WaitStrategyType.BLOCK;
+		config.overloadPolicy = OverloadPolicy.DROP_NEWEST;
 		config.broadcastAddress = "255.255.255.255";
 		config.enableHeartbeat = true;
 		config.heartbeatIntervalTimeMillis = 1000;
 		config.payloadExpirationTime = 3000;
-		config.cleaningExpiredMessageIntervalTimeMillis = 6000;
+		config.cleaningExpiredMessageIntervalTimeMillis = 500;
+		config.reassemblyWorkers = 1;
+		config.preserveSenderOrder = false;
+		config.resolvePeerNames = true;
+		config.peerNameCacheTtlMillis = 300000;
+		config.peerNameCacheSize = 1024;
+		config.reassemblyMemoryBudget = 64 * 1024 * 1024;
+		config.reassemblySenderMemoryBudget = 16 * 1024 * 1024;
+		config.maxMessageSize = 8 * 1024 * 1024;
+		config.enableAsyncDispatch = false;
+		config.dispatchThreads = 4;
+		config.dispatchVirtualThreads = false;
 		
 		config.language = Locale.getDefault().getLanguage();
 		config.country = Locale.getDefault().getCountry();
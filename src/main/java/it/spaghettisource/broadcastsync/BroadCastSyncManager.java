@@ -1,6 +1,11 @@
 package it.spaghettisource.broadcastsync;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,16 +14,33 @@ import it.spaghettisource.broadcastsync.exception.BroadCastSyncException;
 import it.spaghettisource.broadcastsync.exception.BroadCastSyncExceptionSerializeData;
 import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
 import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
+import it.spaghettisource.broadcastsync.handler.AsyncMessageHandler;
 import it.spaghettisource.broadcastsync.handler.MessageHandler;
+import it.spaghettisource.broadcastsync.handler.StreamingMessageHandler;
 import it.spaghettisource.broadcastsync.i18n.FileMessageHelper;
 import it.spaghettisource.broadcastsync.i18n.FileMessageRepository;
-import it.spaghettisource.broadcastsync.infrastructure.DatagramPacketQueue;
 import it.spaghettisource.broadcastsync.infrastructure.DatagramSequentializer;
+import it.spaghettisource.broadcastsync.infrastructure.DropStatistics;
+import it.spaghettisource.broadcastsync.infrastructure.FlowController;
 import it.spaghettisource.broadcastsync.infrastructure.HeartbeatEmitter;
+import it.spaghettisource.broadcastsync.infrastructure.InboundQueue;
+import it.spaghettisource.broadcastsync.infrastructure.PeerDirectory;
+import it.spaghettisource.broadcastsync.infrastructure.PeerNameResolver;
+import it.spaghettisource.broadcastsync.infrastructure.PeerSequenceStatistics;
+import it.spaghettisource.broadcastsync.infrastructure.ReassemblyBudget;
+import it.spaghettisource.broadcastsync.infrastructure.ReassemblyStatistics;
+import it.spaghettisource.broadcastsync.infrastructure.ReceivedDatagram;
+import it.spaghettisource.broadcastsync.infrastructure.RetransmitBuffer;
+import it.spaghettisource.broadcastsync.infrastructure.RingBuffer;
+import it.spaghettisource.broadcastsync.infrastructure.SendPacer;
+import it.spaghettisource.broadcastsync.infrastructure.SenderSequenceTracker;
+import it.spaghettisource.broadcastsync.infrastructure.TransportMode;
 import it.spaghettisource.broadcastsync.infrastructure.UdpClient;
+import it.spaghettisource.broadcastsync.infrastructure.UdpSender;
 import it.spaghettisource.broadcastsync.infrastructure.UdpServer;
 import it.spaghettisource.broadcastsync.message.HeartBeatFactory;
 import it.spaghettisource.broadcastsync.message.HeartBeatFactoryCommand;
+import it.spaghettisource.broadcastsync.message.HeartBeatFactoryInstanceId;
 
 /**
  * The BroadCastSyncManager is responsible to initialize the infrastructure and start it
@@ -47,6 +69,9 @@ import it.spaghettisource.broadcastsync.message.HeartBeatFactoryCommand;
  * 2 - {@link BroadCastSyncManager#sendMessage(String)}
  * 3 - {@link BroadCastSyncManager#sendMessage(Serializable)}
  * 
+ * the same messages can be sent without blocking the caller with the sendMessageAsync methods, 
+ * they return a CompletableFuture that completes when all the datagrams of the message are written.
+ * 
  * see the jave doc of each method to have detail over its implementation or limits if any
  * 
  * 
@@ -58,14 +83,23 @@ public class BroadCastSyncManager {
 
 	private static Logger  log = LoggerFactory.getLogger(BroadCastSyncManager.class);
 	
-	private DatagramPacketQueue queue;
-	private DatagramSequentializer sequentializer;
+	private List<RingBuffer<ReceivedDatagram>> queues;
+	private InboundQueue inboundQueue;
+	private DropStatistics dropStatistics;
+	private FlowController flowController;
+	private List<DatagramSequentializer> sequentializers;
+	private AsyncMessageHandler asyncMessageHandler;
+	private ReassemblyStatistics reassemblyStatistics;
+	private ReassemblyBudget reassemblyBudget;
 	private UdpServer udpServer;
 	
 	private HeartBeatFactory heartBeatFactor;
 	private HeartbeatEmitter heartbeatEmitter;
 	
 	private UdpClient udpClient;
+	private PeerDirectory peerDirectory;
+	private PeerSequenceStatistics peerSequenceStatistics;
+	private UdpSender udpSender;
 	
 	private BroadCastSyncConfig configuration;
 	private ExceptionFactory exceptionFactory;
@@ -97,6 +131,8 @@ public class BroadCastSyncManager {
 	 * initialize the infrastructure but don't start the server
 	 * with a custom configuration
 	 * 
+	 * if the messageProcessor is a {@link StreamingMessageHandler} the byte array messages are delivered to it chunk by chunk
+	 * 
 	 * @throws BroadCastSyncException
 	 */
 	public void initialize(BroadCastSyncConfig configuration, HeartBeatFactory heartBeatFactory, MessageHandler messageProcessor){
@@ -116,15 +152,50 @@ public class BroadCastSyncManager {
 		//create the exception factory
 		exceptionFactory = new ExceptionFactory(configuration,exceptionMessageHelper);
 		
-		//create the infrastructure
-		queue = new DatagramPacketQueue();
-		sequentializer = new DatagramSequentializer(configuration, exceptionFactory, queue, heartBeatFactor, messageProcessor);
-		udpServer = new UdpServer(configuration, exceptionFactory,queue);
+		//create the infrastructure, the streaming handler receives the chunks directly from the DatagramSequentializer
+		StreamingMessageHandler streamingHandler = messageProcessor instanceof StreamingMessageHandler ? (StreamingMessageHandler) messageProcessor : null;
+		if(configuration.isEnableAsyncDispatch()) {
+			asyncMessageHandler = new AsyncMessageHandler(messageProcessor, () -> AsyncMessageHandler.buildExecutor(configuration.getDispatchThreads(), configuration.isDispatchVirtualThreads()));
+			messageProcessor = asyncMessageHandler;
+		}
 		
-		udpClient = new UdpClient(configuration, exceptionFactory);
+		reassemblyStatistics = new ReassemblyStatistics();
+		reassemblyBudget = new ReassemblyBudget(configuration.getReassemblyMemoryBudget(), configuration.getReassemblySenderMemoryBudget());
+		peerDirectory = new PeerDirectory(configuration.getServerPort(), configuration.getPeerExpirationMillis());
+		peerSequenceStatistics = new PeerSequenceStatistics();
+		PeerNameResolver peerNameResolver = new PeerNameResolver(configuration.isResolvePeerNames(), configuration.getPeerNameCacheTtlMillis(), configuration.getPeerNameCacheSize());
+		udpClient = new UdpClient(configuration, exceptionFactory, peerDirectory);
+		int workers = Math.max(1, configuration.getReassemblyWorkers());
+		queues = new ArrayList<>(workers);
+		sequentializers = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++) {
+			RingBuffer<ReceivedDatagram> queue = new RingBuffer<>(configuration.getQueueCapacity(), configuration.getReceiverThreads()<=1, configuration.getQueueWaitStrategy().build());
+			String name = workers == 1 ? "DatagramSequentializer" : "DatagramSequentializer-"+i;
+			queues.add(queue);
+			DatagramSequentializer sequentializer = new DatagramSequentializer(name, configuration, exceptionFactory, queue, heartBeatFactor, messageProcessor, reassemblyStatistics, peerNameResolver, reassemblyBudget);
+			sequentializer.setStreamingMessageHandler(streamingHandler);
+			sequentializer.setPeerDirectory(peerDirectory);
+			sequentializer.setUdpClient(udpClient);
+			if(configuration.isEnableSenderSequence()) {
+				sequentializer.setSenderSequenceTracker(new SenderSequenceTracker(configuration, peerSequenceStatistics));
+			}
+			sequentializers.add(sequentializer);
+		}
+		dropStatistics = new DropStatistics();
+		inboundQueue = new InboundQueue(queues, configuration.getOverloadPolicy(), dropStatistics, configuration.isPreserveSenderOrder() || configuration.isEnableSenderSequence());
+		udpServer = new UdpServer(configuration, exceptionFactory,inboundQueue);
+		if(configuration.isEnableFlowControl()) {
+			flowController = new FlowController(configuration, inboundQueue, dropStatistics);
+			for (DatagramSequentializer sequentializer : sequentializers) {
+				sequentializer.setFlowController(flowController);
+			}
+		}
+		
+		udpSender = new UdpSender(configuration, exceptionFactory, udpClient);
 		
 
 		heartbeatEmitter = new HeartbeatEmitter(configuration, heartBeatFactor, exceptionFactory, udpClient);
+		heartbeatEmitter.setFlowController(flowController);
 		
 		//set the infrasrtucture as initialized
 		initialized = true;
@@ -160,10 +231,16 @@ public class BroadCastSyncManager {
 		log.info(start);
 		
 		try {
-			sequentializer.startDatagramSequentializer();
+			if(asyncMessageHandler!=null) {
+				asyncMessageHandler.start();
+			}
+			for (DatagramSequentializer sequentializer : sequentializers) {
+				sequentializer.startDatagramSequentializer();
+			}
 			udpServer.startServer();
 			
 			udpClient.startClient();
+			udpSender.startSender();
 			
 			if(configuration.isEnableHeartbeat()){
 				heartbeatEmitter.startHeartbeatEmitter();				
@@ -175,11 +252,11 @@ public class BroadCastSyncManager {
 				heartbeatEmitter.shutdown();
 			}
 			
+			udpSender.shutdown();
 			udpClient.shutdown();
 			
 			udpServer.shutdown();
-			sequentializer.shutdown();
-			queue.clear();
+			shutdownSequentializers();
 			
 			log.error("emergency shutdown, all the started thread are interrupted",cause);
 			throw cause;
@@ -206,11 +283,11 @@ public class BroadCastSyncManager {
 			heartbeatEmitter.shutdown();
 		}
 		
+		udpSender.shutdown();
 		udpClient.shutdown();
 		
 		udpServer.shutdown();
-		sequentializer.shutdown();
-		queue.clear();
+		shutdownSequentializers();
 		
 		started = false;
 		
@@ -218,6 +295,86 @@ public class BroadCastSyncManager {
 		
 	}
 	
+	/**
+	 * stop all the DatagramSequentializer and release the datagrams still in the queues
+	 */
+	private void shutdownSequentializers() {
+		for (DatagramSequentializer sequentializer : sequentializers) {
+			sequentializer.shutdown();
+		}
+		for (RingBuffer<ReceivedDatagram> queue : queues) {
+			queue.drain(ReceivedDatagram::release);
+		}
+		if(asyncMessageHandler!=null) {
+			asyncMessageHandler.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * @return the handler that dispatch the messages on the executor, with the queue depth and the handler latency, 
+	 * null if {@link BroadCastSyncConfig#isEnableAsyncDispatch()} is false
+	 */
+	public AsyncMessageHandler getAsyncMessageHandler() {
+		return asyncMessageHandler;
+	}
+	
+	/**
+	 * @return the counters of the messages rebuilt and of the payloads expired, evicted or rejected
+	 */
+	public ReassemblyStatistics getReassemblyStatistics() {
+		return reassemblyStatistics;
+	}
+	
+	/**
+	 * @return the bytes held by the messages in reassembly, see {@link BroadCastSyncConfig#getReassemblyMemoryBudget()}
+	 */
+	public ReassemblyBudget getReassemblyBudget() {
+		return reassemblyBudget;
+	}
+	
+	/**
+	 * @return the pacer of the large messages, used to report the loss of the receivers when the pacing is adaptive. 
+	 * null if {@link BroadCastSyncConfig#isEnablePacing()} is false
+	 */
+	public SendPacer getSendPacer() {
+		return udpClient.getPacer();
+	}
+	
+	/**
+	 * @return the messages kept to send again the chunks lost by the receivers, null if {@link BroadCastSyncConfig#isEnableRetransmission()} is false
+	 */
+	public RetransmitBuffer getRetransmitBuffer() {
+		return udpClient.getRetransmitBuffer();
+	}
+	
+	/**
+	 * @return the messages lost and reordered of every sender, counted only if {@link BroadCastSyncConfig#isEnableSenderSequence()} is true
+	 */
+	public PeerSequenceStatistics getPeerSequenceStatistics() {
+		return peerSequenceStatistics;
+	}
+	
+	/**
+	 * @return the state of the other nodes received in the heartbeats, null if {@link BroadCastSyncConfig#isEnableFlowControl()} is false
+	 */
+	public FlowController getFlowController() {
+		return flowController;
+	}
+	
+	/**
+	 * @return the peers known by the instance ID of their heartbeats
+	 */
+	public PeerDirectory getPeerDirectory() {
+		return peerDirectory;
+	}
+	
+	/**
+	 * @return the counters of the datagrams discarded when the node is overloaded, see {@link BroadCastSyncConfig#getOverloadPolicy()}
+	 */
+	public DropStatistics getDropStatistics() {
+		return dropStatistics;
+	}
 	
 	/**
 	 * Send a byte[] on the networks
@@ -229,6 +386,39 @@ public class BroadCastSyncManager {
 		udpClient.sendMessage(data);
 	}
 
+	/**
+	 * Send the remaining bytes of a ByteBuffer on the networks, received as a byte[] message.
+	 * the datagrams are built directly from the buffer, then a direct buffer is never copied on the heap. The position of the buffer is not changed
+	 * 
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void sendMessage(ByteBuffer data) throws BroadCastSyncRuntimeException{
+		udpClient.sendMessage(data);
+	}
+	
+	/**
+	 * Send the remaining bytes of several ByteBuffer on the networks as one message, received as a byte[] message.
+	 * useful to send an header and a body without joining them. The position of the buffers is not changed
+	 * 
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void sendMessage(ByteBuffer... data) throws BroadCastSyncRuntimeException{
+		udpClient.sendMessage(data);
+	}
+	
+	/**
+	 * Send the content of a file on the networks, received as a byte[] message.
+	 * the file is memory mapped and the datagrams are built directly from the mapping
+	 * 
+	 * @param file
+	 * @throws BroadCastSyncRuntimeException if the file can't be read or it is bigger than 2GB
+	 */
+	public void sendFile(Path file) throws BroadCastSyncRuntimeException{
+		udpClient.sendFile(file);
+	}
+
 	/**
 	 * Send a String on the networks, the string are deserialized/serialized in a byte array using the UTF-8 encoding
 	 * 
@@ -266,5 +456,107 @@ public class BroadCastSyncManager {
 		udpClient.sendMessage(object);
 	}
 	
+	/**
+	 * Send a byte[] on a logical channel. In {@link TransportMode#MULTICAST} the message is sent to the group of the channel 
+	 * and only the nodes that subscribed the channel receive it, in broadcast the channel is ignored
+	 * 
+	 * @param channel configured in {@link BroadCastSyncConfig#getMulticastChannels()}
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException if the channel is not configured
+	 */
+	public void sendMessageToChannel(String channel, byte[] data) throws BroadCastSyncRuntimeException{
+		udpClient.sendMessageToChannel(channel, data);
+	}
+	
+	/**
+	 * Send a String on a logical channel, see {@link BroadCastSyncManager#sendMessageToChannel(String, byte[])}
+	 * 
+	 * @param channel
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException if the channel is not configured
+	 */
+	public void sendMessageToChannel(String channel, String data) throws BroadCastSyncRuntimeException{
+		udpClient.sendMessageToChannel(channel, data);
+	}
+	
+	/**
+	 * Send a java Object that extends Serializable on a logical channel, see {@link BroadCastSyncManager#sendMessageToChannel(String, byte[])}
+	 * 
+	 * @param channel
+	 * @param object
+	 * @throws BroadCastSyncRuntimeException if the channel is not configured
+	 * @throws BroadCastSyncExceptionSerializeData
+	 */
+	public <T extends Serializable> void sendMessageToChannel(String channel, T object) throws BroadCastSyncRuntimeException, BroadCastSyncExceptionSerializeData{
+		udpClient.sendMessageToChannel(channel, object);
+	}
+	
+	/**
+	 * Send a byte[] only to one node, the node is known by the instance ID that it sends in the heartbeats, see {@link HeartBeatFactoryInstanceId}
+	 * 
+	 * @param instanceId of the node
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException if no heartbeat with the instance ID is received in the last {@link BroadCastSyncConfig#getPeerExpirationMillis()}
+	 */
+	public void sendMessageToPeer(String instanceId, byte[] data) throws BroadCastSyncRuntimeException{
+		udpClient.sendMessageToPeer(instanceId, data);
+	}
+	
+	/**
+	 * Send a String only to one node, see {@link BroadCastSyncManager#sendMessageToPeer(String, byte[])}
+	 * 
+	 * @param instanceId of the node
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException if the node is unknown
+	 */
+	public void sendMessageToPeer(String instanceId, String data) throws BroadCastSyncRuntimeException{
+		udpClient.sendMessageToPeer(instanceId, data);
+	}
+	
+	/**
+	 * Send a java Object that extends Serializable only to one node, see {@link BroadCastSyncManager#sendMessageToPeer(String, byte[])}
+	 * 
+	 * @param instanceId of the node
+	 * @param object
+	 * @throws BroadCastSyncRuntimeException if the node is unknown
+	 * @throws BroadCastSyncExceptionSerializeData
+	 */
+	public <T extends Serializable> void sendMessageToPeer(String instanceId, T object) throws BroadCastSyncRuntimeException, BroadCastSyncExceptionSerializeData{
+		udpClient.sendMessageToPeer(instanceId, object);
+	}
+	
+	/**
+	 * Send a byte[] on the networks without blocking the caller, see {@link BroadCastSyncManager#sendMessage(byte[])}.
+	 * the array is not copied, it must not be changed till the future completes
+	 * 
+	 * @param data
+	 * @return a future that completes when all the datagrams are written, or completes exceptionally if the message is not sent, 
+	 * when the queue is full the behavior depends on {@link BroadCastSyncConfig#getSendOverloadPolicy()}
+	 */
+	public CompletableFuture<Void> sendMessageAsync(byte[] data) {
+		return udpSender.sendMessage(data);
+	}
+	
+	/**
+	 * Send a String on the networks without blocking the caller, see {@link BroadCastSyncManager#sendMessage(String)}
+	 * 
+	 * @param data
+	 * @return a future that completes when all the datagrams are written, or completes exceptionally if the message is not sent
+	 */
+	public CompletableFuture<Void> sendMessageAsync(String data) {
+		return udpSender.sendMessage(data);
+	}
+	
+	/**
+	 * Send a java Object that extends Serializable on the networks without blocking the caller, see {@link BroadCastSyncManager#sendMessage(Serializable)}.
+	 * the object is serialized before to return, if it can't be serialized the future completes exceptionally with a {@link BroadCastSyncExceptionSerializeData}
+	 * 
+	 * @param object
+	 * @return a future that completes when all the datagrams are written, or completes exceptionally if the message is not sent
+	 */
+	public <T extends Serializable> CompletableFuture<Void> sendMessageAsync(T object) {
+		return udpSender.sendMessage(object);
+	}
+	
 	
 }
@@ -1,6 +1,6 @@
 package it.spaghettisource.broadcastsync.exception;
 
-import java.net.SocketException;
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Locale;
 
@@ -39,7 +39,7 @@ public class ExceptionFactory {
 	}
 	
 	
-	public BroadCastSyncRuntimeException getImpossibleOpenDatagramSocket(SocketException cause, int socketPort){		
+	public BroadCastSyncRuntimeException getImpossibleOpenDatagramSocket(IOException cause, int socketPort){		
 		return getRuntimeException(cause, locale, "exception.server.impossibleOpenDatagramSocket", new Object[] {socketPort});
 	}
 
@@ -52,6 +52,42 @@ public class ExceptionFactory {
 		return getRuntimeException(cause, locale, "exception.client.broadcastAddressCannotBeResolved", new Object[] {broadcastAddress});
 	}	
 	
+	public BroadCastSyncRuntimeException getOutboundQueueFull(int capacity) {
+		return getRuntimeException(locale, "exception.client.outboundQueueFull", new Object[] {capacity});
+	}
+	
+	public BroadCastSyncRuntimeException getSenderNotRunning() {
+		return getRuntimeException(locale, "exception.client.senderNotRunning", EMPTY_PARAMETERS);
+	}
+	
+	public BroadCastSyncRuntimeException getImpossibleReadFile(IOException cause, String file) {
+		return getRuntimeException(cause, locale, "exception.client.impossibleReadFile", new Object[] {file});
+	}
+	
+	public BroadCastSyncRuntimeException getMessageTooBig(long size) {
+		return getRuntimeException(locale, "exception.client.messageTooBig", new Object[] {size});
+	}
+	
+	public BroadCastSyncRuntimeException getUnknownChannel(String channel) {
+		return getRuntimeException(locale, "exception.client.unknownChannel", new Object[] {channel});
+	}
+	
+	public BroadCastSyncRuntimeException getUnknownPeer(String instanceId) {
+		return getRuntimeException(locale, "exception.client.unknownPeer", new Object[] {instanceId});
+	}
+	
+	public BroadCastSyncRuntimeException getPeerCannotBeResolved(Exception cause, String peer) {
+		return getRuntimeException(cause, locale, "exception.client.peerCannotBeResolved", new Object[] {peer});
+	}
+	
+	public BroadCastSyncRuntimeException getInvalidMulticastGroup(Exception cause, String group) {
+		return getRuntimeException(cause, locale, "exception.multicast.invalidGroup", new Object[] {group});
+	}
+	
+	public BroadCastSyncRuntimeException getMulticastInterfaceNotAvailable(Exception cause, String networkInterface) {
+		return getRuntimeException(cause, locale, "exception.multicast.interfaceNotAvailable", new Object[] {networkInterface});
+	}
+	
 	public BroadCastSyncExceptionDataProtocolNotRespected getBroadCastSyncExceptionDatagramDataProtocolNotRespected(Exception cause) {
 		BroadCastSyncExceptionDataProtocolNotRespected ex = new BroadCastSyncExceptionDataProtocolNotRespected(cause, "exception.datagram.dataProtocol.NotRespected", EMPTY_PARAMETERS);
 		ex.setMessageHelper(messageHelper);
@@ -0,0 +1,292 @@
+package it.spaghettisource.broadcastsync.handler;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.spaghettisource.broadcastsync.message.HeartBeat;
+import it.spaghettisource.broadcastsync.message.MessageByteArray;
+import it.spaghettisource.broadcastsync.message.MessageObject;
+import it.spaghettisource.broadcastsync.message.MessageString;
+
+/**
+ * MessageHandler that dispatch the messages to another {@link MessageHandler} on an executor,
+ * so a slow handler doesn't stop the threads that rebuild the messages.
+ *
+ * the messages of the same sender are added in a serial queue and executed one by one,
+ * then the messages of each sender are received by the delegated handler in FIFO order, while the messages of different senders run in parallel.
+ * the delegated handler must be thread safe.
+ *
+ * the executor is created by {@link AsyncMessageHandler#start()} and stopped by {@link AsyncMessageHandler#shutdown()}.
+ * when the executor refuses a serial queue, because it is not running or it is saturated, the messages of the queue are discarded and counted as dropped.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class AsyncMessageHandler implements MessageHandler {
+
+	private static Logger  log = LoggerFactory.getLogger(AsyncMessageHandler.class);
+
+	/**
+	 * max amount of messages of the same sender executed before to give the thread to the other senders
+	 */
+	private static final int MAX_TASKS_PER_RUN = 32;
+
+	private final MessageHandler delegate;
+	private final Supplier<ExecutorService> executorFactory;
+	private volatile ExecutorService executor;
+	private final ConcurrentHashMap<String, SerialQueue> serialQueues;
+
+	private final AtomicLong queueDepth = new AtomicLong();
+	private final LongAdder dispatchedMessages = new LongAdder();
+	private final LongAdder droppedMessages = new LongAdder();
+	private final LongAdder handlerTimeNanos = new LongAdder();
+	private final AtomicLong maxHandlerTimeNanos = new AtomicLong();
+	private final LongAdder waitTimeNanos = new LongAdder();
+
+	/**
+	 * @param delegate the handler called by the executor
+	 * @param executorFactory build the executor used to call the delegated handler every time the handler is started
+	 */
+	public AsyncMessageHandler(MessageHandler delegate, Supplier<ExecutorService> executorFactory) {
+		super();
+		this.delegate = delegate;
+		this.executorFactory = executorFactory;
+		this.serialQueues = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * build the executor used to dispatch the messages
+	 *
+	 * @param threads amount of threads of the fixed pool
+	 * @param virtualThreads true to use a virtual thread for each task, available only on java 21 or later, otherwise the fixed pool is used
+	 * @return
+	 */
+	public static ExecutorService buildExecutor(int threads, boolean virtualThreads) {
+
+		if(virtualThreads) {
+			try {
+				Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) factory.invoke(null);
+			}catch (Exception e) {
+				log.warn("virtual threads are not supported by this JVM, the dispatch use a fixed pool of "+threads+" threads");
+			}
+		}
+
+		AtomicInteger counter = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			thread.setName("MessageDispatcher-"+counter.getAndIncrement());
+			return thread;
+		};
+		return Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+	}
+
+	@Override
+	public void onHeartBeatReceived(HeartBeat heartBeat) {
+		dispatch(heartBeat.getClientAddress(), () -> delegate.onHeartBeatReceived(heartBeat));
+	}
+
+	@Override
+	public void onMessageReceived(MessageByteArray message) {
+		dispatch(message.getClientAddress(), () -> delegate.onMessageReceived(message));
+	}
+
+	@Override
+	public void onMessageReceived(MessageString message) {
+		dispatch(message.getClientAddress(), () -> delegate.onMessageReceived(message));
+	}
+
+	@Override
+	public void onMessageReceived(MessageObject message) {
+		dispatch(message.getClientAddress(), () -> delegate.onMessageReceived(message));
+	}
+
+	/**
+	 * add the task in the serial queue of the sender,
+	 * if the queue is not yet scheduled on the executor schedule it
+	 *
+	 * @param sender
+	 * @param task
+	 */
+	private void dispatch(String sender, Runnable task) {
+		SerialQueue serialQueue = serialQueues.computeIfAbsent(sender, key -> new SerialQueue());
+		queueDepth.incrementAndGet();
+		serialQueue.tasks.add(new DispatchTask(task));
+		serialQueue.schedule();
+	}
+
+	/**
+	 * @return the amount of messages waiting to be passed to the delegated handler
+	 */
+	public long getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * @return the amount of messages passed to the delegated handler
+	 */
+	public long getDispatchedMessages() {
+		return dispatchedMessages.sum();
+	}
+
+	/**
+	 * @return the amount of messages discarded because the executor refused them
+	 */
+	public long getDroppedMessages() {
+		return droppedMessages.sum();
+	}
+
+	/**
+	 * @return the average time in nanoseconds spent in the delegated handler
+	 */
+	public long getAverageHandlerTimeNanos() {
+		long dispatched = dispatchedMessages.sum();
+		return dispatched == 0 ? 0 : handlerTimeNanos.sum() / dispatched;
+	}
+
+	/**
+	 * @return the max time in nanoseconds spent in the delegated handler
+	 */
+	public long getMaxHandlerTimeNanos() {
+		return maxHandlerTimeNanos.get();
+	}
+
+	/**
+	 * @return the average time in nanoseconds that a message waits in the queue before the delegated handler is called
+	 */
+	public long getAverageWaitTimeNanos() {
+		long dispatched = dispatchedMessages.sum();
+		return dispatched == 0 ? 0 : waitTimeNanos.sum() / dispatched;
+	}
+
+	/**
+	 * create the executor, from now the messages are dispatched
+	 */
+	public void start() {
+		executor = executorFactory.get();
+	}
+
+	/**
+	 * stop the executor, the messages still in the queues are discarded
+	 */
+	public void shutdown() {
+		ExecutorService current = executor;
+		if(current!=null) {
+			current.shutdownNow();
+			try {
+				current.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		serialQueues.clear();
+		queueDepth.set(0);
+	}
+
+
+	/**
+	 * a message waiting to be passed to the delegated handler
+	 */
+	private class DispatchTask {
+
+		private final Runnable task;
+		private final long enqueueTime;
+
+		private DispatchTask(Runnable task) {
+			this.task = task;
+			this.enqueueTime = System.nanoTime();
+		}
+
+		private void execute() {
+			long start = System.nanoTime();
+			try {
+				task.run();
+			}catch (Exception e) {
+				log.error("unexpected error in the message handler",e);
+			}finally {
+				long end = System.nanoTime();
+				long handlerTime = end - start;
+				queueDepth.decrementAndGet();
+				dispatchedMessages.increment();
+				waitTimeNanos.add(start - enqueueTime);
+				handlerTimeNanos.add(handlerTime);
+				maxHandlerTimeNanos.accumulateAndGet(handlerTime, Math::max);
+			}
+		}
+	}
+
+	/**
+	 * the queue of the messages of one sender, it is executed by only one thread at a time
+	 */
+	private class SerialQueue implements Runnable {
+
+		private final Queue<DispatchTask> tasks = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		private void schedule() {
+			if(scheduled.compareAndSet(false, true)) {
+				ExecutorService current = executor;
+				try {
+					if(current==null) {
+						throw new RejectedExecutionException("executor not started");
+					}
+					current.execute(this);
+				}catch (RejectedExecutionException e) {
+					drop();
+				}
+			}
+		}
+
+		/**
+		 * the executor refused the queue, the messages waiting are discarded otherwise they stay in the queue until the next message of the sender
+		 */
+		private void drop() {
+			int dropped = 0;
+			while (tasks.poll() != null) {
+				dropped++;
+			}
+			queueDepth.addAndGet(-dropped);
+			droppedMessages.add(dropped);
+			log.warn(dropped+" messages not dispatched, the dispatch executor is not running or it is saturated");
+
+			//release the queue, if a new message is arrived in the meantime schedule it again
+			scheduled.set(false);
+			if(!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+
+		@Override
+		public void run() {
+			DispatchTask task;
+			int executed = 0;
+			while (executed < MAX_TASKS_PER_RUN && (task = tasks.poll()) != null) {
+				task.execute();
+				executed++;
+			}
+
+			//release the queue, if a new message is arrived in the meantime schedule it again
+			scheduled.set(false);
+			if(!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
+}
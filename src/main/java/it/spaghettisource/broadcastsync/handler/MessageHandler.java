@@ -8,6 +8,9 @@ import it.spaghettisource.broadcastsync.message.MessageString;
 /**
  * Interface for handling messages received by the server.
  * 
+ * when {@link it.spaghettisource.broadcastsync.BroadCastSyncConfig#getReassemblyWorkers()} is greater than one 
+ * the methods are called concurrently by several threads, then the implementation must be thread safe.
+ * 
  * @author Alessandro
  * @version 1.0
  */
@@ -0,0 +1,34 @@
+package it.spaghettisource.broadcastsync.handler;
+
+import it.spaghettisource.broadcastsync.message.MessageChunk;
+
+/**
+ * MessageHandler that receives the byte array messages in streaming mode.
+ * 
+ * when the handler passed to the BroadCastSyncManager implements this interface the byte array messages are not rebuilt in one array:
+ * the chunks are delivered in order as soon as they are contiguous and only the chunks received out of order are retained, 
+ * then the memory used by a message is bounded and the data can be parsed or written on disk while the message is received.
+ * for the byte array messages {@link MessageHandler#onMessageReceived(it.spaghettisource.broadcastsync.message.MessageByteArray)} is never called.
+ * 
+ * the chunks are delivered by the DatagramSequentializer thread also when the async dispatch is enabled, 
+ * because the data of the chunk is valid only during the call.
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public interface StreamingMessageHandler extends MessageHandler {
+
+	/**
+	 * Invoked for every chunk of a byte array message, in order.
+	 * @param chunk received.
+	 */
+	public void onMessageChunkReceived(MessageChunk chunk);
+	
+	/**
+	 * Invoked when a message already started is discarded before to receive all its chunks, for example because it is expired.
+	 * @param messageId of the message discarded.
+	 * @param clientAddress of the sender.
+	 */
+	public void onMessageStreamAborted(String messageId, String clientAddress);
+	
+}
@@ -0,0 +1,81 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The waiting thread is suspended on a lock condition till it is signaled
+ * the lock is taken by the signaling thread only if there is at least one thread waiting
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition condition = lock.newCondition();
+	private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+	
+	@Override
+	public void waitFor(BooleanSupplier satisfied) throws InterruptedException {
+		
+		if(satisfied.getAsBoolean()) {
+			return;
+		}
+		
+		lock.lockInterruptibly();
+		try {
+			//the flag is raised before to verify again the condition, then a signal can't be lost
+			signalNeeded.getAndSet(true);
+			while (!satisfied.getAsBoolean()) {
+				condition.await();
+				signalNeeded.getAndSet(true);
+			}
+		}finally {
+			lock.unlock();
+		}
+		
+	}
+
+	@Override
+	public boolean waitFor(BooleanSupplier satisfied, long timeoutNanos) throws InterruptedException {
+		
+		if(satisfied.getAsBoolean()) {
+			return true;
+		}
+		
+		long remaining = timeoutNanos;
+		lock.lockInterruptibly();
+		try {
+			signalNeeded.getAndSet(true);
+			while (!satisfied.getAsBoolean()) {
+				if(remaining <= 0) {
+					return false;
+				}
+				remaining = condition.awaitNanos(remaining);
+				signalNeeded.getAndSet(true);
+			}
+			return true;
+		}finally {
+			lock.unlock();
+		}
+		
+	}
+
+	@Override
+	public void signalAll() {
+		
+		if(signalNeeded.getAndSet(false)) {
+			lock.lock();
+			try {
+				condition.signalAll();
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+	}
+
+}
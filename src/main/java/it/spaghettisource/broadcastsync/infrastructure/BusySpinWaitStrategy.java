@@ -0,0 +1,41 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The waiting thread verifies continuously the condition, it should be used only when the thread can be pinned on a dedicated core
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+	@Override
+	public void waitFor(BooleanSupplier satisfied) throws InterruptedException {
+		while (!satisfied.getAsBoolean()) {
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	@Override
+	public boolean waitFor(BooleanSupplier satisfied, long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (!satisfied.getAsBoolean()) {
+			if(deadline - System.nanoTime() <= 0) {
+				return false;
+			}
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void signalAll() {
+		//nothing to do, the waiting thread never sleeps
+	}
+
+}
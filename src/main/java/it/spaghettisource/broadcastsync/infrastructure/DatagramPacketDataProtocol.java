@@ -4,6 +4,7 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,18 +37,79 @@ import it.spaghettisource.broadcastsync.message.MessageType;
  * 
  * the supported message types are defined in the class {@link MessageType}
  * 
+ * when the forward error correction is enabled every group of datagrams of a message is followed by a parity datagram with the same messageID, 
+ * the type {@link MessageType#MESSAGE_TYPE_DATA_PARITY} and the index of the group as sequence. 
+ * its data starts with the size of the group (int) and the XOR of the lengths of the datagrams of the group (int), then the XOR of their data, 
+ * the datagrams of the message are smaller of {@link DatagramPacketDataProtocol#FEC_HEADER_SIZE} bytes so the parity fits in one datagram.
+ * 
+ * the header above is the version 1 of the protocol. the version 2 is a compact header, the total packets and the sequence are varints (7 bits per byte) 
+ * and they are not sent at all for a message of one datagram, then a small message has a header of 11 bytes instead of 32:
+ * 
+ * |--------------------|----------------------|---------------------------|------------------------------------------------------|---------------------------|--------------------|
+ * | version            | flags                | message type              | messageID                                            | total packets, sequence   | data               |
+ * |--------------------|----------------------|---------------------------|------------------------------------------------------|---------------------------|--------------------|
+ * | byte 1 byte        | byte 1 byte          | byte 1 byte               | long 8 byte or                                       | varint, only without the  | up to the end      |
+ * | always 2           | FLAG_SINGLE_PACKET   |                           | int 4 byte + varint with FLAG_SEQUENCED: the session | FLAG_SINGLE_PACKET        | of the datagram    |
+ * |                    | FLAG_SEQUENCED       |                           | of the sequence and the position of the message      |                           |                    |
+ * |--------------------|----------------------|---------------------------|------------------------------------------------------|---------------------------|--------------------|
+ * 
+ * the messageID of the version 2 is 64 bits, seen as a UUID it has the first 8 bytes at 0, see {@link DatagramPacketDataProtocol#randomCompactMessageIdLeastSignificantBits()}.
+ * the messages of a sequence keep their session and position, see {@link DatagramPacketDataProtocol#randomCompactSequenceMostSignificantBits()}.
+ * 
+ * a datagram is read as version 1 when its amount of data is exactly the size of the datagram less 32 bytes, otherwise as version 2 if it starts with the version. 
+ * the encoder writes in version 1 the datagrams that would be ambiguous and the ones with a messageID not compact, 
+ * then the space in the datagram for the data is always the one of the version 1 and all the nodes split the messages in the same way.
+ * 
  * 
  * @author Alessandro D'Ottavio
  * @version 1.0 - base version
+ * @version 2.0 - compact header
  *
  */
 public class DatagramPacketDataProtocol {
 	
 	private static Logger  log = LoggerFactory.getLogger(DatagramPacketDataProtocol.class);
+	
+	/**
+	 * size in byte of the header of every datagram
+	 */
+	public static final int HEADER_SIZE = 32;
+	
+	/**
+	 * size in byte of the group size and of the XOR of the lengths at the beginning of the data of a parity datagram
+	 */
+	public static final int FEC_HEADER_SIZE = 8;
+	
+	/**
+	 * version of the header of 32 bytes
+	 */
+	public static final int VERSION_1 = 1;
+	
+	/**
+	 * version of the compact header, it is the first byte of the datagram
+	 */
+	public static final int VERSION_2 = 2;
+	
+	/**
+	 * flag of the version 2, the message is made of one datagram and the total packets and the sequence are not sent
+	 */
+	public static final int FLAG_SINGLE_PACKET = 1;
+	
+	/**
+	 * flag of the version 2, the messageID is the session of a sequence and the position of the message in the sequence
+	 */
+	public static final int FLAG_SEQUENCED = 2;
+	
+	/**
+	 * size of the compact header of a single packet with a random messageID, a shorter datagram of the version 2 is not read to find its messageID
+	 */
+	public static final int VERSION_2_MIN_HEADER_SIZE = 11;
 		
 	private ExceptionFactory exceptionFactory;
 	
 	//payload data
+	private long messageIdMostSignificantBits;
+	private long messageIdLeastSignificantBits;
 	private String messageID;
 	private int messageType;
 	private int totalPackets;
@@ -55,7 +117,9 @@ public class DatagramPacketDataProtocol {
 	//payload chunk data	
 	private int sequence;
 	private int dataAmount;
-	private byte[] data;
+	private int dataOffset;
+	private int version;
+	private ByteBuffer rawData;
 	
 
 	public DatagramPacketDataProtocol(ExceptionFactory exceptionFactory) {
@@ -70,17 +134,41 @@ public class DatagramPacketDataProtocol {
 	 * @throws BroadCastSyncExceptionDataProtocolNotRespected if the DatagramPacket analyzed doesn't respect the data protocol
 	 */
 	public void analyzed(DatagramPacket datagram) throws BroadCastSyncExceptionDataProtocolNotRespected{
-		byte[] rawData = datagram.getData();
+		analyzed(ByteBuffer.wrap(datagram.getData(), datagram.getOffset(), datagram.getLength()).slice());
+	}
+	
+	/**
+	 * Analyze the raw data of a datagram stored in a ByteBuffer from the position 0 to the limit, after that is possible to call the getter to obtain the info of this payload
+	 * the data part of the datagram is not copied, then the buffer can't be reused till the data is read with {@link DatagramPacketDataProtocol#buildPayloadChunk()} 
+	 * or directly from the buffer from {@link DatagramPacketDataProtocol#getDataOffset()}
+	 * 
+	 * @param rawData to analyzed
+	 * @throws BroadCastSyncExceptionDataProtocolNotRespected if the datagram analyzed doesn't respect the data protocol
+	 */
+	public void analyzed(ByteBuffer rawData) throws BroadCastSyncExceptionDataProtocolNotRespected{
 		
 		try {
-			messageID =       deserializeUUID(ByteBuffer.wrap(rawData, 0, 16).array());
-			messageType = 	  ByteBuffer.wrap(rawData, 16, 4).getInt();
-			totalPackets = 	  ByteBuffer.wrap(rawData, 20, 4).getInt();
-			sequence = 		  ByteBuffer.wrap(rawData, 24, 4).getInt();
-			dataAmount = 	  ByteBuffer.wrap(rawData, 28, 4).getInt();		
+			messageID = 	  null;
+			if(!isVersion1(rawData) && rawData.limit() > 0 && rawData.get(0) == VERSION_2) {
+				analyzedVersion2(rawData);
+				this.rawData = rawData;
+				return;
+			}
+			
+			version = VERSION_1;
+			messageIdMostSignificantBits =  rawData.getLong(0);
+			messageIdLeastSignificantBits = rawData.getLong(8);
+			messageType = 	  rawData.getInt(16);
+			totalPackets = 	  rawData.getInt(20);
+			sequence = 		  rawData.getInt(24);
+			dataAmount = 	  rawData.getInt(28);		
+			dataOffset = 	  HEADER_SIZE;
+			
+			if(dataAmount < 0 || dataAmount > rawData.limit() - HEADER_SIZE) {
+				throw new IllegalArgumentException("amount of data "+dataAmount+" not compatible with the datagram size "+rawData.limit());
+			}
 			
-		    data =  new byte[dataAmount];				
-		    System.arraycopy(rawData, 32, data, 0, dataAmount);
+			this.rawData = rawData;
 		    
 		}catch (Exception cause) {
 			BroadCastSyncExceptionDataProtocolNotRespected ex = exceptionFactory.getBroadCastSyncExceptionDatagramDataProtocolNotRespected(cause);
@@ -89,12 +177,141 @@ public class DatagramPacketDataProtocol {
 		
 	}
 	
+	private void analyzedVersion2(ByteBuffer rawData) {
+		version = VERSION_2;
+		int flags = rawData.get(1) & 0xFF;
+		if((flags & ~(FLAG_SINGLE_PACKET | FLAG_SEQUENCED)) != 0) {
+			throw new IllegalArgumentException("flags "+flags+" not supported");
+		}
+		messageType = rawData.get(2) & 0xFF;
+		
+		if((flags & FLAG_SEQUENCED) != 0) {
+			messageIdMostSignificantBits = compactSequenceMostSignificantBits(rawData.getInt(3));
+			dataOffset = 7;
+			messageIdLeastSignificantBits = sequenceLeastSignificantBits(readVarLong(rawData));
+		}else {
+			messageIdMostSignificantBits = 0;
+			messageIdLeastSignificantBits = rawData.getLong(3);
+			dataOffset = 11;
+		}
+		
+		if((flags & FLAG_SINGLE_PACKET) != 0) {
+			totalPackets = 1;
+			sequence = 0;
+		}else {
+			totalPackets = (int) readVarLong(rawData);
+			sequence = (int) readVarLong(rawData);
+		}
+		
+		dataAmount = rawData.limit() - dataOffset;
+		if(dataAmount < 0) {
+			throw new IllegalArgumentException("header of "+dataOffset+" bytes not compatible with the datagram size "+rawData.limit());
+		}
+	}
+	
+	/**
+	 * read a varint from the data offset and move the data offset after it
+	 */
+	private long readVarLong(ByteBuffer rawData) {
+		long value = readVarint(rawData, dataOffset);
+		//the varint is valid, skip its bytes till the last one
+		while (rawData.get(dataOffset++) < 0);
+		return value;
+	}
+	
+	/**
+	 * read a varint without moving the position of the buffer
+	 * 
+	 * @param rawData of the datagram from the position 0 to the limit
+	 * @param offset of the first byte of the varint
+	 * @return the value of the varint
+	 * @throws IllegalArgumentException if the varint is longer than 64 bits
+	 * @throws IndexOutOfBoundsException if the varint exceeds the limit of the datagram
+	 */
+	private static long readVarint(ByteBuffer rawData, int offset) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte current = rawData.get(offset++);
+			value |= (long) (current & 0x7F) << shift;
+			if(current >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("varint too long");
+	}
+	
 	/**
-	 * @return the messageID associated at this chunk
+	 * @param rawData of the datagram from the position 0 to the limit
+	 * @return true if the amount of data in the header of the version 1 is exactly the data of the datagram
+	 */
+	private static boolean isVersion1(ByteBuffer rawData) {
+		return rawData.limit() >= HEADER_SIZE && rawData.getInt(28) == rawData.limit() - HEADER_SIZE;
+	}
+	
+	/**
+	 * read the message type of a datagram without analyzing it
+	 * 
+	 * @param rawData of the datagram from the position 0 to the limit
+	 * @return the message type or -1 if the datagram is too short to contain the header
+	 */
+	public static int peekMessageType(ByteBuffer rawData) {
+		if(!isVersion1(rawData) && rawData.limit() > 3 && rawData.get(0) == VERSION_2) {
+			return rawData.get(2) & 0xFF;
+		}
+		if(rawData.limit() < HEADER_SIZE) {
+			return -1;
+		}
+		return rawData.getInt(16);
+	}
+	
+	/**
+	 * read the messageID of a datagram without analyzing it, in both the versions of the header
+	 * 
+	 * @param rawData of the datagram from the position 0 to the limit
+	 * @return the XOR of the first 8 bytes and of the last 8 bytes of the messageID, 0 if the datagram is too short to contain it or the messageID is not valid
+	 */
+	public static long peekMessageIdHash(ByteBuffer rawData) {
+		int limit = rawData.limit();
+		if(isVersion1(rawData) || limit < VERSION_2_MIN_HEADER_SIZE || rawData.get(0) != VERSION_2) {
+			return limit < 16 ? 0 : rawData.getLong(0) ^ rawData.getLong(8);
+		}
+		if((rawData.get(1) & FLAG_SEQUENCED) == 0) {
+			return rawData.getLong(3);
+		}
+		
+		//the session and the position of the message in the sequence, decoded as the header is analyzed
+		long position;
+		try {
+			position = readVarint(rawData, 7);
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			return 0;
+		}
+		return compactSequenceMostSignificantBits(rawData.getInt(3)) ^ sequenceLeastSignificantBits(position);
+	}
+	
+	/**
+	 * @return the messageID associated at this chunk in the UUID format, it is built only when requested
 	 */
 	public String getMessageId() {
+		if(messageID == null) {
+			messageID = new UUID(messageIdMostSignificantBits, messageIdLeastSignificantBits).toString();
+		}
 		return messageID;
 	}
+	
+	/**
+	 * @return the first 8 bytes of the messageID associated at this chunk
+	 */
+	public long getMessageIdMostSignificantBits() {
+		return messageIdMostSignificantBits;
+	}
+	
+	/**
+	 * @return the last 8 bytes of the messageID associated at this chunk
+	 */
+	public long getMessageIdLeastSignificantBits() {
+		return messageIdLeastSignificantBits;
+	}
 
 	/**
 	 * @return the type of message
@@ -118,16 +335,350 @@ public class DatagramPacketDataProtocol {
 	}
 
 	/**
-	 * @return the PayloadChunk related to the datagram analyzed
+	 * @return the amount of data in this datagram
+	 */
+	public int getDataAmount() {
+		return dataAmount;
+	}
+	
+	/**
+	 * @return the position of the data in the datagram analyzed
+	 */
+	public int getDataOffset() {
+		return dataOffset;
+	}
+	
+	/**
+	 * @return the version of the header of the datagram analyzed
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the PayloadChunk related to the datagram analyzed, the data is copied from the datagram
 	 */
 	public PayloadChunk buildPayloadChunk() {
+		byte[] data = new byte[dataAmount];
+		rawData.position(getDataOffset());
+		rawData.get(data);
+		rawData.position(0);
 		return new PayloadChunk(sequence, data);
 	}
 
 
+	/**
+	 * @param dataLength amount of bytes of the message
+	 * @param datagramPacketBufferSize
+	 * @return the amount of datagrams needed to send the message
+	 */
+	public static int findTotalPackets(int dataLength, int datagramPacketBufferSize) {
+		int packetDataSize = datagramPacketBufferSize - HEADER_SIZE;
+		return (int) (((long) dataLength + packetDataSize - 1) / packetDataSize);
+	}
+	
+	/**
+	 * @return the first 8 bytes of a new random messageID, with the bits of a UUID version 4
+	 */
+	public static long randomMessageIdMostSignificantBits() {
+		return (ThreadLocalRandom.current().nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+	}
+	
+	/**
+	 * @return the last 8 bytes of a new random messageID, with the bits of the variant of a UUID version 4
+	 */
+	public static long randomMessageIdLeastSignificantBits() {
+		return (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+	}
+	
+	/**
+	 * @return the first 8 bytes of the messageIDs of a new sequence of messages, random with the bits of a UUID version 8. 
+	 * all the messages of the sequence have the same first 8 bytes, see {@link MessageSequence}
+	 */
+	public static long randomSequenceMostSignificantBits() {
+		return (ThreadLocalRandom.current().nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000008000L;
+	}
+	
+	/**
+	 * @param sequence of the message in its sequence
+	 * @return the last 8 bytes of the messageID of the message, with the bits of the variant of a UUID
+	 */
+	public static long sequenceLeastSignificantBits(long sequence) {
+		return (sequence & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+	}
+	
+	/**
+	 * @return the last 8 bytes of a new random messageID of the version 2 of the protocol, the first 8 bytes are 0
+	 */
+	public static long randomCompactMessageIdLeastSignificantBits() {
+		return ThreadLocalRandom.current().nextLong();
+	}
+	
+	/**
+	 * @return the first 8 bytes of the messageIDs of a new sequence of messages that can be sent with the version 2 of the protocol, 
+	 * the session is 4 random bytes
+	 */
+	public static long randomCompactSequenceMostSignificantBits() {
+		return compactSequenceMostSignificantBits(ThreadLocalRandom.current().nextInt());
+	}
+	
+	private static long compactSequenceMostSignificantBits(int session) {
+		return ((long) session << 32) | 0x0000000000008000L;
+	}
+	
+	/**
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @return true if the messageID can be sent with the version 2 of the protocol
+	 */
+	public static boolean isCompact(long messageIdMostSignificantBits, long messageIdLeastSignificantBits) {
+		if(messageIdMostSignificantBits == 0) {
+			return true;
+		}
+		return messageIdMostSignificantBits == compactSequenceMostSignificantBits((int) (messageIdMostSignificantBits >>> 32)) 
+				&& messageIdLeastSignificantBits == sequenceLeastSignificantBits(messageIdLeastSignificantBits);
+	}
+	
+	/**
+	 * @param messageIdMostSignificantBits
+	 * @return true if the message is part of a sequence, its messageID is a UUID version 8
+	 */
+	public static boolean isSequenced(long messageIdMostSignificantBits) {
+		return (messageIdMostSignificantBits & 0x000000000000F000L) == 0x0000000000008000L;
+	}
+	
+	/**
+	 * @param messageIdLeastSignificantBits of a message part of a sequence
+	 * @return the position of the message in its sequence
+	 */
+	public static long findSequence(long messageIdLeastSignificantBits) {
+		return messageIdLeastSignificantBits & 0x3FFFFFFFFFFFFFFFL;
+	}
+	
+	/**
+	 * write a datagram that respects the data protocol in the buffer without allocating memory, the buffer can be reused for every datagram.
+	 * the buffer is cleared and at the end it is ready to be read from the position 0 to the end of the data
+	 * 
+	 * @param target buffer of at least {@link DatagramPacketDataProtocol#HEADER_SIZE} + length bytes
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param msgType
+	 * @param totalPackets
+	 * @param sequence
+	 * @param data of the message, it can be null if the length is 0
+	 * @param offset of the data of this datagram in the message
+	 * @param length of the data of this datagram
+	 * @return the position of the data in the datagram
+	 */
+	public static int encodeDatagram(ByteBuffer target, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int msgType, int totalPackets, int sequence, byte[] data, int offset, int length) {
+		return encodeDatagram(target, VERSION_1, messageIdMostSignificantBits, messageIdLeastSignificantBits, msgType, totalPackets, sequence, data, offset, length);
+	}
+	
+	/**
+	 * write a datagram with the header of the version requested, see {@link DatagramPacketDataProtocol#encodeDatagram(ByteBuffer, long, long, int, int, int, byte[], int, int)}. 
+	 * the buffer must have space for the header of the version 1 because some datagrams are always written in version 1
+	 * 
+	 * @param target buffer of at least {@link DatagramPacketDataProtocol#HEADER_SIZE} + length bytes
+	 * @param version of the header
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param msgType
+	 * @param totalPackets
+	 * @param sequence
+	 * @param data of the message, it can be null if the length is 0
+	 * @param offset of the data of this datagram in the message
+	 * @param length of the data of this datagram
+	 * @return the position of the data in the datagram
+	 */
+	public static int encodeDatagram(ByteBuffer target, int version, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int msgType, int totalPackets, int sequence, byte[] data, int offset, int length) {
+		int headerSize = encodeHeader(target, version, messageIdMostSignificantBits, messageIdLeastSignificantBits, msgType, totalPackets, sequence, length);
+		if(length > 0) {
+			target.put(data, offset, length);
+		}
+		return completeDatagram(target, headerSize, messageIdMostSignificantBits, messageIdLeastSignificantBits, msgType, totalPackets, sequence);
+	}
+	
+	/**
+	 * encode a datagram in the target buffer taking the data from a sequence of buffers, used to send direct or memory mapped buffers without copying them on the heap.
+	 * the data are consumed from the sources in order, then the position of the sources advances of length bytes and the next call encodes the next datagram
+	 * 
+	 * @param target buffer where the datagram is encoded, it is cleared and at the end it is ready to be sent
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param msgType
+	 * @param totalPackets
+	 * @param sequence
+	 * @param sources of the data of the message
+	 * @param length amount of data in this datagram
+	 * @return the position of the data in the datagram
+	 */
+	public static int encodeDatagram(ByteBuffer target, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int msgType, int totalPackets, int sequence, ByteBuffer[] sources, int length) {
+		return encodeDatagram(target, VERSION_1, messageIdMostSignificantBits, messageIdLeastSignificantBits, msgType, totalPackets, sequence, sources, length);
+	}
+	
+	/**
+	 * encode a datagram with the header of the version requested taking the data from a sequence of buffers, 
+	 * see {@link DatagramPacketDataProtocol#encodeDatagram(ByteBuffer, long, long, int, int, int, ByteBuffer[], int)}
+	 * 
+	 * @param target buffer where the datagram is encoded, it is cleared and at the end it is ready to be sent
+	 * @param version of the header
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param msgType
+	 * @param totalPackets
+	 * @param sequence
+	 * @param sources of the data of the message
+	 * @param length amount of data in this datagram
+	 * @return the position of the data in the datagram
+	 */
+	public static int encodeDatagram(ByteBuffer target, int version, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int msgType, int totalPackets, int sequence, ByteBuffer[] sources, int length) {
+		int headerSize = encodeHeader(target, version, messageIdMostSignificantBits, messageIdLeastSignificantBits, msgType, totalPackets, sequence, length);
+		int missing = length;
+		for (int i = 0; missing > 0 && i < sources.length; i++) {
+			ByteBuffer source = sources[i];
+			int amount = Math.min(missing, source.remaining());
+			if(amount > 0) {
+				int limit = source.limit();
+				source.limit(source.position() + amount);
+				target.put(source);
+				source.limit(limit);
+				missing -= amount;
+			}
+		}
+		return completeDatagram(target, headerSize, messageIdMostSignificantBits, messageIdLeastSignificantBits, msgType, totalPackets, sequence);
+	}
+	
+	/**
+	 * encode a parity datagram in the target buffer, see {@link MessageType#MESSAGE_TYPE_DATA_PARITY}
+	 * 
+	 * @param target buffer where the datagram is encoded, it is cleared and at the end it is ready to be sent
+	 * @param messageIdMostSignificantBits of the message protected
+	 * @param messageIdLeastSignificantBits of the message protected
+	 * @param totalPackets of the message protected
+	 * @param group index of the group
+	 * @param groupSize amount of datagrams in every group
+	 * @param lengthsXor XOR of the lengths of the datagrams of the group
+	 * @param parity XOR of the data of the datagrams of the group
+	 * @param length of the parity, the length of the longest datagram of the group
+	 */
+	public static void encodeParity(ByteBuffer target, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int totalPackets, int group, int groupSize, int lengthsXor, byte[] parity, int length) {
+		encodeParity(target, VERSION_1, messageIdMostSignificantBits, messageIdLeastSignificantBits, totalPackets, group, groupSize, lengthsXor, parity, length);
+	}
+	
+	/**
+	 * encode a parity datagram with the header of the version requested, 
+	 * see {@link DatagramPacketDataProtocol#encodeParity(ByteBuffer, long, long, int, int, int, int, byte[], int)}
+	 * 
+	 * @param target buffer where the datagram is encoded, it is cleared and at the end it is ready to be sent
+	 * @param version of the header
+	 * @param messageIdMostSignificantBits of the message protected
+	 * @param messageIdLeastSignificantBits of the message protected
+	 * @param totalPackets of the message protected
+	 * @param group index of the group
+	 * @param groupSize amount of datagrams in every group
+	 * @param lengthsXor XOR of the lengths of the datagrams of the group
+	 * @param parity XOR of the data of the datagrams of the group
+	 * @param length of the parity, the length of the longest datagram of the group
+	 */
+	public static void encodeParity(ByteBuffer target, int version, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int totalPackets, int group, int groupSize, int lengthsXor, byte[] parity, int length) {
+		int headerSize = encodeHeader(target, version, messageIdMostSignificantBits, messageIdLeastSignificantBits, MessageType.MESSAGE_TYPE_DATA_PARITY, totalPackets, group, FEC_HEADER_SIZE + length);
+		target.putInt(groupSize).putInt(lengthsXor);
+		target.put(parity, 0, length);
+		completeDatagram(target, headerSize, messageIdMostSignificantBits, messageIdLeastSignificantBits, MessageType.MESSAGE_TYPE_DATA_PARITY, totalPackets, group);
+	}
+	
+	/**
+	 * XOR length bytes of the source on the target, 8 bytes at time
+	 * 
+	 * @param source
+	 * @param sourceOffset absolute position of the first byte in the source
+	 * @param target
+	 * @param targetOffset absolute position of the first byte in the target
+	 * @param length
+	 */
+	public static void xor(ByteBuffer source, int sourceOffset, ByteBuffer target, int targetOffset, int length) {
+		int i = 0;
+		for (; i + 8 <= length; i += 8) {
+			target.putLong(targetOffset + i, target.getLong(targetOffset + i) ^ source.getLong(sourceOffset + i));
+		}
+		for (; i < length; i++) {
+			target.put(targetOffset + i, (byte) (target.get(targetOffset + i) ^ source.get(sourceOffset + i)));
+		}
+	}
+	
+	/**
+	 * clear the buffer and write the header, in version 1 if the version 2 is not requested or the messageID is not compact
+	 * 
+	 * @return the size of the header written
+	 */
+	private static int encodeHeader(ByteBuffer target, int version, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int msgType, int totalPackets, int sequence, int length) {
+		target.clear();
+		if(version != VERSION_2 || msgType < 0 || msgType > 0xFF || !isCompact(messageIdMostSignificantBits, messageIdLeastSignificantBits)) {
+			target.putLong(messageIdMostSignificantBits)
+				.putLong(messageIdLeastSignificantBits)
+				.putInt(msgType)
+				.putInt(totalPackets)
+				.putInt(sequence)
+				.putInt(length);
+			return HEADER_SIZE;
+		}
+		
+		boolean single = totalPackets == 1 && sequence == 0;
+		boolean sequenced = messageIdMostSignificantBits != 0;
+		target.put((byte) VERSION_2)
+			.put((byte) ((single ? FLAG_SINGLE_PACKET : 0) | (sequenced ? FLAG_SEQUENCED : 0)))
+			.put((byte) msgType);
+		if(sequenced) {
+			target.putInt((int) (messageIdMostSignificantBits >>> 32));
+			putVarLong(target, findSequence(messageIdLeastSignificantBits));
+		}else {
+			target.putLong(messageIdLeastSignificantBits);
+		}
+		if(!single) {
+			putVarLong(target, totalPackets & 0xFFFFFFFFL);
+			putVarLong(target, sequence & 0xFFFFFFFFL);
+		}
+		return target.position();
+	}
+	
+	private static void putVarLong(ByteBuffer target, long value) {
+		while ((value & ~0x7FL) != 0) {
+			target.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		target.put((byte) value);
+	}
+	
+	/**
+	 * flip the buffer with the datagram written. a datagram of the version 2 that would be read as version 1 is written again in version 1, 
+	 * the data is moved after the header of 32 bytes
+	 * 
+	 * @return the position of the data in the datagram
+	 */
+	private static int completeDatagram(ByteBuffer target, int headerSize, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int msgType, int totalPackets, int sequence) {
+		int end = target.position();
+		if(headerSize != HEADER_SIZE && end >= HEADER_SIZE && target.getInt(28) == end - HEADER_SIZE) {
+			int length = end - headerSize;
+			for (int i = length - 1; i >= 0; i--) {
+				target.put(HEADER_SIZE + i, target.get(headerSize + i));
+			}
+			target.putLong(0, messageIdMostSignificantBits)
+				.putLong(8, messageIdLeastSignificantBits)
+				.putInt(16, msgType)
+				.putInt(20, totalPackets)
+				.putInt(24, sequence)
+				.putInt(28, length);
+			target.position(HEADER_SIZE + length);
+			headerSize = HEADER_SIZE;
+		}
+		target.flip();
+		return headerSize;
+	}
+
 	/**
 	 * create the array of DatagramPacket[] to be send to the networks to contains all the data of an array of byte[]
-	 * the DatagramPackets created respect the Data Protocol
+	 * the DatagramPackets created respect the Data Protocol.
+	 * to send a message without allocating memory use {@link DatagramPacketDataProtocol#encodeDatagram(ByteBuffer, long, long, int, int, int, byte[], int, int)}
 	 * 
 	 * @param address
 	 * @param port
@@ -141,36 +692,20 @@ public class DatagramPacketDataProtocol {
 		int dataLength = dataByte.length;
 		
 		//calculate the total amount of datagram needed to send this message
-		int packetDataSize = datagramPacketBufferSize - 32;
-		int totalPackets = (int) Math.ceil((double) dataLength / packetDataSize);
+		int packetDataSize = datagramPacketBufferSize - HEADER_SIZE;
+		int totalPackets = findTotalPackets(dataLength, datagramPacketBufferSize);
 
 		// prepare all the datagram
-		UUID uuid = UUID.randomUUID();
+		long messageIdMostSignificantBits = randomMessageIdMostSignificantBits();
+		long messageIdLeastSignificantBits = randomMessageIdLeastSignificantBits();
 		DatagramPacket[] packets = new DatagramPacket[totalPackets];
-		byte[] data;
-		byte[] partialData;		
 		for (int i = 0; i < totalPackets; i++) {
 			
 		    int offset = i * packetDataSize;
 		    int length = Math.min(packetDataSize, dataLength - offset);
 		    
-		    data = new byte[length + 32];
-		    
-		    System.arraycopy(serializeUUID(uuid), 0, data, 0, 16);	//fill messageID
-		    
-		    partialData = ByteBuffer.allocate(4).putInt(msgType).array(); //fill message type
-		    System.arraycopy(partialData, 0, data, 16, 4);
-		    
-		    partialData = ByteBuffer.allocate(4).putInt(totalPackets).array(); //fill total packets
-		    System.arraycopy(partialData, 0, data, 20, 4);
-		    
-		    partialData = ByteBuffer.allocate(4).putInt(i).array();	//fill sequence number
-		    System.arraycopy(partialData, 0, data, 24, 4);
-		    
-		    partialData = ByteBuffer.allocate(4).putInt(length).array(); //fill data amount
-		    System.arraycopy(partialData, 0, data, 28, 4);
-		    
-		    System.arraycopy(dataByte, offset, data, 32, length); //fill data	    
+		    byte[] data = new byte[length + HEADER_SIZE];
+		    encodeDatagram(ByteBuffer.wrap(data), messageIdMostSignificantBits, messageIdLeastSignificantBits, msgType, totalPackets, i, dataByte, offset, length);
 		    
 		    packets[i] = new DatagramPacket(data, data.length, address, port);
 		}
@@ -192,30 +727,10 @@ public class DatagramPacketDataProtocol {
 	 */
 	public static DatagramPacket buildCommandDatagramPacket(InetAddress address, int port, int datagramPacketBufferSize, int msgType) {
 				
-		// prepare the datagram
-		int totalPackets = 1;		
-		UUID uuid = UUID.randomUUID();
-		
-		byte[] data = new byte[32];
-		byte[] partialData;		
-	    
-	    System.arraycopy(serializeUUID(uuid), 0, data, 0, 16);	//fill messageID
-	    
-	    partialData = ByteBuffer.allocate(4).putInt(msgType).array(); //fill message type
-	    System.arraycopy(partialData, 0, data, 16, 4);
-	    
-	    partialData = ByteBuffer.allocate(4).putInt(totalPackets).array(); //fill total packets
-	    System.arraycopy(partialData, 0, data, 20, 4);
-	    
-	    partialData = ByteBuffer.allocate(4).putInt(0).array();	//fill sequence number
-	    System.arraycopy(partialData, 0, data, 24, 4);
-	    
-	    partialData = ByteBuffer.allocate(4).putInt(0).array(); //fill data amount
-	    System.arraycopy(partialData, 0, data, 28, 4);
-	       
-	    DatagramPacket packet = new DatagramPacket(data, data.length, address, port);
+		byte[] data = new byte[HEADER_SIZE];
+		encodeDatagram(ByteBuffer.wrap(data), randomMessageIdMostSignificantBits(), randomMessageIdLeastSignificantBits(), msgType, 1, 0, null, 0, 0);
 		
-		return packet;
+		return new DatagramPacket(data, data.length, address, port);
 	}	
 	
 	public static String deserializeUUID(byte[] uuidBytes) {
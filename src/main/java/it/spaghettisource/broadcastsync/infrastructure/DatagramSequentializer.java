@@ -3,9 +3,13 @@ package it.spaghettisource.broadcastsync.infrastructure;
 import java.io.Serializable;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,9 +20,12 @@ import it.spaghettisource.broadcastsync.exception.BroadCastSyncExceptionDeserial
 import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
 import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
 import it.spaghettisource.broadcastsync.handler.MessageHandler;
+import it.spaghettisource.broadcastsync.handler.StreamingMessageHandler;
 import it.spaghettisource.broadcastsync.message.HeartBeat;
 import it.spaghettisource.broadcastsync.message.HeartBeatFactory;
+import it.spaghettisource.broadcastsync.message.HeartBeatString;
 import it.spaghettisource.broadcastsync.message.MessageByteArray;
+import it.spaghettisource.broadcastsync.message.MessageChunk;
 import it.spaghettisource.broadcastsync.message.MessageObject;
 import it.spaghettisource.broadcastsync.message.MessageString;
 import it.spaghettisource.broadcastsync.message.MessageType;
@@ -30,6 +37,24 @@ import it.spaghettisource.broadcastsync.serializer.StringSeralizer;
  * 
  * BroadCastSyn is able to subdivide a message sent in several chunk then this class has the responsibility to re sequentialize the data and compose the original message before to give them to the {@link}  
  * 
+ * several DatagramSequentializer can work in parallel, each one with its own queue and its own payloads, 
+ * the {@link InboundQueue} ensures that all the chunks of a message are sent to the same DatagramSequentializer.
+ * 
+ * the memory held by the payloads is limited by the {@link ReassemblyBudget}, when it is exceeded the oldest payloads are discarded. 
+ * the payloads not completed in time are discarded by a {@link PayloadExpirationWheel}, 
+ * the wheel advances also when no datagrams are received because the thread waits the queue at most one tick.
+ * 
+ * when a {@link StreamingMessageHandler} is set the byte array messages are not rebuilt but delivered to it chunk by chunk.
+ * the bundles built by the {@link MessageBundler} are unpacked and every message in the bundle is given to the MessageHandler.
+ * 
+ * when the retransmission is enabled the payloads that don't receive chunks for the NACK delay request the chunks missing to their sender, 
+ * the NACKs received from the other nodes are passed to the {@link UdpClient} that sends again the chunks.
+ * the parity datagrams are given to the payload of their message that rebuilds a chunk lost in the group, 
+ * a parity received when the payload is already completed, or not yet started, is ignored.
+ * 
+ * the messages that are part of a sequence of their sender, see {@link MessageSequence}, are passed to the {@link SenderSequenceTracker} 
+ * that counts the messages lost or reordered and in ordered mode retains the messages till the messages that precede them are delivered.
+ * 
  * @author Alessandro D'Ottavio
  * @version 1.0
  *
@@ -37,17 +62,43 @@ import it.spaghettisource.broadcastsync.serializer.StringSeralizer;
 public class DatagramSequentializer implements Runnable{
 
 	private static Logger  log = LoggerFactory.getLogger(DatagramSequentializer.class);
+	
+	/**
+	 * max amount of datagram taken from the queue in one shot
+	 */
+	public static final int BATCH_SIZE = 64;
+	
+	/**
+	 * amount of slots of the {@link PayloadExpirationWheel}
+	 */
+	public static final int EXPIRATION_WHEEL_SLOTS = 512;
 
 	private boolean stopped = true;
 	private Thread thread;
+	private String name;
 	
-	private long lastCleaningLoopTime;
-	private Map<String,Payload> payloads;
+	private PayloadMap payloads;
+	private PayloadExpirationWheel expirationWheel;
+	private Consumer<Payload> expirationHandler;
+	private ReassemblyStatistics statistics;
+	private PeerNameResolver peerNameResolver;
+	private ReassemblyBudget budget;
+	private PayloadAgeList ageList;
 	
 	private BroadCastSyncConfig config;
 	private ExceptionFactory exceptionFactory;
-	private DatagramPacketQueue queue;
+	private RingBuffer<ReceivedDatagram> queue;
+	private List<ReceivedDatagram> batch;
 	private MessageHandler messageHandler;
+	private StreamingMessageHandler streamingHandler;
+	private PeerDirectory peerDirectory;
+	private UdpClient udpClient;
+	private int[] missingChunks;
+	private int maxTotalPackets;
+	private long nextNackCheck;
+	private SenderSequenceTracker sequenceTracker;
+	private FlowController flowController;
+	private Payload.ChunkConsumer chunkConsumer;
 	private DatagramPacketDataProtocol protocol;
 	
 	private HeartBeatFactory heartBeatFactory;
@@ -55,20 +106,40 @@ public class DatagramSequentializer implements Runnable{
 	private StringSeralizer stringDeseralizer;
 	private ObjectSerializer<Serializable> objectDeseralizer;
 	
-	public DatagramSequentializer(BroadCastSyncConfig config,ExceptionFactory exceptionFactory, DatagramPacketQueue queue, HeartBeatFactory heartBeatFactory, MessageHandler messageProcessor){
+	public DatagramSequentializer(BroadCastSyncConfig config,ExceptionFactory exceptionFactory, RingBuffer<ReceivedDatagram> queue, HeartBeatFactory heartBeatFactory, MessageHandler messageProcessor){
+		this("DatagramSequentializer", config, exceptionFactory, queue, heartBeatFactory, messageProcessor, new ReassemblyStatistics(), 
+				new PeerNameResolver(config.isResolvePeerNames(), config.getPeerNameCacheTtlMillis(), config.getPeerNameCacheSize()),
+				new ReassemblyBudget(config.getReassemblyMemoryBudget(), config.getReassemblySenderMemoryBudget()));
+	}
+	
+	public DatagramSequentializer(String name, BroadCastSyncConfig config,ExceptionFactory exceptionFactory, RingBuffer<ReceivedDatagram> queue, HeartBeatFactory heartBeatFactory, MessageHandler messageProcessor, ReassemblyStatistics statistics, PeerNameResolver peerNameResolver, ReassemblyBudget budget){
+		this.name = name;
+		this.statistics = statistics;
+		this.peerNameResolver = peerNameResolver;
+		this.budget = budget;
 		this.config = config;
 		this.exceptionFactory = exceptionFactory;
 		this.queue = queue;
+		this.batch = new ArrayList<>(BATCH_SIZE);
 		this.messageHandler = messageProcessor;
 		this.heartBeatFactory = heartBeatFactory;
 		
 		protocol = new DatagramPacketDataProtocol(exceptionFactory);
-		payloads = new HashMap<String, Payload>();
+		payloads = new PayloadMap();
+		ageList = new PayloadAgeList();
+		expirationWheel = new PayloadExpirationWheel(EXPIRATION_WHEEL_SLOTS, config.getCleaningExpiredMessageIntervalTimeMillis(), System.currentTimeMillis());
+		expirationHandler = this::expirePayload;
+		chunkConsumer = this::deliverChunk;
+		
+		//the smallest chunk is the one of a sender with the forward error correction, a message bigger than the max message size is refused
+		long chunkDataSize = Math.max(1, config.getDatagramPacketBufferSize() - DatagramPacketDataProtocol.HEADER_SIZE - DatagramPacketDataProtocol.FEC_HEADER_SIZE);
+		maxTotalPackets = (int) Math.min(Integer.MAX_VALUE, (config.getMaxMessageSize() + chunkDataSize - 1) / chunkDataSize);
+		
+		//a NACK must fit in one datagram, the biggest is the one of a sender without the forward error correction
+		missingChunks = new int[Math.max(1, (config.getDatagramPacketBufferSize() - DatagramPacketDataProtocol.HEADER_SIZE - UdpClient.NACK_HEADER_SIZE) / 4)];
 		
 		stringDeseralizer = new StringSeralizer(exceptionFactory);
 		objectDeseralizer = new ObjectSerializer<Serializable>(exceptionFactory);
-		
-		lastCleaningLoopTime = System.currentTimeMillis();
 	}
 	
 	
@@ -78,29 +149,55 @@ public class DatagramSequentializer implements Runnable{
 	
 	/**
 	 * The run method represents the core of the DatagramSequentializer thread.
-	 * Within the loop, the thread retrieves the most recent datagram from the queue of objects queue and passes it to the process method for processing. 
-	 * Subsequently, it is checked whether it is time to delete expired messages. 
+	 * Within the loop, the thread retrieves all the datagrams waiting in the queue, up to {@link DatagramSequentializer#BATCH_SIZE}, and passes them one by one to the process method for processing. 
+	 * If the queue is empty the thread waits for the next datagram at most one tick of the {@link PayloadExpirationWheel}, or the NACK delay if it is shorter.
+	 * Subsequently, the wheel advances and the expired messages are deleted, then the chunks missing are requested to the senders. 
 	 * 
 	 * @param datagram
 	 */
 	@Override
 	public void run() {
 
-		log.info("DatagramSequentializer thread started");
+		log.info(name+" thread started");
 		
+		boolean retransmission = config.isEnableRetransmission() && udpClient != null;
+		long pollMillis = expirationWheel.getTickMillis();
+		if(retransmission) {
+			pollMillis = Math.min(pollMillis, config.getNackDelayMillis());
+		}
+		if(sequenceTracker != null && sequenceTracker.isOrdered()) {
+			pollMillis = Math.min(pollMillis, config.getReorderWaitMillis());
+		}
+		pollMillis = Math.max(1, pollMillis);
 		
 		while (!stopped) {
 			try {
 				
-				//get the last datagram from the queue
-				DatagramPacket datagram = queue.pop();
+				//get the datagrams from the queue
+				if(queue.drainTo(batch, BATCH_SIZE)==0) {
+					ReceivedDatagram datagram = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+					if(datagram!=null) {
+						batch.add(datagram);
+					}
+				}
 				
-				process(datagram);
+				for (int i = 0; i < batch.size(); i++) {
+					process(batch.get(i));
+				}
+				batch.clear();
 				
 				performCleaningIfNeeded();
 				
+				if(retransmission) {
+					sendNacksIfNeeded(System.currentTimeMillis());
+				}
+				
+				if(sequenceTracker != null) {
+					sequenceTracker.flush(System.currentTimeMillis());
+				}
+				
 			}catch (InterruptedException e) {
-				log.info("DatagramSequentializer interrupted");
+				log.info(name+" interrupted");
                 break;
                 
             }catch (Exception cause) {
@@ -118,100 +215,341 @@ public class DatagramSequentializer implements Runnable{
 	 * checks whether it's a new message or a fragment of an existing one, and in the latter case, adds the fragment to the correct message.
 	 * 
 	 * Initially, the datagram is analyzed with the data protocol defined in the {@link DatagramPacketDataProtocol} class. 
-	 * Then, the message ID is retrieved from the protocol and searched in the payloads object map. 
+	 * Then, the message ID is retrieved from the protocol as two long and searched in the payloads object map, the string format of the ID is never built on this path. 
 	 * If the message ID doesn't exist in the map, then a new Payload object is created for the new message.
 	 * 
+	 * Before to store the fragment the {@link ReassemblyBudget} is verified, if there is no space the oldest payloads are discarded, 
+	 * if the fragment can't be stored also discarding all the older payloads the message of the fragment is discarded.
 	 * Next, the current message fragment is added to the corresponding Payload object. 
 	 * Finally, it's checked whether the message has been completed, i.e., if all fragments have been correctly received. 
-	 * If affirmative, the message is removed from the payloads object map and the {@link DatagramSequentializer#deserializeDataAndCallMessageHandler(String, Payload)} method is called to process the complete message.
+	 * If affirmative, the message is removed from the payloads object map and the {@link DatagramSequentializer#deserializeDataAndCallMessageHandler(Payload)} method is called to process the complete message.
 	 * 
 	 * If errors occur during the message analysis, the message is discarded. 
 	 * If the message had already been partially processed, it's removed from the payloads object map.
 	 * 
+	 * In any case when the process is completed the datagram is released, if it was borrowed from a {@link ReceiveBufferPool} its buffer is given back to the pool. 
+	 * 
 	 * @param datagram
 	 */
-	protected void process(DatagramPacket datagram) {
+	protected void process(ReceivedDatagram datagram) {
 		
 		log.debug("process message");
 		
-		String messageId = null;
+		Payload payload = null;
 		
 		try {
-			protocol.analyzed(datagram);
+			protocol.analyzed(datagram.getBuffer());
 			
-			messageId = protocol.getMessageId();
-			Payload payload = findPayloadOrBuildNewPayload(datagram, messageId);
+			//a message with more chunks than the ones of the max message size is not acceptable
+			if(protocol.getTotalPackets() <= 0 || protocol.getTotalPackets() > maxTotalPackets) {
+				throw new IllegalArgumentException("message of "+protocol.getTotalPackets()+" packets not acceptable");
+			}
 			
-			//add the chunk
-			PayloadChunk chunk = protocol.buildPayloadChunk();
-			payload.addChunk(chunk);
+			if(protocol.getMessageType() == MessageType.MESSAGE_TYPE_DATA_BUNDLE) {
+				processBundle(datagram);
+				return;
+			}
 			
-			//verify if the payload is completed
-			if(payload.isCompleted()) {
-				payloads.remove(messageId);
-				
-				deserializeDataAndCallMessageHandler(messageId, payload);
+			if(protocol.getMessageType() == MessageType.MESSAGE_TYPE_CMD_NACK) {
+				processNack(datagram);
+				return;
+			}
+			
+			if(protocol.getMessageType() == MessageType.MESSAGE_TYPE_DATA_PARITY) {
+				payload = payloads.get(protocol.getMessageIdMostSignificantBits(), protocol.getMessageIdLeastSignificantBits());
+				if(payload != null) {
+					processParity(payload, datagram);
+				}
+				return;
+			}
+			
+			payload = findPayloadOrBuildNewPayload(datagram.getAddress(), protocol.getMessageIdMostSignificantBits(), protocol.getMessageIdLeastSignificantBits());
+			
+			int dataAmount = protocol.getDataAmount();
+			if(!makeSpace(payload, dataAmount)) {
+				return;
+			}
+			
+			//add the chunk, the data is copied directly from the datagram in the payload, the budget counts the bytes really allocated
+			int allocated = payload.getAllocatedSize();
+			int recovered = payload.getRecoveredChunks();
+			boolean added;
+			if(payload.isStreaming()) {
+				added = payload.addChunk(protocol.getSequence(), datagram.getBuffer(), protocol.getDataOffset(), dataAmount, chunkConsumer);
+			}else {
+				added = payload.addChunk(protocol.getSequence(), datagram.getBuffer(), protocol.getDataOffset(), dataAmount);
+			}
+			
+			if(added) {
+				updateBudget(payload, allocated, recovered);
 				
+			}else if(log.isDebugEnabled()) {
+				log.debug("chunk "+protocol.getSequence()+" of the message "+payload.getMessageId()+" already received");
 			}
+			
+			completeIfNeeded(payload);
 
 		}catch (BroadCastSyncExceptionDataProtocolNotRespected cause) {
 			log.error(cause.getLocalizedMessage(),cause);
 			
+		}catch (IllegalArgumentException cause) {
+			//the datagram is valid but the message is not acceptable, like a message too big
+			log.warn("datagram refused from "+datagram.getAddress()+": "+cause.getMessage());
+			statistics.recordRejected();
+			if(payload!=null) {
+				discardPayload(payload);
+			}
+			
 		}catch (Exception e) {
 			//if there is an error processing this message discard the payload, now is impossible rebuild the message
 			log.error("unexpected error processing this datagram, payload discarded",e);
-			if(messageId!=null) {
-				payloads.remove(messageId);
+			if(payload!=null) {
+				discardPayload(payload);
 			}
 			
+		}finally {
+			datagram.release();
 		}
 
 	}
+	
+	/**
+	 * give the parity of a group of chunks to the payload of its message, the parity is stored in the payload till the group is complete
+	 * 
+	 * @param payload of the message protected by the parity
+	 * @param datagram that contains the parity
+	 */
+	private void processParity(Payload payload, ReceivedDatagram datagram) {
+		
+		if(protocol.getTotalPackets() != payload.getTotalPackets() || protocol.getDataAmount() < DatagramPacketDataProtocol.FEC_HEADER_SIZE) {
+			throw new IllegalArgumentException("parity not compatible with the message "+payload.getMessageId());
+		}
+		
+		ByteBuffer buffer = datagram.getBuffer();
+		int position = protocol.getDataOffset();
+		int length = protocol.getDataAmount() - DatagramPacketDataProtocol.FEC_HEADER_SIZE;
+		if(!makeSpace(payload, length)) {
+			return;
+		}
+		
+		int allocated = payload.getAllocatedSize();
+		int recovered = payload.getRecoveredChunks();
+		if(payload.addParity(protocol.getSequence(), buffer.getInt(position), buffer.getInt(position + 4), buffer, position + DatagramPacketDataProtocol.FEC_HEADER_SIZE, length)) {
+			updateBudget(payload, allocated, recovered);
+		}
+		
+		completeIfNeeded(payload);
+	}
+	
+	/**
+	 * update the budget with the bytes allocated or released by the payload and the statistics with the chunks rebuilt from the parity
+	 * 
+	 * @param payload
+	 * @param allocated bytes allocated by the payload before the change
+	 * @param recovered chunks rebuilt by the payload before the change
+	 */
+	private void updateBudget(Payload payload, int allocated, int recovered) {
+		//in streaming mode the chunks retained can be released, the parity is released when its group is complete
+		int delta = payload.getAllocatedSize() - allocated;
+		if(delta >= 0) {
+			budget.acquire(payload.getClientAddress(), delta);
+		}else {
+			budget.release(payload.getClientAddress(), -delta);
+		}
+		if(payload.getRecoveredChunks() > recovered) {
+			statistics.recordRecovered(payload.getRecoveredChunks() - recovered);
+		}
+	}
+	
+	/**
+	 * verify if the payload is completed, in streaming mode all the chunks are already delivered
+	 * 
+	 * @param payload
+	 */
+	private void completeIfNeeded(Payload payload) {
+		if(payload.isCompleted()) {
+			removePayload(payload);
+			statistics.recordCompleted();
+			
+			if(sequenceTracker != null && DatagramPacketDataProtocol.isSequenced(payload.getMessageIdMostSignificantBits())) {
+				Runnable delivery = payload.isStreaming() ? null : () -> deserializeDataAndCallMessageHandler(payload);
+				sequenceTracker.receive(payload.getClientAddress(), payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits(), delivery, System.currentTimeMillis());
+				
+			}else if(!payload.isStreaming()) {
+				deserializeDataAndCallMessageHandler(payload);
+			}
+		}
+	}
+	
+	/**
+	 * process a DatagramPacket received by a DatagramSocket, see {@link DatagramSequentializer#process(ReceivedDatagram)}
+	 * 
+	 * @param datagram
+	 */
+	protected void process(DatagramPacket datagram) {
+		process(ReceivedDatagram.wrap(datagram));
+	}
 
 
 
-	public Payload findPayloadOrBuildNewPayload(DatagramPacket datagram, String messageId) {
-		Payload payload = payloads.get(messageId); 
+	public Payload findPayloadOrBuildNewPayload(InetAddress address, long messageIdMostSignificantBits, long messageIdLeastSignificantBits) {
+		Payload payload = payloads.get(messageIdMostSignificantBits, messageIdLeastSignificantBits); 
 		
 		//this is a new message, add it in the queue
 		if(payload==null) {
-			InetAddress address = datagram.getAddress();
-			payload = new Payload(address.getHostAddress(), address.getCanonicalHostName(),protocol.getMessageType(), protocol.getTotalPackets());
+			payload = new Payload(messageIdMostSignificantBits, messageIdLeastSignificantBits, address.getHostAddress(), peerNameResolver.resolve(address),protocol.getMessageType(), protocol.getTotalPackets(), config.getMaxMessageSize());
 			
-			payloads.put(messageId, payload);
+			if(streamingHandler != null && protocol.getMessageType() == MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY) {
+				payload.enableStreaming();
+			}
+			
+			//the payload allocates the table of the chunks received from the beginning
+			budget.acquire(payload.getClientAddress(), payload.getAllocatedSize());
+			payloads.put(payload);
+			ageList.add(payload);
+			expirationWheel.schedule(payload, System.currentTimeMillis() + config.getPayloadExpirationTime());
 		}
 		return payload;
 	}
 	
+	/**
+	 * remove the payload from all the structures and give back its bytes to the budget
+	 * 
+	 * @param payload
+	 */
+	private void removePayload(Payload payload) {
+		payloads.remove(payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits());
+		expirationWheel.cancel(payload);
+		ageList.remove(payload);
+		budget.release(payload.getClientAddress(), payload.getAllocatedSize());
+	}
+	
+	/**
+	 * remove a payload not completed, if some chunks were already delivered in streaming mode the {@link StreamingMessageHandler} is informed
+	 * 
+	 * @param payload
+	 */
+	private void discardPayload(Payload payload) {
+		removePayload(payload);
+		if(payload.isStreaming() && payload.getDeliveredChunks() > 0) {
+			try {
+				streamingHandler.onMessageStreamAborted(payload.getMessageId(), payload.getClientAddress());
+			}catch (Exception e) {
+				log.error("unexpected error notifying the stream aborted",e);
+			}
+		}
+	}
+	
+	/**
+	 * give a contiguous chunk of a payload in streaming mode to the {@link StreamingMessageHandler}
+	 */
+	private void deliverChunk(Payload payload, int sequence, long position, ByteBuffer chunk) {
+		streamingHandler.onMessageChunkReceived(new MessageChunk(payload.getMessageId(), sequence, payload.getTotalPackets(), position, chunk, payload.getClientAddress(), payload.getClientCanonicalHostName()));
+	}
+	
+	/**
+	 * verify that the budget of the sender and the global budget can hold the bytes of a new chunk, 
+	 * if not discard the oldest payloads of this DatagramSequentializer till there is enough space
+	 * 
+	 * @param payload that will receive the chunk
+	 * @param bytes of the chunk
+	 * @return false if the payload itself is discarded
+	 */
+	private boolean makeSpace(Payload payload, int bytes) {
+		String sender = payload.getClientAddress();
+		while (!budget.hasSpace(sender, bytes)) {
+			if(!evict(ageList.oldest(sender), payload)) {
+				return false;
+			}
+		}
+		while (!budget.hasSpace(bytes)) {
+			if(!evict(ageList.oldest(), payload)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * discard a payload to make space in the budget
+	 * 
+	 * @param victim the payload to discard, if null the current payload is discarded
+	 * @param current the payload that needs space
+	 * @return false if the current payload is discarded
+	 */
+	private boolean evict(Payload victim, Payload current) {
+		if(victim == null) {
+			victim = current;
+		}
+		if(log.isDebugEnabled()) {
+			log.debug("messageID "+victim.getMessageId()+" discarded, reassembly memory budget exceeded");
+		}
+		discardPayload(victim);
+		statistics.recordEvicted();
+		return victim != current;
+	}
+	
 
 	/**
 	 * deserialize the message data based on the message type of the payload
 	 * and build the correct message to call the proper method of the {@link MessageHandler}
 	 * 
-	 * @param messageId
 	 * @param payload
 	 */
-	private void deserializeDataAndCallMessageHandler(String messageId, Payload payload) {
+	private void deserializeDataAndCallMessageHandler(Payload payload) {
 		
-		log.debug("message "+messageId+" complete, total packets:"+payload.getTotalPackets());
+		if(log.isDebugEnabled()) {
+			log.debug("message "+payload.getMessageId()+" complete, total packets:"+payload.getTotalPackets());
+		}
+		
+		callMessageHandler(payload.getMessageType(), payload.getBuffer(), payload.getDataLength(), payload.getClientAddress(), payload.getClientCanonicalHostName());
+	}
+	
+	/**
+	 * deserialize the data of a message and call the proper method of the {@link MessageHandler}
+	 * 
+	 * @param messageType
+	 * @param data of the message from the position 0 to the length
+	 * @param length
+	 * @param clientAddress
+	 * @param clientCanonicalHostName
+	 */
+	private void callMessageHandler(int messageType, byte[] data, int length, String clientAddress, String clientCanonicalHostName) {
+		
+		if(messageType == MessageType.MESSAGE_TYPE_CMD_HEARTBEAT_FLOW_CONTROL) {
+			if(length < FlowController.REPORT_SIZE) {
+				log.error("received a flow control heartbeat of "+length+" bytes");
+				return;
+			}
+			if(flowController != null) {
+				flowController.onReport(clientAddress, data, 0);
+			}
+			//the rest is a normal heartbeat
+			messageType = MessageType.MESSAGE_TYPE_CMD_HEARTBEAT;
+			length = length - FlowController.REPORT_SIZE;
+			data = Arrays.copyOfRange(data, FlowController.REPORT_SIZE, FlowController.REPORT_SIZE + length);
+		}
 		
-		if(payload.getMessageType() == MessageType.MESSAGE_TYPE_CMD_HEARTBEAT) {
-			HeartBeat heartBeat = heartBeatFactory.buildDeseralizeHeartBeat(payload.getClientAddress(), payload.getClientCanonicalHostName(), payload.getData());
+		if(messageType == MessageType.MESSAGE_TYPE_CMD_HEARTBEAT) {
+			HeartBeat heartBeat = heartBeatFactory.buildDeseralizeHeartBeat(clientAddress, clientCanonicalHostName, trim(data, length));
+			if(peerDirectory != null && heartBeat instanceof HeartBeatString) {
+				peerDirectory.update(((HeartBeatString) heartBeat).getData(), clientAddress);
+			}
 			messageHandler.onHeartBeatReceived(heartBeat);
 			
-		}else if(payload.getMessageType() == MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY) {
-			MessageByteArray message = new MessageByteArray(payload.getData(), payload.getClientAddress(), payload.getClientCanonicalHostName());
+		}else if(messageType == MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY) {
+			MessageByteArray message = new MessageByteArray(trim(data, length), clientAddress, clientCanonicalHostName);
 			messageHandler.onMessageReceived(message);
 			
-		}else if(payload.getMessageType() == MessageType.MESSAGE_TYPE_DATA_UTF8_STRING) {
+		}else if(messageType == MessageType.MESSAGE_TYPE_DATA_UTF8_STRING) {
 			
-			MessageString message = new MessageString(stringDeseralizer.deserialize(payload.getData()), payload.getClientAddress(), payload.getClientCanonicalHostName());
+			MessageString message = new MessageString(stringDeseralizer.deserialize(data, 0, length), clientAddress, clientCanonicalHostName);
 			messageHandler.onMessageReceived(message);			
 			
-		}else if(payload.getMessageType() == MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT) {
+		}else if(messageType == MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT) {
 			
 			try {
-				MessageObject message = new MessageObject(objectDeseralizer.deserialize(payload.getData()), payload.getClientAddress(), payload.getClientCanonicalHostName());
+				MessageObject message = new MessageObject(objectDeseralizer.deserialize(data, 0, length), clientAddress, clientCanonicalHostName);
 				messageHandler.onMessageReceived(message);				
 			} catch (BroadCastSyncExceptionDeserializeData e) {
 				
@@ -224,52 +562,238 @@ public class DatagramSequentializer implements Runnable{
 		
 	}
 	
+	private static byte[] trim(byte[] data, int length) {
+		return data.length == length ? data : Arrays.copyOf(data, length);
+	}
 	
 	/**
-	 * in case the last cleaning execution is happened after the defined interval activate it
+	 * unpack a bundle, if the bundle is part of a sequence its messages are delivered by the {@link SenderSequenceTracker}.
+	 * in ordered mode the data of the bundle are copied because the datagram is released before the bundle is delivered
+	 * 
+	 * @param datagram that contains the bundle
 	 */
-	protected void performCleaningIfNeeded() {
-		//clean if is the correct moment
-		long timePass = (System.currentTimeMillis()-lastCleaningLoopTime); 
+	private void processBundle(ReceivedDatagram datagram) {
 		
-		if(timePass > config.getCleaningExpiredMessageIntervalTimeMillis()) {
-			cleanExpiredMessage();
-			lastCleaningLoopTime = System.currentTimeMillis();
+		if(protocol.getTotalPackets() != 1) {
+			throw new IllegalArgumentException("bundle of "+protocol.getTotalPackets()+" packets not acceptable");
 		}
-	}	
+		
+		long messageIdMostSignificantBits = protocol.getMessageIdMostSignificantBits();
+		long messageIdLeastSignificantBits = protocol.getMessageIdLeastSignificantBits();
+		InetAddress address = datagram.getAddress();
+		if(sequenceTracker == null || !DatagramPacketDataProtocol.isSequenced(messageIdMostSignificantBits)) {
+			unbundle(datagram.getBuffer(), protocol.getDataOffset(), protocol.getDataAmount(), messageIdMostSignificantBits, messageIdLeastSignificantBits, address);
+			return;
+		}
+		
+		ByteBuffer buffer = datagram.getBuffer();
+		int offset = protocol.getDataOffset();
+		int length = protocol.getDataAmount();
+		if(sequenceTracker.isOrdered()) {
+			byte[] copy = new byte[length];
+			buffer.position(offset);
+			buffer.get(copy);
+			buffer.position(0);
+			buffer = ByteBuffer.wrap(copy);
+			offset = 0;
+		}
+		ByteBuffer bundle = buffer;
+		int bundleOffset = offset;
+		sequenceTracker.receive(address.getHostAddress(), messageIdMostSignificantBits, messageIdLeastSignificantBits, 
+				() -> unbundle(bundle, bundleOffset, length, messageIdMostSignificantBits, messageIdLeastSignificantBits, address), System.currentTimeMillis());
+	}
 	
 	/**
-	 * clean the expired payload
+	 * unpack the messages of a bundle, every message is stored as message type (int), length (int) and data, 
+	 * see {@link MessageBundler}
 	 * 
+	 * @param buffer that contains the bundle
+	 * @param offset of the bundle in the buffer
+	 * @param amount of bytes of the bundle
+	 * @param messageIdMostSignificantBits of the bundle
+	 * @param messageIdLeastSignificantBits of the bundle
+	 * @param address of the sender
 	 */
-	private void cleanExpiredMessage() {
+	private void unbundle(ByteBuffer buffer, int offset, int amount, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, InetAddress address) {
 		
-		log.debug("cleanExpiredMessage process activated");
+		String clientAddress = address.getHostAddress();
+		String clientCanonicalHostName = peerNameResolver.resolve(address);
 		
-		ArrayList<String> expireds = new ArrayList<>();
-		
-		for (String messageID : payloads.keySet()) {
-			Payload payload = payloads.get(messageID);
+		int position = offset;
+		int end = position + amount;
+		int index = 0;
+		while (position < end) {
+			if(end - position < MessageBundler.ENTRY_HEADER_SIZE) {
+				throw new IllegalArgumentException("bundle truncated");
+			}
+			int messageType = buffer.getInt(position);
+			int length = buffer.getInt(position + 4);
+			position += MessageBundler.ENTRY_HEADER_SIZE;
+			if(length < 0 || length > end - position || MessageType.isCommand(messageType) || messageType == MessageType.MESSAGE_TYPE_DATA_BUNDLE) {
+				throw new IllegalArgumentException("bundle malformed");
+			}
 			
-			//verify if the payload is expired then discard it
-			if(payload.isExpired(config.getPayloadExpirationTime())) {
-				expireds.add(messageID);
+			byte[] data = new byte[length];
+			buffer.position(position);
+			buffer.get(data);
+			buffer.position(0);
+			position += length;
+			
+			statistics.recordCompleted();
+			if(streamingHandler != null && messageType == MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY) {
+				//every message of the bundle is a stream of one chunk, its ID is derived from the ID of the bundle
+				String messageId = new UUID(messageIdMostSignificantBits, messageIdLeastSignificantBits + index).toString();
+				streamingHandler.onMessageChunkReceived(new MessageChunk(messageId, 0, 1, 0, ByteBuffer.wrap(data).asReadOnlyBuffer(), clientAddress, clientCanonicalHostName));
+			}else {
+				callMessageHandler(messageType, data, length, clientAddress, clientCanonicalHostName);
 			}
+			index++;
+		}
+	}
+	
+	/**
+	 * pass the request of the chunks missing to the {@link UdpClient}, the NACK contains the message ID (2 long), 
+	 * the amount of sequences (int) and the sequences (int), see {@link UdpClient#sendNack(String, long, long, int[], int)}
+	 * 
+	 * @param datagram that contains the NACK
+	 */
+	private void processNack(ReceivedDatagram datagram) {
+		
+		if(udpClient == null || !config.isEnableRetransmission()) {
+			return;
+		}
+		
+		ByteBuffer buffer = datagram.getBuffer();
+		int position = protocol.getDataOffset();
+		int amount = protocol.getDataAmount();
+		if(amount < UdpClient.NACK_HEADER_SIZE) {
+			throw new IllegalArgumentException("NACK truncated");
+		}
+		
+		long messageIdMostSignificantBits = buffer.getLong(position);
+		long messageIdLeastSignificantBits = buffer.getLong(position + 8);
+		int count = buffer.getInt(position + 16);
+		if(count < 0 || count > missingChunks.length || count * 4 > amount - UdpClient.NACK_HEADER_SIZE) {
+			throw new IllegalArgumentException("NACK malformed");
 		}
 		
-		for (String expired : expireds) {
-			log.debug("messageID "+expired+" discarded");			
-			payloads.remove(expired);
+		position += UdpClient.NACK_HEADER_SIZE;
+		for (int i = 0; i < count; i++) {
+			missingChunks[i] = buffer.getInt(position + i * 4);
 		}
 		
+		udpClient.retransmit(datagram.getAddress(), messageIdMostSignificantBits, messageIdLeastSignificantBits, missingChunks, count);
+	}
+	
+	/**
+	 * request the chunks missing of the payloads that don't receive chunks for the NACK delay, 
+	 * the payloads are checked at most once every NACK delay and every payload is requested at most {@link BroadCastSyncConfig#getNackMaxRetries()} times
+	 * 
+	 * @param now
+	 */
+	private void sendNacksIfNeeded(long now) {
+		if(now < nextNackCheck) {
+			return;
+		}
+		long nackDelay = config.getNackDelayMillis();
+		nextNackCheck = now + nackDelay;
+		
+		for (Payload payload = ageList.oldest(); payload != null; payload = payload.ageNext) {
+			if(payload.getTotalPackets() > 1 && !payload.isCompleted() && payload.getNacksSent() < config.getNackMaxRetries() && now - payload.getLastChunkTime() >= nackDelay) {
+				int count = payload.findMissingChunks(missingChunks);
+				if(count == 0) {
+					continue;
+				}
+				try {
+					udpClient.sendNack(payload.getClientAddress(), payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits(), missingChunks, count);
+				}catch (BroadCastSyncRuntimeException e) {
+					//already logged by the client, the request is retried after the delay
+				}
+				payload.recordNack(now);
+				statistics.recordNackSent();
+			}
+		}
+	}
+	
+	/**
+	 * advance the {@link PayloadExpirationWheel} and discard the expired payloads
+	 */
+	protected void performCleaningIfNeeded() {
+		expirationWheel.advance(System.currentTimeMillis(), expirationHandler);
+	}	
+	
+	/**
+	 * discard a payload expired, it is already removed from the wheel
+	 * 
+	 * @param payload
+	 */
+	private void expirePayload(Payload payload) {
+		if(log.isDebugEnabled()) {
+			log.debug("messageID "+payload.getMessageId()+" discarded");
+		}
+		discardPayload(payload);
+		statistics.recordExpired();
 	}
 
+	public ReassemblyStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public ReassemblyBudget getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * set the handler that receives the byte array messages in streaming mode, null to rebuild the messages
+	 * 
+	 * @param streamingHandler
+	 */
+	public void setStreamingMessageHandler(StreamingMessageHandler streamingHandler) {
+		this.streamingHandler = streamingHandler;
+	}
+	
+	/**
+	 * set the directory updated with the instance ID of the heartbeats received, null to not track the peers
+	 * 
+	 * @param peerDirectory
+	 */
+	public void setPeerDirectory(PeerDirectory peerDirectory) {
+		this.peerDirectory = peerDirectory;
+	}
+	
+	/**
+	 * set the client used to request the chunks missing and to send again the chunks requested by the other nodes, 
+	 * used only if {@link BroadCastSyncConfig#isEnableRetransmission()} is true
+	 * 
+	 * @param udpClient
+	 */
+	public void setUdpClient(UdpClient udpClient) {
+		this.udpClient = udpClient;
+	}
+	
+	/**
+	 * set the tracker of the sequences of the senders, null to deliver the messages as they are completed without tracking them
+	 * 
+	 * @param sequenceTracker
+	 */
+	public void setSenderSequenceTracker(SenderSequenceTracker sequenceTracker) {
+		this.sequenceTracker = sequenceTracker;
+	}
+	
+	/**
+	 * set the flow controller updated with the state of the other nodes received in the heartbeats, null to ignore it
+	 * 
+	 * @param flowController
+	 */
+	public void setFlowController(FlowController flowController) {
+		this.flowController = flowController;
+	}
 	
 	public void startDatagramSequentializer() throws BroadCastSyncRuntimeException{
 		stopped = false;		
 		thread = new Thread(this);
 		thread.setDaemon(true);		
-		thread.setName("DatagramSequentializer");
+		thread.setName(name);
 		thread.start();
 	}
 	
@@ -0,0 +1,19 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+/**
+ * the reasons why a datagram received is discarded before to be processed, see {@link OverloadPolicy}
+ * 
+ *  - NEWEST_DROPPED: the queue was full and the datagram received has been discarded
+ *  - OLDEST_EVICTED: the queue was full and the oldest datagram in the queue has been discarded
+ *  - DATA_SHED: the queue was full and the data datagram received has been discarded to keep space for the command datagrams 
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public enum DropReason {
+
+	NEWEST_DROPPED,
+	OLDEST_EVICTED,
+	DATA_SHED;
+	
+}
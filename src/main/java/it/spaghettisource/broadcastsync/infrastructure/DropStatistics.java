@@ -0,0 +1,119 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count the datagrams discarded by the node when it is overloaded, by {@link DropReason} and by sender
+ * 
+ * the counters are updated by the receiver threads and can be read at any time by the application
+ * 
+ * the senders are received from the network and can be spoofed, then only the first senders are counted one by one, 
+ * the drops of the senders beyond the limit are counted together in the other senders.
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class DropStatistics {
+
+	private static final int REASONS = DropReason.values().length;
+	
+	/**
+	 * default max amount of senders counted one by one
+	 */
+	public static final int DEFAULT_MAX_SENDERS = 256;
+	
+	private final AtomicLongArray drops = new AtomicLongArray(REASONS);
+	private final AtomicLongArray lastDropTimes = new AtomicLongArray(REASONS);
+	private final ConcurrentHashMap<InetAddress, AtomicLongArray> dropsBySender = new ConcurrentHashMap<>();
+	private final AtomicLongArray otherSendersDrops = new AtomicLongArray(REASONS);
+	private final int maxSenders;
+	
+	public DropStatistics() {
+		this(DEFAULT_MAX_SENDERS);
+	}
+	
+	/**
+	 * @param maxSenders max amount of senders counted one by one
+	 */
+	public DropStatistics(int maxSenders) {
+		super();
+		this.maxSenders = maxSenders;
+	}
+	
+	/**
+	 * count a datagram discarded
+	 * 
+	 * @param reason
+	 * @param sender address of the node that sent the datagram
+	 */
+	public void recordDrop(DropReason reason, InetAddress sender) {
+		drops.incrementAndGet(reason.ordinal());
+		lastDropTimes.set(reason.ordinal(), System.currentTimeMillis());
+		
+		if(sender!=null) {
+			AtomicLongArray senderDrops = dropsBySender.get(sender);
+			if(senderDrops == null) {
+				//the limit can be exceeded at most by the receivers that add a sender in the same moment
+				senderDrops = dropsBySender.size() < maxSenders ? dropsBySender.computeIfAbsent(sender, address -> new AtomicLongArray(REASONS)) : otherSendersDrops;
+			}
+			senderDrops.incrementAndGet(reason.ordinal());
+		}
+	}
+	
+	/**
+	 * @return the amount of datagrams discarded for all the reasons
+	 */
+	public long getTotalDrops() {
+		long total = 0;
+		for (int i = 0; i < REASONS; i++) {
+			total += drops.get(i);
+		}
+		return total;
+	}
+	
+	/**
+	 * @param reason
+	 * @return the amount of datagrams discarded for the reason
+	 */
+	public long getDrops(DropReason reason) {
+		return drops.get(reason.ordinal());
+	}
+	
+	/**
+	 * @param sender
+	 * @param reason
+	 * @return the amount of datagrams of the sender discarded for the reason
+	 */
+	public long getDrops(InetAddress sender, DropReason reason) {
+		AtomicLongArray senderDrops = dropsBySender.get(sender);
+		return senderDrops == null ? 0 : senderDrops.get(reason.ordinal());
+	}
+	
+	/**
+	 * @param reason
+	 * @return the amount of datagrams discarded for the reason of the senders not counted one by one
+	 */
+	public long getOtherSendersDrops(DropReason reason) {
+		return otherSendersDrops.get(reason.ordinal());
+	}
+	
+	/**
+	 * @param reason
+	 * @return the time in millis of the last datagram discarded for the reason, 0 if never happened
+	 */
+	public long getLastDropTime(DropReason reason) {
+		return lastDropTimes.get(reason.ordinal());
+	}
+	
+	/**
+	 * @return the senders counted one by one that had at least one datagram discarded
+	 */
+	public Set<InetAddress> getSenders() {
+		return Collections.unmodifiableSet(dropsBySender.keySet());
+	}
+	
+}
@@ -0,0 +1,190 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+/**
+ * The FlowController lets the receivers tell the senders if they are keeping up.
+ *
+ * at every heartbeat the node reports the fill level of its {@link InboundQueue} and the rate of the datagrams dropped since the previous heartbeat, 
+ * see {@link MessageType#MESSAGE_TYPE_CMD_HEARTBEAT_FLOW_CONTROL}. the reports of the other nodes are kept by address, 
+ * a node is congested if it drops datagrams or if its queue is filled over {@link BroadCastSyncConfig#getFlowControlQueueFillPercent()}.
+ *
+ * at every heartbeat the sender looks at the receivers at the configured percentile, ordered from the least to the most loaded, 
+ * and reports to the adaptive {@link SendPacer} a loss if that receiver is congested, then the rate is halved or recovered slowly.
+ * the receivers not heard for the peer expiration time are ignored.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class FlowController {
+
+	/**
+	 * size of the report at the beginning of the data of the heartbeat
+	 */
+	public static final int REPORT_SIZE = 8;
+
+	private final int percentile;
+	private final int queueFillThreshold;
+	private final long expirationMillis;
+	private final InboundQueue inboundQueue;
+	private final DropStatistics dropStatistics;
+
+	private final Map<String, PeerState> peers = new ConcurrentHashMap<>();
+
+	//state of this node at the last report
+	private long lastOffered;
+	private long lastDrops;
+	private volatile int queueFill;
+	private volatile int dropRate;
+
+	/**
+	 * @param config
+	 * @param inboundQueue of this node
+	 * @param dropStatistics of this node
+	 */
+	public FlowController(BroadCastSyncConfig config, InboundQueue inboundQueue, DropStatistics dropStatistics) {
+		super();
+		this.percentile = Math.max(1, Math.min(100, config.getFlowControlPercentile()));
+		this.queueFillThreshold = config.getFlowControlQueueFillPercent() * 10;
+		this.expirationMillis = config.getPeerExpirationMillis();
+		this.inboundQueue = inboundQueue;
+		this.dropStatistics = dropStatistics;
+	}
+
+	/**
+	 * build the report of this node, called by the HeartbeatEmitter at every heartbeat
+	 *
+	 * @return the fill level of the queue (int permille) and the drop rate since the previous report (int permille)
+	 */
+	public synchronized byte[] buildReport() {
+		long offered = inboundQueue.getOfferedDatagrams();
+		long drops = dropStatistics.getTotalDrops();
+		long received = offered - lastOffered;
+		queueFill = inboundQueue.findFillLevel();
+		dropRate = received > 0 ? (int) Math.min(1000, (drops - lastDrops) * 1000 / received) : 0;
+		lastOffered = offered;
+		lastDrops = drops;
+
+		return ByteBuffer.allocate(REPORT_SIZE).putInt(queueFill).putInt(dropRate).array();
+	}
+
+	/**
+	 * register the report of another node
+	 *
+	 * @param clientAddress of the node
+	 * @param report received in the heartbeat
+	 * @param offset of the report
+	 */
+	public void onReport(String clientAddress, byte[] report, int offset) {
+		ByteBuffer buffer = ByteBuffer.wrap(report, offset, REPORT_SIZE);
+		int fill = buffer.getInt();
+		int rate = buffer.getInt();
+		PeerState peer = peers.get(clientAddress);
+		if(peer == null) {
+			peer = new PeerState();
+			peers.put(clientAddress, peer);
+		}
+		peer.update(fill, rate, System.currentTimeMillis());
+	}
+
+	/**
+	 * adapt the rate of the pacer to the receivers at the configured percentile, called by the HeartbeatEmitter at every heartbeat
+	 *
+	 * @param pacer of the sender
+	 */
+	public void adapt(SendPacer pacer) {
+		if(pacer != null) {
+			pacer.onLossFeedback(isCongested(System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * @param now
+	 * @return true if the receiver at the configured percentile is congested, false if no receiver is known
+	 */
+	public boolean isCongested(long now) {
+		int[] loads = new int[peers.size()];
+		int count = 0;
+		for (Map.Entry<String, PeerState> entry : peers.entrySet()) {
+			PeerState peer = entry.getValue();
+			if(now - peer.lastReportTime > expirationMillis) {
+				peers.remove(entry.getKey(), peer);
+			}else if(count < loads.length) {
+				loads[count++] = peer.isCongested(queueFillThreshold) ? 1 : 0;
+			}
+		}
+		if(count == 0) {
+			return false;
+		}
+		Arrays.sort(loads, 0, count);
+		int index = (int) Math.ceil(count * percentile / 100.0) - 1;
+		return loads[Math.max(0, index)] == 1;
+	}
+
+	/**
+	 * @return the state reported by every node by its address
+	 */
+	public Map<String, PeerState> getPeers() {
+		return Collections.unmodifiableMap(peers);
+	}
+
+	/**
+	 * @return the fill level of the queue of this node in permille at the last report
+	 */
+	public int getQueueFill() {
+		return queueFill;
+	}
+
+	/**
+	 * @return the drop rate of this node in permille at the last report
+	 */
+	public int getDropRate() {
+		return dropRate;
+	}
+
+	/**
+	 * the flow control state reported by a node
+	 */
+	public static class PeerState {
+
+		private volatile int queueFill;
+		private volatile int dropRate;
+		private volatile long lastReportTime;
+
+		private void update(int queueFill, int dropRate, long now) {
+			this.queueFill = queueFill;
+			this.dropRate = dropRate;
+			this.lastReportTime = now;
+		}
+
+		private boolean isCongested(int queueFillThreshold) {
+			return dropRate > 0 || queueFill >= queueFillThreshold;
+		}
+
+		/**
+		 * @return the fill level of the queue of the node in permille
+		 */
+		public int getQueueFill() {
+			return queueFill;
+		}
+
+		/**
+		 * @return the datagrams dropped by the node in permille of the datagrams received in the last heartbeat interval
+		 */
+		public int getDropRate() {
+			return dropRate;
+		}
+
+		public long getLastReportTime() {
+			return lastReportTime;
+		}
+	}
+
+}
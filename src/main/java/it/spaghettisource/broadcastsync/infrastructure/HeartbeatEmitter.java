@@ -11,6 +11,8 @@ import it.spaghettisource.broadcastsync.message.HeartBeatFactory;
 /**
  * The HeartbeatEmitter is responsible to send the Heartbeat on the network.
  * 
+ * with the flow control the heartbeat carries the state of this node and after every heartbeat the send rate is adapted by the {@link FlowController}.
+ * 
  * @author Alessandro D'Ottavio
  * @version 1.0
  */
@@ -26,6 +28,7 @@ public class HeartbeatEmitter implements Runnable{
 	private HeartBeatFactory heartBeatFactor;
 	private ExceptionFactory exceptionFactory;
 	private UdpClient udpClient;
+	private FlowController flowController;
 	
 	public HeartbeatEmitter(BroadCastSyncConfig config, HeartBeatFactory heartBeatFactor, ExceptionFactory exceptionFactory, UdpClient udpClient) {
 		super();
@@ -44,7 +47,12 @@ public class HeartbeatEmitter implements Runnable{
 			try {
 
 				//send hearbeat
-				if(heartBeatFactor.isCommandHeartBeat()){
+				if(flowController != null) {
+					byte[] data = heartBeatFactor.isCommandHeartBeat() ? null : heartBeatFactor.buildSerializeHeartBeat();
+					udpClient.sendHeartBeatWithFlowControl(flowController.buildReport(), data);
+					flowController.adapt(udpClient.getPacer());
+					
+				}else if(heartBeatFactor.isCommandHeartBeat()){
 					log.debug("sent heartbeat");
 					udpClient.sendHeartBeatCommand();
 					
@@ -68,6 +76,15 @@ public class HeartbeatEmitter implements Runnable{
 		}
 	}
 	
+	/**
+	 * set the flow controller that builds the report sent in the heartbeat and adapts the send rate, null to send the normal heartbeat
+	 * 
+	 * @param flowController
+	 */
+	public void setFlowController(FlowController flowController) {
+		this.flowController = flowController;
+	}
+	
 	public void startHeartbeatEmitter() throws BroadCastSyncRuntimeException{
 		stopped = false;	
 		thread = new Thread(this);
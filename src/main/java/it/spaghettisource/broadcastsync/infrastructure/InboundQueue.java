@@ -0,0 +1,224 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+/**
+ * Producer side of the queues between the {@link UdpServer} and the {@link DatagramSequentializer}.
+ * 
+ * there is one {@link RingBuffer} for every DatagramSequentializer, the datagram is routed to the ring buffer 
+ * using the hash of the message ID so all the chunks of a message are rebuilt by the same DatagramSequentializer,
+ * or using the hash of the sender address when the order of the messages of each sender has to be preserved.
+ * 
+ * when the ring buffer is full the {@link OverloadPolicy} decides which datagram is discarded and the {@link DropStatistics} count it.
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class InboundQueue {
+
+	private static Logger  log = LoggerFactory.getLogger(InboundQueue.class);
+	
+	/**
+	 * min interval between two warnings logged when the datagrams are dropped
+	 */
+	private static final long WARNING_INTERVAL_MILLIS = 1000;
+	
+	private final List<RingBuffer<ReceivedDatagram>> ringBuffers;
+	private final OverloadPolicy policy;
+	private final DropStatistics dropStatistics;
+	private final boolean routeBySender;
+	private final LongAdder offeredDatagrams = new LongAdder();
+	
+	private volatile long lastWarningTime;
+	
+	public InboundQueue(RingBuffer<ReceivedDatagram> ringBuffer, OverloadPolicy policy, DropStatistics dropStatistics) {
+		this(Collections.singletonList(ringBuffer), policy, dropStatistics, false);
+	}
+	
+	/**
+	 * @param ringBuffers one for every DatagramSequentializer
+	 * @param policy
+	 * @param dropStatistics
+	 * @param routeBySender true to route the datagrams by sender address, false to route them by message ID
+	 */
+	public InboundQueue(List<RingBuffer<ReceivedDatagram>> ringBuffers, OverloadPolicy policy, DropStatistics dropStatistics, boolean routeBySender) {
+		super();
+		this.ringBuffers = ringBuffers;
+		this.policy = policy;
+		this.dropStatistics = dropStatistics;
+		this.routeBySender = routeBySender;
+	}
+
+	/**
+	 * add a datagram in the queue applying the overload policy if the queue is full.
+	 * every datagram discarded is released
+	 * 
+	 * @param datagram
+	 * @throws InterruptedException if the receiver is interrupted while it is waiting with the policy {@link OverloadPolicy#BLOCK_RECEIVER}
+	 */
+	public void offer(ReceivedDatagram datagram) throws InterruptedException {
+		
+		offeredDatagrams.increment();
+		RingBuffer<ReceivedDatagram> ringBuffer = route(datagram);
+		if(ringBuffer.offer(datagram)) {
+			return;
+		}
+		
+		switch (policy) {
+		case BLOCK_RECEIVER:
+			ringBuffer.put(datagram);
+			break;
+			
+		case DROP_OLDEST:
+			evictOldestAndOffer(ringBuffer, datagram);
+			break;
+			
+		case SHED_DATA:
+			if(isCommand(datagram)) {
+				evictOldestDataAndOffer(ringBuffer, datagram);
+			}else {
+				drop(DropReason.DATA_SHED, datagram);
+			}
+			break;
+			
+		default:
+			drop(DropReason.NEWEST_DROPPED, datagram);
+			break;
+		}
+		
+	}
+	
+	/**
+	 * @return the amount of datagrams waiting to be processed
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < ringBuffers.size(); i++) {
+			size += ringBuffers.get(i).size();
+		}
+		return size;
+	}
+	
+	/**
+	 * @return the max amount of datagrams that can wait in all the ring buffers
+	 */
+	public int capacity() {
+		int capacity = 0;
+		for (int i = 0; i < ringBuffers.size(); i++) {
+			capacity += ringBuffers.get(i).capacity();
+		}
+		return capacity;
+	}
+	
+	/**
+	 * @return the amount of DatagramSequentializer that consume the ring buffers
+	 */
+	public int getWorkers() {
+		return ringBuffers.size();
+	}
+	
+	/**
+	 * @return the fill level of the fullest ring buffer in permille
+	 */
+	public int findFillLevel() {
+		int level = 0;
+		for (int i = 0; i < ringBuffers.size(); i++) {
+			RingBuffer<ReceivedDatagram> ringBuffer = ringBuffers.get(i);
+			level = Math.max(level, (int) ((long) ringBuffer.size() * 1000 / ringBuffer.capacity()));
+		}
+		return level;
+	}
+	
+	/**
+	 * @return the amount of datagrams received, included the ones dropped
+	 */
+	public long getOfferedDatagrams() {
+		return offeredDatagrams.sum();
+	}
+	
+	/**
+	 * select the ring buffer of the DatagramSequentializer that has to process the datagram
+	 * 
+	 * @param datagram
+	 * @return
+	 */
+	protected RingBuffer<ReceivedDatagram> route(ReceivedDatagram datagram) {
+		int workers = ringBuffers.size();
+		if(workers == 1) {
+			return ringBuffers.get(0);
+		}
+		
+		int hash;
+		ByteBuffer buffer = datagram.getBuffer();
+		if(routeBySender || buffer.limit() < DatagramPacketDataProtocol.VERSION_2_MIN_HEADER_SIZE) {
+			hash = datagram.getAddress() != null ? datagram.getAddress().hashCode() : 0;
+		}else {
+			//the message ID is read from the header, its position depends on the version of the protocol
+			long id = DatagramPacketDataProtocol.peekMessageIdHash(buffer);
+			hash = (int) (id ^ (id >>> 32));
+		}
+		
+		//spread the bits before to select the worker
+		hash ^= (hash >>> 16);
+		return ringBuffers.get((hash & 0x7fffffff) % workers);
+	}
+	
+	private void evictOldestAndOffer(RingBuffer<ReceivedDatagram> ringBuffer, ReceivedDatagram datagram) {
+		while (!ringBuffer.offer(datagram)) {
+			ReceivedDatagram oldest = ringBuffer.poll();
+			if(oldest!=null) {
+				drop(DropReason.OLDEST_EVICTED, oldest);
+			}
+		}
+	}
+	
+	/**
+	 * make space for a command discarding the oldest data datagram, the commands in the queue are kept: 
+	 * they are moved at the end of the queue till a data datagram is found. 
+	 * if the queue contains only commands the command received is discarded
+	 */
+	private void evictOldestDataAndOffer(RingBuffer<ReceivedDatagram> ringBuffer, ReceivedDatagram datagram) {
+		for (int i = ringBuffer.capacity(); i > 0; i--) {
+			if(ringBuffer.offer(datagram)) {
+				return;
+			}
+			ReceivedDatagram oldest = ringBuffer.poll();
+			if(oldest == null) {
+				continue;
+			}
+			if(!isCommand(oldest)) {
+				drop(DropReason.OLDEST_EVICTED, oldest);
+			}else if(!ringBuffer.offer(oldest)) {
+				//another receiver took the space in the meantime
+				drop(DropReason.OLDEST_EVICTED, oldest);
+			}
+		}
+		if(!ringBuffer.offer(datagram)) {
+			drop(DropReason.NEWEST_DROPPED, datagram);
+		}
+	}
+	
+	private static boolean isCommand(ReceivedDatagram datagram) {
+		return MessageType.isCommand(DatagramPacketDataProtocol.peekMessageType(datagram.getBuffer()));
+	}
+	
+	private void drop(DropReason reason, ReceivedDatagram datagram) {
+		dropStatistics.recordDrop(reason, datagram.getAddress());
+		datagram.release();
+		
+		long now = System.currentTimeMillis();
+		if(now - lastWarningTime > WARNING_INTERVAL_MILLIS) {
+			lastWarningTime = now;
+			log.warn("the queue of the received datagrams is full, datagrams discarded with the policy "+policy+", total discarded: "+dropStatistics.getTotalDrops());
+		}
+	}
+	
+}
@@ -0,0 +1,194 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+/**
+ * The MessageBundler packs several small messages in one datagram of type {@link MessageType#MESSAGE_TYPE_DATA_BUNDLE}, 
+ * then a small message doesn't cost a full datagram, a system call on the sender and a full pass in the receiver.
+ * 
+ * every message is stored in the bundle as message type (int), length (int) and data.
+ * the bundle is sent when the next message doesn't fit in it or when the first message waited the linger time, 
+ * a dedicated thread sends the bundles expired.
+ * 
+ * the bundle full is swapped with a spare one under the lock and sent outside of it, then the threads that add the messages 
+ * don't wait the {@link SendPacer} behind the thread that sends. the bundles are sent one at a time in the order they are swapped.
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class MessageBundler implements Runnable {
+
+	private static Logger  log = LoggerFactory.getLogger(MessageBundler.class);
+	
+	/**
+	 * size of the message type and of the length stored before the data of every message
+	 */
+	public static final int ENTRY_HEADER_SIZE = 8;
+	
+	private volatile boolean stopped = true;
+	private Thread thread;
+	
+	private final UdpClient udpClient;
+	private final long lingerMillis;
+	
+	private final ReentrantLock sendLock = new ReentrantLock();
+	private byte[] bundle;
+	private byte[] spare;
+	private int bundleLength;
+	private int bundleMessages;
+	private long firstMessageTime;
+	
+	public MessageBundler(BroadCastSyncConfig config, UdpClient udpClient) {
+		super();
+		this.udpClient = udpClient;
+		this.lingerMillis = config.getBundleLingerMillis();
+		//the bundle is sent in one datagram, with the forward error correction the client has less space for the data
+		this.bundle = new byte[udpClient.getPacketDataSize()];
+		this.spare = new byte[bundle.length];
+	}
+	
+	/**
+	 * @param dataLength
+	 * @return true if a message of this size can be bundled
+	 */
+	public boolean canBundle(int dataLength) {
+		return ENTRY_HEADER_SIZE + dataLength <= bundle.length;
+	}
+	
+	/**
+	 * add a message in the bundle, if it doesn't fit the bundle is sent first
+	 * 
+	 * @param data
+	 * @param messageType
+	 * @throws BroadCastSyncRuntimeException if the bundle can't be sent
+	 */
+	public void add(byte[] data, int messageType) throws BroadCastSyncRuntimeException{
+		
+		//the bundle is sent outside of the lock, meanwhile other threads can fill the new one
+		while (!tryAdd(data, messageType)) {
+			flush();
+		}
+	}
+	
+	/**
+	 * @param data
+	 * @param messageType
+	 * @return false if the message doesn't fit in the bundle
+	 */
+	private synchronized boolean tryAdd(byte[] data, int messageType) {
+		if(bundleLength + ENTRY_HEADER_SIZE + data.length > bundle.length) {
+			return false;
+		}
+		
+		writeInt(bundleLength, messageType);
+		writeInt(bundleLength + 4, data.length);
+		System.arraycopy(data, 0, bundle, bundleLength + ENTRY_HEADER_SIZE, data.length);
+		bundleLength += ENTRY_HEADER_SIZE + data.length;
+		bundleMessages++;
+		
+		if(bundleMessages == 1) {
+			firstMessageTime = System.currentTimeMillis();
+			notifyAll();
+		}
+		return true;
+	}
+	
+	/**
+	 * send the bundle if it contains at least a message
+	 * 
+	 * @throws BroadCastSyncRuntimeException if the bundle can't be sent
+	 */
+	public void flush() throws BroadCastSyncRuntimeException{
+		
+		//the spare is free only when the previous bundle is sent, the lock keeps also the order of the bundles
+		sendLock.lock();
+		try {
+			byte[] full;
+			int length;
+			synchronized (this) {
+				if(bundleMessages == 0) {
+					return;
+				}
+				full = bundle;
+				length = bundleLength;
+				bundle = spare;
+				spare = full;
+				bundleLength = 0;
+				bundleMessages = 0;
+			}
+			udpClient.sendMessage(full, length, 1, MessageType.MESSAGE_TYPE_DATA_BUNDLE);
+		}finally {
+			sendLock.unlock();
+		}
+	}
+	
+	private void writeInt(int position, int value) {
+		bundle[position] = (byte) (value >>> 24);
+		bundle[position + 1] = (byte) (value >>> 16);
+		bundle[position + 2] = (byte) (value >>> 8);
+		bundle[position + 3] = (byte) value;
+	}
+	
+	@Override
+	public void run() {
+		
+		log.info("MessageBundler thread started");
+		
+		while (!stopped) {
+			try {
+				
+				synchronized (this) {
+					if(bundleMessages == 0) {
+						wait();
+						continue;
+					}
+					long remaining = firstMessageTime + lingerMillis - System.currentTimeMillis();
+					if(remaining > 0) {
+						wait(remaining);
+						continue;
+					}
+				}
+				//the bundle expired is sent outside of the lock
+				flush();
+				
+			} catch (InterruptedException e) {
+				log.info("MessageBundler interrupted");
+				break;
+				
+			} catch (Exception cause) {
+				log.error("impossible send the bundle", cause);
+			}
+		}
+	}
+	
+	public void startBundler() {
+		stopped = false;	
+		thread = new Thread(this);
+		thread.setDaemon(true);		
+		thread.setName("MessageBundler");	
+		thread.start();
+	}
+	
+	/**
+	 * stop the thread and send the messages still in the bundle
+	 */
+	public void shutdown() {
+		stopped = true;
+		if(thread!=null) {
+			thread.interrupt();
+		}
+		try {
+			flush();
+		} catch (Exception cause) {
+			log.error("impossible send the last bundle", cause);
+		}
+	}
+	
+}
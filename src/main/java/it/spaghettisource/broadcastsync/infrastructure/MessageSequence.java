@@ -0,0 +1,47 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The sequence of the messages sent by the {@link UdpClient} to the same destination, the position of the message is stored in its message ID.
+ *
+ * the first 8 bytes of the message ID are random and the same for all the messages of the sequence, they identify the sequence of the sender, 
+ * the last 8 bytes are the position of the message in the sequence. a new sequence starts every time the client is created, 
+ * then the receivers distinguish a sender restarted from a sender that lost messages.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class MessageSequence {
+
+	private final long mostSignificantBits;
+	private final AtomicLong next = new AtomicLong();
+
+	public MessageSequence() {
+		this(DatagramPacketDataProtocol.randomSequenceMostSignificantBits());
+	}
+
+	/**
+	 * @param mostSignificantBits the first 8 bytes of the message IDs of the sequence, 
+	 * see {@link DatagramPacketDataProtocol#randomCompactSequenceMostSignificantBits()} for the version 2 of the protocol
+	 */
+	public MessageSequence(long mostSignificantBits) {
+		super();
+		this.mostSignificantBits = mostSignificantBits;
+	}
+
+	/**
+	 * @return the first 8 bytes of the message IDs of the sequence
+	 */
+	public long getMostSignificantBits() {
+		return mostSignificantBits;
+	}
+
+	/**
+	 * @return the last 8 bytes of the message ID of the next message
+	 */
+	public long nextLeastSignificantBits() {
+		return DatagramPacketDataProtocol.sequenceLeastSignificantBits(next.getAndIncrement());
+	}
+
+}
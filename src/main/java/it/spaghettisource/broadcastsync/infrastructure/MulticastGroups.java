@@ -0,0 +1,211 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
+import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
+
+/**
+ * The multicast groups used in {@link TransportMode#MULTICAST}, resolved from the configuration.
+ *
+ * the default group carries the messages sent without a channel and the heartbeats, every logical channel is mapped on its own group,
+ * see {@link BroadCastSyncConfig#getMulticastChannels()}.
+ * the server joins the default group and the groups of the channels subscribed, then the datagrams of the other channels are not delivered to this node.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class MulticastGroups {
+
+	private static Logger  log = LoggerFactory.getLogger(MulticastGroups.class);
+
+	private final InetAddress defaultGroup;
+	private final Map<String, InetAddress> channelGroups;
+	private final Set<InetAddress> subscribedGroups;
+	private final NetworkInterface networkInterface;
+	private final InetAddress interfaceAddress;
+
+	/**
+	 * resolve the groups and the network interface
+	 *
+	 * @param config
+	 * @param exceptionFactory
+	 * @throws BroadCastSyncRuntimeException if a group is not a multicast address or the interface is not available
+	 */
+	public MulticastGroups(BroadCastSyncConfig config, ExceptionFactory exceptionFactory) throws BroadCastSyncRuntimeException {
+		super();
+		this.defaultGroup = resolveGroup(config.getMulticastGroup(), exceptionFactory);
+
+		Map<String, InetAddress> groups = new HashMap<>();
+		if(config.getMulticastChannels() != null) {
+			for (Map.Entry<String, String> channel : config.getMulticastChannels().entrySet()) {
+				groups.put(channel.getKey(), resolveGroup(channel.getValue(), exceptionFactory));
+			}
+		}
+		this.channelGroups = Collections.unmodifiableMap(groups);
+
+		//without subscriptions the node is interested in all the channels
+		Set<InetAddress> subscribed = new LinkedHashSet<>();
+		subscribed.add(defaultGroup);
+		if(config.getSubscribedChannels() == null) {
+			subscribed.addAll(groups.values());
+		}else {
+			for (String channel : config.getSubscribedChannels()) {
+				subscribed.add(getGroup(channel, exceptionFactory));
+			}
+		}
+		this.subscribedGroups = Collections.unmodifiableSet(subscribed);
+
+		try {
+			this.networkInterface = findInterface(config.getMulticastInterface());
+		} catch (IOException cause) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getMulticastInterfaceNotAvailable(cause, config.getMulticastInterface());
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
+		}
+		this.interfaceAddress = networkInterface != null ? findIPv4Address(networkInterface) : null;
+		if(interfaceAddress == null) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getMulticastInterfaceNotAvailable(null, config.getMulticastInterface());
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
+		}
+	}
+
+	private static InetAddress resolveGroup(String group, ExceptionFactory exceptionFactory) throws BroadCastSyncRuntimeException {
+		try {
+			InetAddress address = InetAddress.getByName(group);
+			if(address.isMulticastAddress()) {
+				return address;
+			}
+			BroadCastSyncRuntimeException ex = exceptionFactory.getInvalidMulticastGroup(null, group);
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
+		} catch (UnknownHostException cause) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getInvalidMulticastGroup(cause, group);
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * find the interface by name or by address, when it is not configured the interface of the local host is used
+	 * or the first interface up that supports multicast
+	 *
+	 * @param name of the interface or one of its addresses, null to choose automatically
+	 * @return the interface or null if it doesn't exist
+	 * @throws IOException
+	 */
+	private static NetworkInterface findInterface(String name) throws IOException {
+		if(name != null && !name.isEmpty()) {
+			NetworkInterface networkInterface = NetworkInterface.getByName(name);
+			if(networkInterface == null) {
+				networkInterface = NetworkInterface.getByInetAddress(InetAddress.getByName(name));
+			}
+			return networkInterface;
+		}
+
+		NetworkInterface local = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
+		if(isUsable(local)) {
+			return local;
+		}
+
+		NetworkInterface loopback = null;
+		Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+		while (interfaces != null && interfaces.hasMoreElements()) {
+			NetworkInterface networkInterface = interfaces.nextElement();
+			if(isUsable(networkInterface)) {
+				if(!networkInterface.isLoopback()) {
+					return networkInterface;
+				}
+				loopback = networkInterface;
+			}
+		}
+		return loopback;
+	}
+
+	private static boolean isUsable(NetworkInterface networkInterface) throws SocketException {
+		return networkInterface != null && networkInterface.isUp() && networkInterface.supportsMulticast() && findIPv4Address(networkInterface) != null;
+	}
+
+	/**
+	 * @param networkInterface
+	 * @return the first IPv4 address of the interface or null if it doesn't have one, the channels are opened with the IPv4 protocol family
+	 */
+	private static InetAddress findIPv4Address(NetworkInterface networkInterface) {
+		Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+		while (addresses.hasMoreElements()) {
+			InetAddress address = addresses.nextElement();
+			if(address instanceof Inet4Address) {
+				return address;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param channel
+	 * @param exceptionFactory
+	 * @return the group of the channel
+	 * @throws BroadCastSyncRuntimeException if the channel is not configured
+	 */
+	public InetAddress getGroup(String channel, ExceptionFactory exceptionFactory) throws BroadCastSyncRuntimeException {
+		InetAddress group = channelGroups.get(channel);
+		if(group == null) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getUnknownChannel(channel);
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
+		}
+		return group;
+	}
+
+	/**
+	 * @return the group of the messages sent without a channel and of the heartbeats
+	 */
+	public InetAddress getDefaultGroup() {
+		return defaultGroup;
+	}
+
+	/**
+	 * @return the group of every logical channel
+	 */
+	public Map<String, InetAddress> getChannelGroups() {
+		return channelGroups;
+	}
+
+	/**
+	 * @return the groups joined by the server
+	 */
+	public Set<InetAddress> getSubscribedGroups() {
+		return subscribedGroups;
+	}
+
+	/**
+	 * @return the address of the interface, the client sends from this address
+	 */
+	public InetAddress getInterfaceAddress() {
+		return interfaceAddress;
+	}
+
+	/**
+	 * @return the interface used to send and to join the groups
+	 */
+	public NetworkInterface getNetworkInterface() {
+		return networkInterface;
+	}
+
+}
@@ -0,0 +1,24 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+/**
+ * define what the {@link UdpServer} does with a datagram received when the queue of the {@link DatagramSequentializer} is full
+ * 
+ *  - DROP_NEWEST: the datagram received is discarded
+ *  - DROP_OLDEST: the oldest datagram in the queue is discarded to make space for the datagram received
+ *  - SHED_DATA: a data datagram received is discarded, while a command datagram like an heartbeat discards the oldest data datagram in the queue, then the heartbeats keep flowing under load.
+ *               the commands already in the queue are never discarded, if the queue contains only commands the command received is discarded
+ *  - BLOCK_RECEIVER: the receiver waits till there is space in the queue, in the meantime the datagrams are buffered and eventually dropped by the kernel
+ * 
+ * every datagram discarded is counted by the {@link DropStatistics}
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public enum OverloadPolicy {
+
+	DROP_NEWEST,
+	DROP_OLDEST,
+	SHED_DATA,
+	BLOCK_RECEIVER;
+	
+}
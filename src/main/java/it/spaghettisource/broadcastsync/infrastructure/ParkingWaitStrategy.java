@@ -0,0 +1,47 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The waiting thread is parked for a short time and then it verifies again the condition
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class ParkingWaitStrategy implements WaitStrategy {
+
+	private static final long PARK_TIME_NANOS = 50_000;
+	
+	@Override
+	public void waitFor(BooleanSupplier satisfied) throws InterruptedException {
+		while (!satisfied.getAsBoolean()) {
+			LockSupport.parkNanos(PARK_TIME_NANOS);
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	@Override
+	public boolean waitFor(BooleanSupplier satisfied, long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (!satisfied.getAsBoolean()) {
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0) {
+				return false;
+			}
+			LockSupport.parkNanos(Math.min(PARK_TIME_NANOS, remaining));
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void signalAll() {
+		//nothing to do, the waiting thread wakes up by itself
+	}
+
+}
@@ -1,39 +1,470 @@
 package it.spaghettisource.broadcastsync.infrastructure;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
 /**
  * store all the chunks of a payload
- * 
- * 
+ *
+ * the data of every chunk is written directly in one buffer at the position sequence * chunk size, 
+ * the buffer grows when the chunks arrive and never exceeds the max message size,
+ * when the last chunk is stored the size of the message is known and the buffer takes exactly that size so the data are given without copy.
+ * the chunks received are tracked with a counter and a bitset so a duplicated chunk is ignored and the completion check costs O(1).
+ *
+ * all the chunks of a message have the same size except the last one, the chunk size is learned from the first chunk received that is not the last,
+ * if the last chunk arrives before it is stored apart till the chunk size is known.
+ *
+ * in streaming mode the chunks are not collected in one buffer but given in order to a {@link ChunkConsumer} as soon as they are contiguous,
+ * only the chunks received out of order are retained.
+ *
+ * the parity of a group of chunks is kept till the group is complete, when only one chunk of the group is missing it is rebuilt 
+ * with the XOR of the parity and of the other chunks, see {@link DatagramPacketDataProtocol#encodeParity(ByteBuffer, long, long, int, int, int, int, byte[], int)}.
+ * in streaming mode the chunks already delivered are not kept then the parity is ignored.
+ *
  * @author Alessandro
  *
  */
 public class Payload {
 
 	private String clientAddress;
-	private String clientCanonicalHostName;	
+	private String clientCanonicalHostName;
 	private int totalPackets;
-	private int messageType;	
+	private int messageType;
 	private long timeReceivedFirstChunk;
 
-	private PayloadChunk[] chunks;
+	private byte[] data;
+	private int chunkSize;
+	private int dataLength;
+	private byte[] lastChunk;
+	private int lastChunkLength = -1;
+
+	private long maxMessageSize;
+	private long[] receivedChunks;
+	private int packetsReceived;
+
+	//streaming mode
+	private boolean streaming;
+	private int nextSequence;
+	private long deliveredBytes;
+	private Map<Integer, byte[]> pendingChunks;
+	private int pendingBytes;
+
+	//retransmission
+	private long lastChunkTime;
+	private int nacksSent;
+
+	//forward error correction
+	private Map<Integer, Parity> parities;
+	private int groupSize;
+	private int parityBytes;
+	private int recoveredChunks;
+
+	private long messageIdMostSignificantBits;
+	private long messageIdLeastSignificantBits;
+	private String messageId;
 
-	public Payload(String clientAddress, String clientCanonicalHostName, int messageType, int totalPackets) {
+	//links of the PayloadExpirationWheel
+	long expirationTime;
+	int wheelSlot = -1;
+	Payload wheelNext;
+	Payload wheelPrev;
+	
+	//links of the list of the payloads ordered by age
+	Payload ageNext;
+	Payload agePrev;
+
+	public Payload(long messageIdMostSignificantBits, long messageIdLeastSignificantBits, String clientAddress, String clientCanonicalHostName, int messageType, int totalPackets) {
+		this(messageIdMostSignificantBits, messageIdLeastSignificantBits, clientAddress, clientCanonicalHostName, messageType, totalPackets, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param clientAddress
+	 * @param clientCanonicalHostName
+	 * @param messageType
+	 * @param totalPackets
+	 * @param maxMessageSize max amount of bytes of the message, a chunk that implies a bigger message is refused
+	 */
+	public Payload(long messageIdMostSignificantBits, long messageIdLeastSignificantBits, String clientAddress, String clientCanonicalHostName, int messageType, int totalPackets, long maxMessageSize) {
 		super();
+		this.messageIdMostSignificantBits = messageIdMostSignificantBits;
+		this.messageIdLeastSignificantBits = messageIdLeastSignificantBits;
 		this.clientAddress = clientAddress;
 		this.clientCanonicalHostName = clientCanonicalHostName;
 		this.messageType = messageType;
 		this.totalPackets = totalPackets;
-		
+
 		//if we are building the payload we received a chunk
 		this.timeReceivedFirstChunk  = System.currentTimeMillis();
-				
-		this.chunks = new PayloadChunk[totalPackets];
+		this.lastChunkTime = timeReceivedFirstChunk;
+
+		this.chunkSize = -1;
+		this.maxMessageSize = Math.min(maxMessageSize, Integer.MAX_VALUE);
+		this.receivedChunks = new long[1];
+	}
+
+	public void addChunk(PayloadChunk chunk) {
+		addChunk(chunk.getSequence(), ByteBuffer.wrap(chunk.getData()), 0, chunk.getData().length);
+	}
+
+	/**
+	 * copy the data of a chunk in the payload
+	 *
+	 * @param sequence of the chunk
+	 * @param source buffer that contains the data of the chunk, the position of the buffer is restored to 0
+	 * @param offset of the data in the source buffer
+	 * @param length of the data
+	 * @return false if the chunk was already received
+	 * @throws IllegalArgumentException if the chunk is not compatible with the chunks already received
+	 */
+	public boolean addChunk(int sequence, ByteBuffer source, int offset, int length) {
+
+		if(isReceived(sequence)) {
+			return false;
+		}
+
+		int last = totalPackets - 1;
+		if(totalPackets == 1) {
+			checkMessageSize(length);
+			data = new byte[length];
+			copy(source, offset, data, 0, length);
+
+		}else if(sequence < last) {
+			if(chunkSize < 0) {
+				//first chunk that is not the last, now the max size of the message is known
+				checkMessageSize((long) length * totalPackets);
+				chunkSize = length;
+				data = new byte[0];
+				if(lastChunk != null) {
+					storeLastChunk(lastChunk);
+					lastChunk = null;
+				}
+			}else if(length != chunkSize) {
+				throw new IllegalArgumentException("chunk of "+length+" byte in a message with chunks of "+chunkSize+" byte");
+			}
+			ensureCapacity((sequence + 1) * chunkSize);
+			copy(source, offset, data, sequence * chunkSize, length);
+
+		}else {
+			byte[] chunk = new byte[length];
+			copy(source, offset, chunk, 0, length);
+			if(chunkSize < 0) {
+				lastChunk = chunk;
+				lastChunkLength = length;
+			}else {
+				storeLastChunk(chunk);
+			}
+		}
+
+		setReceived(sequence, length);
+		if(parities != null) {
+			recover(sequence / groupSize);
+		}
+		return true;
+	}
+
+	/**
+	 * keep the parity of a group of chunks and rebuild the chunk missing of the group if it is the only one
+	 *
+	 * @param group index of the group
+	 * @param groupSize amount of chunks in every group
+	 * @param lengthsXor XOR of the lengths of the chunks of the group
+	 * @param source buffer that contains the parity, the position of the buffer is restored to 0
+	 * @param offset of the parity in the source buffer
+	 * @param length of the parity
+	 * @return false if the parity is ignored because it is not needed
+	 * @throws IllegalArgumentException if the parity is not compatible with the chunks already received
+	 */
+	public boolean addParity(int group, int groupSize, int lengthsXor, ByteBuffer source, int offset, int length) {
+
+		if(streaming) {
+			return false;
+		}
+		if(groupSize <= 0 || group < 0 || (long) group * groupSize >= totalPackets || (this.groupSize > 0 && this.groupSize != groupSize)) {
+			throw new IllegalArgumentException("parity of the group "+group+" of "+groupSize+" chunks not compatible with the message of "+totalPackets+" packets");
+		}
+
+		this.groupSize = groupSize;
+		if(parities == null) {
+			parities = new HashMap<>();
+		}
+		if(parities.containsKey(group) || findMissingChunk(group) == -1) {
+			return false;
+		}
+
+		byte[] parity = new byte[length];
+		copy(source, offset, parity, 0, length);
+		parities.put(group, new Parity(lengthsXor, parity));
+		parityBytes += length;
+
+		recover(group);
+		return true;
+	}
+
+	/**
+	 * rebuild the chunk missing of the group if the parity is received and all the other chunks of the group are received,
+	 * the parity is released when the group is complete
+	 *
+	 * @param group
+	 */
+	private void recover(int group) {
+		Parity parity = parities.get(group);
+		if(parity == null) {
+			return;
+		}
+
+		int missing = findMissingChunk(group);
+		if(missing == -2) {
+			return;
+		}
+		parities.remove(group);
+		parityBytes -= parity.data.length;
+		if(missing < 0) {
+			return;
+		}
+
+		//the parity becomes the chunk missing
+		byte[] chunk = parity.data;
+		ByteBuffer target = ByteBuffer.wrap(chunk);
+		int length = parity.lengthsXor;
+		int first = group * groupSize;
+		int end = Math.min(first + groupSize, totalPackets);
+		int last = totalPackets - 1;
+		for (int sequence = first; sequence < end; sequence++) {
+			if(sequence == missing) {
+				continue;
+			}
+			int chunkLength = sequence < last ? chunkSize : lastChunkLength;
+			if(chunkLength > chunk.length) {
+				throw new IllegalArgumentException("parity of "+chunk.length+" byte shorter than the chunk "+sequence+" of "+chunkLength+" byte");
+			}
+			if(sequence == last && chunkSize < 0) {
+				DatagramPacketDataProtocol.xor(ByteBuffer.wrap(lastChunk), 0, target, 0, chunkLength);
+			}else {
+				DatagramPacketDataProtocol.xor(ByteBuffer.wrap(data), sequence * chunkSize, target, 0, chunkLength);
+			}
+			length ^= chunkLength;
+		}
+		if(length < 0 || length > chunk.length) {
+			throw new IllegalArgumentException("parity of the group "+group+" not compatible with the chunks received");
+		}
+
+		recoveredChunks++;
+		addChunk(missing, target, 0, length);
 	}
 
-	public void addChunk(PayloadChunk chunk) {		
-		chunks[chunk.getSequence()] = chunk;
+	/**
+	 * @param group
+	 * @return the sequence of the only chunk missing in the group, -1 if no chunk is missing, -2 if more chunks are missing
+	 */
+	private int findMissingChunk(int group) {
+		int missing = -1;
+		int first = group * groupSize;
+		int end = Math.min(first + groupSize, totalPackets);
+		for (int sequence = first; sequence < end; sequence++) {
+			if(!hasChunk(sequence)) {
+				if(missing >= 0) {
+					return -2;
+				}
+				missing = sequence;
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * switch the payload in streaming mode, it must be called before to add the first chunk
+	 */
+	public void enableStreaming() {
+		streaming = true;
+		pendingChunks = new HashMap<>();
+	}
+
+	/**
+	 * add a chunk in streaming mode, the chunk and the chunks retained that follow it are given to the consumer if it is the next expected.
+	 * the chunk expected is given to the consumer directly from the source buffer, only a chunk received out of order is copied and retained
+	 *
+	 * @param sequence of the chunk
+	 * @param source buffer that contains the data of the chunk, the position of the buffer is restored to 0
+	 * @param offset of the data in the source buffer
+	 * @param length of the data
+	 * @param consumer of the contiguous chunks
+	 * @return false if the chunk was already received
+	 * @throws IllegalArgumentException if the chunk is not compatible with the chunks already received
+	 */
+	public boolean addChunk(int sequence, ByteBuffer source, int offset, int length, ChunkConsumer consumer) {
+
+		if(isReceived(sequence)) {
+			return false;
+		}
+		checkMessageSize((long) dataLength + length);
+		setReceived(sequence, length);
+
+		if(sequence != nextSequence) {
+			byte[] chunk = new byte[length];
+			copy(source, offset, chunk, 0, length);
+			pendingChunks.put(sequence, chunk);
+			pendingBytes += length;
+			return true;
+		}
+
+		source.position(offset);
+		ByteBuffer chunk = source.slice();
+		source.position(0);
+		chunk.limit(length);
+		deliver(chunk, consumer);
+
+		byte[] pending;
+		while ((pending = pendingChunks.remove(nextSequence)) != null) {
+			pendingBytes -= pending.length;
+			deliver(ByteBuffer.wrap(pending), consumer);
+		}
+		return true;
+	}
+
+	private void deliver(ByteBuffer chunk, ChunkConsumer consumer) {
+		int sequence = nextSequence;
+		long position = deliveredBytes;
+		nextSequence++;
+		deliveredBytes += chunk.remaining();
+		consumer.accept(this, sequence, position, chunk.asReadOnlyBuffer());
+	}
+
+	/**
+	 * @param sequence of the chunk
+	 * @return true if the chunk was already received
+	 * @throws IllegalArgumentException if the sequence is out of the range of the message
+	 */
+	private boolean isReceived(int sequence) {
+		if(sequence < 0 || sequence >= totalPackets) {
+			throw new IllegalArgumentException("sequence "+sequence+" out of the range of the "+totalPackets+" packets");
+		}
+
+		return hasChunk(sequence);
+	}
+
+	/**
+	 * the table of the chunks received grows only when a chunk is accepted, then its bytes are always counted in the budget
+	 */
+	private void setReceived(int sequence, int length) {
+		int word = sequence >>> 6;
+		if(word >= receivedChunks.length) {
+			receivedChunks = Arrays.copyOf(receivedChunks, Math.max(word + 1, Math.min(receivedChunks.length * 2, (totalPackets + 63) >>> 6)));
+		}
+		receivedChunks[word] |= 1L << sequence;
+		packetsReceived++;
+		dataLength += length;
+		lastChunkTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * find the chunks not yet received, in order of sequence
+	 *
+	 * @param missing array filled with the sequences of the chunks missing
+	 * @return the amount of sequences stored in the array, at most its length
+	 */
+	public int findMissingChunks(int[] missing) {
+		int count = 0;
+		for (int sequence = 0; sequence < totalPackets && count < missing.length; sequence++) {
+			if(!hasChunk(sequence)) {
+				missing[count++] = sequence;
+			}
+		}
+		return count;
+	}
+
+	private boolean hasChunk(int sequence) {
+		int word = sequence >>> 6;
+		return word < receivedChunks.length && (receivedChunks[word] & (1L << sequence)) != 0;
+	}
+
+	/**
+	 * register that the chunks missing are requested to the sender, the next request waits again the gap time
+	 *
+	 * @param now
+	 */
+	public void recordNack(long now) {
+		nacksSent++;
+		lastChunkTime = now;
+	}
+
+	/**
+	 * @return the time when the last chunk is received or the last request of the chunks missing is sent
+	 */
+	public long getLastChunkTime() {
+		return lastChunkTime;
+	}
+
+	public int getNacksSent() {
+		return nacksSent;
+	}
+
+	/**
+	 * @return the amount of chunks rebuilt from the parity
+	 */
+	public int getRecoveredChunks() {
+		return recoveredChunks;
+	}
+
+	private void storeLastChunk(byte[] chunk) {
+		if(chunk.length > chunkSize) {
+			throw new IllegalArgumentException("last chunk of "+chunk.length+" byte in a message with chunks of "+chunkSize+" byte");
+		}
+		lastChunkLength = chunk.length;
+		int position = (totalPackets - 1) * chunkSize;
+		ensureCapacity(position + chunk.length);
+		System.arraycopy(chunk, 0, data, position, chunk.length);
 	}
 	
+	/**
+	 * grow the buffer doubling its size, without exceeding the size of the whole message.
+	 * till the last chunk is received the buffer doesn't exceed the chunks before it, then it grows to the exact size of the message
+	 * 
+	 * @param capacity needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if(capacity <= data.length) {
+			return;
+		}
+		int maxCapacity = (totalPackets - 1) * chunkSize + Math.max(lastChunkLength, 0);
+		int newCapacity = (int) Math.min(Math.max(capacity, (long) data.length * 2), maxCapacity);
+		data = Arrays.copyOf(data, newCapacity);
+	}
+	
+	private void checkMessageSize(long size) {
+		if(size > maxMessageSize) {
+			throw new IllegalArgumentException("message of "+size+" byte bigger than the max message size of "+maxMessageSize+" byte");
+		}
+	}
+
+	private static void copy(ByteBuffer source, int offset, byte[] target, int targetOffset, int length) {
+		source.position(offset);
+		source.get(target, targetOffset, length);
+		source.position(0);
+	}
+
+	public long getMessageIdMostSignificantBits() {
+		return messageIdMostSignificantBits;
+	}
+
+	public long getMessageIdLeastSignificantBits() {
+		return messageIdLeastSignificantBits;
+	}
+
+	/**
+	 * @return the message ID in the UUID format, it is built only the first time it is requested
+	 */
+	public String getMessageId() {
+		if(messageId == null) {
+			messageId = new UUID(messageIdMostSignificantBits, messageIdLeastSignificantBits).toString();
+		}
+		return messageId;
+	}
+
 	public String getClientAddress() {
 		return clientAddress;
 	}
@@ -48,30 +479,50 @@ public class Payload {
 
 	public int getMessageType() {
 		return messageType;
-	}	
-	
+	}
+
+	/**
+	 * the data of the message, the buffer is trimmed only if the last chunk is shorter than the others,
+	 * use {@link Payload#getBuffer()} and {@link Payload#getDataLength()} to read the data without the copy
+	 *
+	 * @return
+	 */
 	public byte[] getData(){
-		
-		int totalByte = totalByte();
-		byte[] data = new byte[totalByte];
-		
-		byte[] chunkByte = null;
-		int offset = 0;
-		for (int i = 0; i < chunks.length; i++) {
-			chunkByte = chunks[i].getData();
-			System.arraycopy(chunkByte, 0, data, offset, chunkByte.length);
-			offset += chunkByte.length;
-		}
-		
-		return data;
+		if(data == null) {
+			return new byte[0];
+		}
+		if(data.length == dataLength) {
+			return data;
+		}
+		return Arrays.copyOf(data, dataLength);
+	}
+
+	/**
+	 * @return the buffer with the data of the message from the position 0 to {@link Payload#getDataLength()}
+	 */
+	public byte[] getBuffer() {
+		return data != null ? data : new byte[0];
 	}
 	
+	/**
+	 * @return the amount of bytes allocated to store the chunks, included the table of the chunks received
+	 */
+	public int getAllocatedSize() {
+		return (data != null ? data.length : 0) + (lastChunk != null ? lastChunk.length : 0) + pendingBytes + parityBytes + receivedChunks.length * 8;
+	}
+
+	/**
+	 * @return the amount of bytes received
+	 */
+	public int getDataLength() {
+		return dataLength;
+	}
 
 	/**
 	 * @return true if all the chunks are received
 	 */
 	public boolean isCompleted() {
-		return totalPackets == packetsReceived();
+		return totalPackets == packetsReceived;
 	}
 
 	/**
@@ -80,25 +531,48 @@ public class Payload {
 	public boolean isExpired(long expirationTime) {
 		return (System.currentTimeMillis() - timeReceivedFirstChunk) > expirationTime;
 	}
-	
+
 	public int packetsReceived() {
-		int counter = 0;
-		for (int i = 0; i < chunks.length; i++) {
-		    if (chunks[i] != null) {
-		    	counter++;
-		    }
-		}
-		return counter;
+		return packetsReceived;
 	}
-	
-	private int totalByte() {
-		int counter = 0;
-		for (int i = 0; i < chunks.length; i++) {
-		    if (chunks[i] != null) {
-		    	counter+= chunks[i].getData().length;
-		    }
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * @return the amount of chunks given to the consumer in streaming mode
+	 */
+	public int getDeliveredChunks() {
+		return nextSequence;
+	}
+
+	/**
+	 * parity of a group of chunks waiting the chunks of the group
+	 */
+	private static class Parity {
+
+		private final int lengthsXor;
+		private final byte[] data;
+
+		private Parity(int lengthsXor, byte[] data) {
+			this.lengthsXor = lengthsXor;
+			this.data = data;
 		}
-		return counter;
 	}
-	
+
+	/**
+	 * receives the contiguous chunks of a payload in streaming mode
+	 */
+	public interface ChunkConsumer {
+
+		/**
+		 * @param payload that receives the chunk
+		 * @param sequence of the chunk
+		 * @param position of the first byte of the chunk in the message
+		 * @param chunk read only buffer with the data of the chunk, valid only during the call
+		 */
+		void accept(Payload payload, int sequence, long position, ByteBuffer chunk);
+	}
+
 }
@@ -0,0 +1,76 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+/**
+ * List of the {@link Payload} in reassembly ordered from the oldest to the newest, used to choose the payloads to discard when the {@link ReassemblyBudget} is exceeded.
+ *
+ * the links are stored directly in the payload, then add and remove cost O(1) without any allocation.
+ * the list is not thread safe, it is used only by the thread of its DatagramSequentializer
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class PayloadAgeList {
+
+	private Payload oldest;
+	private Payload newest;
+
+	/**
+	 * add the payload as the newest
+	 *
+	 * @param payload
+	 */
+	public void add(Payload payload) {
+		payload.ageNext = null;
+		payload.agePrev = newest;
+		if(newest != null) {
+			newest.ageNext = payload;
+		}else {
+			oldest = payload;
+		}
+		newest = payload;
+	}
+
+	/**
+	 * remove the payload, nothing happens if the payload is not in the list
+	 *
+	 * @param payload
+	 */
+	public void remove(Payload payload) {
+		if(payload.agePrev == null && oldest != payload) {
+			return;
+		}
+
+		if(payload.agePrev != null) {
+			payload.agePrev.ageNext = payload.ageNext;
+		}else {
+			oldest = payload.ageNext;
+		}
+		if(payload.ageNext != null) {
+			payload.ageNext.agePrev = payload.agePrev;
+		}else {
+			newest = payload.agePrev;
+		}
+		payload.ageNext = null;
+		payload.agePrev = null;
+	}
+
+	/**
+	 * @return the oldest payload or null if the list is empty
+	 */
+	public Payload oldest() {
+		return oldest;
+	}
+
+	/**
+	 * @param clientAddress
+	 * @return the oldest payload of the sender or null if there are no payloads of the sender
+	 */
+	public Payload oldest(String clientAddress) {
+		Payload payload = oldest;
+		while (payload != null && !payload.getClientAddress().equals(clientAddress)) {
+			payload = payload.ageNext;
+		}
+		return payload;
+	}
+
+}
@@ -0,0 +1,144 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel used by the {@link DatagramSequentializer} to discard the payloads that are not completed in time.
+ *
+ * the wheel is an array of slots, every slot covers one tick of time and contains a double linked list of payloads,
+ * the links are stored directly in the {@link Payload} so schedule and cancel a payload cost O(1) without any allocation.
+ * a payload is added in the slot of its expiration tick, when the wheel advances only the slots of the elapsed ticks are visited,
+ * the payloads of a slot that expire in a next round of the wheel are left in the slot.
+ *
+ * the wheel is not thread safe, it is used only by the thread of its DatagramSequentializer
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class PayloadExpirationWheel {
+
+	private final Payload[] slots;
+	private final int mask;
+	private final long tickMillis;
+
+	private long lastTick;
+	private int size;
+
+	/**
+	 * @param requestedSlots amount of slots, rounded up to the next power of two
+	 * @param tickMillis time covered by one slot
+	 * @param now current time in milliseconds
+	 */
+	public PayloadExpirationWheel(int requestedSlots, long tickMillis, long now) {
+		super();
+
+		int amount = 1;
+		while (amount < requestedSlots) {
+			amount <<= 1;
+		}
+
+		this.slots = new Payload[amount];
+		this.mask = amount - 1;
+		this.tickMillis = Math.max(1, tickMillis);
+		this.lastTick = now / this.tickMillis;
+	}
+
+	/**
+	 * add the payload in the wheel, it will expire at the expiration time
+	 *
+	 * @param payload
+	 * @param expirationTime absolute time in milliseconds
+	 */
+	public void schedule(Payload payload, long expirationTime) {
+		if(payload.wheelSlot >= 0) {
+			cancel(payload);
+		}
+
+		//the tick is rounded up, so when the slot is visited the payload is already expired.
+		//never schedule in a tick already visited, otherwise the payload wait a full round
+		long tick = Math.max((expirationTime + tickMillis - 1) / tickMillis, lastTick + 1);
+		int slot = (int) (tick & mask);
+
+		payload.expirationTime = expirationTime;
+		payload.wheelSlot = slot;
+		payload.wheelPrev = null;
+		payload.wheelNext = slots[slot];
+		if(slots[slot] != null) {
+			slots[slot].wheelPrev = payload;
+		}
+		slots[slot] = payload;
+		size++;
+	}
+
+	/**
+	 * remove the payload from the wheel, nothing happens if the payload is not scheduled
+	 *
+	 * @param payload
+	 */
+	public void cancel(Payload payload) {
+		int slot = payload.wheelSlot;
+		if(slot < 0) {
+			return;
+		}
+
+		if(payload.wheelPrev != null) {
+			payload.wheelPrev.wheelNext = payload.wheelNext;
+		}else {
+			slots[slot] = payload.wheelNext;
+		}
+		if(payload.wheelNext != null) {
+			payload.wheelNext.wheelPrev = payload.wheelPrev;
+		}
+
+		payload.wheelNext = null;
+		payload.wheelPrev = null;
+		payload.wheelSlot = -1;
+		size--;
+	}
+
+	/**
+	 * visit the slots of the ticks elapsed since the last call and remove the expired payloads
+	 *
+	 * @param now current time in milliseconds
+	 * @param onExpired called for every payload expired, the payload is already removed from the wheel
+	 * @return the amount of payloads expired
+	 */
+	public int advance(long now, Consumer<Payload> onExpired) {
+		long currentTick = now / tickMillis;
+		if(currentTick <= lastTick) {
+			return 0;
+		}
+
+		//after a full round all the slots are visited, no reason to visit them again
+		long ticks = Math.min(currentTick - lastTick, slots.length);
+		int expired = 0;
+
+		for (long tick = currentTick - ticks + 1; tick <= currentTick; tick++) {
+			Payload payload = slots[(int) (tick & mask)];
+			while (payload != null) {
+				Payload next = payload.wheelNext;
+				if(payload.expirationTime <= now) {
+					cancel(payload);
+					onExpired.accept(payload);
+					expired++;
+				}
+				payload = next;
+			}
+		}
+
+		lastTick = currentTick;
+		return expired;
+	}
+
+	/**
+	 * @return the amount of payloads in the wheel
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+}
@@ -0,0 +1,163 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+/**
+ * Map of the {@link Payload} in reassembly, the key is the 128 bit message ID stored as two long in the payload.
+ *
+ * the map uses open addressing with linear probing on a single array of payloads, the key is read directly from the payload,
+ * then no object is created to search, add or remove a payload.
+ * the removal shifts back the following payloads of the same cluster, so no tombstone is needed.
+ *
+ * the map is not thread safe, it is used only by the thread of its DatagramSequentializer
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class PayloadMap {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private Payload[] table;
+	private int mask;
+	private int size;
+	private int resizeThreshold;
+
+	public PayloadMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize amount of payloads that can be stored without resize the map
+	 */
+	public PayloadMap(int expectedSize) {
+		super();
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		table = new Payload[capacity];
+		mask = capacity - 1;
+		//the load factor is kept at 0.5 to have short clusters
+		resizeThreshold = capacity >>> 1;
+	}
+
+	private static int hash(long mostSignificantBits, long leastSignificantBits) {
+		long hash = mostSignificantBits * 0x9E3779B97F4A7C15L ^ leastSignificantBits;
+		hash ^= (hash >>> 32);
+		hash *= 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 29));
+	}
+
+	/**
+	 * @param mostSignificantBits of the message ID
+	 * @param leastSignificantBits of the message ID
+	 * @return the payload or null if the message ID is not in the map
+	 */
+	public Payload get(long mostSignificantBits, long leastSignificantBits) {
+		int index = hash(mostSignificantBits, leastSignificantBits) & mask;
+		Payload payload;
+		while ((payload = table[index]) != null) {
+			if(payload.getMessageIdMostSignificantBits() == mostSignificantBits && payload.getMessageIdLeastSignificantBits() == leastSignificantBits) {
+				return payload;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * add the payload in the map using its message ID as key
+	 *
+	 * @param payload
+	 * @return the payload previously stored with the same message ID, or null
+	 */
+	public Payload put(Payload payload) {
+		long mostSignificantBits = payload.getMessageIdMostSignificantBits();
+		long leastSignificantBits = payload.getMessageIdLeastSignificantBits();
+
+		int index = hash(mostSignificantBits, leastSignificantBits) & mask;
+		Payload current;
+		while ((current = table[index]) != null) {
+			if(current.getMessageIdMostSignificantBits() == mostSignificantBits && current.getMessageIdLeastSignificantBits() == leastSignificantBits) {
+				table[index] = payload;
+				return current;
+			}
+			index = (index + 1) & mask;
+		}
+
+		table[index] = payload;
+		if(++size > resizeThreshold) {
+			resize();
+		}
+		return null;
+	}
+
+	/**
+	 * @param mostSignificantBits of the message ID
+	 * @param leastSignificantBits of the message ID
+	 * @return the payload removed or null if the message ID is not in the map
+	 */
+	public Payload remove(long mostSignificantBits, long leastSignificantBits) {
+		int index = hash(mostSignificantBits, leastSignificantBits) & mask;
+		Payload payload;
+		while ((payload = table[index]) != null) {
+			if(payload.getMessageIdMostSignificantBits() == mostSignificantBits && payload.getMessageIdLeastSignificantBits() == leastSignificantBits) {
+				shiftBack(index);
+				size--;
+				return payload;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * fill the hole left at the index moving back the payloads of the same cluster that can't be found anymore
+	 *
+	 * @param hole
+	 */
+	private void shiftBack(int hole) {
+		int index = hole;
+		while (true) {
+			index = (index + 1) & mask;
+			Payload payload = table[index];
+			if(payload == null) {
+				break;
+			}
+
+			int home = hash(payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits()) & mask;
+			//move the payload only if its home is not between the hole and its current position
+			if(((index - home) & mask) >= ((index - hole) & mask)) {
+				table[hole] = payload;
+				hole = index;
+			}
+		}
+		table[hole] = null;
+	}
+
+	private void resize() {
+		Payload[] old = table;
+		allocate(old.length << 1);
+		for (Payload payload : old) {
+			if(payload != null) {
+				int index = hash(payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits()) & mask;
+				while (table[index] != null) {
+					index = (index + 1) & mask;
+				}
+				table[index] = payload;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+}
@@ -0,0 +1,103 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.spaghettisource.broadcastsync.message.HeartBeatFactoryInstanceId;
+
+/**
+ * Directory of the peers known by their instance ID, used to send a message directly to one node.
+ *
+ * the directory is filled by the {@link DatagramSequentializer} with the heartbeats that carry the instance ID of the sender, see {@link HeartBeatFactoryInstanceId}.
+ * a peer is forgotten when no heartbeat is received from it for the expiration time.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class PeerDirectory {
+
+	private static Logger  log = LoggerFactory.getLogger(PeerDirectory.class);
+
+	private final int serverPort;
+	private final long expirationMillis;
+	private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param serverPort port where the peers receive the messages
+	 * @param expirationMillis time after the last heartbeat when a peer is forgotten
+	 */
+	public PeerDirectory(int serverPort, long expirationMillis) {
+		super();
+		this.serverPort = serverPort;
+		this.expirationMillis = expirationMillis;
+	}
+
+	/**
+	 * register the heartbeat of a peer
+	 *
+	 * @param instanceId of the peer
+	 * @param clientAddress the IP address of the peer
+	 */
+	public void update(String instanceId, String clientAddress) {
+		if(instanceId == null || instanceId.isEmpty()) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		Peer peer = peers.get(instanceId);
+		if(peer != null && peer.address.equals(clientAddress)) {
+			peer.lastSeen = now;
+			return;
+		}
+
+		try {
+			//the address is an IP, it is never resolved by the DNS
+			peers.put(instanceId, new Peer(clientAddress, new InetSocketAddress(InetAddress.getByName(clientAddress), serverPort), now));
+		} catch (UnknownHostException cause) {
+			log.warn("invalid address "+clientAddress+" of the peer "+instanceId, cause);
+		}
+	}
+
+	/**
+	 * @param instanceId
+	 * @return the address where the peer receives the messages or null if the peer is unknown or expired
+	 */
+	public InetSocketAddress find(String instanceId) {
+		Peer peer = peers.get(instanceId);
+		if(peer == null) {
+			return null;
+		}
+		if(System.currentTimeMillis() - peer.lastSeen > expirationMillis) {
+			peers.remove(instanceId, peer);
+			return null;
+		}
+		return peer.target;
+	}
+
+	/**
+	 * @return the amount of peers in the directory, included the expired ones not yet removed
+	 */
+	public int size() {
+		return peers.size();
+	}
+
+	private static class Peer {
+
+		private final String address;
+		private final InetSocketAddress target;
+		private volatile long lastSeen;
+
+		private Peer(String address, InetSocketAddress target, long lastSeen) {
+			this.address = address;
+			this.target = target;
+			this.lastSeen = lastSeen;
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the canonical host names of the peers, used by the {@link DatagramSequentializer} to avoid the reverse DNS lookup on its thread.
+ *
+ * when the name of an address is not in the cache, or it is expired, the lookup is done by a background thread
+ * and in the meantime the textual address is used as name, the cache is bounded and the least recently used address is removed first.
+ * when the resolution is disabled the textual address is always used as name and no lookup is done.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class PeerNameResolver {
+
+	private static Logger  log = LoggerFactory.getLogger(PeerNameResolver.class);
+
+	/**
+	 * max amount of lookups waiting for the background thread
+	 */
+	private static final int MAX_PENDING_LOOKUPS = 256;
+
+	private final boolean enabled;
+	private final long ttlMillis;
+	private final Map<InetAddress, CachedName> cache;
+	private final Set<InetAddress> pending;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param enabled false to never resolve the names
+	 * @param ttlMillis time after that a name is resolved again
+	 * @param maxEntries max amount of names in the cache
+	 */
+	public PeerNameResolver(boolean enabled, long ttlMillis, int maxEntries) {
+		super();
+		this.enabled = enabled;
+		this.ttlMillis = ttlMillis;
+		this.pending = ConcurrentHashMap.newKeySet();
+		this.cache = new LinkedHashMap<InetAddress, CachedName>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<InetAddress, CachedName> eldest) {
+				return size() > maxEntries;
+			}
+		};
+
+		//the daemon thread is created only when needed and stopped when there is nothing to resolve, then no shutdown is needed
+		this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING_LOOKUPS), runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			thread.setName("PeerNameResolver");
+			return thread;
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * return the canonical host name of the address if it is known, otherwise the textual address.
+	 * this method never blocks on the DNS
+	 *
+	 * @param address
+	 * @return
+	 */
+	public String resolve(InetAddress address) {
+
+		String literal = address.getHostAddress();
+		if(!enabled) {
+			return literal;
+		}
+
+		CachedName cached;
+		synchronized (cache) {
+			cached = cache.get(address);
+		}
+
+		if(cached == null || cached.isExpired(ttlMillis)) {
+			lookup(address);
+		}
+		return cached != null ? cached.name : literal;
+	}
+
+	/**
+	 * schedule the lookup of the address on the background thread, if it is not already scheduled
+	 *
+	 * @param address
+	 */
+	private void lookup(InetAddress address) {
+		if(!pending.add(address)) {
+			return;
+		}
+
+		try {
+			executor.execute(() -> {
+				try {
+					String name = address.getCanonicalHostName();
+					synchronized (cache) {
+						cache.put(address, new CachedName(name));
+					}
+				}catch (Exception e) {
+					log.warn("impossible resolve the name of "+address.getHostAddress(), e);
+				}finally {
+					pending.remove(address);
+				}
+			});
+		}catch (RejectedExecutionException e) {
+			//too many lookups in progress, the address will be resolved at the next message
+			pending.remove(address);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the amount of names in the cache
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	private static class CachedName {
+
+		private final String name;
+		private final long resolvedTime;
+
+		private CachedName(String name) {
+			this.name = name;
+			this.resolvedTime = System.currentTimeMillis();
+		}
+
+		private boolean isExpired(long ttlMillis) {
+			return System.currentTimeMillis() - resolvedTime > ttlMillis;
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the messages of every sender detected by the {@link SenderSequenceTracker}, shared by all the DatagramSequentializer threads
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class PeerSequenceStatistics {
+
+	private final Map<String, Counters> peers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param clientAddress of the sender
+	 * @return the counters of the sender, created the first time
+	 */
+	public Counters counters(String clientAddress) {
+		return peers.computeIfAbsent(clientAddress, address -> new Counters());
+	}
+
+	/**
+	 * @return the counters of every sender by its address
+	 */
+	public Map<String, Counters> getPeers() {
+		return Collections.unmodifiableMap(peers);
+	}
+
+	/**
+	 * the counters of one sender
+	 */
+	public static class Counters {
+
+		private final LongAdder receivedMessages = new LongAdder();
+		private final LongAdder lostMessages = new LongAdder();
+		private final LongAdder reorderedMessages = new LongAdder();
+
+		void recordReceived() {
+			receivedMessages.increment();
+		}
+
+		void recordLost(long messages) {
+			lostMessages.add(messages);
+		}
+
+		void recordReordered() {
+			reorderedMessages.increment();
+		}
+
+		/**
+		 * @return the amount of messages of the sequence received
+		 */
+		public long getReceivedMessages() {
+			return receivedMessages.sum();
+		}
+
+		/**
+		 * @return the amount of messages missing in the sequence, a message received late is not counted
+		 */
+		public long getLostMessages() {
+			return lostMessages.sum();
+		}
+
+		/**
+		 * @return the amount of messages received after a message that follows them in the sequence
+		 */
+		public long getReorderedMessages() {
+			return reorderedMessages.sum();
+		}
+	}
+
+}
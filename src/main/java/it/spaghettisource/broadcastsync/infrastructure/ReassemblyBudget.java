@@ -0,0 +1,90 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Amount of bytes held by the payloads in reassembly, shared by all the {@link DatagramSequentializer} threads.
+ *
+ * there is a global budget and a budget for every sender, before to store a chunk the DatagramSequentializer verifies the budgets
+ * and if needed discards the oldest payloads to make space.
+ * the check and the acquire are not atomic then when several DatagramSequentializer are working the budgets are soft limits,
+ * they can be exceeded at most by the chunks that are being stored in the same moment.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class ReassemblyBudget {
+
+	private final long maxBytes;
+	private final long maxBytesPerSender;
+
+	private final AtomicLong usedBytes = new AtomicLong();
+	private final ConcurrentHashMap<String, AtomicLong> usedBytesBySender = new ConcurrentHashMap<>();
+
+	/**
+	 * @param maxBytes max amount of bytes held by all the payloads
+	 * @param maxBytesPerSender max amount of bytes held by the payloads of the same sender
+	 */
+	public ReassemblyBudget(long maxBytes, long maxBytesPerSender) {
+		super();
+		this.maxBytes = maxBytes;
+		this.maxBytesPerSender = maxBytesPerSender;
+	}
+
+	/**
+	 * @param bytes
+	 * @return true if the global budget can hold the bytes
+	 */
+	public boolean hasSpace(int bytes) {
+		return usedBytes.get() + bytes <= maxBytes;
+	}
+
+	/**
+	 * @param sender
+	 * @param bytes
+	 * @return true if the budget of the sender can hold the bytes
+	 */
+	public boolean hasSpace(String sender, int bytes) {
+		return getUsedBytes(sender) + bytes <= maxBytesPerSender;
+	}
+
+	public void acquire(String sender, int bytes) {
+		usedBytes.addAndGet(bytes);
+		usedBytesBySender.computeIfAbsent(sender, key -> new AtomicLong()).addAndGet(bytes);
+	}
+
+	public void release(String sender, int bytes) {
+		if(bytes == 0) {
+			return;
+		}
+		usedBytes.addAndGet(-bytes);
+		//the sender is removed when it doesn't hold anymore bytes, then the map contains only the active senders
+		usedBytesBySender.computeIfPresent(sender, (key, used) -> used.addAndGet(-bytes) <= 0 ? null : used);
+	}
+
+	/**
+	 * @return the amount of bytes held by all the payloads in reassembly
+	 */
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	/**
+	 * @param sender address of the sender
+	 * @return the amount of bytes held by the payloads in reassembly of the sender
+	 */
+	public long getUsedBytes(String sender) {
+		AtomicLong used = usedBytesBySender.get(sender);
+		return used != null ? used.get() : 0;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public long getMaxBytesPerSender() {
+		return maxBytesPerSender;
+	}
+
+}
@@ -0,0 +1,86 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the messages rebuilt by the {@link DatagramSequentializer}, shared by all the DatagramSequentializer threads
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class ReassemblyStatistics {
+
+	private final LongAdder completedMessages = new LongAdder();
+	private final LongAdder expiredPayloads = new LongAdder();
+	private final LongAdder evictedPayloads = new LongAdder();
+	private final LongAdder rejectedPayloads = new LongAdder();
+	private final LongAdder nacksSent = new LongAdder();
+	private final LongAdder recoveredChunks = new LongAdder();
+
+	public void recordCompleted() {
+		completedMessages.increment();
+	}
+
+	public void recordExpired() {
+		expiredPayloads.increment();
+	}
+	
+	public void recordEvicted() {
+		evictedPayloads.increment();
+	}
+	
+	public void recordRejected() {
+		rejectedPayloads.increment();
+	}
+	
+	public void recordNackSent() {
+		nacksSent.increment();
+	}
+	
+	public void recordRecovered(int chunks) {
+		recoveredChunks.add(chunks);
+	}
+
+	/**
+	 * @return the amount of messages rebuilt and passed to the MessageHandler
+	 */
+	public long getCompletedMessages() {
+		return completedMessages.sum();
+	}
+
+	/**
+	 * @return the amount of payloads discarded because not all the chunks are received before the expiration time
+	 */
+	public long getExpiredPayloads() {
+		return expiredPayloads.sum();
+	}
+	
+	/**
+	 * @return the amount of payloads discarded to respect the reassembly memory budget
+	 */
+	public long getEvictedPayloads() {
+		return evictedPayloads.sum();
+	}
+	
+	/**
+	 * @return the amount of datagrams refused because their message is not acceptable, like a message bigger than the max message size
+	 */
+	public long getRejectedPayloads() {
+		return rejectedPayloads.sum();
+	}
+	
+	/**
+	 * @return the amount of requests sent to the senders to retransmit the chunks lost
+	 */
+	public long getNacksSent() {
+		return nacksSent.sum();
+	}
+	
+	/**
+	 * @return the amount of chunks lost and rebuilt from the parity datagrams
+	 */
+	public long getRecoveredChunks() {
+		return recoveredChunks.sum();
+	}
+
+}
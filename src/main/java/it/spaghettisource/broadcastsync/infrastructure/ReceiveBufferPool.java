@@ -0,0 +1,95 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of {@link ReceivedDatagram} used by the {@link UdpServer} to avoid to allocate a new buffer for every datagram received.
+ *
+ * the pool is preallocated at creation time, if all the buffers are in use a new one is allocated on the fly
+ * and it will be retained by the pool only if there is still space when it is released.
+ * 
+ * a datagram is in use while it waits in the queue or it is processed by a DatagramSequentializer, 
+ * then the pool is sized to hold at least all of them and the one that the receiver is filling, see {@link #findPoolSize(int, InboundQueue)}.
+ * in this way the receiver never allocates at steady state, even when the queue is full.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class ReceiveBufferPool {
+
+	private final RingBuffer<ReceivedDatagram> pool;
+	private final int bufferSize;
+	private final boolean direct;
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param poolSize amount of buffer retained by the pool
+	 * @param bufferSize size in byte of every buffer
+	 * @param direct true to allocate direct buffer outside of the java heap
+	 */
+	public ReceiveBufferPool(int poolSize, int bufferSize, boolean direct) {
+		super();
+		this.bufferSize = bufferSize;
+		this.direct = direct;
+		//the pool never waits, the wait strategy is never used
+		this.pool = new RingBuffer<>(poolSize, false, new BusySpinWaitStrategy());
+
+		for (int i = 0; i < poolSize; i++) {
+			pool.offer(newDatagram());
+		}
+	}
+
+	/**
+	 * borrow a datagram from the pool, the buffer is cleared and ready to receive new data
+	 *
+	 * @return
+	 */
+	public ReceivedDatagram acquire() {
+		ReceivedDatagram datagram = pool.poll();
+		if(datagram==null) {
+			misses.increment();
+			datagram = newDatagram();
+		}
+		datagram.getBuffer().clear();
+		return datagram;
+	}
+
+	/**
+	 * give back a datagram to the pool, if the pool is already full the datagram is discarded
+	 *
+	 * @param datagram
+	 */
+	public void release(ReceivedDatagram datagram) {
+		pool.offer(datagram);
+	}
+
+	/**
+	 * @return the amount of datagram available in the pool
+	 */
+	public int available() {
+		return pool.size();
+	}
+
+	/**
+	 * @return the amount of datagrams allocated on the fly because the pool was empty
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @param minPoolSize amount of buffer configured
+	 * @param queue where the datagrams wait to be processed
+	 * @return the amount of buffer that covers all the datagrams in the queue, the ones processed by every worker and the one received
+	 */
+	public static int findPoolSize(int minPoolSize, InboundQueue queue) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max((long) minPoolSize, (long) queue.capacity() + queue.getWorkers() + 1));
+	}
+
+	private ReceivedDatagram newDatagram() {
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		return new ReceivedDatagram(buffer, this);
+	}
+
+}
@@ -0,0 +1,69 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A datagram received by the {@link UdpServer} and waiting to be processed by the {@link DatagramSequentializer}
+ *
+ * the raw data of the datagram are stored in a ByteBuffer, from position 0 to the limit of the buffer.
+ * When the ReceivedDatagram is borrowed from a {@link ReceiveBufferPool} it must be given back calling {@link ReceivedDatagram#release()}
+ * as soon as the data are consumed, after that the buffer can be overwritten by a new datagram
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class ReceivedDatagram {
+
+	private final ByteBuffer buffer;
+	private final ReceiveBufferPool pool;
+	private InetAddress address;
+
+	public ReceivedDatagram(ByteBuffer buffer, ReceiveBufferPool pool) {
+		super();
+		this.buffer = buffer;
+		this.pool = pool;
+	}
+
+	/**
+	 * wrap a DatagramPacket received by a DatagramSocket, the ReceivedDatagram created is not pooled
+	 *
+	 * @param packet
+	 * @return
+	 */
+	public static ReceivedDatagram wrap(DatagramPacket packet) {
+		ReceivedDatagram datagram = new ReceivedDatagram(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()).slice(), null);
+		datagram.setAddress(packet.getAddress());
+		return datagram;
+	}
+
+	/**
+	 * @return the buffer that contains the raw data of the datagram
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return the address of the sender
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	public void setAddress(InetAddress address) {
+		this.address = address;
+	}
+
+	/**
+	 * give back the datagram to the pool, if any
+	 */
+	public void release() {
+		if(pool!=null) {
+			address = null;
+			pool.release(this);
+		}
+	}
+
+}
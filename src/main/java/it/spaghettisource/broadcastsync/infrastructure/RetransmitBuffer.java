@@ -0,0 +1,136 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The RetransmitBuffer keeps the messages bigger than one datagram sent recently, then the {@link UdpClient} can send again
+ * only the chunks that a receiver lost and requested with a NACK.
+ *
+ * the buffer is bounded in bytes, when it is full the oldest messages are forgotten and the NACK for them are ignored.
+ * it is shared by all the threads that send then the access is synchronized, the lock is held only to store or find a message.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class RetransmitBuffer {
+
+	private final long capacity;
+	private long usedBytes;
+	private final LinkedHashMap<UUID, SentMessage> messages = new LinkedHashMap<>();
+
+	private final LongAdder retransmittedChunks = new LongAdder();
+	private final LongAdder missedRequests = new LongAdder();
+
+	/**
+	 * @param capacity max amount of bytes of the messages kept
+	 */
+	public RetransmitBuffer(long capacity) {
+		super();
+		this.capacity = capacity;
+	}
+
+	/**
+	 * keep a message sent, the data must not be changed anymore
+	 *
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param messageType
+	 * @param totalPackets
+	 * @param data of the message
+	 */
+	public synchronized void store(long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int messageType, int totalPackets, byte[] data) {
+		if(data.length > capacity) {
+			return;
+		}
+		messages.put(new UUID(messageIdMostSignificantBits, messageIdLeastSignificantBits), new SentMessage(messageType, totalPackets, data));
+		usedBytes += data.length;
+
+		Iterator<SentMessage> oldest = messages.values().iterator();
+		while (usedBytes > capacity) {
+			usedBytes -= oldest.next().data.length;
+			oldest.remove();
+		}
+	}
+
+	/**
+	 * @param length of the data of a message
+	 * @return true if the message fits in the buffer, a message bigger than the capacity is never kept and must not be copied
+	 */
+	public boolean canStore(long length) {
+		return length <= capacity;
+	}
+
+	/**
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @return the message or null if it is already forgotten
+	 */
+	public synchronized SentMessage find(long messageIdMostSignificantBits, long messageIdLeastSignificantBits) {
+		return messages.get(new UUID(messageIdMostSignificantBits, messageIdLeastSignificantBits));
+	}
+
+	public void recordRetransmitted(int chunks) {
+		retransmittedChunks.add(chunks);
+	}
+
+	public void recordMissed() {
+		missedRequests.increment();
+	}
+
+	/**
+	 * @return the amount of chunks sent again
+	 */
+	public long getRetransmittedChunks() {
+		return retransmittedChunks.sum();
+	}
+
+	/**
+	 * @return the amount of requests ignored because the message was already forgotten
+	 */
+	public long getMissedRequests() {
+		return missedRequests.sum();
+	}
+
+	/**
+	 * @return the amount of bytes of the messages kept
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public synchronized int size() {
+		return messages.size();
+	}
+
+	/**
+	 * a message kept by the buffer
+	 */
+	public static class SentMessage {
+
+		private final int messageType;
+		private final int totalPackets;
+		private final byte[] data;
+
+		private SentMessage(int messageType, int totalPackets, byte[] data) {
+			this.messageType = messageType;
+			this.totalPackets = totalPackets;
+			this.data = data;
+		}
+
+		public int getMessageType() {
+			return messageType;
+		}
+
+		public int getTotalPackets() {
+			return totalPackets;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free FIFO queue based on a preallocated array, used to pass the elements between the threads of the infrastructure.
+ *
+ * every slot of the array has a sequence number that tells to the producers and to the consumers if the slot can be written or read,
+ * then no lock and no allocation are needed to add or remove an element.
+ * the queue supports multiple producers and multiple consumers, when it is created for a single producer the producer side doesn't use the compare and set.
+ *
+ * the capacity is rounded up to the next power of two.
+ * when the queue is empty or full the blocking methods wait with the {@link WaitStrategy} defined at creation time
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ *
+ * @param <E> the type of the elements
+ */
+public class RingBuffer<E> {
+
+	private final Object[] buffer;
+	private final AtomicLongArray sequences;
+	private final int capacity;
+	private final int mask;
+
+	private final boolean singleProducer;
+	private final WaitStrategy waitStrategy;
+
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+
+	private final BooleanSupplier notEmpty = () -> !isEmpty();
+	private final BooleanSupplier notFull = () -> size() < capacity();
+
+	/**
+	 * @param requestedCapacity minimum amount of elements that the queue can store
+	 * @param singleProducer true if only one thread adds the elements in the queue
+	 * @param waitStrategy used when the queue is empty or full
+	 */
+	public RingBuffer(int requestedCapacity, boolean singleProducer, WaitStrategy waitStrategy) {
+		super();
+
+		int size = 1;
+		while (size < requestedCapacity) {
+			size <<= 1;
+		}
+
+		this.capacity = size;
+		this.mask = size - 1;
+		this.buffer = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+
+		this.singleProducer = singleProducer;
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * add an element at the end of the queue if there is space
+	 *
+	 * @param element
+	 * @return false if the queue is full
+	 */
+	public boolean offer(E element) {
+
+		long position = tail.get();
+		int index;
+		while (true) {
+			index = (int) position & mask;
+			long delta = sequences.get(index) - position;
+
+			if(delta == 0) {
+				//the slot is free, reserve it
+				if(singleProducer) {
+					tail.lazySet(position + 1);
+					break;
+				}else if(tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = tail.get();
+
+			}else if(delta < 0) {
+				//the slot still contains the element of the previous round, the queue is full
+				return false;
+
+			}else {
+				//another producer reserved the slot
+				position = tail.get();
+			}
+		}
+
+		buffer[index] = element;
+		sequences.lazySet(index, position + 1);
+		waitStrategy.signalAll();
+		return true;
+	}
+
+	/**
+	 * add an element at the end of the queue, waiting if the queue is full
+	 *
+	 * @param element
+	 * @throws InterruptedException
+	 */
+	public void put(E element) throws InterruptedException {
+		while (!offer(element)) {
+			waitStrategy.waitFor(notFull);
+		}
+	}
+
+	/**
+	 * remove the first element from the queue
+	 *
+	 * @return the first element or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+
+		long position = head.get();
+		while (true) {
+			int index = (int) position & mask;
+			long delta = sequences.get(index) - (position + 1);
+
+			if(delta == 0) {
+				//the slot is published, reserve it
+				if(head.compareAndSet(position, position + 1)) {
+					E element = (E) buffer[index];
+					buffer[index] = null;
+					sequences.lazySet(index, position + capacity);
+					waitStrategy.signalAll();
+					return element;
+				}
+				position = head.get();
+
+			}else if(delta < 0) {
+				//the slot is not yet published, the queue is empty
+				return null;
+
+			}else {
+				//another consumer took the slot
+				position = head.get();
+			}
+		}
+	}
+
+	/**
+	 * remove the first element from the queue, waiting if the queue is empty
+	 *
+	 * @return the first element
+	 * @throws InterruptedException
+	 */
+	public E take() throws InterruptedException {
+		E element = poll();
+		while (element == null) {
+			waitStrategy.waitFor(notEmpty);
+			element = poll();
+		}
+		return element;
+	}
+
+	/**
+	 * remove the first element from the queue, waiting at most the timeout if the queue is empty
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return the first element or null if the timeout is elapsed
+	 * @throws InterruptedException
+	 */
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E element = poll();
+		while (element == null) {
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0 || !waitStrategy.waitFor(notEmpty, remaining)) {
+				return null;
+			}
+			element = poll();
+		}
+		return element;
+	}
+	
+	/**
+	 * remove at most maxElements from the queue and add them to the collection, without waiting
+	 *
+	 * @param target collection where the elements are added
+	 * @param maxElements
+	 * @return the amount of elements transferred
+	 */
+	public int drainTo(Collection<? super E> target, int maxElements) {
+		int count = 0;
+		E element;
+		while (count < maxElements && (element = poll()) != null) {
+			target.add(element);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * remove all the elements from the queue passing them to the consumer
+	 *
+	 * @param consumer
+	 * @return the amount of elements removed
+	 */
+	public int drain(Consumer<? super E> consumer) {
+		int count = 0;
+		E element;
+		while ((element = poll()) != null) {
+			consumer.accept(element);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the amount of elements in the queue, the value is approximated when other threads are using the queue
+	 */
+	public int size() {
+		long currentHead = head.get();
+		long size = tail.get() - currentHead;
+		if(size < 0) {
+			return 0;
+		}
+		return (int) Math.min(size, capacity);
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+}
@@ -0,0 +1,19 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+/**
+ * define what the {@link UdpSender} does with a message sent asynchronously when its queue is full
+ * 
+ *  - REJECT: the message is not sent and its future completes exceptionally
+ *  - BLOCK: the caller waits till there is space in the queue
+ *  - DROP_OLDEST: the oldest message in the queue is discarded, its future completes exceptionally, to make space for the new message
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public enum SendOverloadPolicy {
+
+	REJECT,
+	BLOCK,
+	DROP_OLDEST;
+	
+}
@@ -0,0 +1,210 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+
+/**
+ * The SendPacer spaces the datagrams of the large messages, then the receivers are not flooded by a burst that overflows their socket buffer
+ * and makes lose the whole message.
+ *
+ * it works as a token bucket limited in bytes per second and in datagrams per second, implemented as a timeline:
+ * every datagram books the time it costs at the configured rate and the sender waits until its time arrives.
+ * the timeline can stay in the past at most the time of the burst, then after a pause the sender can send a burst of datagrams without waiting.
+ * the booking is a CAS on the timeline, the threads that send don't lock.
+ *
+ * in adaptive mode the rate is reduced by half every time that the receivers report a loss and increased slowly when they report no loss (AIMD),
+ * the rate never goes over the configured one. with the flow control the reports are given by the {@link FlowController} at every heartbeat,
+ * without it the report is built by the pacer itself every {@link #NACK_REPORT_INTERVAL_MILLIS}: a loss if a NACK was received in the interval, 
+ * no loss otherwise. then without the flow control the adaptive mode needs the retransmission, that sends the NACKs.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class SendPacer {
+
+	/**
+	 * the adaptive rate never goes below this fraction of the configured rate
+	 */
+	public static final double MIN_RATE_RATIO = 1.0 / 64;
+
+	/**
+	 * fraction of the configured rate recovered at every report without loss
+	 */
+	public static final double RATE_INCREASE_RATIO = 1.0 / 20;
+
+	/**
+	 * interval of the reports built from the NACKs received when the flow control is disabled
+	 */
+	public static final long NACK_REPORT_INTERVAL_MILLIS = 100;
+
+	private final long bytesPerSecond;
+	private final long packetsPerSecond;
+	private final long burstNanos;
+	private final boolean adaptive;
+	private final boolean nackReports;
+	private final AtomicBoolean nackReceived = new AtomicBoolean();
+	private final AtomicLong nextNackReport = new AtomicLong(System.nanoTime());
+
+	private volatile double rateRatio = 1.0;
+	private final AtomicLong timeline = new AtomicLong(System.nanoTime());
+
+	public SendPacer(BroadCastSyncConfig config) {
+		this(config.getPacingBytesPerSecond(), config.getPacingPacketsPerSecond(), config.getPacingBurstPackets(), config.getDatagramPacketBufferSize(), config.isEnableAdaptivePacing() || config.isEnableFlowControl(), !config.isEnableFlowControl());
+	}
+
+	/**
+	 * @param bytesPerSecond max bytes sent per second, 0 for no limit
+	 * @param packetsPerSecond max datagrams sent per second, 0 for no limit
+	 * @param burstPackets amount of full datagrams that can be sent without waiting after a pause
+	 * @param datagramSize size of a full datagram
+	 * @param adaptive true to adapt the rate to the loss reported by the receivers
+	 */
+	public SendPacer(long bytesPerSecond, long packetsPerSecond, int burstPackets, int datagramSize, boolean adaptive) {
+		this(bytesPerSecond, packetsPerSecond, burstPackets, datagramSize, adaptive, false);
+	}
+
+	/**
+	 * @param bytesPerSecond max bytes sent per second, 0 for no limit
+	 * @param packetsPerSecond max datagrams sent per second, 0 for no limit
+	 * @param burstPackets amount of full datagrams that can be sent without waiting after a pause
+	 * @param datagramSize size of a full datagram
+	 * @param adaptive true to adapt the rate to the loss reported by the receivers
+	 * @param nackReports true if the reports are built from the NACKs received, false if they are given by the {@link FlowController}
+	 */
+	public SendPacer(long bytesPerSecond, long packetsPerSecond, int burstPackets, int datagramSize, boolean adaptive, boolean nackReports) {
+		super();
+		this.bytesPerSecond = bytesPerSecond;
+		this.packetsPerSecond = packetsPerSecond;
+		this.adaptive = adaptive;
+		this.nackReports = adaptive && nackReports;
+		this.burstNanos = Math.max(0, burstPackets) * cost(datagramSize, 1.0);
+	}
+
+	/**
+	 * @param bytes
+	 * @param ratio of the configured rate
+	 * @return the time in nanoseconds that a datagram of this size costs at the rate
+	 */
+	private long cost(int bytes, double ratio) {
+		long cost = 0;
+		if(bytesPerSecond > 0) {
+			cost = (long) (bytes * 1_000_000_000.0 / (bytesPerSecond * ratio));
+		}
+		if(packetsPerSecond > 0) {
+			cost = Math.max(cost, (long) (1_000_000_000.0 / (packetsPerSecond * ratio)));
+		}
+		return cost;
+	}
+
+	/**
+	 * wait until the datagram can be sent at the current rate
+	 *
+	 * @param bytes size of the datagram
+	 */
+	public void acquire(int bytes) {
+		long now = System.nanoTime();
+		long start = reserve(bytes, now);
+
+		//wait the booked time, an interrupt stops the wait and the send that follows will fail
+		long waitNanos = start - now;
+		while (waitNanos > 0 && !Thread.currentThread().isInterrupted()) {
+			LockSupport.parkNanos(waitNanos);
+			waitNanos = start - System.nanoTime();
+		}
+	}
+
+	/**
+	 * book the time of a datagram sent immediately, the thread doesn't wait but the datagrams that follow are delayed by it.
+	 * used by the threads that must never block, like the ones that send again the chunks requested by a NACK
+	 *
+	 * @param bytes size of the datagram
+	 */
+	public void book(int bytes) {
+		reserve(bytes, System.nanoTime());
+	}
+
+	/**
+	 * @param bytes size of the datagram
+	 * @param now
+	 * @return the time in nanoseconds booked for the datagram on the timeline
+	 */
+	private long reserve(int bytes, long now) {
+		reportNacks(now);
+		long cost = cost(bytes, rateRatio);
+		if(cost == 0) {
+			return now;
+		}
+
+		long start;
+		long current;
+		do {
+			current = timeline.get();
+			start = Math.max(current, now - burstNanos);
+		} while (!timeline.compareAndSet(current, start + cost));
+		return start;
+	}
+
+	/**
+	 * a receiver lost some datagrams and requested them again, the rate is reduced at the next report built from the NACKs
+	 */
+	public void onNackReceived() {
+		if(nackReports) {
+			nackReceived.set(true);
+			reportNacks(System.nanoTime());
+		}
+	}
+
+	/**
+	 * build the report of the interval elapsed from the NACKs received, only one thread builds it
+	 *
+	 * @param now
+	 */
+	private void reportNacks(long now) {
+		if(!nackReports) {
+			return;
+		}
+		long next = nextNackReport.get();
+		if(now - next >= 0 && nextNackReport.compareAndSet(next, now + TimeUnit.MILLISECONDS.toNanos(NACK_REPORT_INTERVAL_MILLIS))) {
+			onLossFeedback(nackReceived.getAndSet(false));
+		}
+	}
+
+	/**
+	 * report of the receivers, ignored if the pacer is not adaptive
+	 *
+	 * @param loss true if the receivers lost datagrams since the last report
+	 */
+	public void onLossFeedback(boolean loss) {
+		if(!adaptive) {
+			return;
+		}
+		if(loss) {
+			rateRatio = Math.max(MIN_RATE_RATIO, rateRatio / 2);
+		}else {
+			rateRatio = Math.min(1.0, rateRatio + RATE_INCREASE_RATIO);
+		}
+	}
+
+	/**
+	 * @return the bytes per second currently allowed, 0 if there is no limit on the bytes
+	 */
+	public long getCurrentBytesPerSecond() {
+		return (long) (bytesPerSecond * rateRatio);
+	}
+
+	/**
+	 * @return the datagrams per second currently allowed, 0 if there is no limit on the datagrams
+	 */
+	public long getCurrentPacketsPerSecond() {
+		return (long) (packetsPerSecond * rateRatio);
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+}
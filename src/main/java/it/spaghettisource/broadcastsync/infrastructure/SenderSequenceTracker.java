@@ -0,0 +1,222 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+
+/**
+ * The SenderSequenceTracker follows the sequences of the messages of every sender, see {@link MessageSequence}, 
+ * it detects the messages lost and the messages received out of order and counts them in the {@link PeerSequenceStatistics}.
+ *
+ * in ordered mode a message received before the messages that precede it is retained till they arrive, at most {@link BroadCastSyncConfig#getReorderWaitMillis()}, 
+ * then the messages missing are considered lost and the messages retained are delivered. a message that arrives after it was considered lost is delivered anyway.
+ * at most {@link SenderSequenceTracker#MAX_PENDING_MESSAGES} messages are retained for every sequence, when they are more the wait ends immediately.
+ *
+ * a sequence not received for the peer expiration time is forgotten, if the sender sends again its next message starts the sequence as the first one.
+ * the tracker is not thread safe, it is used only by the thread of its DatagramSequentializer, 
+ * then all the datagrams of a sender must be routed to the same DatagramSequentializer.
+ *
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class SenderSequenceTracker {
+
+	/**
+	 * max amount of messages retained for every sequence in ordered mode
+	 */
+	public static final int MAX_PENDING_MESSAGES = 1024;
+
+	/**
+	 * placeholder of a message retained but already delivered
+	 */
+	private static final Runnable NO_DELIVERY = () -> {};
+
+	private final boolean ordered;
+	private final long reorderWaitMillis;
+	private final long expirationMillis;
+	private final PeerSequenceStatistics statistics;
+
+	private final Map<Long, Sequence> sequences = new HashMap<>();
+	private int pendingSequences;
+	private long nextExpirationCheck;
+
+	public SenderSequenceTracker(BroadCastSyncConfig config, PeerSequenceStatistics statistics) {
+		this(config.isOrderedDelivery(), config.getReorderWaitMillis(), config.getPeerExpirationMillis(), statistics);
+	}
+
+	/**
+	 * @param ordered true to deliver the messages of every sequence in order
+	 * @param reorderWaitMillis max time a message waits the messages that precede it
+	 * @param expirationMillis time after which a sequence not received is forgotten
+	 * @param statistics
+	 */
+	public SenderSequenceTracker(boolean ordered, long reorderWaitMillis, long expirationMillis, PeerSequenceStatistics statistics) {
+		super();
+		this.ordered = ordered;
+		this.reorderWaitMillis = reorderWaitMillis;
+		this.expirationMillis = expirationMillis;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * register a message of a sequence and deliver it, in ordered mode the delivery can be postponed
+	 *
+	 * @param clientAddress of the sender
+	 * @param messageIdMostSignificantBits that identify the sequence
+	 * @param messageIdLeastSignificantBits that contain the position of the message in the sequence
+	 * @param delivery that gives the message to the MessageHandler, null if the message is already delivered
+	 * @param now
+	 */
+	public void receive(String clientAddress, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, Runnable delivery, long now) {
+
+		long position = DatagramPacketDataProtocol.findSequence(messageIdLeastSignificantBits);
+		Sequence sequence = sequences.get(messageIdMostSignificantBits);
+		if(sequence == null) {
+			sequence = new Sequence(statistics.counters(clientAddress), position);
+			sequences.put(messageIdMostSignificantBits, sequence);
+		}
+		sequence.lastReceived = now;
+		sequence.counters.recordReceived();
+
+		if(position == sequence.next) {
+			sequence.next++;
+			run(delivery);
+			if(sequence.pending != null) {
+				//a message that follows it is already received
+				sequence.counters.recordReordered();
+				deliverPending(sequence, now);
+			}
+
+		}else if(position > sequence.next) {
+			if(!ordered) {
+				sequence.skip(position);
+				sequence.next++;
+				run(delivery);
+				return;
+			}
+			if(sequence.pending == null) {
+				sequence.pending = new TreeMap<>();
+				sequence.deadline = now + reorderWaitMillis;
+				pendingSequences++;
+			}
+			sequence.pending.putIfAbsent(position, delivery != null ? delivery : NO_DELIVERY);
+			if(sequence.pending.size() > MAX_PENDING_MESSAGES) {
+				sequence.skip(sequence.pending.firstKey());
+				deliverPending(sequence, now);
+			}
+
+		}else {
+			//received after a message that follows it, it was already counted as lost
+			sequence.counters.recordReordered();
+			if(sequence.missing > 0) {
+				sequence.missing--;
+				sequence.counters.recordLost(-1);
+			}
+			run(delivery);
+		}
+	}
+
+	/**
+	 * deliver the messages retained whose wait is expired and forget the sequences not received for the expiration time
+	 *
+	 * @param now
+	 */
+	public void flush(long now) {
+		if(pendingSequences == 0 && now < nextExpirationCheck) {
+			return;
+		}
+		boolean expirationCheck = now >= nextExpirationCheck;
+		if(expirationCheck) {
+			nextExpirationCheck = now + expirationMillis;
+		}
+
+		Iterator<Sequence> iterator = sequences.values().iterator();
+		while (iterator.hasNext()) {
+			Sequence sequence = iterator.next();
+			if(sequence.pending != null && now >= sequence.deadline) {
+				sequence.skip(sequence.pending.firstKey());
+				deliverPending(sequence, now);
+			}
+			if(expirationCheck && sequence.pending == null && now - sequence.lastReceived > expirationMillis) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * deliver the messages retained that follow the last message delivered without gaps
+	 *
+	 * @param sequence
+	 * @param now
+	 */
+	private void deliverPending(Sequence sequence, long now) {
+		Runnable delivery;
+		while ((delivery = sequence.pending.remove(sequence.next)) != null) {
+			sequence.next++;
+			run(delivery);
+		}
+		if(sequence.pending.isEmpty()) {
+			sequence.pending = null;
+			pendingSequences--;
+		}else {
+			//the wait starts again for the next gap
+			sequence.deadline = now + reorderWaitMillis;
+		}
+	}
+
+	private static void run(Runnable delivery) {
+		if(delivery != null) {
+			delivery.run();
+		}
+	}
+
+	/**
+	 * @return true if the messages are delivered in order
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * @return the amount of sequences followed
+	 */
+	public int size() {
+		return sequences.size();
+	}
+
+	/**
+	 * the state of the sequence of one sender
+	 */
+	private static class Sequence {
+
+		private final PeerSequenceStatistics.Counters counters;
+		private long next;
+		private long missing;
+		private long lastReceived;
+		private TreeMap<Long, Runnable> pending;
+		private long deadline;
+
+		private Sequence(PeerSequenceStatistics.Counters counters, long first) {
+			this.counters = counters;
+			this.next = first;
+		}
+
+		/**
+		 * consider lost the messages till the position
+		 *
+		 * @param position of the next message available
+		 */
+		private void skip(long position) {
+			long lost = position - next;
+			if(lost > 0) {
+				missing += lost;
+				counters.recordLost(lost);
+				next = position;
+			}
+		}
+	}
+
+}
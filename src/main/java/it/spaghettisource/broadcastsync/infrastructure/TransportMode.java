@@ -0,0 +1,20 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+/**
+ * define how the datagrams are delivered to the other nodes
+ * 
+ *  - BROADCAST: the datagrams are sent to the broadcast address, every host of the network receives and processes them
+ *  - MULTICAST: the datagrams are sent to a multicast group, only the nodes that joined the group receive them and the switches can prune the traffic, 
+ *    every logical channel can use its own group, see {@link MulticastGroups}
+ *  - UNICAST: every datagram is sent to each node of a static list of peers, for the networks that block broadcast and multicast
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public enum TransportMode {
+
+	BROADCAST,
+	MULTICAST,
+	UNICAST;
+	
+}
@@ -2,12 +2,24 @@ package it.spaghettisource.broadcastsync.infrastructure;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.PortUnreachableException;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +35,41 @@ import it.spaghettisource.broadcastsync.serializer.StringSeralizer;
 /**
  * The UdpClient is able to send message on the network converting them automatically to the BroadCastSync data protocol
  * 
+ * the client doesn't lock, several threads can send in the same moment: the datagrams are sent on a pool of DatagramChannel 
+ * and every thread always uses the same channel, then all the packets of a message are sent in order on one channel.
+ * the first channel is bound on the client port, the others on a port chosen by the system.
+ * a channel is closed by the JDK when the thread that is sending is interrupted, in this case the channel is replaced with a new one.
+ * 
+ * the datagrams are encoded one by one in a buffer of the thread and sent as soon as they are built, 
+ * then sending a message doesn't allocate memory for the datagrams.
+ * 
+ * when the bundling is enabled the small data messages are packed in one datagram by the {@link MessageBundler}, 
+ * the bundle is sent before any other data message to keep the order of the messages.
+ * 
+ * the messages in ByteBuffer, like a direct buffer or a memory mapped file, are fragmented directly from the buffers without copying them on the heap.
+ * 
+ * in {@link TransportMode#MULTICAST} the messages are sent to the default multicast group, or to the group of a logical channel 
+ * when they are sent with a channel, see {@link MulticastGroups}.
+ * 
+ * in {@link TransportMode#UNICAST} every datagram is encoded once and written to each static peer. 
+ * a message can also be sent only to one peer, found by its instance ID in the {@link PeerDirectory}.
+ * the fan out is not a batched non blocking write: the JDK has no sendmmsg and all the peers share the send buffer of the socket,
+ * then a non blocking channel would only move the wait from the send to a selector. the batching is the encode done once for all the peers,
+ * the writes are blocking and done one peer after the other on the channel of the thread, the threads that send don't wait each other.
+ * 
+ * when the sender sequence is enabled the messages sent to the same destination are numbered in their message ID, see {@link MessageSequence}.
+ * 
+ * when the forward error correction is enabled every group of datagrams of a large message is followed by a parity datagram, 
+ * then the receivers rebuild one datagram lost in each group without any request.
+ * 
+ * when the retransmission is enabled the messages bigger than one datagram are kept in the {@link RetransmitBuffer}, 
+ * a receiver that lost some chunks requests them with a NACK and they are sent again only to it.
+ * 
+ * when the pacing is enabled the datagrams of the messages bigger than one datagram are spaced by the {@link SendPacer}.
+ * with the flow control all the datagrams of the data messages are spaced, the rate is adapted by the {@link FlowController}.
+ * 
+ * the datagrams are encoded with the version of the header configured, with the version 2 the message IDs are compact, see {@link DatagramPacketDataProtocol}.
+ * 
  * @author Alessandro D'Ottavio
  * @version 1.0
  */
@@ -30,132 +77,729 @@ public class UdpClient {
 	
 	private static Logger  log = LoggerFactory.getLogger(UdpClient.class);
 	
+	/**
+	 * size of the message ID and of the amount of sequences at the beginning of a NACK
+	 */
+	public static final int NACK_HEADER_SIZE = 20;
+	
 	private BroadCastSyncConfig config;
 	private ExceptionFactory exceptionFactory;
 	
-	private DatagramSocket clientSocket;
+	private volatile DatagramChannel[] channels;
+	private volatile boolean running;
 	private InetAddress broadcastAddress;
+	private InetSocketAddress[] defaultTargets;
+	private MulticastGroups multicastGroups;
+	private Map<String, InetSocketAddress[]> channelTargets;
+	private Map<InetSocketAddress[], MessageSequence> sequences;
 	private InetAddress clientAddress;
 	
 	private StringSeralizer stringSeralizer;
 	private ObjectSerializer<Serializable> objectSerializer;	
 	
+	private ThreadLocal<ByteBuffer> sendBuffers;
+	private ThreadLocal<ByteBuffer> parityBuffers;
+	private int packetDataSize;
+	private int wireProtocolVersion;
+	private MessageBundler bundler;
+	private PeerDirectory peerDirectory;
+	private RetransmitBuffer retransmitBuffer;
+	private SendPacer pacer;
+	
 	public UdpClient(BroadCastSyncConfig config, ExceptionFactory exceptionFactory) {
+		this(config, exceptionFactory, new PeerDirectory(config.getServerPort(), config.getPeerExpirationMillis()));
+	}
+	
+	/**
+	 * @param config
+	 * @param exceptionFactory
+	 * @param peerDirectory where the peers are found to send a message to a single node
+	 */
+	public UdpClient(BroadCastSyncConfig config, ExceptionFactory exceptionFactory, PeerDirectory peerDirectory) {
 		super();
 		this.config = config;
 		this.exceptionFactory = exceptionFactory;
+		this.peerDirectory = peerDirectory;
 		
 		this.stringSeralizer = new StringSeralizer(exceptionFactory);
 		this.objectSerializer = new ObjectSerializer<>(exceptionFactory);
 		
+		if(config.isEnablePacing() || config.isEnableFlowControl()) {
+			this.pacer = new SendPacer(config);
+		}
+		if(config.isEnableAdaptivePacing() && !config.isEnableFlowControl() && !config.isEnableRetransmission()) {
+			log.warn("the adaptive pacing needs the retransmission or the flow control, no loss is reported to the pacer");
+		}
+		if(config.isEnableRetransmission()) {
+			this.retransmitBuffer = new RetransmitBuffer(config.getRetransmitBufferSize());
+		}
+		this.wireProtocolVersion = config.getWireProtocolVersion() == DatagramPacketDataProtocol.VERSION_2 ? DatagramPacketDataProtocol.VERSION_2 : DatagramPacketDataProtocol.VERSION_1;
+		//with the forward error correction the datagrams leave space for the header of the parity
+		this.packetDataSize = config.getDatagramPacketBufferSize() - DatagramPacketDataProtocol.HEADER_SIZE;
+		if(config.isEnableFec()) {
+			this.packetDataSize -= DatagramPacketDataProtocol.FEC_HEADER_SIZE;
+			this.parityBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(packetDataSize));
+		}
+		//the bundle is filled up to the data of one datagram
+		if(config.isEnableBundling()) {
+			this.bundler = new MessageBundler(config, this);
+		}
+		this.sendBuffers = ThreadLocal.withInitial(() -> config.isUseDirectBuffer() ? ByteBuffer.allocateDirect(config.getDatagramPacketBufferSize()) : ByteBuffer.allocate(config.getDatagramPacketBufferSize()));
 	}
 	
 	public void startClient() throws BroadCastSyncRuntimeException{
 
-		//prepare the broadcast address
-		try {
-			broadcastAddress = InetAddress.getByName(config.getBroadcastAddress());
-		} catch (UnknownHostException cause) {
-			BroadCastSyncRuntimeException ex = exceptionFactory.getBroadcastAddressCannotBeResolved(cause,config.getBroadcastAddress());
-			log.error(ex.getLocalizedMessage(),ex);
-			throw ex;
+		//prepare the address where the messages are sent
+		if(config.getTransportMode() == TransportMode.MULTICAST) {
+			multicastGroups = new MulticastGroups(config, exceptionFactory);
+			defaultTargets = new InetSocketAddress[] {new InetSocketAddress(multicastGroups.getDefaultGroup(), config.getServerPort())};
+			channelTargets = new HashMap<>();
+			for (Map.Entry<String, InetAddress> channel : multicastGroups.getChannelGroups().entrySet()) {
+				channelTargets.put(channel.getKey(), new InetSocketAddress[] {new InetSocketAddress(channel.getValue(), config.getServerPort())});
+			}
+		}else if(config.getTransportMode() == TransportMode.UNICAST) {
+			defaultTargets = resolveStaticPeers();
+			if(defaultTargets.length == 0) {
+				log.warn("the transport is UNICAST but there are no static peers, the messages are not received by any node");
+			}
+		}else {
+			try {
+				broadcastAddress = InetAddress.getByName(config.getBroadcastAddress());
+			} catch (UnknownHostException cause) {
+				BroadCastSyncRuntimeException ex = exceptionFactory.getBroadcastAddressCannotBeResolved(cause,config.getBroadcastAddress());
+				log.error(ex.getLocalizedMessage(),ex);
+				throw ex;
+			}
+			defaultTargets = new InetSocketAddress[] {new InetSocketAddress(broadcastAddress, config.getServerPort())};
 		}
 		
-		//get the local host address
-		try {
-			clientAddress = InetAddress.getLocalHost();
-		} catch (UnknownHostException cause) {
-			BroadCastSyncRuntimeException ex = exceptionFactory.getLocalHostNameCannotBeResolved(cause);
-			log.error(ex.getLocalizedMessage(),ex);
-			throw ex;
+		//every destination has its own sequence, a receiver of a channel doesn't see the messages of the other channels as lost
+		if(config.isEnableSenderSequence()) {
+			sequences = new IdentityHashMap<>();
+			sequences.put(defaultTargets, newMessageSequence());
+			if(channelTargets != null) {
+				for (InetSocketAddress[] targets : channelTargets.values()) {
+					sequences.put(targets, newMessageSequence());
+				}
+			}
+		}
+		
+		//get the local host address, in multicast the address of the interface used to send
+		if(multicastGroups != null) {
+			clientAddress = multicastGroups.getInterfaceAddress();
+		}else {
+			try {
+				clientAddress = InetAddress.getLocalHost();
+			} catch (UnknownHostException cause) {
+				BroadCastSyncRuntimeException ex = exceptionFactory.getLocalHostNameCannotBeResolved(cause);
+				log.error(ex.getLocalizedMessage(),ex);
+				throw ex;
+			}
 		}
 
-		//create the DatagramSocket used by the client
+		//create the pool of DatagramChannel used by the client
+		DatagramChannel[] pool = new DatagramChannel[Math.max(1, config.getSenderChannels())];
 		try {
-			//socket = new DatagramSocket();			
-			clientSocket = new DatagramSocket(config.getClientPort(),clientAddress);
-		}catch (SocketException cause) {
+			for (int i = 0; i < pool.length; i++) {
+				pool[i] = openChannel(i);
+			}
+		}catch (IOException cause) {
+			close(pool);
 			BroadCastSyncRuntimeException ex = exceptionFactory.getImpossibleOpenDatagramSocket(cause,config.getClientPort());
 			log.error(ex.getLocalizedMessage(),ex);
 			throw ex;
 
 		} 
+		channels = pool;
+		running = true;
 		
+		if(bundler!=null) {
+			bundler.startBundler();
+		}
+	}
+	
+	/**
+	 * @return the address of every static peer, a peer without port receives on the server port
+	 * @throws BroadCastSyncRuntimeException if a peer can't be resolved
+	 */
+	private InetSocketAddress[] resolveStaticPeers() throws BroadCastSyncRuntimeException{
+		List<String> peers = config.getStaticPeers() != null ? config.getStaticPeers() : Collections.emptyList();
+		InetSocketAddress[] targets = new InetSocketAddress[peers.size()];
+		for (int i = 0; i < targets.length; i++) {
+			String peer = peers.get(i).trim();
+			int separator = peer.lastIndexOf(':');
+			try {
+				String host = separator < 0 ? peer : peer.substring(0, separator);
+				int port = separator < 0 ? config.getServerPort() : Integer.parseInt(peer.substring(separator + 1));
+				targets[i] = new InetSocketAddress(InetAddress.getByName(host), port);
+			} catch (UnknownHostException | IllegalArgumentException cause) {
+				BroadCastSyncRuntimeException ex = exceptionFactory.getPeerCannotBeResolved(cause, peer);
+				log.error(ex.getLocalizedMessage(),ex);
+				throw ex;
+			}
+		}
+		return targets;
 	}
 	
 	public void shutdown() {
-		if(clientSocket!=null) {
-			clientSocket.close();
+		//the last bundle is sent before to close the channels
+		if(bundler!=null && running) {
+			bundler.shutdown();
+		}
+		running = false;
+		if(channels!=null) {
+			close(channels);
 		}
 	}
 	
-	public synchronized void sendHeartBeatCommand() throws BroadCastSyncRuntimeException{
-		sendCommandMessage(MessageType.MESSAGE_TYPE_CMD_HEARTBEAT,broadcastAddress);
+	/**
+	 * @param index of the channel in the pool, the first one is bound on the client port
+	 * @return
+	 * @throws IOException
+	 */
+	private DatagramChannel openChannel(int index) throws IOException {
+		DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		try {
+			if(multicastGroups != null) {
+				channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, multicastGroups.getNetworkInterface());
+				channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, config.getMulticastTimeToLive());
+				channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+			}else {
+				channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+			}
+			channel.bind(new InetSocketAddress(clientAddress, index == 0 ? config.getClientPort() : 0));
+		}catch (IOException cause) {
+			channel.close();
+			throw cause;
+		}
+		return channel;
+	}
+	
+	/**
+	 * replace a channel closed because the thread that was using it is interrupted, then the other threads can continue to send.
+	 * it is a rare event so a lock is acceptable
+	 * 
+	 * @param closed
+	 */
+	private synchronized void replaceChannel(DatagramChannel closed) {
+		DatagramChannel[] pool = channels;
+		for (int i = 0; running && i < pool.length; i++) {
+			if(pool[i] == closed) {
+				try {
+					DatagramChannel[] newPool = pool.clone();
+					newPool[i] = openChannel(i);
+					channels = newPool;
+				} catch (IOException cause) {
+					log.error("impossible replace the DatagramChannel closed by an interrupt", cause);
+				}
+				return;
+			}
+		}
+	}
+	
+	private static void close(DatagramChannel[] pool) {
+		for (DatagramChannel channel : pool) {
+			if(channel!=null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					log.warn("impossible close the DatagramChannel", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * the channel of the current thread, a thread always uses the same channel
+	 * 
+	 * @return
+	 */
+	private DatagramChannel channel() {
+		DatagramChannel[] pool = channels;
+		return pool[(int) (Thread.currentThread().getId() % pool.length)];
+	}
+	
+	/**
+	 * @return the messages kept to retransmit the chunks lost, null if {@link BroadCastSyncConfig#isEnableRetransmission()} is false
+	 */
+	public RetransmitBuffer getRetransmitBuffer() {
+		return retransmitBuffer;
+	}
+	
+	/**
+	 * @return the max amount of data sent in one datagram, smaller when the forward error correction is enabled
+	 */
+	public int getPacketDataSize() {
+		return packetDataSize;
+	}
+	
+	/**
+	 * @return the max amount of sequences requested by one NACK, the NACK must fit in one datagram
+	 */
+	public int getMaxNackSequences() {
+		return Math.max(1, (packetDataSize - NACK_HEADER_SIZE) / 4);
+	}
+	
+	/**
+	 * @return the pacer of the large messages, null if {@link BroadCastSyncConfig#isEnablePacing()} and {@link BroadCastSyncConfig#isEnableFlowControl()} are false
+	 */
+	public SendPacer getPacer() {
+		return pacer;
 	}
 	
-	public synchronized void sendHeartBeatCommandWithData(byte[] data) throws BroadCastSyncRuntimeException{
-		sendMessage(data, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT,broadcastAddress);
+	public void sendHeartBeatCommand() throws BroadCastSyncRuntimeException{
+		sendCommandMessage(MessageType.MESSAGE_TYPE_CMD_HEARTBEAT,defaultTargets);
+	}
+	
+	public void sendHeartBeatCommandWithData(byte[] data) throws BroadCastSyncRuntimeException{
+		sendMessage(data, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT,defaultTargets);
 	}	
+	
+	/**
+	 * send the heartbeat with the flow control state of this node
+	 * 
+	 * @param report built by the {@link FlowController}
+	 * @param data of the heartbeat, null for a command heartbeat
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void sendHeartBeatWithFlowControl(byte[] report, byte[] data) throws BroadCastSyncRuntimeException{
+		byte[] message = report;
+		if(data != null) {
+			message = Arrays.copyOf(report, report.length + data.length);
+			System.arraycopy(data, 0, message, report.length, data.length);
+		}
+		sendMessage(message, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT_FLOW_CONTROL,defaultTargets);
+	}
 
-	public synchronized void sendMessage(byte[] data) throws BroadCastSyncRuntimeException{
-		sendMessage(data, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY,broadcastAddress);
+	public void sendMessage(byte[] data) throws BroadCastSyncRuntimeException{
+		sendMessage(data, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY,defaultTargets);
 	}
 
-	public synchronized void sendMessage(String data) throws BroadCastSyncRuntimeException{
-		sendMessage(stringSeralizer.serialize(data), MessageType.MESSAGE_TYPE_DATA_UTF8_STRING,broadcastAddress);
+	public void sendMessage(String data) throws BroadCastSyncRuntimeException{
+		sendMessage(stringSeralizer.serialize(data), MessageType.MESSAGE_TYPE_DATA_UTF8_STRING,defaultTargets);
 	}
 	
-	public synchronized <T extends Serializable> void sendMessage(T object) throws BroadCastSyncRuntimeException, BroadCastSyncExceptionSerializeData{
-		sendMessage(objectSerializer.serialize(object), MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT,broadcastAddress);
+	public <T extends Serializable> void sendMessage(T object) throws BroadCastSyncRuntimeException, BroadCastSyncExceptionSerializeData{
+		sendMessage(objectSerializer.serialize(object), MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT,defaultTargets);
 	}
-
-	private void sendCommandMessage(int messageType,InetAddress address) throws BroadCastSyncRuntimeException{
-		
-		//prepare the packets
-		DatagramPacket datagramPacket = DatagramPacketDataProtocol.buildCommandDatagramPacket(address, config.getServerPort(), config.getDatagramPacketBufferSize(), messageType);
-		
-		try {
-
-			clientSocket.send(datagramPacket);
-
-		} catch (PortUnreachableException cause) {
-        	//this error should never be received, the DatagramSocket send messages on broadcast
-        	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+	
+	/**
+	 * send a message on a logical channel, in multicast it is received only by the nodes that subscribed the channel. 
+	 * in broadcast the channel is ignored and the message is received by all the nodes
+	 * 
+	 * @param channel configured in {@link BroadCastSyncConfig#getMulticastChannels()}
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException if the channel is not configured
+	 */
+	public void sendMessageToChannel(String channel, byte[] data) throws BroadCastSyncRuntimeException{
+		sendMessage(data, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, findTargets(channel));
+	}
+	
+	public void sendMessageToChannel(String channel, String data) throws BroadCastSyncRuntimeException{
+		sendMessage(stringSeralizer.serialize(data), MessageType.MESSAGE_TYPE_DATA_UTF8_STRING, findTargets(channel));
+	}
+	
+	public <T extends Serializable> void sendMessageToChannel(String channel, T object) throws BroadCastSyncRuntimeException, BroadCastSyncExceptionSerializeData{
+		sendMessage(objectSerializer.serialize(object), MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT, findTargets(channel));
+	}
+	
+	/**
+	 * @param channel
+	 * @return the address of the group of the channel, the default addresses when the transport is not multicast
+	 * @throws BroadCastSyncRuntimeException if the channel is not configured
+	 */
+	private InetSocketAddress[] findTargets(String channel) throws BroadCastSyncRuntimeException{
+		if(channelTargets == null) {
+			return defaultTargets;
+		}
+		InetSocketAddress[] targets = channelTargets.get(channel);
+		if(targets == null) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getUnknownChannel(channel);
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
+		}
+		return targets;
+	}
+	
+	/**
+	 * send a message only to one peer, known by the instance ID that it sends in the heartbeats, see {@link PeerDirectory}
+	 * 
+	 * @param instanceId of the peer
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException if the peer is unknown
+	 */
+	public void sendMessageToPeer(String instanceId, byte[] data) throws BroadCastSyncRuntimeException{
+		sendMessage(data, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, findPeer(instanceId));
+	}
+	
+	public void sendMessageToPeer(String instanceId, String data) throws BroadCastSyncRuntimeException{
+		sendMessage(stringSeralizer.serialize(data), MessageType.MESSAGE_TYPE_DATA_UTF8_STRING, findPeer(instanceId));
+	}
+	
+	public <T extends Serializable> void sendMessageToPeer(String instanceId, T object) throws BroadCastSyncRuntimeException, BroadCastSyncExceptionSerializeData{
+		sendMessage(objectSerializer.serialize(object), MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT, findPeer(instanceId));
+	}
+	
+	/**
+	 * @param instanceId
+	 * @return the address of the peer
+	 * @throws BroadCastSyncRuntimeException if the peer is unknown or no heartbeat is received from it for the expiration time
+	 */
+	private InetSocketAddress[] findPeer(String instanceId) throws BroadCastSyncRuntimeException{
+		InetSocketAddress target = peerDirectory.find(instanceId);
+		if(target == null) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getUnknownPeer(instanceId);
 			log.error(ex.getLocalizedMessage(),ex);
-			throw ex;			
-			
-        } catch (IOException cause) {
-        	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+			throw ex;
+		}
+		return new InetSocketAddress[] {target};
+	}
+	
+	/**
+	 * send the remaining bytes of the buffer as a byte array message, the position of the buffer is not changed
+	 * 
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void sendMessage(ByteBuffer data) throws BroadCastSyncRuntimeException{
+		sendMessage(new ByteBuffer[] {data}, defaultTargets);
+	}
+	
+	/**
+	 * send the remaining bytes of all the buffers as one byte array message, the position of the buffers is not changed
+	 * 
+	 * @param data
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void sendMessage(ByteBuffer... data) throws BroadCastSyncRuntimeException{
+		sendMessage(data, defaultTargets);
+	}
+	
+	/**
+	 * send the content of the file as a byte array message, the file is memory mapped and never loaded on the heap
+	 * 
+	 * @param file
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void sendFile(Path file) throws BroadCastSyncRuntimeException{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) {
+				BroadCastSyncRuntimeException ex = exceptionFactory.getMessageTooBig(size);
+				log.error(ex.getLocalizedMessage(),ex);
+				throw ex;
+			}
+			sendMessage(new ByteBuffer[] {channel.map(MapMode.READ_ONLY, 0, size)}, defaultTargets);
+		} catch (IOException cause) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getImpossibleReadFile(cause, file.toString());
 			log.error(ex.getLocalizedMessage(),ex);
 			throw ex;
-			
 		}
-					
+	}
+	
+	/**
+	 * send data already serialized
+	 * 
+	 * @param data
+	 * @param messageType see {@link MessageType}
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	void sendMessage(byte[] data, int messageType) throws BroadCastSyncRuntimeException{
+		sendMessage(data, messageType, defaultTargets);
+	}
+	
+	private void sendCommandMessage(int messageType,InetSocketAddress[] targets) throws BroadCastSyncRuntimeException{
+		sendMessage(null, null, 0, 1, messageType, targets);
 	}	
 	
-	private void sendMessage(byte[] data, int messageType,InetAddress address) throws BroadCastSyncRuntimeException{
+	/**
+	 * send a datagram already built, used by the {@link MessageBundler}
+	 * 
+	 * @param data
+	 * @param dataLength
+	 * @param totalPackets
+	 * @param messageType
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	void sendMessage(byte[] data, int dataLength, int totalPackets, int messageType) throws BroadCastSyncRuntimeException{
+		sendMessage(data, null, dataLength, totalPackets, messageType, defaultTargets);
+	}
 	
-		//prepare the packets
-		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(address, config.getServerPort(), config.getDatagramPacketBufferSize(), messageType, data);
+	private void sendMessage(ByteBuffer[] data, InetSocketAddress[] targets) throws BroadCastSyncRuntimeException{
+		
+		//the sources are consumed by the encoder, then they are views of the buffers of the caller
+		ByteBuffer[] sources = new ByteBuffer[data.length];
+		long dataLength = 0;
+		for (int i = 0; i < data.length; i++) {
+			sources[i] = data[i].duplicate();
+			dataLength += sources[i].remaining();
+		}
+		if(dataLength > Integer.MAX_VALUE) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getMessageTooBig(dataLength);
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
+		}
+		
+		//the buffers are not bundled, the messages already in the bundle must be sent before this one
+		if(bundler!=null) {
+			bundler.flush();
+		}
 		
+		int length = (int) dataLength;
+		sendMessage(null, sources, length, findTotalPackets(length), MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, targets);
+	}
+	
+	private void sendMessage(byte[] data, int messageType,InetSocketAddress[] targets) throws BroadCastSyncRuntimeException{
+		
+		if(bundler!=null && !MessageType.isCommand(messageType)) {
+			//the bundles are sent to the default address, the messages of a channel are never bundled
+			if(targets == defaultTargets && bundler.canBundle(data.length)) {
+				bundler.add(data, messageType);
+				return;
+			}
+			//the messages already in the bundle must be sent before this one
+			bundler.flush();
+		}
+		
+		sendMessage(data, null, data.length, findTotalPackets(data.length), messageType, targets);
+	}
+	
+	/**
+	 * @return a new sequence of messages, with the version 2 of the protocol its message IDs are compact
+	 */
+	private MessageSequence newMessageSequence() {
+		if(wireProtocolVersion == DatagramPacketDataProtocol.VERSION_2) {
+			return new MessageSequence(DatagramPacketDataProtocol.randomCompactSequenceMostSignificantBits());
+		}
+		return new MessageSequence();
+	}
+	
+	/**
+	 * @param dataLength
+	 * @return the amount of datagrams needed to send the message
+	 */
+	private int findTotalPackets(int dataLength) {
+		return DatagramPacketDataProtocol.findTotalPackets(dataLength, packetDataSize + DatagramPacketDataProtocol.HEADER_SIZE);
+	}
+	
+	/**
+	 * encode the datagrams one by one in the buffer of the thread and send each one as soon as it is built.
+	 * with the forward error correction the XOR of every group of datagrams is accumulated while they are sent and sent after the group
+	 * 
+	 * @param data of the message, null for a command or when the data are in the sources
+	 * @param sources buffers that contain the data of the message, consumed while the datagrams are encoded, null if the data are in the array
+	 * @param dataLength
+	 * @param totalPackets
+	 * @param messageType
+	 * @param targets addresses that receive every datagram
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	private void sendMessage(byte[] data, ByteBuffer[] sources, int dataLength, int totalPackets, int messageType, InetSocketAddress[] targets) throws BroadCastSyncRuntimeException{
+	
+		//the commands and the messages sent to a single peer are not part of a sequence
+		MessageSequence sequence = sequences != null && !MessageType.isCommand(messageType) ? sequences.get(targets) : null;
+		long messageIdMostSignificantBits;
+		long messageIdLeastSignificantBits;
+		if(sequence != null) {
+			messageIdMostSignificantBits = sequence.getMostSignificantBits();
+			messageIdLeastSignificantBits = sequence.nextLeastSignificantBits();
+		}else if(wireProtocolVersion == DatagramPacketDataProtocol.VERSION_2) {
+			messageIdMostSignificantBits = 0;
+			messageIdLeastSignificantBits = DatagramPacketDataProtocol.randomCompactMessageIdLeastSignificantBits();
+		}else {
+			messageIdMostSignificantBits = DatagramPacketDataProtocol.randomMessageIdMostSignificantBits();
+			messageIdLeastSignificantBits = DatagramPacketDataProtocol.randomMessageIdLeastSignificantBits();
+		}
+		ByteBuffer buffer = sendBuffers.get();
+		
+		//the message is kept before the sources are consumed by the encoder, a message that never fits in the buffer is not copied
+		if(retransmitBuffer != null && totalPackets > 1 && !MessageType.isCommand(messageType) && retransmitBuffer.canStore(dataLength)) {
+			retransmitBuffer.store(messageIdMostSignificantBits, messageIdLeastSignificantBits, messageType, totalPackets, copy(data, sources, dataLength));
+		}
+		
+		boolean fec = parityBuffers != null && totalPackets > 1 && !MessageType.isCommand(messageType);
+		int groupSize = Math.max(1, config.getFecGroupSize());
+		ByteBuffer parity = null;
+		int parityLength = 0;
+		int lengthsXor = 0;
+		if(fec) {
+			//the parity can be dirty if the last send of the thread failed
+			parity = parityBuffers.get();
+			Arrays.fill(parity.array(), (byte) 0);
+		}
+		
+		//with the flow control the rate of all the data is adapted, not only the one of the large messages
+		boolean paced = totalPackets > 1 || (config.isEnableFlowControl() && !MessageType.isCommand(messageType));
+		DatagramChannel channel = channel();
 		try {
 
-			for (DatagramPacket datagramPacket : packets) {
-				clientSocket.send(datagramPacket);
+			for (int i = 0; i < totalPackets; i++) {
+				int offset = i * packetDataSize;
+				int length = Math.min(packetDataSize, dataLength - offset);
+				int dataOffset;
+				if(sources == null) {
+					dataOffset = DatagramPacketDataProtocol.encodeDatagram(buffer, wireProtocolVersion, messageIdMostSignificantBits, messageIdLeastSignificantBits, messageType, totalPackets, i, data, offset, length);
+				}else {
+					dataOffset = DatagramPacketDataProtocol.encodeDatagram(buffer, wireProtocolVersion, messageIdMostSignificantBits, messageIdLeastSignificantBits, messageType, totalPackets, i, sources, length);
+				}
+				send(channel, buffer, targets, paced);
+				
+				if(fec) {
+					DatagramPacketDataProtocol.xor(buffer, dataOffset, parity, 0, length);
+					parityLength = Math.max(parityLength, length);
+					lengthsXor ^= length;
+					if(i % groupSize == groupSize - 1 || i == totalPackets - 1) {
+						DatagramPacketDataProtocol.encodeParity(buffer, wireProtocolVersion, messageIdMostSignificantBits, messageIdLeastSignificantBits, totalPackets, i / groupSize, groupSize, lengthsXor, parity.array(), parityLength);
+						send(channel, buffer, targets, true);
+						Arrays.fill(parity.array(), 0, parityLength, (byte) 0);
+						parityLength = 0;
+						lengthsXor = 0;
+					}
+				}
 			}
-		} catch (PortUnreachableException cause) {
-        	//this error should never be received, the DatagramSocket send messages on broadcast
-        	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
-			log.error(ex.getLocalizedMessage(),ex);
-			throw ex;			
-			
-        } catch (IOException cause) {
-        	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+		} catch (IOException cause) {
+			throw sendFailed(channel, cause);
+		}
+					
+	}
+	
+	/**
+	 * send again some chunks of a message to the receiver that lost them, the message is found in the {@link RetransmitBuffer}.
+	 * the chunks are sent without waiting the {@link SendPacer}, the time they cost delays the datagrams sent after them
+	 * 
+	 * @param requester address of the receiver
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param sequences of the chunks requested
+	 * @param count amount of sequences in the array
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void retransmit(InetAddress requester, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int[] sequences, int count) throws BroadCastSyncRuntimeException{
+		if(retransmitBuffer == null) {
+			return;
+		}
+		//the NACK is the loss reported by the receiver to the adaptive pacing
+		if(pacer != null) {
+			pacer.onNackReceived();
+		}
+		RetransmitBuffer.SentMessage message = retransmitBuffer.find(messageIdMostSignificantBits, messageIdLeastSignificantBits);
+		if(message == null) {
+			retransmitBuffer.recordMissed();
+			return;
+		}
+		
+		byte[] data = message.getData();
+		InetSocketAddress[] targets = new InetSocketAddress[] {new InetSocketAddress(requester, config.getServerPort())};
+		ByteBuffer buffer = sendBuffers.get();
+		
+		DatagramChannel channel = channel();
+		try {
+			int sent = 0;
+			for (int i = 0; i < count; i++) {
+				int sequence = sequences[i];
+				if(sequence < 0 || sequence >= message.getTotalPackets()) {
+					continue;
+				}
+				int offset = sequence * packetDataSize;
+				int length = Math.min(packetDataSize, data.length - offset);
+				DatagramPacketDataProtocol.encodeDatagram(buffer, wireProtocolVersion, messageIdMostSignificantBits, messageIdLeastSignificantBits, message.getMessageType(), message.getTotalPackets(), sequence, data, offset, length);
+				//the NACK is processed by a reassembly worker that must never wait, the datagram only books its time on the pacer
+				if(pacer != null) {
+					pacer.book(buffer.limit());
+				}
+				send(channel, buffer, targets, false);
+				sent++;
+			}
+			retransmitBuffer.recordRetransmitted(sent);
+		} catch (IOException cause) {
+			throw sendFailed(channel, cause);
+		}
+	}
+	
+	/**
+	 * request to the sender of a message the chunks missing
+	 * 
+	 * @param senderAddress IP address of the sender of the message
+	 * @param messageIdMostSignificantBits
+	 * @param messageIdLeastSignificantBits
+	 * @param sequences of the chunks missing
+	 * @param count amount of sequences in the array, at most {@link #getMaxNackSequences()} are requested
+	 * @throws BroadCastSyncRuntimeException
+	 */
+	public void sendNack(String senderAddress, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int[] sequences, int count) throws BroadCastSyncRuntimeException{
+		//the sequences that don't fit in the datagram are requested by the next NACK
+		count = Math.min(count, getMaxNackSequences());
+		ByteBuffer nack = ByteBuffer.allocate(NACK_HEADER_SIZE + count * 4);
+		nack.putLong(messageIdMostSignificantBits).putLong(messageIdLeastSignificantBits).putInt(count);
+		for (int i = 0; i < count; i++) {
+			nack.putInt(sequences[i]);
+		}
+		
+		InetSocketAddress[] targets;
+		try {
+			//the address is an IP, it is never resolved by the DNS
+			targets = new InetSocketAddress[] {new InetSocketAddress(InetAddress.getByName(senderAddress), config.getServerPort())};
+		} catch (UnknownHostException cause) {
+			BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
 			log.error(ex.getLocalizedMessage(),ex);
 			throw ex;
-			
 		}
-					
+		sendMessage(nack.array(), null, nack.capacity(), 1, MessageType.MESSAGE_TYPE_CMD_NACK, targets);
+	}
+	
+	/**
+	 * @param data of the message, null if the data are in the sources
+	 * @param sources of the data, their position is not changed
+	 * @param dataLength
+	 * @return a copy of the data of the message
+	 */
+	private static byte[] copy(byte[] data, ByteBuffer[] sources, int dataLength) {
+		if(sources == null) {
+			return Arrays.copyOf(data, dataLength);
+		}
+		byte[] copy = new byte[dataLength];
+		int position = 0;
+		for (ByteBuffer source : sources) {
+			int length = source.remaining();
+			source.duplicate().get(copy, position, length);
+			position += length;
+		}
+		return copy;
+	}
+	
+	/**
+	 * write a datagram already encoded to every target
+	 * 
+	 * @param channel
+	 * @param buffer with the datagram
+	 * @param targets
+	 * @param paced true if the datagram must respect the {@link SendPacer}
+	 * @throws IOException
+	 */
+	private void send(DatagramChannel channel, ByteBuffer buffer, InetSocketAddress[] targets, boolean paced) throws IOException {
+		//the datagram is encoded once and written to every target, the channel is blocking and the send waits only when the send buffer of the socket is full
+		for (InetSocketAddress target : targets) {
+			buffer.rewind();
+			if(pacer != null && paced) {
+				pacer.acquire(buffer.remaining());
+			}
+			channel.send(buffer, target);
+		}
+	}
+	
+	/**
+	 * @param channel that failed
+	 * @param cause
+	 * @return the exception to throw
+	 */
+	private BroadCastSyncRuntimeException sendFailed(DatagramChannel channel, IOException cause) {
+		if(cause instanceof ClosedByInterruptException) {
+			replaceChannel(channel);
+		}
+		//a PortUnreachableException should never be received, the channel is not connected
+		BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+		log.error(ex.getLocalizedMessage(),ex);
+		return ex;
 	}
 	
 	
@@ -0,0 +1,241 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
+import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
+
+/**
+ * A UdpReceiver owns one socket opened by the {@link UdpServer} and the thread that listen on it.
+ * 
+ * Two receive engines are available:
+ *  - NIO: a DatagramChannel reads the datagrams in a pool of reusable ByteBuffer owned by this receiver, see {@link ReceiveBufferPool}
+ *  - blocking socket: a DatagramSocket receives every datagram in a new DatagramPacket
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class UdpReceiver implements Runnable {
+
+	private static Logger  log = LoggerFactory.getLogger(UdpReceiver.class);
+
+	private boolean stopped = true;
+	private Thread thread;
+	private String name;
+	
+	private BroadCastSyncConfig config;
+	private ExceptionFactory exceptionFactory;
+	private InboundQueue queue;
+	private InetAddress serverInetAddress;
+	
+	private DatagramSocket serverSocket;
+	private DatagramChannel serverChannel;
+	private ReceiveBufferPool bufferPool;
+	
+	/**
+	 * create a receiver that use the NIO engine
+	 */
+	public UdpReceiver(String name, BroadCastSyncConfig config, ExceptionFactory exceptionFactory, InboundQueue queue, InetAddress serverInetAddress, DatagramChannel serverChannel) {
+		this(name, config, exceptionFactory, queue, serverInetAddress);
+		this.serverChannel = serverChannel;
+		this.bufferPool = new ReceiveBufferPool(ReceiveBufferPool.findPoolSize(config.getReceiveBufferPoolSize(), queue), config.getDatagramPacketBufferSize(), config.isUseDirectBuffer());
+	}
+	
+	/**
+	 * create a receiver that use the blocking socket engine
+	 */
+	public UdpReceiver(String name, BroadCastSyncConfig config, ExceptionFactory exceptionFactory, InboundQueue queue, InetAddress serverInetAddress, DatagramSocket serverSocket) {
+		this(name, config, exceptionFactory, queue, serverInetAddress);
+		this.serverSocket = serverSocket;
+	}
+	
+	private UdpReceiver(String name, BroadCastSyncConfig config, ExceptionFactory exceptionFactory, InboundQueue queue, InetAddress serverInetAddress) {
+		this.name = name;
+		this.config = config;
+		this.exceptionFactory = exceptionFactory;
+		this.queue = queue;
+		this.serverInetAddress = serverInetAddress;
+	}
+
+	/**
+	 * This method represents the main body of the UdpReceiver thread. 
+	 * Within its loop, the thread continuously listens for a new request on its socket. 
+	 * When a request is received, the datagram is stored in a {@link ReceivedDatagram} and added to the queue to be processed later.
+	 * If the queue is full the {@link OverloadPolicy} decides which datagram is discarded.
+	 * Before adding the message to the queue, a check is made to filter out messages sent from the same server unless it is started in development mode. 
+	 */
+	@Override
+	public void run() {
+
+		log.info(name+" thread started");
+		
+		if(serverChannel!=null) {
+			receiveFromChannel();
+		}else {
+			receiveFromSocket();
+		}
+		
+	}
+	
+	/**
+	 * receive loop of the NIO engine, the datagrams are read in the buffers borrowed from the pool
+	 * the buffer is given back to the pool by the {@link DatagramSequentializer} once the datagram is consumed or immediately if the datagram is filtered out
+	 */
+	private void receiveFromChannel() {
+		
+		while (!stopped) {
+			
+			ReceivedDatagram datagram = bufferPool.acquire();
+			
+			try {
+				
+				log.debug("listening for a new request");
+				InetSocketAddress sender = (InetSocketAddress) serverChannel.receive(datagram.getBuffer());
+				datagram.getBuffer().flip();
+				datagram.setAddress(sender.getAddress());
+				
+				offerOrFilter(datagram);
+				
+			}catch (InterruptedException e) {
+				datagram.release();
+				log.info(name+" interrupted");
+                break;
+                
+			}catch (ClosedChannelException cause) {
+				//this exception is throw if the thread is interrupted or the channel is closed by the shutdown
+				datagram.release();
+				log.info("DatagramChannel closed");
+				break;
+				
+			} catch (IOException cause) {
+				datagram.release();
+				BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+				log.error(ex.getLocalizedMessage(),ex);				 
+
+			}
+		}
+		
+	}
+	
+	/**
+	 * receive loop of the blocking socket engine, a new DatagramPacket is created for every datagram received
+	 */
+	private void receiveFromSocket() {
+		
+		while (!stopped) {
+			
+			try {
+				
+				log.debug("listening for a new request");
+				byte[] messageBuffer = new byte[config.getDatagramPacketBufferSize()];
+				DatagramPacket messagePacket = new DatagramPacket(messageBuffer, messageBuffer.length);
+				serverSocket.receive(messagePacket);
+				
+				offerOrFilter(ReceivedDatagram.wrap(messagePacket));
+				
+			}catch (InterruptedException e) {
+				log.info(name+" interrupted");
+                break;
+                
+            }catch (PortUnreachableException cause) {
+            	//this error should never be received, the DatagramSocket is used only to receive message
+            	//it is never used to call and then received
+            	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+				log.error(ex.getLocalizedMessage(),ex);
+				
+            }catch (SocketException cause) {
+            	//this exception is throw if the thread is interrupted
+				log.info("DatagramSocket closed");
+				
+			}catch (SocketTimeoutException cause) {
+            	//this error should never be received, we don use time out on server side
+            	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+				log.error(ex.getLocalizedMessage(),ex);
+            	
+			} catch (IOException cause) {
+				BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
+				log.error(ex.getLocalizedMessage(),ex);				 
+
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * filter the message send by itself, in develop mode the messages send by the same server are not filtered out
+	 * 
+	 * @param datagram
+	 * @throws InterruptedException
+	 */
+	private void offerOrFilter(ReceivedDatagram datagram) throws InterruptedException {
+		
+		if(!datagram.getAddress().equals(serverInetAddress) || config.isDevelopMode()) {
+			//add the message in the queue and restart to listen for a new datagram
+			log.debug("DatagramPacket received");
+			queue.offer(datagram);
+		}else {
+			log.debug("DatagramPacket filtered out, sent from this machine");
+			datagram.release();
+		}
+		
+	}
+	
+	public void startReceiver() {
+		stopped = false;
+		thread = new Thread(this);
+		thread.setDaemon(true);
+		thread.setName(name);
+		thread.start();
+	}
+	
+	/**
+	 * @return the port where the receiver is bound, -1 if it is not bound
+	 */
+	public int getLocalPort() {
+		if(serverSocket!=null) {
+			return serverSocket.getLocalPort();
+		}
+		try {
+			InetSocketAddress local = (InetSocketAddress) serverChannel.getLocalAddress();
+			return local == null ? -1 : local.getPort();
+		} catch (IOException cause) {
+			return -1;
+		}
+	}
+	
+	public void shutdown() {
+		
+		stopped = true;
+		if(thread!=null) {
+			thread.interrupt();			
+		}
+		
+		if(serverSocket!=null) {
+			serverSocket.close();			
+		}
+		
+		if(serverChannel!=null) {
+			try {
+				serverChannel.close();
+			} catch (IOException cause) {
+				log.debug("error closing the DatagramChannel",cause);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,197 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.exception.BroadCastSyncExceptionSerializeData;
+import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
+import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
+import it.spaghettisource.broadcastsync.message.MessageType;
+import it.spaghettisource.broadcastsync.serializer.ObjectSerializer;
+
+/**
+ * The UdpSender sends the messages asynchronously: the messages are added in a bounded {@link RingBuffer} 
+ * and a dedicated thread fragments them and sends the datagrams with the {@link UdpClient}.
+ * 
+ * every message has a CompletableFuture that completes when all its datagrams are written or completes exceptionally if the message is not sent,
+ * when the queue is full the {@link SendOverloadPolicy} decides what to do.
+ * the java objects are serialized by the caller, so the object can be changed as soon as the method returns, while the byte arrays are not copied
+ * and must not be changed till the future completes.
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class UdpSender implements Runnable {
+
+	private static Logger  log = LoggerFactory.getLogger(UdpSender.class);
+
+	private volatile boolean stopped = true;
+	private Thread thread;
+	
+	private RingBuffer<OutboundMessage> queue;
+	private SendOverloadPolicy policy;
+	private UdpClient udpClient;
+	private ExceptionFactory exceptionFactory;
+	
+	private ObjectSerializer<Serializable> objectSerializer;
+	
+	public UdpSender(BroadCastSyncConfig config, ExceptionFactory exceptionFactory, UdpClient udpClient) {
+		super();
+		this.exceptionFactory = exceptionFactory;
+		this.udpClient = udpClient;
+		this.policy = config.getSendOverloadPolicy();
+		this.queue = new RingBuffer<>(config.getOutboundQueueCapacity(), false, WaitStrategyType.BLOCK.build());
+		this.objectSerializer = new ObjectSerializer<>(exceptionFactory);
+	}
+	
+	public CompletableFuture<Void> sendMessage(byte[] data) {
+		return submit(new OutboundMessage(data, null, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+	}
+	
+	public CompletableFuture<Void> sendMessage(String data) {
+		return submit(new OutboundMessage(null, data, MessageType.MESSAGE_TYPE_DATA_UTF8_STRING));
+	}
+	
+	public <T extends Serializable> CompletableFuture<Void> sendMessage(T object) {
+		try {
+			return submit(new OutboundMessage(objectSerializer.serialize(object), null, MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT));
+		} catch (BroadCastSyncExceptionSerializeData cause) {
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			future.completeExceptionally(cause);
+			return future;
+		}
+	}
+	
+	/**
+	 * add the message in the queue applying the {@link SendOverloadPolicy} if the queue is full
+	 * 
+	 * @param message
+	 * @return the future of the message
+	 */
+	private CompletableFuture<Void> submit(OutboundMessage message) {
+		
+		if(stopped) {
+			message.future.completeExceptionally(exceptionFactory.getSenderNotRunning());
+			return message.future;
+		}
+		
+		if(!queue.offer(message)) {
+			switch (policy) {
+			case BLOCK:
+				try {
+					queue.put(message);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					message.future.completeExceptionally(e);
+					return message.future;
+				}
+				break;
+
+			case DROP_OLDEST:
+				while (!queue.offer(message)) {
+					OutboundMessage oldest = queue.poll();
+					if(oldest != null) {
+						oldest.future.completeExceptionally(exceptionFactory.getOutboundQueueFull(queue.capacity()));
+					}
+				}
+				break;
+
+			default:
+				message.future.completeExceptionally(exceptionFactory.getOutboundQueueFull(queue.capacity()));
+				return message.future;
+			}
+		}
+		
+		//the sender was stopped while the message was added, no one will send it
+		if(stopped) {
+			failPendingMessages();
+		}
+		return message.future;
+	}
+	
+	@Override
+	public void run() {
+		
+		log.info("UdpSender thread started");
+		
+		while (!stopped) {
+			OutboundMessage message;
+			try {
+				message = queue.take();
+			} catch (InterruptedException e) {
+				log.info("UdpSender interrupted");
+				break;
+			}
+			send(message);
+		}
+		
+		failPendingMessages();
+	}
+	
+	private void send(OutboundMessage message) {
+		try {
+			if(message.text != null) {
+				udpClient.sendMessage(message.text);
+			}else {
+				udpClient.sendMessage(message.data, message.messageType);
+			}
+			message.future.complete(null);
+			
+		}catch (Exception cause) {
+			message.future.completeExceptionally(cause);
+		}
+	}
+	
+	/**
+	 * complete exceptionally all the messages still in the queue
+	 */
+	private void failPendingMessages() {
+		queue.drain(message -> message.future.completeExceptionally(exceptionFactory.getSenderNotRunning()));
+	}
+	
+	/**
+	 * @return the amount of messages waiting to be sent
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+	
+	public void startSender() throws BroadCastSyncRuntimeException{
+		stopped = false;	
+		thread = new Thread(this);
+		thread.setDaemon(true);		
+		thread.setName("UdpSender");	
+		thread.start();
+	}
+	
+	/**
+	 * stop the thread, the messages not yet sent complete exceptionally
+	 */
+	public void shutdown() {
+		stopped = true;
+		if(thread!=null) {
+			thread.interrupt();
+		}
+		failPendingMessages();
+	}
+	
+	private static class OutboundMessage {
+		
+		private final byte[] data;
+		private final String text;
+		private final int messageType;
+		private final CompletableFuture<Void> future;
+		
+		private OutboundMessage(byte[] data, String text, int messageType) {
+			this.data = data;
+			this.text = text;
+			this.messageType = messageType;
+			this.future = new CompletableFuture<>();
+		}
+	}
+	
+}
@@ -1,13 +1,21 @@
 package it.spaghettisource.broadcastsync.infrastructure;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.PortUnreachableException;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.net.SocketOption;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,131 +26,221 @@ import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
 
 /**
  * The UdpServer is the entry point for all the DatagramPacket received.
- * It is responsible to open the DatagramSocket and verify that the socket can be properly opened
+ * It is responsible to open the sockets, verify that they can be properly opened and start a {@link UdpReceiver} for each of them
+ * 
+ * By default one receiver listen on the server port, if {@link BroadCastSyncConfig#getReceiverThreads()} is greater than 1
+ * the server opens one DatagramChannel for each receiver, all bound on the same port with the option SO_REUSEPORT, then the kernel spreads the datagrams across the sockets.
+ * 
+ * The kernel balances only the datagrams sent directly to this node, a datagram sent in broadcast is delivered to every socket of the group.
+ * For this reason the server falls back to a single receiver when the configured broadcast address is a real broadcast or multicast address,
+ * as well as when the NIO engine is disabled or the platform doesn't support SO_REUSEPORT (it requires java 9 or later)
+ * 
+ * In {@link TransportMode#MULTICAST} the socket joins the default group and the groups of the channels subscribed on the configured interface, see {@link MulticastGroups}.
+ * Also in this case a single receiver is started, a multicast datagram is delivered to every socket that joined the group.
+ * In {@link TransportMode#UNICAST} the datagrams are sent directly to this node, then they can be spread across several receivers
  * 
  * @author Alessandro D'Ottavio
  * @version 1.0
  */
-public class UdpServer implements Runnable {
+public class UdpServer {
 
 	private static Logger  log = LoggerFactory.getLogger(UdpServer.class);
 
-	private boolean stopped = true;
-	private Thread thread;
-	
 	private BroadCastSyncConfig config;
 	private ExceptionFactory exceptionFactory;
-	private DatagramPacketQueue queue;
+	private InboundQueue queue;
+	
+	private List<UdpReceiver> receivers;
 	
-	private DatagramSocket serverSocket;
+	/**
+	 * the SO_REUSEPORT option resolved once, null if it is not supported
+	 */
+	private static final SocketOption<Boolean> REUSE_PORT = findReusePortOption();
+	
+	private InetAddress serverInetAddress;
 	private String serverAddress;
 	private String canonicalserverName;	
 	
 
-	public UdpServer(BroadCastSyncConfig config,ExceptionFactory exceptionFactory, DatagramPacketQueue queue){
+	public UdpServer(BroadCastSyncConfig config,ExceptionFactory exceptionFactory, InboundQueue queue){
 			this.config = config;
 			this.exceptionFactory = exceptionFactory;
 			this.queue = queue;
+			this.receivers = new ArrayList<>();
 	}
 
-
-	/**
-	 * This method represents the main body of the UdpServer thread. 
-	 * Within its loop, the thread continuously listens for a new request on the server socket. 
-	 * When a request is received, a DatagramPacket instance is created to hold the received message and added to the DatagramPacketQueue to be processed later.
-	 * Before adding the message to the queue, a check is made to filter out messages sent from the same server unless it is started in development mode. 
-	 */
-	@Override
-	public void run() {
-
-		log.info("UdpServer thread started on address:"+serverAddress+" canonicalserverName:"+canonicalserverName);
-		
-		while (!stopped) {
-			
-			try {
-				
-				log.debug("listening for a new request");
-				byte[] messageBuffer = new byte[config.getDatagramPacketBufferSize()];
-				DatagramPacket messagePacket = new DatagramPacket(messageBuffer, messageBuffer.length);
-				serverSocket.receive(messagePacket);
-				
-				//filter the message send by itself
-				//in develop mode the messages send by the same server are not filtered out
-				if(!messagePacket.getAddress().getHostAddress().equals(serverAddress) || config.isDevelopMode()) {
-					//add the message in the queue and restart to listen for a new datagram
-					log.debug("DatagramPacket received");
-					queue.offer(messagePacket);		
-				}else {
-					log.debug("DatagramPacket filtered out, sent from this machine");
-				}
-				
-				
-			}catch (InterruptedException e) {
-				log.info("UdpServer server interrupted");
-                break;
-                
-            }catch (PortUnreachableException cause) {
-            	//this error should never be received, the DatagramSocket is used only to receive message
-            	//it is never used to call and then received
-            	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
-				log.error(ex.getLocalizedMessage(),ex);
-				
-            }catch (SocketException cause) {
-            	//this exception is throw if the thread is interrupted
-				log.info("DatagramSocket closed");
-				
-			}catch (SocketTimeoutException cause) {
-            	//this error should never be received, we don use time out on server side
-            	BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
-				log.error(ex.getLocalizedMessage(),ex);
-            	
-			} catch (IOException cause) {
-				BroadCastSyncRuntimeException ex = exceptionFactory.getUnexpectedException(cause);
-				log.error(ex.getLocalizedMessage(),ex);				 
-
-			}
-			
-		}
-		
-	}
 	
 	public void startServer() throws BroadCastSyncRuntimeException{
 		try {
-			InetAddress serverInfo = InetAddress.getLocalHost(); 
-			serverAddress = serverInfo.getHostAddress();
-			canonicalserverName = serverInfo.getCanonicalHostName();
+			serverInetAddress = InetAddress.getLocalHost(); 
+			serverAddress = serverInetAddress.getHostAddress();
+			canonicalserverName = serverInetAddress.getCanonicalHostName();
 			
-			serverSocket = new DatagramSocket(config.getServerPort());
+			log.info("UdpServer started on address:"+serverAddress+" canonicalserverName:"+canonicalserverName);
+			
+			//address of the datagrams sent by this node, filtered out by the receivers. In multicast the client sends from the address of the interface
+			InetAddress localAddress = serverInetAddress;
+			MulticastGroups multicastGroups = null;
+			if(config.getTransportMode() == TransportMode.MULTICAST) {
+				multicastGroups = new MulticastGroups(config, exceptionFactory);
+				localAddress = multicastGroups.getInterfaceAddress();
+				log.info("UdpServer joins the multicast groups "+multicastGroups.getSubscribedGroups()+" on the interface "+multicastGroups.getNetworkInterface().getName());
+			}
+			
+			if(config.isEnableNioReceiver()) {
+				int receiverThreads = findAmountOfReceivers();
+				for (int i = 0; i < receiverThreads; i++) {
+					DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+					String name = "UdpServer";
+					if(receiverThreads>1) {
+						channel.setOption(REUSE_PORT, true);
+						name = name+"-"+i;
+					}
+					receivers.add(new UdpReceiver(name, config, exceptionFactory, queue, localAddress, channel));
+					if(multicastGroups != null) {
+						channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+					}
+					channel.bind(new InetSocketAddress(config.getServerPort()));
+					if(multicastGroups != null) {
+						for (InetAddress group : multicastGroups.getSubscribedGroups()) {
+							channel.join(group, multicastGroups.getNetworkInterface());
+						}
+					}
+				}
+			}else if(multicastGroups != null) {
+				warnSingleReceiverIfNeeded("the NIO receiver is disabled");
+				MulticastSocket socket = new MulticastSocket(config.getServerPort());
+				receivers.add(new UdpReceiver("UdpServer", config, exceptionFactory, queue, localAddress, socket));
+				for (InetAddress group : multicastGroups.getSubscribedGroups()) {
+					socket.joinGroup(new InetSocketAddress(group, config.getServerPort()), multicastGroups.getNetworkInterface());
+				}
+			}else {
+				warnSingleReceiverIfNeeded("the NIO receiver is disabled");
+				receivers.add(new UdpReceiver("UdpServer", config, exceptionFactory, queue, localAddress, new DatagramSocket(config.getServerPort())));
+			}
 			
-		} catch (SocketException cause) {
-			BroadCastSyncRuntimeException ex = exceptionFactory.getImpossibleOpenDatagramSocket(cause,config.getServerPort());
-			log.error(ex.getLocalizedMessage(),ex);
-			throw ex;
 		} catch (UnknownHostException cause) {
 			BroadCastSyncRuntimeException ex = exceptionFactory.getLocalHostNameCannotBeResolved(cause);
 			log.error(ex.getLocalizedMessage(),ex);
 			throw ex;
+		} catch (IOException cause) {
+			shutdown();
+			BroadCastSyncRuntimeException ex = exceptionFactory.getImpossibleOpenDatagramSocket(cause,config.getServerPort());
+			log.error(ex.getLocalizedMessage(),ex);
+			throw ex;
 		}
 		
-		stopped = false;
-		thread = new Thread(this);
-		thread.setDaemon(true);
-		thread.setName("UdpServer");
-		thread.start();
+		for (UdpReceiver receiver : receivers) {
+			receiver.startReceiver();
+		}
 	}
 	
 	
 	public void shutdown() {
 		
-		stopped = true;
-		if(thread!=null) {
-			thread.interrupt();			
+		for (UdpReceiver receiver : receivers) {
+			receiver.shutdown();
 		}
+		receivers.clear();
 		
-		if(serverSocket!=null) {
-			serverSocket.close();			
+	}
+	
+	/**
+	 * @return the local port of every receiver started, -1 for a receiver not bound
+	 */
+	public int[] findReceiverPorts() {
+		int[] ports = new int[receivers.size()];
+		for (int i = 0; i < ports.length; i++) {
+			ports[i] = receivers.get(i).getLocalPort();
+		}
+		return ports;
+	}
+	
+	/**
+	 * @return true if the platform supports the SO_REUSEPORT option, needed to start several receivers
+	 */
+	public static boolean isReusePortSupported() {
+		return REUSE_PORT != null;
+	}
+	
+	/**
+	 * @return the amount of receiver to start with the NIO engine, respecting the limits of the platform and of the configuration
+	 */
+	private int findAmountOfReceivers() {
+		
+		if(config.getReceiverThreads()<=1) {
+			return 1;
 		}
 		
+		if(REUSE_PORT==null) {
+			warnSingleReceiverIfNeeded("the socket option SO_REUSEPORT is not supported by this platform");
+			return 1;
+		}
+		
+		if(config.getTransportMode() == TransportMode.MULTICAST) {
+			warnSingleReceiverIfNeeded("the multicast groups deliver every datagram to all the sockets that joined them");
+			return 1;
+		}
+		
+		if(config.getTransportMode() == TransportMode.BROADCAST && isBroadcastOrMulticast(config.getBroadcastAddress())) {
+			warnSingleReceiverIfNeeded("the address "+config.getBroadcastAddress()+" deliver every datagram to all the sockets bound on the port");
+			return 1;			
+		}
+		
+		return config.getReceiverThreads();
+	}
+	
+	private void warnSingleReceiverIfNeeded(String reason) {
+		if(config.getReceiverThreads()>1) {
+			log.warn("receiverThreads is "+config.getReceiverThreads()+" but only one receiver is started: "+reason);
+		}
+	}
+	
+	/**
+	 * the option SO_REUSEPORT is available in the StandardSocketOptions since java 9, then it is loaded by reflection.
+	 * a channel is opened to verify the support, then it is called only once
+	 * 
+	 * @return the SO_REUSEPORT option or null if it is not supported
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> findReusePortOption() {
+		try {
+			SocketOption<Boolean> option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+			try (DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)) {
+				return channel.supportedOptions().contains(option) ? option : null;
+			}
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * verify if an address is the limited broadcast, the broadcast address of one of the local network interfaces or a multicast address
+	 * 
+	 * @param address
+	 * @return
+	 */
+	private static boolean isBroadcastOrMulticast(String address) {
+		try {
+			InetAddress inetAddress = InetAddress.getByName(address);
+			if(inetAddress.isMulticastAddress() || inetAddress.equals(InetAddress.getByName("255.255.255.255"))) {
+				return true;
+			}
+			
+			Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+			while (interfaces!=null && interfaces.hasMoreElements()) {
+				for (InterfaceAddress interfaceAddress : interfaces.nextElement().getInterfaceAddresses()) {
+					if(inetAddress.equals(interfaceAddress.getBroadcast())) {
+						return true;
+					}
+				}
+			}
+			return false;
+			
+		} catch (UnknownHostException | SocketException e) {
+			//if the address cannot be verified be conservative
+			return true;
+		}
 	}
 	
 }
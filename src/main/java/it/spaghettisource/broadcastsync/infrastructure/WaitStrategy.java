@@ -0,0 +1,38 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Define how a thread waits on a {@link RingBuffer} when it is empty (consumer side) or full (producer side)
+ * 
+ * the available implementations are listed in {@link WaitStrategyType}
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public interface WaitStrategy {
+
+	/**
+	 * wait till the condition is satisfied
+	 * 
+	 * @param condition to wait for
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public void waitFor(BooleanSupplier condition) throws InterruptedException;
+	
+	/**
+	 * wait till the condition is satisfied or the timeout is elapsed
+	 * 
+	 * @param condition to wait for
+	 * @param timeoutNanos max time to wait
+	 * @return true if the condition is satisfied, false if the timeout is elapsed
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public boolean waitFor(BooleanSupplier condition, long timeoutNanos) throws InterruptedException;
+	
+	/**
+	 * called by the {@link RingBuffer} every time an element is added or removed to wake up the waiting threads, if any
+	 */
+	public void signalAll();
+	
+}
@@ -0,0 +1,37 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+/**
+ * define the wait strategies supported by the {@link RingBuffer}
+ * 
+ *  - BLOCK: the thread is suspended on a lock condition till it is signaled, it doesn't consume CPU but it has the highest latency
+ *  - PARK: the thread is parked for a short time and then verify again the condition
+ *  - YIELD: the thread gives up the CPU to the other threads and then verify again the condition
+ *  - BUSY_SPIN: the thread verify continuously the condition, it has the lowest latency but it burns a full core
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public enum WaitStrategyType {
+
+	BLOCK,
+	PARK,
+	YIELD,
+	BUSY_SPIN;
+	
+	/**
+	 * @return a new instance of the wait strategy
+	 */
+	public WaitStrategy build() {
+		switch (this) {
+		case PARK:
+			return new ParkingWaitStrategy();
+		case YIELD:
+			return new YieldingWaitStrategy();
+		case BUSY_SPIN:
+			return new BusySpinWaitStrategy();
+		default:
+			return new BlockingWaitStrategy();
+		}
+	}
+	
+}
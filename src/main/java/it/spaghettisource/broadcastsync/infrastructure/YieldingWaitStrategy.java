@@ -0,0 +1,43 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The waiting thread gives up the CPU to the other threads and then it verifies again the condition
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+	@Override
+	public void waitFor(BooleanSupplier satisfied) throws InterruptedException {
+		while (!satisfied.getAsBoolean()) {
+			Thread.yield();
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	@Override
+	public boolean waitFor(BooleanSupplier satisfied, long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (!satisfied.getAsBoolean()) {
+			if(deadline - System.nanoTime() <= 0) {
+				return false;
+			}
+			Thread.yield();
+			if(Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void signalAll() {
+		//nothing to do, the waiting thread never sleeps
+	}
+
+}
@@ -0,0 +1,71 @@
+package it.spaghettisource.broadcastsync.message;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a piece of a byte array message delivered in streaming mode, see {@link it.spaghettisource.broadcastsync.handler.StreamingMessageHandler}
+ * 
+ * the chunks of a message are delivered in order, the data is a read only buffer valid only during the call of the handler,
+ * it must be copied if it is needed later
+ * 
+ * @author Alessandro D'Ottavio
+ * @version 1.0
+ */
+public class MessageChunk extends Message{
+	
+	private final String messageId;
+	private final int sequence;
+	private final int totalChunks;
+	private final long position;
+	private final ByteBuffer data;
+
+	public MessageChunk(String messageId, int sequence, int totalChunks, long position, ByteBuffer data, String clientAddress, String clientCanonicalHostName) {
+		super(clientAddress, clientCanonicalHostName);
+		this.messageId = messageId;
+		this.sequence = sequence;
+		this.totalChunks = totalChunks;
+		this.position = position;
+		this.data = data;
+	}
+
+	/**
+	 * @return the ID of the message, the same for all its chunks
+	 */
+	public String getMessageId() {
+		return messageId;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public int getTotalChunks() {
+		return totalChunks;
+	}
+
+	/**
+	 * @return the position of the first byte of this chunk in the message
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the data of the chunk, valid only during the call of the handler
+	 */
+	public ByteBuffer getData() {
+		return data;
+	}
+
+	public boolean isFirst() {
+		return sequence == 0;
+	}
+
+	/**
+	 * @return true if this is the last chunk, the message is complete
+	 */
+	public boolean isLast() {
+		return sequence == totalChunks - 1;
+	}
+	
+}
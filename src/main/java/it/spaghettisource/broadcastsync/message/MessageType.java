@@ -13,5 +13,34 @@ public class MessageType {
 	public final static int MESSAGE_TYPE_DATA_BYTE_ARRAY = 1;
 	public final static int MESSAGE_TYPE_DATA_UTF8_STRING = 2;
 	public final static int MESSAGE_TYPE_DATA_JAVA_OBJECT = 3;	
+	
+	/**
+	 * several small data messages packed in one datagram, every message is stored as message type (int), length (int) and data
+	 */
+	public final static int MESSAGE_TYPE_DATA_BUNDLE = 4;
+	
+	/**
+	 * request to send again the chunks lost of a message, it contains the message ID (2 long), the amount of sequences (int) and the sequences (int)
+	 */
+	public final static int MESSAGE_TYPE_CMD_NACK = 5;
+	
+	/**
+	 * XOR of a group of datagrams of a message, it contains the size of the group (int), the XOR of the lengths of the datagrams (int) and the XOR of their data
+	 */
+	public final static int MESSAGE_TYPE_DATA_PARITY = 6;
+	
+	/**
+	 * heartbeat with the flow control state of the sender, it contains the fill level of the queue (int permille), the drop rate (int permille) and the data of the heartbeat
+	 */
+	public final static int MESSAGE_TYPE_CMD_HEARTBEAT_FLOW_CONTROL = 7;
+
+	/**
+	 * @param messageType
+	 * @return true if the message type is a command used by the infrastructure and not a data sent by the application
+	 */
+	public static boolean isCommand(int messageType) {
+		return messageType == MESSAGE_TYPE_CMD_HEARTBEAT || messageType == MESSAGE_TYPE_CMD_NACK || messageType == MESSAGE_TYPE_CMD_HEARTBEAT_FLOW_CONTROL;
+	}
+	
 
 }
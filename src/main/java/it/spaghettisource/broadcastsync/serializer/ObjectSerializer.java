@@ -45,8 +45,25 @@ public class ObjectSerializer<T extends Serializable> extends SeralizerAbstract<
 
 	@Override
 	public T deserialize(byte[] bytes) throws BroadCastSyncExceptionDeserializeData {
+		return deserialize(new ByteArrayInputStream(bytes));
+	}
+	
+	@Override
+	public T deserialize(byte[] bytes, int offset, int length) throws BroadCastSyncExceptionDeserializeData {
+		return deserialize(new ByteArrayInputStream(bytes, offset, length));
+	}
+
+	/**
+	 * the type of the object is not known by the stream, the cast is unchecked and an object of another type 
+	 * is found only when it is used, like with any java deserialization
+	 * 
+	 * @param byteInputStream
+	 * @return
+	 * @throws BroadCastSyncExceptionDeserializeData
+	 */
+	@SuppressWarnings("unchecked")
+	private T deserialize(ByteArrayInputStream byteInputStream) throws BroadCastSyncExceptionDeserializeData {
 		try {
-			ByteArrayInputStream byteInputStream = new ByteArrayInputStream(bytes);
 			ObjectInputStream objectInputStream = new ObjectInputStream(byteInputStream);
 			return (T) objectInputStream.readObject();
 		}catch (Exception cause) {
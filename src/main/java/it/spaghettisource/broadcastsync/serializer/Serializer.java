@@ -1,5 +1,7 @@
 package it.spaghettisource.broadcastsync.serializer;
 
+import java.util.Arrays;
+
 import it.spaghettisource.broadcastsync.exception.BroadCastSyncExceptionDeserializeData;
 import it.spaghettisource.broadcastsync.exception.BroadCastSyncExceptionSerializeData;
 
@@ -28,6 +30,21 @@ public interface Serializer<T> {
 	 */
 	public T deserialize(byte[] bytes) throws BroadCastSyncExceptionDeserializeData;
 	
+	/**
+	 * deserialize only a portion of the byte array received on the network
+	 * 
+	 * @param bytes
+	 * @param offset of the first byte to deserialize
+	 * @param length amount of bytes to deserialize
+	 * @return
+	 */
+	public default T deserialize(byte[] bytes, int offset, int length) throws BroadCastSyncExceptionDeserializeData {
+		if(offset == 0 && length == bytes.length) {
+			return deserialize(bytes);
+		}
+		return deserialize(Arrays.copyOfRange(bytes, offset, offset + length));
+	}
+	
 	
 	
 }
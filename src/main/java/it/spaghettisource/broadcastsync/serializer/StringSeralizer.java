@@ -29,5 +29,11 @@ public class StringSeralizer extends SeralizerAbstract<String> {
 
 		return new String(bytes, StandardCharsets.UTF_8);
 	}
+	
+	@Override
+	public String deserialize(byte[] bytes, int offset, int length) {
+
+		return new String(bytes, offset, length, StandardCharsets.UTF_8);
+	}
 
 }
@@ -1,16 +1,35 @@
 package it.spaghettisource.broadcastsync;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import it.spaghettisource.broadcastsync.exception.BroadCastSyncExceptionSerializeData;
 import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
 import it.spaghettisource.broadcastsync.handler.MessageHandlerLog;
+import it.spaghettisource.broadcastsync.infrastructure.PeerSequenceStatistics;
+import it.spaghettisource.broadcastsync.infrastructure.TransportMode;
 import it.spaghettisource.broadcastsync.message.HeartBeatFactory;
 import it.spaghettisource.broadcastsync.message.HeartBeatFactoryInstanceId;
+import it.spaghettisource.broadcastsync.message.MessageByteArray;
+import it.spaghettisource.broadcastsync.message.MessageString;
 
 public class BoradCastSyncManagerTest {
 
@@ -43,6 +62,364 @@ public class BoradCastSyncManagerTest {
 
 	}
 
+	@DisplayName("integeration_send_message_blocking_receiver_OK_Test")
+	@Test
+	public void integeration_send_message_blocking_receiver_OK_Test() {
+
+		try {
+			BroadCastSyncManager manager = new BroadCastSyncManager();
+
+			BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+			conf.setDevelopMode(true);
+			conf.setEnableHeartbeat(false);
+			conf.setEnableNioReceiver(false);
+
+			manager.initialize(conf, new MessageHandlerLog());
+			manager.start();
+
+			manager.sendMessage("send string message");
+
+			manager.shutdown();
+
+		}catch (Exception ex) {
+			fail("unexpected exception");
+		}
+
+	}
+
+
+	@DisplayName("integeration_send_message_multiple_receivers_OK_Test")
+	@Test
+	public void integeration_send_message_multiple_receivers_OK_Test() {
+
+		try {
+			BroadCastSyncManager manager = new BroadCastSyncManager();
+
+			//the receivers are sharded only for the datagrams sent directly to the node
+			BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+			conf.setDevelopMode(true);
+			conf.setEnableHeartbeat(false);
+			conf.setReceiverThreads(4);
+			conf.setBroadcastAddress(InetAddress.getLocalHost().getHostAddress());
+
+			manager.initialize(conf, new MessageHandlerLog());
+			manager.start();
+
+			manager.sendMessage("send string message");
+
+			manager.shutdown();
+
+		}catch (Exception ex) {
+			fail("unexpected exception");
+		}
+
+	}
+
+
+	@DisplayName("integeration_send_message_multiple_reassembly_workers_OK_Test")
+	@Test
+	public void integeration_send_message_multiple_reassembly_workers_OK_Test() {
+
+		try {
+			BroadCastSyncManager manager = new BroadCastSyncManager();
+
+			BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+			conf.setDevelopMode(true);
+			conf.setEnableHeartbeat(false);
+			conf.setReassemblyWorkers(4);
+			conf.setPreserveSenderOrder(true);
+			conf.setEnableAsyncDispatch(true);
+
+			manager.initialize(conf, new MessageHandlerLog());
+			manager.start();
+
+			manager.sendMessage("send string message");
+			manager.sendMessage(new byte[5000]);
+
+			manager.shutdown();
+
+		}catch (Exception ex) {
+			fail("unexpected exception");
+		}
+
+	}
+
+
+	@DisplayName("integeration_send_message_concurrent_senders_OK_Test")
+	@Test
+	public void integeration_send_message_concurrent_senders_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setEnableHeartbeat(true);
+		conf.setHeartbeatIntervalTimeMillis(10);
+
+		manager.initialize(conf, new MessageHandlerLog());
+		manager.start();
+
+		//the threads send in the same moment, also with the heartbeat emitter
+		AtomicInteger errors = new AtomicInteger();
+		Thread[] senders = new Thread[8];
+		for (int i = 0; i < senders.length; i++) {
+			senders[i] = new Thread(() -> {
+				try {
+					for (int j = 0; j < 20; j++) {
+						manager.sendMessage(new byte[3000]);
+					}
+				}catch (Exception ex) {
+					errors.incrementAndGet();
+				}
+			});
+			senders[i].start();
+		}
+		for (Thread sender : senders) {
+			sender.join();
+		}
+
+		manager.shutdown();
+		assertEquals(0, errors.get());
+	}
+
+	@DisplayName("integeration_send_message_async_OK_Test")
+	@Test
+	public void integeration_send_message_async_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setEnableHeartbeat(false);
+
+		manager.initialize(conf, new MessageHandlerLog());
+		manager.start();
+
+		CompletableFuture<Void> bytes = manager.sendMessageAsync("send byte array message".getBytes());
+		CompletableFuture<Void> string = manager.sendMessageAsync("send string message");
+		CompletableFuture<Void> object = manager.sendMessageAsync(new Integer(9999999));
+		CompletableFuture.allOf(bytes, string, object).get(5, TimeUnit.SECONDS);
+
+		manager.shutdown();
+
+		//the sender is stopped, the message is not sent
+		assertTrue(manager.sendMessageAsync("send string message").isCompletedExceptionally());
+	}
+
+	@DisplayName("integeration_send_buffers_and_file_OK_Test")
+	@Test
+	public void integeration_send_buffers_and_file_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setEnableHeartbeat(false);
+
+		manager.initialize(conf, new MessageHandlerLog());
+		manager.start();
+
+		Path file = Files.createTempFile("broadcastsync", ".bin");
+		try {
+			Files.write(file, new byte[5000]);
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(3000);
+			manager.sendMessage(direct);
+			assertEquals(0, direct.position());
+
+			manager.sendMessage(ByteBuffer.wrap("header".getBytes()), direct);
+			manager.sendFile(file);
+		}finally {
+			manager.shutdown();
+			Files.delete(file);
+		}
+	}
+
+	@DisplayName("integeration_send_message_multicast_OK_Test")
+	@Test
+	public void integeration_send_message_multicast_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setEnableHeartbeat(false);
+		conf.setTransportMode(TransportMode.MULTICAST);
+		conf.getMulticastChannels().put("prices", "239.255.0.2");
+
+		manager.initialize(conf, new MessageHandlerLog());
+		manager.start();
+
+		try {
+			manager.sendMessage("send string message");
+			manager.sendMessageToChannel("prices", "send string message on a channel");
+			manager.sendMessageToChannel("prices", new byte[5000]);
+			assertThrows(BroadCastSyncRuntimeException.class, () -> manager.sendMessageToChannel("unknown", "not sent"));
+		}finally {
+			manager.shutdown();
+		}
+	}
+
+	@DisplayName("integeration_send_message_unicast_to_peer_OK_Test")
+	@Test
+	public void integeration_send_message_unicast_to_peer_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setHeartbeatIntervalTimeMillis(10);
+		conf.setTransportMode(TransportMode.UNICAST);
+		conf.setStaticPeers(Arrays.asList("127.0.0.1"));
+
+		CountDownLatch received = new CountDownLatch(2);
+		manager.initialize(conf, new HeartBeatFactoryInstanceId("node-1"), new MessageHandlerLog() {
+			@Override
+			public void onMessageReceived(MessageString message) {
+				received.countDown();
+			}
+		});
+		manager.start();
+
+		try {
+			assertThrows(BroadCastSyncRuntimeException.class, () -> manager.sendMessageToPeer("node-2", "not sent"));
+
+			//the node learns its own instance ID from its heartbeat
+			for (int i = 0; i < 100 && manager.getPeerDirectory().find("node-1") == null; i++) {
+				Thread.sleep(20);
+			}
+			manager.sendMessage("send string message to the static peers");
+			manager.sendMessageToPeer("node-1", "send string message to one peer");
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+		}finally {
+			manager.shutdown();
+		}
+	}
+
+	@DisplayName("integeration_send_message_ordered_sequence_OK_Test")
+	@Test
+	public void integeration_send_message_ordered_sequence_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setTransportMode(TransportMode.UNICAST);
+		conf.setStaticPeers(Arrays.asList("127.0.0.1"));
+		conf.setReassemblyWorkers(2);
+		conf.setEnableSenderSequence(true);
+		conf.setOrderedDelivery(true);
+
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch received = new CountDownLatch(5);
+		manager.initialize(conf, new MessageHandlerLog() {
+			@Override
+			public void onMessageReceived(MessageString message) {
+				messages.add(message.getData());
+				received.countDown();
+			}
+		});
+		manager.start();
+
+		try {
+			for (int i = 0; i < 5; i++) {
+				manager.sendMessage("message "+i);
+			}
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("message 0", "message 1", "message 2", "message 3", "message 4"), messages);
+			
+			PeerSequenceStatistics.Counters counters = manager.getPeerSequenceStatistics().getPeers().values().iterator().next();
+			assertEquals(5, counters.getReceivedMessages());
+			assertEquals(0, counters.getLostMessages());
+		}finally {
+			manager.shutdown();
+		}
+	}
+
+	@DisplayName("integeration_send_message_compact_header_OK_Test")
+	@Test
+	public void integeration_send_message_compact_header_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setTransportMode(TransportMode.UNICAST);
+		conf.setStaticPeers(Arrays.asList("127.0.0.1"));
+		conf.setWireProtocolVersion(2);
+		conf.setEnableSenderSequence(true);
+		conf.setOrderedDelivery(true);
+		conf.setEnableFec(true);
+
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch received = new CountDownLatch(4);
+		manager.initialize(conf, new MessageHandlerLog() {
+			@Override
+			public void onMessageReceived(MessageString message) {
+				messages.add(message.getData());
+				received.countDown();
+			}
+			
+			@Override
+			public void onMessageReceived(MessageByteArray message) {
+				messages.add("bytes "+message.getData().length);
+				received.countDown();
+			}
+		});
+		manager.start();
+
+		try {
+			manager.sendMessage("message 0");
+			manager.sendMessage(new byte[5000]);
+			manager.sendMessage("message 2");
+			manager.sendMessage("message 3");
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("message 0", "bytes 5000", "message 2", "message 3"), messages);
+		}finally {
+			manager.shutdown();
+		}
+	}
+
+	@DisplayName("integeration_send_message_compact_header_workers_OK_Test")
+	@Test
+	public void integeration_send_message_compact_header_workers_OK_Test() throws Exception {
+
+		BroadCastSyncManager manager = new BroadCastSyncManager();
+
+		//the chunks of a message are routed to the workers by the compact message ID
+		BroadCastSyncConfig conf = BroadCastSyncConfig.buildDefault();
+		conf.setDevelopMode(true);
+		conf.setEnableHeartbeat(false);
+		conf.setTransportMode(TransportMode.UNICAST);
+		conf.setStaticPeers(Arrays.asList("127.0.0.1"));
+		conf.setWireProtocolVersion(2);
+		conf.setReassemblyWorkers(3);
+		conf.setEnableFec(true);
+		//the burst of the messages must not overflow the socket buffer
+		conf.setEnablePacing(true);
+		conf.setPacingBytesPerSecond(500_000);
+
+		CountDownLatch received = new CountDownLatch(20);
+		manager.initialize(conf, new MessageHandlerLog() {
+			@Override
+			public void onMessageReceived(MessageByteArray message) {
+				if(message.getData().length == 5000) {
+					received.countDown();
+				}
+			}
+		});
+		manager.start();
+
+		try {
+			for (int i = 0; i < 20; i++) {
+				manager.sendMessage(new byte[5000]);
+			}
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+			assertEquals(0, manager.getReassemblyStatistics().getExpiredPayloads());
+		}finally {
+			manager.shutdown();
+		}
+	}
 
 	@DisplayName("start_BoradCastSyncManager_OK_Test")
 	@Test
@@ -1,5 +1,6 @@
 package it.spaghettisource.broadcastsync.exception;
 
+import java.io.IOException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.Locale;
@@ -45,6 +46,15 @@ public class ExceptionFactoryTest {
 		log.info((exceptionFactory.getImpossibleSerializeObject(new Exception())).getLocalizedMessage());
 		log.info((exceptionFactory.getLocalHostNameCannotBeResolved(new UnknownHostException())).getLocalizedMessage());
 		log.info((exceptionFactory.getUnexpectedException(new Throwable())).getLocalizedMessage());
+		log.info((exceptionFactory.getOutboundQueueFull(1024)).getLocalizedMessage());
+		log.info((exceptionFactory.getSenderNotRunning()).getLocalizedMessage());
+		log.info((exceptionFactory.getImpossibleReadFile(new IOException(), "file.txt")).getLocalizedMessage());
+		log.info((exceptionFactory.getMessageTooBig(3_000_000_000L)).getLocalizedMessage());
+		log.info((exceptionFactory.getUnknownChannel("prices")).getLocalizedMessage());
+		log.info((exceptionFactory.getUnknownPeer("node-1")).getLocalizedMessage());
+		log.info((exceptionFactory.getPeerCannotBeResolved(null, "node-1:4445")).getLocalizedMessage());
+		log.info((exceptionFactory.getInvalidMulticastGroup(null, "10.0.0.1")).getLocalizedMessage());
+		log.info((exceptionFactory.getMulticastInterfaceNotAvailable(null, "eth9")).getLocalizedMessage());
 
 	}
 	
@@ -64,6 +74,15 @@ public class ExceptionFactoryTest {
 		log.info((exceptionFactory.getImpossibleSerializeObject(new Exception())).getLocalizedMessage());
 		log.info((exceptionFactory.getLocalHostNameCannotBeResolved(new UnknownHostException())).getLocalizedMessage());
 		log.info((exceptionFactory.getUnexpectedException(new Throwable())).getLocalizedMessage());
+		log.info((exceptionFactory.getOutboundQueueFull(1024)).getLocalizedMessage());
+		log.info((exceptionFactory.getSenderNotRunning()).getLocalizedMessage());
+		log.info((exceptionFactory.getImpossibleReadFile(new IOException(), "file.txt")).getLocalizedMessage());
+		log.info((exceptionFactory.getMessageTooBig(3_000_000_000L)).getLocalizedMessage());
+		log.info((exceptionFactory.getUnknownChannel("prices")).getLocalizedMessage());
+		log.info((exceptionFactory.getUnknownPeer("node-1")).getLocalizedMessage());
+		log.info((exceptionFactory.getPeerCannotBeResolved(null, "node-1:4445")).getLocalizedMessage());
+		log.info((exceptionFactory.getInvalidMulticastGroup(null, "10.0.0.1")).getLocalizedMessage());
+		log.info((exceptionFactory.getMulticastInterfaceNotAvailable(null, "eth9")).getLocalizedMessage());
 
 	}
 	
@@ -0,0 +1,154 @@
+package it.spaghettisource.broadcastsync.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.message.HeartBeat;
+import it.spaghettisource.broadcastsync.message.MessageByteArray;
+import it.spaghettisource.broadcastsync.message.MessageObject;
+import it.spaghettisource.broadcastsync.message.MessageString;
+
+public class AsyncMessageHandlerTest {
+
+	private static final int SENDERS = 8;
+	private static final int MESSAGES = 500;
+
+	@DisplayName("dispatch_FIFO_per_sender_OK")
+	@Test
+	public void dispatch_FIFO_per_sender_OK() throws Exception {
+
+		CountDownLatch received = new CountDownLatch(SENDERS * MESSAGES);
+		Map<String, List<String>> messagesBySender = new ConcurrentHashMap<>();
+
+		MessageHandler collector = new MessageHandlerLog() {
+			@Override
+			public void onMessageReceived(MessageString message) {
+				//the list of a sender is used only by one thread at a time
+				messagesBySender.computeIfAbsent(message.getClientAddress(), key -> new ArrayList<>()).add(message.getData());
+				received.countDown();
+			}
+		};
+
+		AsyncMessageHandler handler = new AsyncMessageHandler(collector, () -> AsyncMessageHandler.buildExecutor(4, false));
+		handler.start();
+
+		for (int i = 0; i < MESSAGES; i++) {
+			for (int sender = 0; sender < SENDERS; sender++) {
+				handler.onMessageReceived(new MessageString(Integer.toString(i), "10.0.0."+sender, "host"+sender));
+			}
+		}
+
+		assertTrue(received.await(10, TimeUnit.SECONDS), "not all the messages are dispatched");
+		handler.shutdown();
+
+		assertEquals(SENDERS, messagesBySender.size());
+		for (List<String> messages : messagesBySender.values()) {
+			for (int i = 0; i < MESSAGES; i++) {
+				assertEquals(Integer.toString(i), messages.get(i));
+			}
+		}
+		assertEquals(SENDERS * MESSAGES, handler.getDispatchedMessages());
+		assertEquals(0, handler.getQueueDepth());
+	}
+
+	@DisplayName("dispatch_all_message_types_OK")
+	@Test
+	public void dispatch_all_message_types_OK() throws Exception {
+
+		CountDownLatch received = new CountDownLatch(4);
+
+		MessageHandler counter = new MessageHandler() {
+			@Override
+			public void onHeartBeatReceived(HeartBeat heartBeat) {
+				received.countDown();
+			}
+			@Override
+			public void onMessageReceived(MessageByteArray message) {
+				received.countDown();
+			}
+			@Override
+			public void onMessageReceived(MessageString message) {
+				received.countDown();
+			}
+			@Override
+			public void onMessageReceived(MessageObject message) {
+				received.countDown();
+			}
+		};
+
+		AsyncMessageHandler handler = new AsyncMessageHandler(counter, () -> AsyncMessageHandler.buildExecutor(1, true));
+		handler.start();
+
+		handler.onHeartBeatReceived(new HeartBeat("10.0.0.1", "host"));
+		handler.onMessageReceived(new MessageByteArray(new byte[1], "10.0.0.1", "host"));
+		handler.onMessageReceived(new MessageString("data", "10.0.0.1", "host"));
+		handler.onMessageReceived(new MessageObject("data", "10.0.0.1", "host"));
+
+		assertTrue(received.await(10, TimeUnit.SECONDS), "not all the messages are dispatched");
+		handler.shutdown();
+	}
+
+	@DisplayName("executor_rejects_messages_dropped_OK")
+	@Test
+	public void executor_rejects_messages_dropped_OK() throws Exception {
+
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		MessageHandler slow = new MessageHandlerLog() {
+			@Override
+			public void onMessageReceived(MessageString message) {
+				blocked.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		//one thread and no queue, the executor is saturated by the first sender
+		AsyncMessageHandler handler = new AsyncMessageHandler(slow, () -> new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1)));
+
+		//not started, the message is discarded
+		handler.onMessageReceived(new MessageString("data", "10.0.0.1", "host"));
+		assertEquals(1, handler.getDroppedMessages());
+		assertEquals(0, handler.getQueueDepth());
+
+		handler.start();
+		handler.onMessageReceived(new MessageString("data", "10.0.0.1", "host"));
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+		handler.onMessageReceived(new MessageString("data", "10.0.0.2", "host"));
+		handler.onMessageReceived(new MessageString("data", "10.0.0.3", "host"));
+		assertEquals(2, handler.getDroppedMessages());
+		assertEquals(2, handler.getQueueDepth());
+
+		//the queue of the sender is released, its next message is dispatched
+		release.countDown();
+		long timeout = System.currentTimeMillis() + 10000;
+		while (handler.getDispatchedMessages() < 2 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		handler.onMessageReceived(new MessageString("data", "10.0.0.3", "host"));
+		timeout = System.currentTimeMillis() + 10000;
+		while (handler.getDispatchedMessages() < 3 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(3, handler.getDispatchedMessages());
+		assertEquals(2, handler.getDroppedMessages());
+		assertEquals(0, handler.getQueueDepth());
+		handler.shutdown();
+	}
+
+}
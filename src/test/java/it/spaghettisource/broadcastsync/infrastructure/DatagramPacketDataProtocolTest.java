@@ -1,11 +1,15 @@
 package it.spaghettisource.broadcastsync.infrastructure;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.lang.management.ManagementFactory;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.UUID;
 
@@ -112,4 +116,200 @@ public class DatagramPacketDataProtocolTest {
 		}		
 	}
 	
+	@DisplayName("test_encodeDatagram_same_bytes_of_the_original_protocol_OK")
+	@Test
+	public void test_encodeDatagram_same_bytes_of_the_original_protocol_OK() {
+		
+		UUID uuid = UUID.randomUUID();
+		byte[] message = new byte[500];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) i;
+		}
+		
+		int totalPackets = DatagramPacketDataProtocol.findTotalPackets(message.length, 256);
+		assertEquals(3, totalPackets);
+		
+		ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+		for (int i = 0; i < totalPackets; i++) {
+			int offset = i * 224;
+			int length = Math.min(224, message.length - offset);
+			DatagramPacketDataProtocol.encodeDatagram(buffer, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, totalPackets, i, message, offset, length);
+			
+			byte[] encoded = new byte[buffer.remaining()];
+			buffer.get(encoded);
+			assertArrayEquals(encodeOriginalProtocol(uuid, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, totalPackets, i, message, offset, length), encoded);
+		}
+	}
+	
+	@DisplayName("test_encodeDatagram_from_buffers_OK")
+	@Test
+	public void test_encodeDatagram_from_buffers_OK() {
+		
+		UUID uuid = UUID.randomUUID();
+		byte[] message = new byte[500];
+		for (int i = 0; i < message.length; i++) {
+			message[i] = (byte) i;
+		}
+		
+		//the message is split in buffers that don't match the datagrams
+		ByteBuffer first = ByteBuffer.allocateDirect(100);
+		first.put(message, 0, 100).flip();
+		ByteBuffer empty = ByteBuffer.allocate(0);
+		ByteBuffer second = ByteBuffer.wrap(message, 100, 400);
+		ByteBuffer[] sources = new ByteBuffer[] {first, empty, second};
+		
+		int totalPackets = DatagramPacketDataProtocol.findTotalPackets(message.length, 256);
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		for (int i = 0; i < totalPackets; i++) {
+			int offset = i * 224;
+			int length = Math.min(224, message.length - offset);
+			DatagramPacketDataProtocol.encodeDatagram(buffer, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, totalPackets, i, sources, length);
+			
+			byte[] encoded = new byte[buffer.remaining()];
+			buffer.get(encoded);
+			assertArrayEquals(encodeOriginalProtocol(uuid, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, totalPackets, i, message, offset, length), encoded);
+		}
+		assertEquals(0, second.remaining());
+		assertEquals(100, first.limit());
+	}
+	
+	@DisplayName("test_version2_compact_header_OK")
+	@Test
+	public void test_version2_compact_header_OK() throws Exception {
+		
+		byte[] message = new byte[10];
+		Arrays.fill(message, (byte) 7);
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		
+		//a small message: 21 bytes instead of 42
+		long leastSignificantBits = DatagramPacketDataProtocol.randomCompactMessageIdLeastSignificantBits();
+		assertEquals(11, DatagramPacketDataProtocol.encodeDatagram(buffer, DatagramPacketDataProtocol.VERSION_2, 0, leastSignificantBits, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1, 0, message, 0, message.length));
+		assertEquals(21, buffer.limit());
+		assertEquals(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, DatagramPacketDataProtocol.peekMessageType(buffer));
+		datagramPacketDataProtocol.analyzed(buffer);
+		assertEquals(DatagramPacketDataProtocol.VERSION_2, datagramPacketDataProtocol.getVersion());
+		assertEquals(0, datagramPacketDataProtocol.getMessageIdMostSignificantBits());
+		assertEquals(leastSignificantBits, datagramPacketDataProtocol.getMessageIdLeastSignificantBits());
+		assertEquals(1, datagramPacketDataProtocol.getTotalPackets());
+		assertEquals(0, datagramPacketDataProtocol.getSequence());
+		assertArrayEquals(message, datagramPacketDataProtocol.buildPayloadChunk().getData());
+		
+		//a chunk of a message of a sequence keeps the session and the position
+		long mostSignificantBits = DatagramPacketDataProtocol.randomCompactSequenceMostSignificantBits();
+		leastSignificantBits = DatagramPacketDataProtocol.sequenceLeastSignificantBits(300);
+		assertTrue(DatagramPacketDataProtocol.isSequenced(mostSignificantBits));
+		assertEquals(11, DatagramPacketDataProtocol.encodeDatagram(buffer, DatagramPacketDataProtocol.VERSION_2, mostSignificantBits, leastSignificantBits, MessageType.MESSAGE_TYPE_DATA_UTF8_STRING, 3, 2, message, 0, message.length));
+		datagramPacketDataProtocol.analyzed(buffer);
+		assertEquals(mostSignificantBits, datagramPacketDataProtocol.getMessageIdMostSignificantBits());
+		assertEquals(leastSignificantBits, datagramPacketDataProtocol.getMessageIdLeastSignificantBits());
+		assertEquals(300, DatagramPacketDataProtocol.findSequence(datagramPacketDataProtocol.getMessageIdLeastSignificantBits()));
+		assertEquals(MessageType.MESSAGE_TYPE_DATA_UTF8_STRING, datagramPacketDataProtocol.getMessageType());
+		assertEquals(3, datagramPacketDataProtocol.getTotalPackets());
+		assertEquals(2, datagramPacketDataProtocol.getSequence());
+		assertEquals(10, datagramPacketDataProtocol.getDataAmount());
+		
+		//the version 1 is still received
+		UUID uuid = UUID.randomUUID();
+		DatagramPacketDataProtocol.encodeDatagram(buffer, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1, 0, message, 0, message.length);
+		datagramPacketDataProtocol.analyzed(buffer);
+		assertEquals(DatagramPacketDataProtocol.VERSION_1, datagramPacketDataProtocol.getVersion());
+		assertEquals(uuid.toString(), datagramPacketDataProtocol.getMessageId());
+		assertEquals(DatagramPacketDataProtocol.HEADER_SIZE, datagramPacketDataProtocol.getDataOffset());
+	}
+	
+	@DisplayName("test_peekMessageIdHash_same_messageID_analyzed_OK")
+	@Test
+	public void test_peekMessageIdHash_same_messageID_analyzed_OK() throws Exception {
+		
+		byte[] message = new byte[10];
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		
+		//the position in the sequence is a varint of more bytes
+		long mostSignificantBits = DatagramPacketDataProtocol.randomCompactSequenceMostSignificantBits();
+		for (long position : new long[] {0, 127, 128, 300, 1L << 40}) {
+			long leastSignificantBits = DatagramPacketDataProtocol.sequenceLeastSignificantBits(position);
+			DatagramPacketDataProtocol.encodeDatagram(buffer, DatagramPacketDataProtocol.VERSION_2, mostSignificantBits, leastSignificantBits, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 3, 1, message, 0, message.length);
+			datagramPacketDataProtocol.analyzed(buffer);
+			assertEquals(datagramPacketDataProtocol.getMessageIdMostSignificantBits() ^ datagramPacketDataProtocol.getMessageIdLeastSignificantBits(), DatagramPacketDataProtocol.peekMessageIdHash(buffer));
+		}
+		
+		//the varint is cut by the end of the datagram
+		buffer.limit(DatagramPacketDataProtocol.VERSION_2_MIN_HEADER_SIZE);
+		assertEquals(0, DatagramPacketDataProtocol.peekMessageIdHash(buffer));
+	}
+	
+	@DisplayName("test_version2_fallback_to_version1_OK")
+	@Test
+	public void test_version2_fallback_to_version1_OK() throws Exception {
+		
+		//the bytes 28-31 of the datagram are the data 17-20 and they are the amount of data of a version 1 datagram of the same size
+		byte[] message = new byte[40];
+		ByteBuffer.wrap(message).putInt(17, 51 - DatagramPacketDataProtocol.HEADER_SIZE);
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		long leastSignificantBits = DatagramPacketDataProtocol.randomCompactMessageIdLeastSignificantBits();
+		
+		assertEquals(DatagramPacketDataProtocol.HEADER_SIZE, DatagramPacketDataProtocol.encodeDatagram(buffer, DatagramPacketDataProtocol.VERSION_2, 0, leastSignificantBits, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1, 0, message, 0, message.length));
+		datagramPacketDataProtocol.analyzed(buffer);
+		assertEquals(DatagramPacketDataProtocol.VERSION_1, datagramPacketDataProtocol.getVersion());
+		assertEquals(leastSignificantBits, datagramPacketDataProtocol.getMessageIdLeastSignificantBits());
+		assertArrayEquals(message, datagramPacketDataProtocol.buildPayloadChunk().getData());
+		
+		//a messageID that is not compact
+		UUID uuid = UUID.randomUUID();
+		assertEquals(DatagramPacketDataProtocol.HEADER_SIZE, DatagramPacketDataProtocol.encodeDatagram(buffer, DatagramPacketDataProtocol.VERSION_2, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1, 0, message, 0, message.length));
+		datagramPacketDataProtocol.analyzed(buffer);
+		assertEquals(uuid.toString(), datagramPacketDataProtocol.getMessageId());
+	}
+	
+	@DisplayName("test_encodeDatagram_no_allocation_OK")
+	@Test
+	public void test_encodeDatagram_no_allocation_OK() {
+		
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		long threadId = Thread.currentThread().getId();
+		
+		byte[] message = new byte[4096];
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		
+		//warm up, then measure the steady state
+		encodeMessage(buffer, message, 10000);
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		encodeMessage(buffer, message, 10000);
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+		
+		//50000 datagrams encoded, few bytes can be allocated by the measure itself
+		assertTrue(allocated < 1024, "allocated "+allocated+" bytes");
+	}
+	
+	private void encodeMessage(ByteBuffer buffer, byte[] message, int times) {
+		int totalPackets = DatagramPacketDataProtocol.findTotalPackets(message.length, buffer.capacity());
+		int packetDataSize = buffer.capacity() - DatagramPacketDataProtocol.HEADER_SIZE;
+		for (int t = 0; t < times; t++) {
+			long mostSignificantBits = DatagramPacketDataProtocol.randomMessageIdMostSignificantBits();
+			long leastSignificantBits = DatagramPacketDataProtocol.randomMessageIdLeastSignificantBits();
+			for (int i = 0; i < totalPackets; i++) {
+				int offset = i * packetDataSize;
+				DatagramPacketDataProtocol.encodeDatagram(buffer, mostSignificantBits, leastSignificantBits, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, totalPackets, i, message, offset, Math.min(packetDataSize, message.length - offset));
+			}
+		}
+	}
+	
+	/**
+	 * the encoding of the first version of the protocol, used to verify that the datagrams don't change
+	 */
+	private byte[] encodeOriginalProtocol(UUID uuid, int msgType, int totalPackets, int sequence, byte[] message, int offset, int length) {
+		byte[] data = new byte[length + 32];
+		System.arraycopy(DatagramPacketDataProtocol.serializeUUID(uuid), 0, data, 0, 16);
+		System.arraycopy(ByteBuffer.allocate(4).putInt(msgType).array(), 0, data, 16, 4);
+		System.arraycopy(ByteBuffer.allocate(4).putInt(totalPackets).array(), 0, data, 20, 4);
+		System.arraycopy(ByteBuffer.allocate(4).putInt(sequence).array(), 0, data, 24, 4);
+		System.arraycopy(ByteBuffer.allocate(4).putInt(length).array(), 0, data, 28, 4);
+		System.arraycopy(message, offset, data, 32, length);
+		return data;
+	}
+
 }
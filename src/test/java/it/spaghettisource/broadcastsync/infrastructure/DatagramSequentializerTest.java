@@ -1,13 +1,20 @@
 package it.spaghettisource.broadcastsync.infrastructure;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -17,9 +24,15 @@ import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
 import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
 import it.spaghettisource.broadcastsync.handler.MessageHandler;
 import it.spaghettisource.broadcastsync.handler.MessageHandlerLog;
+import it.spaghettisource.broadcastsync.handler.StreamingMessageHandler;
 import it.spaghettisource.broadcastsync.i18n.FileMessageHelper;
 import it.spaghettisource.broadcastsync.i18n.FileMessageRepository;
+import it.spaghettisource.broadcastsync.message.HeartBeat;
 import it.spaghettisource.broadcastsync.message.HeartBeatFactoryCommand;
+import it.spaghettisource.broadcastsync.message.MessageByteArray;
+import it.spaghettisource.broadcastsync.message.MessageChunk;
+import it.spaghettisource.broadcastsync.message.MessageObject;
+import it.spaghettisource.broadcastsync.message.MessageString;
 import it.spaghettisource.broadcastsync.message.MessageType;
 import it.spaghettisource.broadcastsync.serializer.ObjectSerializer;
 
@@ -144,13 +157,15 @@ public class DatagramSequentializerTest {
 		
 		DatagramPacket[] DatagramPackets = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 50, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, arr);
 		
-		//create a fake payload, now it is stored in the memoty of the squentializer
-		Payload payload = sequentializer.findPayloadOrBuildNewPayload(DatagramPackets[0], "message-Id-unit test clean_expiredMessage");
-				
+		//set the config to be sure that the packed is considered expired, the expiration is scheduled when the payload is created
+		BroadCastSyncConfig expirationConfig = BroadCastSyncConfig.buildDefault();
+		expirationConfig.setPayloadExpirationTime(EXPIRATION_TIME);		
+		expirationConfig.setCleaningExpiredMessageIntervalTimeMillis(EXPIRATION_TIME);
+		DatagramSequentializer sequentializer = new DatagramSequentializer(expirationConfig, exceptionFactory, null, heartBeatFactoryCommand, messageHandler);
 		
-		//set the config to be sure that the packed is considered expired
-		config.setPayloadExpirationTime(EXPIRATION_TIME);		
-		config.setCleaningExpiredMessageIntervalTimeMillis(EXPIRATION_TIME);
+		//create a fake payload, now it is stored in the memoty of the squentializer
+		Payload payload = sequentializer.findPayloadOrBuildNewPayload(DatagramPackets[0].getAddress(), 1L, 2L);
+		assertEquals(1, sequentializer.findAmountOfPendingPayload());
 
 		Thread.sleep(EXPIRATION_TIME*3);	//sleep little bit so we are sure all is expired	
 		
@@ -160,6 +175,414 @@ public class DatagramSequentializerTest {
 		method.invoke(sequentializer);
 		
 		assertEquals(0, sequentializer.findAmountOfPendingPayload());
+		assertEquals(1, sequentializer.getStatistics().getExpiredPayloads());
+	}
+
+	@DisplayName("budget_exceeded_oldest_payload_evicted")
+	@Test	
+	public void budget_exceeded_oldest_payload_evicted() throws Exception{
+		
+		//a budget that holds only one chunk of 100 byte for each sender
+		BroadCastSyncConfig budgetConfig = BroadCastSyncConfig.buildDefault();
+		budgetConfig.setReassemblySenderMemoryBudget(150);
+		DatagramSequentializer sequentializer = new DatagramSequentializer(budgetConfig, exceptionFactory, null, heartBeatFactoryCommand, messageHandler);
+		
+		DatagramPacket[] first = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 100 + DatagramPacketDataProtocol.HEADER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, new byte[300]);
+		DatagramPacket[] second = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 100 + DatagramPacketDataProtocol.HEADER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, new byte[300]);
+
+		Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+		method.setAccessible(true);
+		method.invoke(sequentializer,first[0]);
+		assertEquals(1, sequentializer.findAmountOfPendingPayload());
+		//the chunk plus one word of the table of the chunks received
+		assertEquals(108, sequentializer.getBudget().getUsedBytes());
+		
+		//the first message is discarded to make space for the second
+		method.invoke(sequentializer,second[0]);
+		assertEquals(1, sequentializer.findAmountOfPendingPayload());
+		assertEquals(108, sequentializer.getBudget().getUsedBytes());
+		assertEquals(1, sequentializer.getStatistics().getEvictedPayloads());
+		
+		//the second chunk of the same message doesn't fit, no older message to discard so the message itself is discarded
+		method.invoke(sequentializer,second[1]);
+		assertEquals(0, sequentializer.findAmountOfPendingPayload());
+		assertEquals(0, sequentializer.getBudget().getUsedBytes());
+		assertEquals(2, sequentializer.getStatistics().getEvictedPayloads());
+	}
+
+	@DisplayName("hostile_total_packets_rejected")
+	@Test	
+	public void hostile_total_packets_rejected() throws Exception{
+		
+		DatagramSequentializer sequentializer = new DatagramSequentializer(config, exceptionFactory, null, heartBeatFactoryCommand, messageHandler);
+		Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+		method.setAccessible(true);
+		
+		//a header that declares millions of chunks and sends only the last one
+		byte[] hostile = new byte[DatagramPacketDataProtocol.HEADER_SIZE + 10];
+		DatagramPacketDataProtocol.encodeDatagram(ByteBuffer.wrap(hostile), 1L, 2L, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 8000000, 7999999, new byte[10], 0, 10);
+		method.invoke(sequentializer,new DatagramPacket(hostile, hostile.length, address, 1234));
+		
+		assertEquals(0, sequentializer.findAmountOfPendingPayload());
+		assertEquals(0, sequentializer.getBudget().getUsedBytes());
+		assertEquals(1, sequentializer.getStatistics().getRejectedPayloads());
+		
+		//the biggest message acceptable has its table of the chunks received counted in the budget
+		int chunkDataSize = config.getDatagramPacketBufferSize() - DatagramPacketDataProtocol.HEADER_SIZE - DatagramPacketDataProtocol.FEC_HEADER_SIZE;
+		int maxTotalPackets = (config.getMaxMessageSize() + chunkDataSize - 1) / chunkDataSize;
+		byte[] biggest = new byte[DatagramPacketDataProtocol.HEADER_SIZE + 10];
+		DatagramPacketDataProtocol.encodeDatagram(ByteBuffer.wrap(biggest), 3L, 4L, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, maxTotalPackets, maxTotalPackets - 1, new byte[10], 0, 10);
+		method.invoke(sequentializer,new DatagramPacket(biggest, biggest.length, address, 1234));
+		
+		assertEquals(1, sequentializer.findAmountOfPendingPayload());
+		assertEquals(10 + ((maxTotalPackets + 63) / 64) * 8, sequentializer.getBudget().getUsedBytes());
+		assertEquals(1, sequentializer.getStatistics().getRejectedPayloads());
+	}
+
+	@DisplayName("message_too_big_rejected")
+	@Test	
+	public void message_too_big_rejected() throws Exception{
+		
+		BroadCastSyncConfig sizeConfig = BroadCastSyncConfig.buildDefault();
+		sizeConfig.setMaxMessageSize(200);
+		DatagramSequentializer sequentializer = new DatagramSequentializer(sizeConfig, exceptionFactory, null, heartBeatFactoryCommand, messageHandler);
+		
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 100 + DatagramPacketDataProtocol.HEADER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, new byte[300]);
+
+		Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+		method.setAccessible(true);
+		method.invoke(sequentializer,packets[0]);
+		
+		assertEquals(0, sequentializer.findAmountOfPendingPayload());
+		assertEquals(0, sequentializer.getBudget().getUsedBytes());
+		assertEquals(1, sequentializer.getStatistics().getRejectedPayloads());
+	}
+
+	@DisplayName("streaming_byte_array_OK")
+	@Test	
+	public void streaming_byte_array_OK() throws Exception{
+		
+		byte[] data = new byte[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, data);
+
+		StreamingHandler handler = new StreamingHandler();
+		DatagramSequentializer sequentializer = new DatagramSequentializer(config, exceptionFactory, null, heartBeatFactoryCommand, handler);
+		sequentializer.setStreamingMessageHandler(handler);
+		
+		Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+		method.setAccessible(true);
+		for (int i = packets.length - 1; i >= 0; i--) {
+			method.invoke(sequentializer,packets[i]);			
+		}
+		
+		assertTrue(handler.completed);
+		assertEquals(0, handler.messages);
+		assertArrayEquals(data, handler.received.toByteArray());
+		assertEquals(0, sequentializer.findAmountOfPendingPayload());
+		assertEquals(0, sequentializer.getBudget().getUsedBytes());
+	}
+	
+	@DisplayName("process_CMD_heartbeat_flow_control_OK")
+	@Test	
+	public void process_CMD_heartbeat_flow_control_OK() throws Exception{
+		
+		byte[] report = ByteBuffer.allocate(FlowController.REPORT_SIZE).putInt(700).putInt(5).array();
+		DatagramPacket[] datagramPackets = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT_FLOW_CONTROL, report);
+		
+		StreamingHandler handler = new StreamingHandler();
+		FlowController flowController = new FlowController(config, null, null);
+		DatagramSequentializer sequentializer = new DatagramSequentializer(config, exceptionFactory, null, heartBeatFactoryCommand, handler);
+		sequentializer.setFlowController(flowController);
+		
+		Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+		method.setAccessible(true);
+		method.invoke(sequentializer,datagramPackets[0]);
+		
+		//the report is consumed and the heartbeat is delivered
+		assertEquals(1, handler.heartBeats);
+		FlowController.PeerState peer = flowController.getPeers().get(address.getHostAddress());
+		assertEquals(700, peer.getQueueFill());
+		assertEquals(5, peer.getDropRate());
+	}
+	
+	@DisplayName("process_DATA_bundle_datagram_OK")
+	@Test	
+	public void process_DATA_bundle_datagram_OK() throws Exception{
+		
+		//bundle of two byte arrays and one string
+		ByteBuffer bundle = ByteBuffer.allocate(100);
+		bundle.putInt(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY).putInt(3).put(new byte[] {1, 2, 3});
+		bundle.putInt(MessageType.MESSAGE_TYPE_DATA_UTF8_STRING).putInt(5).put("hello".getBytes(StandardCharsets.UTF_8));
+		bundle.putInt(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY).putInt(0);
+		
+		byte[] data = new byte[DatagramPacketDataProtocol.HEADER_SIZE + bundle.position()];
+		DatagramPacketDataProtocol.encodeDatagram(ByteBuffer.wrap(data), 1L, 2L, MessageType.MESSAGE_TYPE_DATA_BUNDLE, 1, 0, bundle.array(), 0, bundle.position());
+		
+		StreamingHandler handler = new StreamingHandler();
+		DatagramSequentializer sequentializer = new DatagramSequentializer(config, exceptionFactory, null, heartBeatFactoryCommand, handler);
+		
+		Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+		method.setAccessible(true);
+		method.invoke(sequentializer,new DatagramPacket(data, data.length, address, 1234));
+		
+		assertEquals(2, handler.messages);
+		assertEquals(3, sequentializer.getStatistics().getCompletedMessages());
+		assertEquals(0, sequentializer.findAmountOfPendingPayload());
+	}
+	
+	@DisplayName("retransmission_missing_chunks_requested_OK")
+	@Test	
+	public void retransmission_missing_chunks_requested_OK() throws Exception{
+		
+		BroadCastSyncConfig nackConfig = BroadCastSyncConfig.buildDefault();
+		nackConfig.setEnableRetransmission(true);
+		nackConfig.setNackMaxRetries(1);
+		NackClient client = new NackClient(nackConfig);
+		DatagramSequentializer sequentializer = new DatagramSequentializer(nackConfig, exceptionFactory, null, heartBeatFactoryCommand, messageHandler);
+		sequentializer.setUdpClient(client);
+		
+		//the chunk 1 of 3 is lost
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 100 + DatagramPacketDataProtocol.HEADER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, new byte[300]);
+		Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+		method.setAccessible(true);
+		method.invoke(sequentializer,packets[0]);
+		method.invoke(sequentializer,packets[2]);
+		
+		Method nack = DatagramSequentializer.class.getDeclaredMethod("sendNacksIfNeeded",long.class);
+		nack.setAccessible(true);
+		long later = System.currentTimeMillis() + nackConfig.getNackDelayMillis();
+		nack.invoke(sequentializer, later);
+		assertArrayEquals(new int[] {1}, client.requested);
+		assertEquals(address.getHostAddress(), client.sender);
+		assertEquals(1, sequentializer.getStatistics().getNacksSent());
+		
+		//the max retries is reached, the chunk is not requested again
+		client.requested = null;
+		nack.invoke(sequentializer, later + 2 * nackConfig.getNackDelayMillis());
+		assertEquals(null, client.requested);
+		
+		//a NACK received is passed to the client
+		ByteBuffer request = ByteBuffer.allocate(UdpClient.NACK_HEADER_SIZE + 8);
+		request.putLong(1L).putLong(2L).putInt(2).putInt(0).putInt(2);
+		byte[] data = new byte[DatagramPacketDataProtocol.HEADER_SIZE + request.capacity()];
+		DatagramPacketDataProtocol.encodeDatagram(ByteBuffer.wrap(data), 3L, 4L, MessageType.MESSAGE_TYPE_CMD_NACK, 1, 0, request.array(), 0, request.capacity());
+		method.invoke(sequentializer,new DatagramPacket(data, data.length, address, 1234));
+		assertArrayEquals(new int[] {0, 2}, client.retransmitted);
+		assertEquals(1, sequentializer.findAmountOfPendingPayload());
+	}
+	
+	@DisplayName("fec_lost_chunk_rebuilt_OK")
+	@Test	
+	public void fec_lost_chunk_rebuilt_OK() throws Exception{
+		
+		//the datagrams sent by the client are received by the test, the second one is lost
+		try(DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))) {
+			socket.setSoTimeout(5000);
+			
+			BroadCastSyncConfig fecConfig = BroadCastSyncConfig.buildDefault();
+			fecConfig.setDatagramPacketBufferSize(140);
+			fecConfig.setClientPort(0);
+			fecConfig.setEnableFec(true);
+			fecConfig.setFecGroupSize(2);
+			fecConfig.setTransportMode(TransportMode.UNICAST);
+			fecConfig.setStaticPeers(Arrays.asList("127.0.0.1:"+socket.getLocalPort()));
+			UdpClient client = new UdpClient(fecConfig, exceptionFactory);
+			client.startClient();
+			
+			byte[] data = new byte[250];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = (byte) i;
+			}
+			try {
+				client.sendMessage(data);
+			}finally {
+				client.shutdown();
+			}
+			
+			//3 datagrams of 100 byte, a parity after the first 2 and one after the last
+			ByteArrayOutputStream received = new ByteArrayOutputStream();
+			DatagramSequentializer sequentializer = new DatagramSequentializer(fecConfig, exceptionFactory, null, heartBeatFactoryCommand, new MessageHandlerLog() {
+				@Override
+				public void onMessageReceived(MessageByteArray message) {
+					received.write(message.getData(), 0, message.getData().length);
+				}
+			});
+			Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+			method.setAccessible(true);
+			for (int i = 0; i < 5; i++) {
+				DatagramPacket packet = new DatagramPacket(new byte[fecConfig.getDatagramPacketBufferSize()], fecConfig.getDatagramPacketBufferSize());
+				socket.receive(packet);
+				if(i != 1) {
+					method.invoke(sequentializer,packet);
+				}
+			}
+			
+			assertArrayEquals(data, received.toByteArray());
+			assertEquals(1, sequentializer.getStatistics().getRecoveredChunks());
+			assertEquals(0, sequentializer.findAmountOfPendingPayload());
+			assertEquals(0, sequentializer.getBudget().getUsedBytes());
+		}
+	}
+	
+	@DisplayName("bundling_with_fec_OK")
+	@Test	
+	public void bundling_with_fec_OK() throws Exception{
+		
+		try(DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))) {
+			socket.setSoTimeout(5000);
+			
+			BroadCastSyncConfig bundleConfig = BroadCastSyncConfig.buildDefault();
+			bundleConfig.setDatagramPacketBufferSize(140);
+			bundleConfig.setClientPort(0);
+			bundleConfig.setEnableFec(true);
+			bundleConfig.setEnableBundling(true);
+			bundleConfig.setBundleLingerMillis(60000);
+			bundleConfig.setTransportMode(TransportMode.UNICAST);
+			bundleConfig.setStaticPeers(Arrays.asList("127.0.0.1:"+socket.getLocalPort()));
+			UdpClient client = new UdpClient(bundleConfig, exceptionFactory);
+			client.startClient();
+			
+			//every message takes 8 + 46 byte, two messages fill the 108 byte of data of a datagram but with the forward error correction only 100 byte are sent
+			try {
+				for (int i = 0; i < 4; i++) {
+					byte[] data = new byte[46];
+					Arrays.fill(data, (byte) i);
+					client.sendMessage(data);
+				}
+			}finally {
+				client.shutdown();
+			}
+			
+			List<byte[]> received = new ArrayList<>();
+			DatagramSequentializer sequentializer = new DatagramSequentializer(bundleConfig, exceptionFactory, null, heartBeatFactoryCommand, new MessageHandlerLog() {
+				@Override
+				public void onMessageReceived(MessageByteArray message) {
+					received.add(message.getData());
+				}
+			});
+			Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+			method.setAccessible(true);
+			for (int i = 0; i < 4; i++) {
+				DatagramPacket packet = new DatagramPacket(new byte[bundleConfig.getDatagramPacketBufferSize()], bundleConfig.getDatagramPacketBufferSize());
+				socket.receive(packet);
+				method.invoke(sequentializer,packet);
+			}
+			
+			assertEquals(4, received.size());
+			for (int i = 0; i < received.size(); i++) {
+				byte[] data = new byte[46];
+				Arrays.fill(data, (byte) i);
+				assertArrayEquals(data, received.get(i));
+			}
+		}
+	}
+	
+	@DisplayName("nack_fits_in_datagram_with_fec_OK")
+	@Test	
+	public void nack_fits_in_datagram_with_fec_OK() throws Exception{
+		
+		try(DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))) {
+			socket.setSoTimeout(5000);
+			
+			BroadCastSyncConfig nackConfig = BroadCastSyncConfig.buildDefault();
+			nackConfig.setDatagramPacketBufferSize(140);
+			nackConfig.setClientPort(0);
+			nackConfig.setServerPort(socket.getLocalPort());
+			nackConfig.setEnableFec(true);
+			nackConfig.setEnableRetransmission(true);
+			UdpClient client = new UdpClient(nackConfig, exceptionFactory);
+			client.startClient();
+			
+			//the client has 100 byte of data, a NACK requests at most 20 chunks
+			assertEquals(20, client.getMaxNackSequences());
+			int[] missing = new int[30];
+			for (int i = 0; i < missing.length; i++) {
+				missing[i] = i;
+			}
+			try {
+				client.sendNack("127.0.0.1", 1L, 2L, missing, missing.length);
+			}finally {
+				client.shutdown();
+			}
+			
+			DatagramPacket packet = new DatagramPacket(new byte[nackConfig.getDatagramPacketBufferSize()], nackConfig.getDatagramPacketBufferSize());
+			socket.receive(packet);
+			
+			//the receiver accepts the NACK and retransmits the first chunks requested
+			NackClient receiver = new NackClient(nackConfig);
+			DatagramSequentializer sequentializer = new DatagramSequentializer(nackConfig, exceptionFactory, null, heartBeatFactoryCommand, messageHandler);
+			sequentializer.setUdpClient(receiver);
+			Method method = DatagramSequentializer.class.getDeclaredMethod("process",DatagramPacket.class);
+			method.setAccessible(true);
+			method.invoke(sequentializer,packet);
+			assertArrayEquals(Arrays.copyOf(missing, 20), receiver.retransmitted);
+		}
+	}
+	
+	private static class NackClient extends UdpClient {
+		
+		private String sender;
+		private int[] requested;
+		private int[] retransmitted;
+		
+		private NackClient(BroadCastSyncConfig config) {
+			super(config, null);
+		}
+		
+		@Override
+		public void sendNack(String senderAddress, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int[] sequences, int count) {
+			sender = senderAddress;
+			requested = Arrays.copyOf(sequences, count);
+		}
+		
+		@Override
+		public void retransmit(InetAddress requester, long messageIdMostSignificantBits, long messageIdLeastSignificantBits, int[] sequences, int count) {
+			assertEquals(1L, messageIdMostSignificantBits);
+			assertEquals(2L, messageIdLeastSignificantBits);
+			retransmitted = Arrays.copyOf(sequences, count);
+		}
+	}
+	
+	private static class StreamingHandler implements StreamingMessageHandler {
+
+		private ByteArrayOutputStream received = new ByteArrayOutputStream();
+		private boolean completed;
+		private int messages;
+		private int heartBeats;
+
+		@Override
+		public void onMessageChunkReceived(MessageChunk chunk) {
+			assertEquals(received.size(), chunk.getPosition());
+			byte[] bytes = new byte[chunk.getData().remaining()];
+			chunk.getData().get(bytes);
+			received.write(bytes, 0, bytes.length);
+			completed = chunk.isLast();
+		}
+
+		@Override
+		public void onMessageStreamAborted(String messageId, String clientAddress) {
+		}
+
+		@Override
+		public void onHeartBeatReceived(HeartBeat heartBeat) {
+			heartBeats++;
+		}
+
+		@Override
+		public void onMessageReceived(MessageByteArray message) {
+			messages++;
+		}
+
+		@Override
+		public void onMessageReceived(MessageString message) {
+		}
+
+		@Override
+		public void onMessageReceived(MessageObject message) {
+		}
 	}
 
 }
@@ -0,0 +1,36 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.InetAddress;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class DropStatisticsTest {
+
+	@DisplayName("senders_bounded_OK")
+	@Test
+	public void senders_bounded_OK() throws Exception {
+
+		DropStatistics statistics = new DropStatistics(2);
+		InetAddress first = InetAddress.getByAddress(new byte[] {10, 0, 0, 1});
+		InetAddress second = InetAddress.getByAddress(new byte[] {10, 0, 0, 2});
+		statistics.recordDrop(DropReason.NEWEST_DROPPED, first);
+		statistics.recordDrop(DropReason.NEWEST_DROPPED, second);
+
+		//a flood of spoofed senders doesn't grow the statistics, their drops are counted together
+		for (int i = 0; i < 1000; i++) {
+			statistics.recordDrop(DropReason.NEWEST_DROPPED, InetAddress.getByAddress(new byte[] {10, 1, (byte) (i >>> 8), (byte) i}));
+		}
+		statistics.recordDrop(DropReason.DATA_SHED, first);
+
+		assertEquals(2, statistics.getSenders().size());
+		assertEquals(1, statistics.getDrops(first, DropReason.NEWEST_DROPPED));
+		assertEquals(1, statistics.getDrops(first, DropReason.DATA_SHED));
+		assertEquals(1000, statistics.getOtherSendersDrops(DropReason.NEWEST_DROPPED));
+		assertEquals(1002, statistics.getDrops(DropReason.NEWEST_DROPPED));
+		assertEquals(1003, statistics.getTotalDrops());
+	}
+
+}
@@ -0,0 +1,84 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+public class FlowControllerTest {
+
+	private static byte[] report(int queueFill, int dropRate) {
+		return ByteBuffer.allocate(FlowController.REPORT_SIZE).putInt(queueFill).putInt(dropRate).array();
+	}
+
+	@DisplayName("report_queue_fill_and_drop_rate_OK")
+	@Test
+	public void report_queue_fill_and_drop_rate_OK() throws Exception {
+
+		InetAddress address = InetAddress.getLocalHost();
+		RingBuffer<ReceivedDatagram> ringBuffer = new RingBuffer<>(4, true, WaitStrategyType.BLOCK.build());
+		DropStatistics statistics = new DropStatistics();
+		InboundQueue queue = new InboundQueue(ringBuffer, OverloadPolicy.DROP_NEWEST, statistics);
+		FlowController flowController = new FlowController(BroadCastSyncConfig.buildDefault(), queue, statistics);
+
+		//5 datagrams in a queue of 4, one is dropped
+		for (int i = 0; i < 5; i++) {
+			queue.offer(ReceivedDatagram.wrap(DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, new byte[10])[0]));
+		}
+		ByteBuffer report = ByteBuffer.wrap(flowController.buildReport());
+		assertEquals(1000, report.getInt());
+		assertEquals(200, report.getInt());
+
+		//no datagram since the last report
+		ringBuffer.poll();
+		ringBuffer.poll();
+		report = ByteBuffer.wrap(flowController.buildReport());
+		assertEquals(500, report.getInt());
+		assertEquals(0, report.getInt());
+	}
+
+	@DisplayName("rate_adapted_to_percentile_OK")
+	@Test
+	public void rate_adapted_to_percentile_OK() {
+
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		config.setFlowControlPercentile(50);
+		config.setFlowControlQueueFillPercent(50);
+		FlowController flowController = new FlowController(config, null, null);
+		SendPacer pacer = new SendPacer(1_000_000, 0, 10, 1000, true);
+		long now = System.currentTimeMillis();
+
+		//no receiver known
+		assertFalse(flowController.isCongested(now));
+
+		//one receiver of four congested, the median is free
+		flowController.onReport("10.0.0.1", report(100, 0), 0);
+		flowController.onReport("10.0.0.2", report(200, 0), 0);
+		flowController.onReport("10.0.0.3", report(300, 0), 0);
+		flowController.onReport("10.0.0.4", report(0, 5), 0);
+		assertFalse(flowController.isCongested(now));
+		flowController.adapt(pacer);
+		assertEquals(1_000_000, pacer.getCurrentBytesPerSecond());
+
+		//three receivers of four congested, the median is congested
+		flowController.onReport("10.0.0.2", report(700, 0), 0);
+		flowController.onReport("10.0.0.3", report(600, 0), 0);
+		assertTrue(flowController.isCongested(now));
+		flowController.adapt(pacer);
+		assertEquals(500_000, pacer.getCurrentBytesPerSecond());
+		assertEquals(4, flowController.getPeers().size());
+
+		//the receivers not heard anymore are forgotten
+		assertFalse(flowController.isCongested(now + config.getPeerExpirationMillis() + 1000));
+		assertEquals(0, flowController.getPeers().size());
+	}
+
+}
@@ -0,0 +1,213 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+public class InboundQueueTest {
+
+	private static InetAddress	address;
+
+	@BeforeAll
+	public static void init() throws Exception {
+		address = InetAddress.getLocalHost();
+	}
+
+	private ReceivedDatagram buildDatagram(int messageType) {
+		return ReceivedDatagram.wrap(DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 256, messageType, new byte[10])[0]);
+	}
+
+	@DisplayName("drop_newest_OK")
+	@Test
+	public void drop_newest_OK() throws Exception {
+
+		RingBuffer<ReceivedDatagram> ringBuffer = new RingBuffer<>(2, true, WaitStrategyType.BLOCK.build());
+		DropStatistics statistics = new DropStatistics();
+		InboundQueue queue = new InboundQueue(ringBuffer, OverloadPolicy.DROP_NEWEST, statistics);
+
+		ReceivedDatagram first = buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+		queue.offer(first);
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+
+		assertEquals(2, queue.size());
+		assertSame(first, ringBuffer.poll());
+		assertEquals(1, statistics.getDrops(DropReason.NEWEST_DROPPED));
+		assertEquals(1, statistics.getDrops(address, DropReason.NEWEST_DROPPED));
+	}
+
+	@DisplayName("drop_oldest_OK")
+	@Test
+	public void drop_oldest_OK() throws Exception {
+
+		RingBuffer<ReceivedDatagram> ringBuffer = new RingBuffer<>(2, true, WaitStrategyType.BLOCK.build());
+		DropStatistics statistics = new DropStatistics();
+		InboundQueue queue = new InboundQueue(ringBuffer, OverloadPolicy.DROP_OLDEST, statistics);
+
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+		ReceivedDatagram second = buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+		queue.offer(second);
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+
+		assertEquals(2, queue.size());
+		assertSame(second, ringBuffer.poll());
+		assertEquals(1, statistics.getDrops(DropReason.OLDEST_EVICTED));
+		assertEquals(1, statistics.getTotalDrops());
+	}
+
+	@DisplayName("shed_data_keep_heartbeat_OK")
+	@Test
+	public void shed_data_keep_heartbeat_OK() throws Exception {
+
+		RingBuffer<ReceivedDatagram> ringBuffer = new RingBuffer<>(2, true, WaitStrategyType.BLOCK.build());
+		DropStatistics statistics = new DropStatistics();
+		InboundQueue queue = new InboundQueue(ringBuffer, OverloadPolicy.SHED_DATA, statistics);
+
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_UTF8_STRING));
+
+		//the data is shed
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_JAVA_OBJECT));
+		assertEquals(1, statistics.getDrops(DropReason.DATA_SHED));
+
+		//the heartbeat make space evicting the oldest
+		ReceivedDatagram heartbeat = ReceivedDatagram.wrap(DatagramPacketDataProtocol.buildCommandDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT));
+		queue.offer(heartbeat);
+		assertEquals(1, statistics.getDrops(DropReason.OLDEST_EVICTED));
+
+		ringBuffer.poll();
+		assertSame(heartbeat, ringBuffer.poll());
+	}
+
+	@DisplayName("shed_data_keep_queued_commands_OK")
+	@Test
+	public void shed_data_keep_queued_commands_OK() throws Exception {
+
+		RingBuffer<ReceivedDatagram> ringBuffer = new RingBuffer<>(2, true, WaitStrategyType.BLOCK.build());
+		DropStatistics statistics = new DropStatistics();
+		InboundQueue queue = new InboundQueue(ringBuffer, OverloadPolicy.SHED_DATA, statistics);
+
+		ReceivedDatagram first = ReceivedDatagram.wrap(DatagramPacketDataProtocol.buildCommandDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT));
+		queue.offer(first);
+		queue.offer(buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+
+		//the heartbeat evicts the data, not the older heartbeat
+		ReceivedDatagram second = ReceivedDatagram.wrap(DatagramPacketDataProtocol.buildCommandDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT));
+		queue.offer(second);
+		assertEquals(1, statistics.getDrops(DropReason.OLDEST_EVICTED));
+
+		//only commands in the queue, the command received is discarded
+		queue.offer(ReceivedDatagram.wrap(DatagramPacketDataProtocol.buildCommandDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_CMD_HEARTBEAT)));
+		assertEquals(1, statistics.getDrops(DropReason.NEWEST_DROPPED));
+		assertEquals(1, statistics.getDrops(DropReason.OLDEST_EVICTED));
+
+		assertSame(first, ringBuffer.poll());
+		assertSame(second, ringBuffer.poll());
+	}
+
+	@DisplayName("route_chunks_same_worker_OK")
+	@Test
+	public void route_chunks_same_worker_OK() throws Exception {
+
+		List<RingBuffer<ReceivedDatagram>> ringBuffers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			ringBuffers.add(new RingBuffer<>(64, true, WaitStrategyType.BLOCK.build()));
+		}
+		InboundQueue queue = new InboundQueue(ringBuffers, OverloadPolicy.DROP_NEWEST, new DropStatistics(), false);
+
+		//all the chunks of a message must go in the same ring buffer
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(address, 1234, 256, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, new byte[2000]);
+		for (DatagramPacket packet : packets) {
+			queue.offer(ReceivedDatagram.wrap(packet));
+		}
+
+		int used = 0;
+		for (RingBuffer<ReceivedDatagram> ringBuffer : ringBuffers) {
+			if(!ringBuffer.isEmpty()) {
+				used++;
+				assertEquals(packets.length, ringBuffer.size());
+			}
+		}
+		assertEquals(1, used);
+	}
+
+	@DisplayName("route_chunks_same_worker_version2_OK")
+	@Test
+	public void route_chunks_same_worker_version2_OK() throws Exception {
+
+		List<RingBuffer<ReceivedDatagram>> ringBuffers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			ringBuffers.add(new RingBuffer<>(64, true, WaitStrategyType.BLOCK.build()));
+		}
+		InboundQueue queue = new InboundQueue(ringBuffers, OverloadPolicy.DROP_NEWEST, new DropStatistics(), false);
+
+		//messages with a random ID and messages of a sequence, every chunk and the parity of a message must go in the same ring buffer
+		long[][] ids = new long[][] {
+			{0, DatagramPacketDataProtocol.randomCompactMessageIdLeastSignificantBits()},
+			{DatagramPacketDataProtocol.randomCompactSequenceMostSignificantBits(), DatagramPacketDataProtocol.sequenceLeastSignificantBits(1000)}
+		};
+		byte[] data = new byte[100];
+		for (long[] id : ids) {
+			for (int i = 0; i < 8; i++) {
+				ByteBuffer buffer = ByteBuffer.allocate(256);
+				if(i < 7) {
+					Arrays.fill(data, (byte) i);
+					DatagramPacketDataProtocol.encodeDatagram(buffer, DatagramPacketDataProtocol.VERSION_2, id[0], id[1], MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 7, i, data, 0, data.length);
+				}else {
+					DatagramPacketDataProtocol.encodeParity(buffer, DatagramPacketDataProtocol.VERSION_2, id[0], id[1], 7, 0, 8, 0, data, data.length);
+				}
+				queue.offer(new ReceivedDatagram(buffer, null));
+			}
+
+			int used = 0;
+			for (RingBuffer<ReceivedDatagram> ringBuffer : ringBuffers) {
+				if(!ringBuffer.isEmpty()) {
+					used++;
+					assertEquals(8, ringBuffer.size());
+					ringBuffer.drain(datagram -> datagram.release());
+				}
+			}
+			assertEquals(1, used);
+		}
+	}
+
+	@DisplayName("route_by_sender_OK")
+	@Test
+	public void route_by_sender_OK() throws Exception {
+
+		List<RingBuffer<ReceivedDatagram>> ringBuffers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			ringBuffers.add(new RingBuffer<>(64, true, WaitStrategyType.BLOCK.build()));
+		}
+		InboundQueue queue = new InboundQueue(ringBuffers, OverloadPolicy.DROP_NEWEST, new DropStatistics(), true);
+
+		//different messages of the same sender must go in the same ring buffer
+		for (int i = 0; i < 20; i++) {
+			ReceivedDatagram datagram = buildDatagram(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+			datagram.setAddress(address);
+			queue.offer(datagram);
+		}
+
+		int used = 0;
+		for (RingBuffer<ReceivedDatagram> ringBuffer : ringBuffers) {
+			if(!ringBuffer.isEmpty()) {
+				used++;
+			}
+		}
+		assertEquals(1, used);
+		assertEquals(20, queue.size());
+	}
+
+}
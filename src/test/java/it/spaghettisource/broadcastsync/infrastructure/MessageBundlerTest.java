@@ -0,0 +1,129 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+public class MessageBundlerTest {
+
+	@DisplayName("bundle_sent_when_full_OK")
+	@Test
+	public void bundle_sent_when_full_OK() {
+
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		config.setDatagramPacketBufferSize(DatagramPacketDataProtocol.HEADER_SIZE + 100);
+		CapturingClient client = new CapturingClient(config);
+		MessageBundler bundler = new MessageBundler(config, client);
+
+		//every message takes 8 + 40 byte, only two messages fit in a bundle
+		bundler.add(new byte[40], MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+		bundler.add(new byte[40], MessageType.MESSAGE_TYPE_DATA_UTF8_STRING);
+		assertEquals(0, client.bundles.size());
+		bundler.add(new byte[40], MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+		assertEquals(1, client.bundles.size());
+		assertEquals(96, client.bundles.get(0).length);
+
+		bundler.flush();
+		assertEquals(2, client.bundles.size());
+		assertEquals(48, client.bundles.get(1).length);
+
+		//nothing to send
+		bundler.flush();
+		assertEquals(2, client.bundles.size());
+	}
+
+	@DisplayName("bundle_sent_after_linger_OK")
+	@Test
+	public void bundle_sent_after_linger_OK() throws Exception {
+
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		config.setBundleLingerMillis(20);
+		CapturingClient client = new CapturingClient(config);
+		MessageBundler bundler = new MessageBundler(config, client);
+		bundler.startBundler();
+
+		bundler.add(new byte[10], MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+		for (int i = 0; i < 100 && client.size() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, client.size());
+		bundler.shutdown();
+	}
+
+	@DisplayName("add_not_blocked_by_send_OK")
+	@Test
+	public void add_not_blocked_by_send_OK() throws Exception {
+
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		config.setDatagramPacketBufferSize(DatagramPacketDataProtocol.HEADER_SIZE + 100);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CapturingClient client = new CapturingClient(config) {
+			@Override
+			synchronized void sendMessage(byte[] data, int dataLength, int totalPackets, int messageType) {
+				super.sendMessage(data, dataLength, totalPackets, messageType);
+				sending.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		MessageBundler bundler = new MessageBundler(config, client);
+
+		//the third message sends the bundle full and the sender waits in the client
+		bundler.add(new byte[40], MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+		bundler.add(new byte[40], MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY);
+		Thread sender = new Thread(() -> bundler.add(new byte[40], MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY));
+		sender.start();
+		assertTrue(sending.await(10, TimeUnit.SECONDS));
+
+		//meanwhile another thread fills the new bundle without waiting
+		long start = System.nanoTime();
+		bundler.add(new byte[40], MessageType.MESSAGE_TYPE_DATA_UTF8_STRING);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+		release.countDown();
+		sender.join(10000);
+		bundler.flush();
+		assertEquals(2, client.size());
+		assertEquals(96, client.bundles.get(0).length);
+		assertEquals(96, client.bundles.get(1).length);
+	}
+
+	/**
+	 * client that stores the bundles instead of sending them
+	 */
+	private static class CapturingClient extends UdpClient {
+
+		private List<byte[]> bundles = new ArrayList<>();
+
+		private CapturingClient(BroadCastSyncConfig config) {
+			super(config, null);
+		}
+
+		@Override
+		synchronized void sendMessage(byte[] data, int dataLength, int totalPackets, int messageType) {
+			assertEquals(MessageType.MESSAGE_TYPE_DATA_BUNDLE, messageType);
+			assertEquals(1, totalPackets);
+			bundles.add(Arrays.copyOf(data, dataLength));
+		}
+
+		private synchronized int size() {
+			return bundles.size();
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.exception.BroadCastSyncRuntimeException;
+import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
+import it.spaghettisource.broadcastsync.i18n.FileMessageHelper;
+import it.spaghettisource.broadcastsync.i18n.FileMessageRepository;
+
+public class MulticastGroupsTest {
+
+	private static ExceptionFactory exceptionFactory;
+
+	@BeforeAll
+	public static void initialize() {
+		//prepare the i18n messaged
+		FileMessageRepository exceptionMessageRepository = new FileMessageRepository();
+		exceptionMessageRepository.setMessageRepositoryBundleBaseName("i18n.exception-message");
+		FileMessageHelper exceptionMessageHelper = new FileMessageHelper();
+		exceptionMessageHelper.setMessageRepository(exceptionMessageRepository);
+
+		exceptionFactory = new ExceptionFactory(BroadCastSyncConfig.buildDefault(),exceptionMessageHelper);
+	}
+
+	@DisplayName("channels_subscribed_OK")
+	@Test
+	public void channels_subscribed_OK() throws Exception {
+
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		config.getMulticastChannels().put("prices", "239.255.0.2");
+		config.getMulticastChannels().put("orders", "239.255.0.3");
+
+		//without subscriptions all the channels are joined
+		MulticastGroups groups = new MulticastGroups(config, exceptionFactory);
+		assertNotNull(groups.getNetworkInterface());
+		assertEquals(InetAddress.getByName("239.255.0.1"), groups.getDefaultGroup());
+		assertEquals(InetAddress.getByName("239.255.0.2"), groups.getGroup("prices", exceptionFactory));
+		assertEquals(3, groups.getSubscribedGroups().size());
+
+		//only the default group and the channel subscribed
+		config.setSubscribedChannels(Collections.singletonList("orders"));
+		groups = new MulticastGroups(config, exceptionFactory);
+		assertEquals(Arrays.asList(InetAddress.getByName("239.255.0.1"), InetAddress.getByName("239.255.0.3")), Arrays.asList(groups.getSubscribedGroups().toArray()));
+		assertTrue(groups.getChannelGroups().containsKey("prices"));
+	}
+
+	@DisplayName("invalid_configuration_KO")
+	@Test
+	public void invalid_configuration_KO() {
+
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		config.getMulticastChannels().put("prices", "10.0.0.1");
+		assertThrows(BroadCastSyncRuntimeException.class, () -> new MulticastGroups(config, exceptionFactory));
+
+		config.getMulticastChannels().clear();
+		config.setSubscribedChannels(Collections.singletonList("unknown"));
+		assertThrows(BroadCastSyncRuntimeException.class, () -> new MulticastGroups(config, exceptionFactory));
+
+		config.setSubscribedChannels(null);
+		config.setMulticastInterface("not-existing-interface");
+		assertThrows(BroadCastSyncRuntimeException.class, () -> new MulticastGroups(config, exceptionFactory));
+	}
+
+}
@@ -0,0 +1,92 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+public class PayloadExpirationWheelTest {
+
+	private Payload buildPayload(long messageId) {
+		return new Payload(messageId, messageId, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 2);
+	}
+
+	@DisplayName("expire_after_deadline_OK")
+	@Test
+	public void expire_after_deadline_OK() {
+
+		PayloadExpirationWheel wheel = new PayloadExpirationWheel(8, 10, 0);
+		Payload first = buildPayload(1);
+		Payload second = buildPayload(2);
+		wheel.schedule(first, 25);
+		wheel.schedule(second, 55);
+		assertEquals(2, wheel.size());
+
+		List<Payload> expired = new ArrayList<>();
+		assertEquals(0, wheel.advance(20, expired::add));
+		assertEquals(1, wheel.advance(30, expired::add));
+		assertSame(first, expired.get(0));
+
+		assertEquals(1, wheel.advance(60, expired::add));
+		assertSame(second, expired.get(1));
+		assertEquals(0, wheel.size());
+	}
+
+	@DisplayName("cancel_OK")
+	@Test
+	public void cancel_OK() {
+
+		PayloadExpirationWheel wheel = new PayloadExpirationWheel(8, 10, 0);
+		Payload first = buildPayload(1);
+		Payload second = buildPayload(2);
+		Payload third = buildPayload(3);
+
+		//all in the same slot, remove the one in the middle of the list
+		wheel.schedule(first, 25);
+		wheel.schedule(second, 25);
+		wheel.schedule(third, 25);
+		wheel.cancel(second);
+		wheel.cancel(second);
+		assertEquals(2, wheel.size());
+
+		List<Payload> expired = new ArrayList<>();
+		assertEquals(2, wheel.advance(30, expired::add));
+		assertEquals(0, wheel.size());
+	}
+
+	@DisplayName("expire_after_many_rounds_OK")
+	@Test
+	public void expire_after_many_rounds_OK() {
+
+		//the wheel covers 80 millis, the payload expires after more rounds
+		PayloadExpirationWheel wheel = new PayloadExpirationWheel(8, 10, 0);
+		Payload payload = buildPayload(4);
+		wheel.schedule(payload, 205);
+
+		List<Payload> expired = new ArrayList<>();
+		for (long now = 10; now < 200; now += 10) {
+			assertEquals(0, wheel.advance(now, expired::add));
+		}
+		assertEquals(1, wheel.advance(210, expired::add));
+	}
+
+	@DisplayName("expire_after_long_idle_OK")
+	@Test
+	public void expire_after_long_idle_OK() {
+
+		PayloadExpirationWheel wheel = new PayloadExpirationWheel(8, 10, 0);
+		wheel.schedule(buildPayload(1), 15);
+		wheel.schedule(buildPayload(2), 75);
+
+		//no advance for more than one round, all the slots must be visited
+		List<Payload> expired = new ArrayList<>();
+		assertEquals(2, wheel.advance(1000, expired::add));
+	}
+
+}
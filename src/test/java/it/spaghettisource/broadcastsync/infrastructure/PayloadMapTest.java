@@ -0,0 +1,83 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+public class PayloadMapTest {
+
+	private Payload buildPayload(UUID id) {
+		return new Payload(id.getMostSignificantBits(), id.getLeastSignificantBits(), "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1);
+	}
+
+	@DisplayName("put_get_remove_OK")
+	@Test
+	public void put_get_remove_OK() {
+
+		PayloadMap map = new PayloadMap();
+		List<Payload> payloads = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Payload payload = buildPayload(UUID.randomUUID());
+			payloads.add(payload);
+			assertNull(map.put(payload));
+		}
+		assertEquals(1000, map.size());
+
+		for (Payload payload : payloads) {
+			assertSame(payload, map.get(payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits()));
+		}
+
+		//remove half of the payloads, the others must be still reachable
+		for (int i = 0; i < payloads.size(); i += 2) {
+			Payload payload = payloads.get(i);
+			assertSame(payload, map.remove(payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits()));
+		}
+		assertEquals(500, map.size());
+
+		for (int i = 0; i < payloads.size(); i++) {
+			Payload payload = payloads.get(i);
+			Payload found = map.get(payload.getMessageIdMostSignificantBits(), payload.getMessageIdLeastSignificantBits());
+			if(i % 2 == 0) {
+				assertNull(found);
+			}else {
+				assertSame(payload, found);
+			}
+		}
+	}
+
+	@DisplayName("colliding_keys_OK")
+	@Test
+	public void colliding_keys_OK() {
+
+		//sequential keys with the same most significant bits, like the IDs built with a counter
+		PayloadMap map = new PayloadMap();
+		for (long i = 0; i < 100; i++) {
+			map.put(buildPayload(new UUID(7, i)));
+		}
+		for (long i = 0; i < 100; i += 3) {
+			map.remove(7, i);
+		}
+		for (long i = 0; i < 100; i++) {
+			Payload found = map.get(7, i);
+			assertEquals(i % 3 != 0, found != null);
+		}
+	}
+
+	@DisplayName("lazy_message_id_OK")
+	@Test
+	public void lazy_message_id_OK() {
+
+		UUID id = UUID.randomUUID();
+		assertEquals(id.toString(), buildPayload(id).getMessageId());
+	}
+
+}
@@ -0,0 +1,237 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+public class PayloadTest {
+
+	private static final int BUFFER_SIZE = 64;
+
+	private byte[] buildData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) i;
+		}
+		return data;
+	}
+
+	private void addChunk(Payload payload, DatagramPacket packet) {
+		ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()).slice();
+		payload.addChunk(buffer.getInt(24), buffer, DatagramPacketDataProtocol.HEADER_SIZE, buffer.getInt(28));
+	}
+
+	@DisplayName("rebuild_out_of_order_last_chunk_first_OK")
+	@Test
+	public void rebuild_out_of_order_last_chunk_first_OK() throws Exception {
+
+		byte[] data = buildData(100);
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(InetAddress.getLocalHost(), 1234, BUFFER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, data);
+		assertEquals(4, packets.length);
+
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, packets.length);
+		addChunk(payload, packets[3]);
+		addChunk(payload, packets[1]);
+		addChunk(payload, packets[0]);
+		assertFalse(payload.isCompleted());
+		addChunk(payload, packets[2]);
+
+		assertTrue(payload.isCompleted());
+		assertEquals(100, payload.getDataLength());
+		assertArrayEquals(data, payload.getData());
+	}
+
+	@DisplayName("duplicated_chunk_ignored_OK")
+	@Test
+	public void duplicated_chunk_ignored_OK() throws Exception {
+
+		byte[] data = buildData(64);
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(InetAddress.getLocalHost(), 1234, BUFFER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, data);
+
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, packets.length);
+		ByteBuffer first = ByteBuffer.wrap(packets[0].getData());
+		assertTrue(payload.addChunk(0, first, DatagramPacketDataProtocol.HEADER_SIZE, 32));
+		assertFalse(payload.addChunk(0, first, DatagramPacketDataProtocol.HEADER_SIZE, 32));
+		assertEquals(1, payload.packetsReceived());
+		assertFalse(payload.isCompleted());
+
+		addChunk(payload, packets[1]);
+		assertTrue(payload.isCompleted());
+		//the chunks fill the buffer, no copy is needed
+		assertArrayEquals(data, payload.getData());
+		assertEquals(payload.getBuffer(), payload.getData());
+	}
+
+	@DisplayName("sequence_out_of_range_KO")
+	@Test
+	public void sequence_out_of_range_KO() {
+
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 2);
+		assertThrows(IllegalArgumentException.class, () -> payload.addChunk(new PayloadChunk(2, new byte[10])));
+	}
+
+	@DisplayName("buffer_grows_lazily_OK")
+	@Test
+	public void buffer_grows_lazily_OK() {
+
+		//a sender that declares a huge message doesn't allocate memory for the chunks not received
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1000000);
+		payload.addChunk(new PayloadChunk(0, new byte[100]));
+		//the chunks plus one word of the table of the chunks received
+		assertEquals(108, payload.getAllocatedSize());
+		payload.addChunk(new PayloadChunk(1, new byte[100]));
+		assertEquals(208, payload.getAllocatedSize());
+		assertEquals(200, payload.getDataLength());
+	}
+
+	@DisplayName("buffer_exact_size_when_last_chunk_stored_OK")
+	@Test
+	public void buffer_exact_size_when_last_chunk_stored_OK() throws Exception {
+
+		//the last chunk is shorter than the others, received in order and as the first one
+		byte[] data = buildData(100);
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(InetAddress.getLocalHost(), 1234, BUFFER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, data);
+
+		Payload inOrder = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, packets.length);
+		for (DatagramPacket packet : packets) {
+			addChunk(inOrder, packet);
+		}
+		assertTrue(inOrder.isCompleted());
+		assertEquals(100, inOrder.getBuffer().length);
+		assertSame(inOrder.getBuffer(), inOrder.getData());
+		assertArrayEquals(data, inOrder.getData());
+
+		Payload lastFirst = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, packets.length);
+		addChunk(lastFirst, packets[3]);
+		addChunk(lastFirst, packets[0]);
+		//the size of the message is known, the buffer is allocated once
+		assertEquals(100, lastFirst.getBuffer().length);
+		addChunk(lastFirst, packets[1]);
+		addChunk(lastFirst, packets[2]);
+		assertSame(lastFirst.getBuffer(), lastFirst.getData());
+		assertArrayEquals(data, lastFirst.getData());
+	}
+
+	@DisplayName("received_table_counted_OK")
+	@Test
+	public void received_table_counted_OK() {
+
+		//the table of the chunks received grows with the last sequence accepted and it is part of the allocated size
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1000);
+		assertEquals(8, payload.getAllocatedSize());
+		payload.addChunk(new PayloadChunk(999, new byte[10]));
+		assertEquals(10 + 16 * 8, payload.getAllocatedSize());
+
+		//a sequence out of range is refused without growing the table
+		assertThrows(IllegalArgumentException.class, () -> payload.addChunk(new PayloadChunk(1000, new byte[10])));
+		assertEquals(10 + 16 * 8, payload.getAllocatedSize());
+	}
+
+	@DisplayName("streaming_out_of_order_OK")
+	@Test
+	public void streaming_out_of_order_OK() throws Exception {
+
+		byte[] data = buildData(100);
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(InetAddress.getLocalHost(), 1234, BUFFER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, data);
+
+		ByteArrayOutputStream received = new ByteArrayOutputStream();
+		Payload.ChunkConsumer consumer = (payload, sequence, position, chunk) -> {
+			assertEquals(received.size(), position);
+			byte[] bytes = new byte[chunk.remaining()];
+			chunk.get(bytes);
+			received.write(bytes, 0, bytes.length);
+		};
+
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, packets.length);
+		payload.enableStreaming();
+		addStreamChunk(payload, packets[2], consumer);
+		addStreamChunk(payload, packets[1], consumer);
+		//only the chunks out of order are retained
+		assertEquals(0, received.size());
+		assertEquals(64 + 8, payload.getAllocatedSize());
+
+		addStreamChunk(payload, packets[0], consumer);
+		assertEquals(96, received.size());
+		assertEquals(8, payload.getAllocatedSize());
+		assertEquals(3, payload.getDeliveredChunks());
+
+		addStreamChunk(payload, packets[3], consumer);
+		assertTrue(payload.isCompleted());
+		assertArrayEquals(data, received.toByteArray());
+	}
+
+	private void addStreamChunk(Payload payload, DatagramPacket packet, Payload.ChunkConsumer consumer) {
+		ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()).slice();
+		payload.addChunk(buffer.getInt(24), buffer, DatagramPacketDataProtocol.HEADER_SIZE, buffer.getInt(28), consumer);
+	}
+
+	@DisplayName("message_bigger_than_max_size_KO")
+	@Test
+	public void message_bigger_than_max_size_KO() {
+
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 1000, 10000);
+		assertThrows(IllegalArgumentException.class, () -> payload.addChunk(new PayloadChunk(0, new byte[100])));
+		assertEquals(0, payload.getDataLength());
+	}
+
+	private void addParity(Payload payload, DatagramPacket[] packets, int group, int groupSize) {
+		ByteBuffer parity = ByteBuffer.allocate(BUFFER_SIZE);
+		int lengthsXor = 0;
+		int length = 0;
+		for (int sequence = group * groupSize; sequence < Math.min((group + 1) * groupSize, packets.length); sequence++) {
+			ByteBuffer chunk = ByteBuffer.wrap(packets[sequence].getData());
+			int chunkLength = chunk.getInt(28);
+			DatagramPacketDataProtocol.xor(chunk, DatagramPacketDataProtocol.HEADER_SIZE, parity, 0, chunkLength);
+			lengthsXor ^= chunkLength;
+			length = Math.max(length, chunkLength);
+		}
+		payload.addParity(group, groupSize, lengthsXor, parity, 0, length);
+	}
+
+	@DisplayName("rebuild_lost_chunks_from_parity_OK")
+	@Test
+	public void rebuild_lost_chunks_from_parity_OK() throws Exception {
+
+		//4 chunks in 2 groups, one chunk lost in each group, the last chunk is shorter
+		byte[] data = buildData(100);
+		DatagramPacket[] packets = DatagramPacketDataProtocol.buildDatagramPacket(InetAddress.getLocalHost(), 1234, BUFFER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, data);
+		Payload payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, packets.length);
+		addChunk(payload, packets[0]);
+		addParity(payload, packets, 0, 2);
+		assertEquals(1, payload.getRecoveredChunks());
+
+		//the parity arrives before the other chunk of the group
+		addParity(payload, packets, 1, 2);
+		assertFalse(payload.isCompleted());
+		addChunk(payload, packets[2]);
+
+		assertTrue(payload.isCompleted());
+		assertEquals(2, payload.getRecoveredChunks());
+		assertArrayEquals(data, payload.getData());
+		//the parities are released, only the table of the chunks received remains
+		assertEquals(payload.getBuffer().length + 8, payload.getAllocatedSize());
+
+		//the first chunk is lost and the size of the chunks is learned from the parity
+		data = buildData(40);
+		packets = DatagramPacketDataProtocol.buildDatagramPacket(InetAddress.getLocalHost(), 1234, BUFFER_SIZE, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, data);
+		payload = new Payload(1L, 2L, "127.0.0.1", "localhost", MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, packets.length);
+		addChunk(payload, packets[1]);
+		addParity(payload, packets, 0, 2);
+		assertTrue(payload.isCompleted());
+		assertArrayEquals(data, payload.getData());
+	}
+
+}
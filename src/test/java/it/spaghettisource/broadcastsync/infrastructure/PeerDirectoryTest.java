@@ -0,0 +1,43 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.InetSocketAddress;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class PeerDirectoryTest {
+
+	@DisplayName("peer_found_by_instance_id_OK")
+	@Test
+	public void peer_found_by_instance_id_OK() {
+
+		PeerDirectory directory = new PeerDirectory(4445, 60000);
+		directory.update("node-1", "10.0.0.1");
+		directory.update("", "10.0.0.2");
+		directory.update(null, "10.0.0.3");
+
+		assertEquals(1, directory.size());
+		assertEquals(new InetSocketAddress("10.0.0.1", 4445), directory.find("node-1"));
+		assertNull(directory.find("node-2"));
+
+		//the node changed address
+		directory.update("node-1", "10.0.0.4");
+		assertEquals(new InetSocketAddress("10.0.0.4", 4445), directory.find("node-1"));
+	}
+
+	@DisplayName("peer_expired_KO")
+	@Test
+	public void peer_expired_KO() throws Exception {
+
+		PeerDirectory directory = new PeerDirectory(4445, 50);
+		directory.update("node-1", "10.0.0.1");
+		Thread.sleep(100);
+
+		assertNull(directory.find("node-1"));
+		assertEquals(0, directory.size());
+	}
+
+}
@@ -0,0 +1,42 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.InetAddress;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class PeerNameResolverTest {
+
+	@DisplayName("resolution_disabled_OK")
+	@Test
+	public void resolution_disabled_OK() throws Exception {
+
+		InetAddress address = InetAddress.getLoopbackAddress();
+		PeerNameResolver resolver = new PeerNameResolver(false, 1000, 10);
+
+		assertEquals(address.getHostAddress(), resolver.resolve(address));
+		Thread.sleep(100);
+		assertEquals(address.getHostAddress(), resolver.resolve(address));
+		assertEquals(0, resolver.size());
+	}
+
+	@DisplayName("resolution_in_background_OK")
+	@Test
+	public void resolution_in_background_OK() throws Exception {
+
+		InetAddress address = InetAddress.getLoopbackAddress();
+		PeerNameResolver resolver = new PeerNameResolver(true, 60000, 10);
+
+		//the first call never waits the DNS
+		assertEquals(address.getHostAddress(), resolver.resolve(address));
+
+		for (int i = 0; i < 100 && resolver.size() == 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(1, resolver.size());
+		assertEquals(InetAddress.getByAddress(address.getAddress()).getCanonicalHostName(), resolver.resolve(address));
+	}
+
+}
@@ -0,0 +1,66 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ReceiveBufferPoolTest {
+
+	@DisplayName("pool_sized_from_queue_no_miss_OK")
+	@Test
+	public void pool_sized_from_queue_no_miss_OK() throws Exception {
+
+		List<RingBuffer<ReceivedDatagram>> ringBuffers = Arrays.asList(new RingBuffer<>(64, true, WaitStrategyType.BLOCK.build()), new RingBuffer<>(64, true, WaitStrategyType.BLOCK.build()));
+		InboundQueue queue = new InboundQueue(ringBuffers, OverloadPolicy.DROP_NEWEST, new DropStatistics(), true);
+		assertEquals(128, queue.capacity());
+		assertEquals(128 + 2 + 1, ReceiveBufferPool.findPoolSize(16, queue));
+		assertEquals(1000, ReceiveBufferPool.findPoolSize(1000, queue));
+
+		//the queue is full and every worker holds a datagram while the receiver is filling another one
+		ReceiveBufferPool pool = new ReceiveBufferPool(ReceiveBufferPool.findPoolSize(16, queue), 64, false);
+		fillAndConsume(pool, queue, ringBuffers, 10);
+		assertEquals(0, pool.getMisses());
+
+		//the pool of the configured size allocates at every round
+		ReceiveBufferPool small = new ReceiveBufferPool(16, 64, false);
+		fillAndConsume(small, queue, ringBuffers, 10);
+		assertTrue(small.getMisses() > 0);
+	}
+
+	private void fillAndConsume(ReceiveBufferPool pool, InboundQueue queue, List<RingBuffer<ReceivedDatagram>> ringBuffers, int rounds) throws Exception {
+		for (int round = 0; round < rounds; round++) {
+
+			//two senders, one for every ring buffer, more datagrams than the queue can hold, the ones dropped are released
+			for (int i = 0; i < queue.capacity() * 2; i++) {
+				ReceivedDatagram datagram = pool.acquire();
+				datagram.setAddress(InetAddress.getByAddress(new byte[] {127, 0, 0, (byte) (i % 2)}));
+				queue.offer(datagram);
+			}
+			assertEquals(queue.capacity(), queue.size());
+
+			List<ReceivedDatagram> processing = new ArrayList<>();
+			for (RingBuffer<ReceivedDatagram> ringBuffer : ringBuffers) {
+				ReceivedDatagram datagram = ringBuffer.poll();
+				if(datagram != null) {
+					processing.add(datagram);
+				}
+			}
+			ReceivedDatagram receiving = pool.acquire();
+
+			//the workers consume all the datagrams and give them back to the pool
+			for (RingBuffer<ReceivedDatagram> ringBuffer : ringBuffers) {
+				ringBuffer.drain(datagram -> datagram.release());
+			}
+			processing.forEach(ReceivedDatagram::release);
+			receiving.release();
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.message.MessageType;
+
+public class RetransmitBufferTest {
+
+	@DisplayName("store_and_find_OK")
+	@Test
+	public void store_and_find_OK() {
+		RetransmitBuffer buffer = new RetransmitBuffer(1000);
+		byte[] data = new byte[] {1, 2, 3};
+		buffer.store(1L, 2L, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 3, data);
+
+		RetransmitBuffer.SentMessage message = buffer.find(1L, 2L);
+		assertEquals(MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, message.getMessageType());
+		assertEquals(3, message.getTotalPackets());
+		assertArrayEquals(data, message.getData());
+		assertNull(buffer.find(2L, 1L));
+	}
+
+	@DisplayName("capacity_exceeded_oldest_forgotten")
+	@Test
+	public void capacity_exceeded_oldest_forgotten() {
+		RetransmitBuffer buffer = new RetransmitBuffer(250);
+		buffer.store(1L, 1L, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 2, new byte[100]);
+		buffer.store(2L, 2L, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 2, new byte[100]);
+		buffer.store(3L, 3L, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 2, new byte[100]);
+
+		assertNull(buffer.find(1L, 1L));
+		assertEquals(2, buffer.size());
+		assertEquals(200, buffer.getUsedBytes());
+
+		//a message bigger than the buffer is never kept, the sender doesn't copy it
+		assertTrue(buffer.canStore(250));
+		assertFalse(buffer.canStore(300));
+		buffer.store(4L, 4L, MessageType.MESSAGE_TYPE_DATA_BYTE_ARRAY, 4, new byte[300]);
+		assertNull(buffer.find(4L, 4L));
+		assertEquals(2, buffer.size());
+	}
+
+}
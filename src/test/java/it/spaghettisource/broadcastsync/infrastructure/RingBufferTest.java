@@ -0,0 +1,128 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class RingBufferTest {
+
+	private static final int PRODUCERS = 4;
+	private static final int ELEMENTS = 20000;
+
+	@DisplayName("capacity_rounded_to_power_of_two")
+	@Test
+	public void capacity_rounded_to_power_of_two() {
+
+		RingBuffer<Integer> queue = new RingBuffer<>(100, true, WaitStrategyType.BLOCK.build());
+		assertEquals(128, queue.capacity());
+	}
+
+	@DisplayName("offer_poll_FIFO_OK")
+	@Test
+	public void offer_poll_FIFO_OK() {
+
+		RingBuffer<Integer> queue = new RingBuffer<>(4, true, WaitStrategyType.BLOCK.build());
+
+		//fill the queue more than one round to use all the slots
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 4; i++) {
+				assertTrue(queue.offer(i));
+			}
+			assertFalse(queue.offer(99), "the queue must be full");
+			assertEquals(4, queue.size());
+
+			for (int i = 0; i < 4; i++) {
+				assertEquals(i, queue.poll());
+			}
+			assertNull(queue.poll());
+			assertTrue(queue.isEmpty());
+		}
+	}
+
+	@DisplayName("drainTo_max_elements_OK")
+	@Test
+	public void drainTo_max_elements_OK() {
+
+		RingBuffer<Integer> queue = new RingBuffer<>(16, false, WaitStrategyType.BLOCK.build());
+		for (int i = 0; i < 10; i++) {
+			queue.offer(i);
+		}
+
+		List<Integer> batch = new ArrayList<>();
+		assertEquals(8, queue.drainTo(batch, 8));
+		assertEquals(2, queue.size());
+		assertEquals(7, batch.get(7));
+
+		assertEquals(2, queue.drain(batch::add));
+		assertEquals(10, batch.size());
+	}
+
+	@DisplayName("poll_timeout_all_wait_strategies_OK")
+	@Test
+	public void poll_timeout_all_wait_strategies_OK() throws Exception {
+
+		for (WaitStrategyType type : WaitStrategyType.values()) {
+			RingBuffer<Integer> queue = new RingBuffer<>(4, true, type.build());
+			assertNull(queue.poll(5, TimeUnit.MILLISECONDS), "the queue is empty with the wait strategy "+type);
+
+			queue.offer(1);
+			assertEquals(1, queue.poll(5, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@DisplayName("multi_producer_all_wait_strategies_OK")
+	@Test
+	public void multi_producer_all_wait_strategies_OK() throws Exception {
+
+		for (WaitStrategyType type : WaitStrategyType.values()) {
+			//the busy spin needs a core for each thread, otherwise the threads steal the CPU each other
+			if(type!=WaitStrategyType.BUSY_SPIN || Runtime.getRuntime().availableProcessors() > PRODUCERS) {
+				verifyMultiProducer(type);
+			}
+		}
+	}
+
+	private void verifyMultiProducer(WaitStrategyType type) throws Exception {
+
+		//small capacity to force the producers to wait for the consumer
+		RingBuffer<long[]> queue = new RingBuffer<>(64, false, type.build());
+
+		List<Thread> producers = new ArrayList<>();
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i = 0; i < ELEMENTS; i++) {
+						queue.put(new long[] {producer, i});
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			producers.add(thread);
+			thread.start();
+		}
+
+		//the elements of each producer must arrive in order
+		long[] expected = new long[PRODUCERS];
+		for (int i = 0; i < PRODUCERS * ELEMENTS; i++) {
+			long[] element = queue.take();
+			assertEquals(expected[(int) element[0]], element[1], "wrong order with the wait strategy "+type);
+			expected[(int) element[0]]++;
+		}
+
+		for (Thread thread : producers) {
+			thread.join();
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+}
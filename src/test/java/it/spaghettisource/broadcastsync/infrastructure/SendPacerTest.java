@@ -0,0 +1,114 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SendPacerTest {
+
+	@DisplayName("rate_respected_OK")
+	@Test
+	public void rate_respected_OK() {
+
+		//100 datagrams of 1000 bytes at 1MB/s with a burst of 10 datagrams need at least 90 ms
+		SendPacer pacer = new SendPacer(1_000_000, 0, 10, 1000, false);
+		long start = System.nanoTime();
+		for (int i = 0; i < 100; i++) {
+			pacer.acquire(1000);
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(elapsed >= 85, "elapsed " + elapsed);
+	}
+
+	@DisplayName("book_without_wait_OK")
+	@Test
+	public void book_without_wait_OK() {
+
+		//100 datagrams of 1000 bytes at 1MB/s are booked without waiting
+		SendPacer pacer = new SendPacer(1_000_000, 0, 10, 1000, false);
+		long start = System.nanoTime();
+		for (int i = 0; i < 100; i++) {
+			pacer.book(1000);
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 50);
+
+		//the datagram that follows waits the time booked
+		pacer.acquire(1000);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(elapsed >= 85, "elapsed " + elapsed);
+	}
+
+	@DisplayName("no_limit_OK")
+	@Test
+	public void no_limit_OK() {
+
+		SendPacer pacer = new SendPacer(0, 0, 10, 1000, false);
+		long start = System.nanoTime();
+		for (int i = 0; i < 100_000; i++) {
+			pacer.acquire(1000);
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+	}
+
+	@DisplayName("adaptive_rate_OK")
+	@Test
+	public void adaptive_rate_OK() {
+
+		SendPacer pacer = new SendPacer(1_000_000, 1000, 10, 1000, true);
+
+		pacer.onLossFeedback(true);
+		assertEquals(500_000, pacer.getCurrentBytesPerSecond());
+		assertEquals(500, pacer.getCurrentPacketsPerSecond());
+
+		//never below the minimum
+		for (int i = 0; i < 20; i++) {
+			pacer.onLossFeedback(true);
+		}
+		assertEquals((long) (1_000_000 * SendPacer.MIN_RATE_RATIO), pacer.getCurrentBytesPerSecond());
+
+		//never over the configured rate
+		for (int i = 0; i < 30; i++) {
+			pacer.onLossFeedback(false);
+		}
+		assertEquals(1_000_000, pacer.getCurrentBytesPerSecond());
+
+		//not adaptive, the feedback is ignored
+		SendPacer fixed = new SendPacer(1_000_000, 0, 10, 1000, false);
+		fixed.onLossFeedback(true);
+		assertEquals(1_000_000, fixed.getCurrentBytesPerSecond());
+	}
+
+	@DisplayName("adaptive_rate_from_nacks_OK")
+	@Test
+	public void adaptive_rate_from_nacks_OK() throws Exception {
+
+		SendPacer pacer = new SendPacer(1_000_000, 0, 10, 1000, true, true);
+
+		//the first NACK is reported immediately
+		pacer.onNackReceived();
+		assertEquals(500_000, pacer.getCurrentBytesPerSecond());
+
+		//the NACKs of the next interval are one report, built when the next datagram is sent
+		pacer.onNackReceived();
+		pacer.onNackReceived();
+		assertEquals(500_000, pacer.getCurrentBytesPerSecond());
+		Thread.sleep(2 * SendPacer.NACK_REPORT_INTERVAL_MILLIS);
+		pacer.acquire(1000);
+		assertEquals(250_000, pacer.getCurrentBytesPerSecond());
+
+		//an interval without NACK is reported as no loss
+		Thread.sleep(2 * SendPacer.NACK_REPORT_INTERVAL_MILLIS);
+		pacer.acquire(1000);
+		assertEquals(300_000, pacer.getCurrentBytesPerSecond());
+
+		//with the flow control the NACKs are ignored, the reports are given by the FlowController
+		SendPacer flowControlled = new SendPacer(1_000_000, 0, 10, 1000, true, false);
+		flowControlled.onNackReceived();
+		assertEquals(1_000_000, flowControlled.getCurrentBytesPerSecond());
+	}
+
+}
@@ -0,0 +1,82 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SenderSequenceTrackerTest {
+
+	private static final String SENDER = "10.0.0.1";
+
+	private void receive(SenderSequenceTracker tracker, MessageSequence sequence, long position, List<Long> delivered, long now) {
+		long leastSignificantBits = DatagramPacketDataProtocol.sequenceLeastSignificantBits(position);
+		tracker.receive(SENDER, sequence.getMostSignificantBits(), leastSignificantBits, () -> delivered.add(position), now);
+	}
+
+	@DisplayName("unordered_gap_and_reorder_counted_OK")
+	@Test
+	public void unordered_gap_and_reorder_counted_OK() {
+
+		MessageSequence sequence = new MessageSequence();
+		assertTrue(DatagramPacketDataProtocol.isSequenced(sequence.getMostSignificantBits()));
+		assertFalse(DatagramPacketDataProtocol.isSequenced(DatagramPacketDataProtocol.randomMessageIdMostSignificantBits()));
+		assertEquals(0, DatagramPacketDataProtocol.findSequence(sequence.nextLeastSignificantBits()));
+		assertEquals(1, DatagramPacketDataProtocol.findSequence(sequence.nextLeastSignificantBits()));
+
+		PeerSequenceStatistics statistics = new PeerSequenceStatistics();
+		SenderSequenceTracker tracker = new SenderSequenceTracker(false, 100, 10000, statistics);
+		List<Long> delivered = new ArrayList<>();
+
+		//the sequence starts from the first message received, 13 is lost, 12 arrives late
+		receive(tracker, sequence, 10, delivered, 0);
+		receive(tracker, sequence, 11, delivered, 0);
+		receive(tracker, sequence, 14, delivered, 0);
+		receive(tracker, sequence, 12, delivered, 0);
+
+		assertEquals(Arrays.asList(10L, 11L, 14L, 12L), delivered);
+		PeerSequenceStatistics.Counters counters = statistics.getPeers().get(SENDER);
+		assertEquals(4, counters.getReceivedMessages());
+		assertEquals(1, counters.getLostMessages());
+		assertEquals(1, counters.getReorderedMessages());
+	}
+
+	@DisplayName("ordered_messages_retained_till_gap_filled_or_wait_expired_OK")
+	@Test
+	public void ordered_messages_retained_till_gap_filled_or_wait_expired_OK() {
+
+		MessageSequence sequence = new MessageSequence();
+		PeerSequenceStatistics statistics = new PeerSequenceStatistics();
+		SenderSequenceTracker tracker = new SenderSequenceTracker(true, 100, 10000, statistics);
+		List<Long> delivered = new ArrayList<>();
+
+		//2 waits 1
+		receive(tracker, sequence, 0, delivered, 0);
+		receive(tracker, sequence, 2, delivered, 10);
+		assertEquals(Arrays.asList(0L), delivered);
+		receive(tracker, sequence, 1, delivered, 20);
+		assertEquals(Arrays.asList(0L, 1L, 2L), delivered);
+
+		//4 waits 3 till the wait expires, then 3 is lost
+		receive(tracker, sequence, 4, delivered, 30);
+		tracker.flush(50);
+		assertEquals(3, delivered.size());
+		tracker.flush(130);
+		assertEquals(Arrays.asList(0L, 1L, 2L, 4L), delivered);
+
+		PeerSequenceStatistics.Counters counters = statistics.getPeers().get(SENDER);
+		assertEquals(1, counters.getLostMessages());
+		assertEquals(1, counters.getReorderedMessages());
+
+		//the sequence not received is forgotten
+		tracker.flush(20000);
+		assertEquals(0, tracker.size());
+	}
+
+}
@@ -0,0 +1,100 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
+import it.spaghettisource.broadcastsync.i18n.FileMessageHelper;
+import it.spaghettisource.broadcastsync.i18n.FileMessageRepository;
+
+public class UdpSenderTest {
+
+	private static ExceptionFactory exceptionFactory;
+
+	@BeforeAll
+	public static void init() {
+		FileMessageRepository exceptionMessageRepository = new FileMessageRepository();
+		exceptionMessageRepository.setMessageRepositoryBundleBaseName("i18n.exception-message");
+		FileMessageHelper exceptionMessageHelper = new FileMessageHelper();
+		exceptionMessageHelper.setMessageRepository(exceptionMessageRepository);
+		exceptionFactory = new ExceptionFactory(BroadCastSyncConfig.buildDefault(), exceptionMessageHelper);
+	}
+
+	@DisplayName("sender_not_running_KO")
+	@Test
+	public void sender_not_running_KO() {
+
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		UdpSender sender = new UdpSender(config, exceptionFactory, new BlockedClient(config));
+
+		CompletableFuture<Void> future = sender.sendMessage("message");
+		assertTrue(future.isCompletedExceptionally());
+	}
+
+	@DisplayName("queue_full_policies_OK")
+	@Test
+	public void queue_full_policies_OK() throws Exception {
+
+		for (SendOverloadPolicy policy : new SendOverloadPolicy[] {SendOverloadPolicy.REJECT, SendOverloadPolicy.DROP_OLDEST}) {
+			BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+			config.setOutboundQueueCapacity(2);
+			config.setSendOverloadPolicy(policy);
+			BlockedClient client = new BlockedClient(config);
+			UdpSender sender = new UdpSender(config, exceptionFactory, client);
+			sender.startSender();
+
+			//the first message blocks the sender thread, the next two fill the queue
+			CompletableFuture<Void> first = sender.sendMessage(new byte[10]);
+			assertTrue(client.sending.await(5, TimeUnit.SECONDS));
+			CompletableFuture<Void> second = sender.sendMessage(new byte[10]);
+			CompletableFuture<Void> third = sender.sendMessage(new byte[10]);
+			CompletableFuture<Void> fourth = sender.sendMessage(new byte[10]);
+
+			client.release.countDown();
+			first.get(5, TimeUnit.SECONDS);
+			third.get(5, TimeUnit.SECONDS);
+			if(policy == SendOverloadPolicy.REJECT) {
+				second.get(5, TimeUnit.SECONDS);
+				assertThrows(ExecutionException.class, () -> fourth.get(5, TimeUnit.SECONDS));
+			}else {
+				assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+				fourth.get(5, TimeUnit.SECONDS);
+			}
+			sender.shutdown();
+		}
+	}
+
+	/**
+	 * client that blocks the first send till it is released
+	 */
+	private static class BlockedClient extends UdpClient {
+
+		private CountDownLatch sending = new CountDownLatch(1);
+		private CountDownLatch release = new CountDownLatch(1);
+
+		private BlockedClient(BroadCastSyncConfig config) {
+			super(config, exceptionFactory);
+		}
+
+		@Override
+		void sendMessage(byte[] data, int messageType) {
+			sending.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package it.spaghettisource.broadcastsync.infrastructure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.DatagramSocket;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.spaghettisource.broadcastsync.BroadCastSyncConfig;
+import it.spaghettisource.broadcastsync.exception.ExceptionFactory;
+import it.spaghettisource.broadcastsync.i18n.FileMessageHelper;
+import it.spaghettisource.broadcastsync.i18n.FileMessageRepository;
+
+public class UdpServerTest {
+
+	private static ExceptionFactory exceptionFactory;
+
+	@BeforeAll
+	public static void init() throws Exception {
+
+		FileMessageRepository exceptionMessageRepository = new FileMessageRepository();
+		exceptionMessageRepository.setMessageRepositoryBundleBaseName("i18n.exception-message");
+		FileMessageHelper exceptionMessageHelper = new FileMessageHelper();
+		exceptionMessageHelper.setMessageRepository(exceptionMessageRepository);
+		exceptionFactory = new ExceptionFactory(BroadCastSyncConfig.buildDefault(),exceptionMessageHelper);
+	}
+
+	@DisplayName("receivers_bound_same_port_OK")
+	@Test
+	public void receivers_bound_same_port_OK() throws Exception {
+
+		int port;
+		try(DatagramSocket socket = new DatagramSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		//the datagrams sent directly to the node can be spread across several receivers
+		BroadCastSyncConfig config = BroadCastSyncConfig.buildDefault();
+		config.setServerPort(port);
+		config.setTransportMode(TransportMode.UNICAST);
+		config.setReceiverThreads(4);
+		InboundQueue queue = new InboundQueue(new RingBuffer<>(16, false, WaitStrategyType.BLOCK.build()), OverloadPolicy.DROP_NEWEST, new DropStatistics());
+		UdpServer server = new UdpServer(config, exceptionFactory, queue);
+		server.startServer();
+
+		try {
+			//without SO_REUSEPORT only one receiver can be bound on the port
+			int expected = UdpServer.isReusePortSupported() ? 4 : 1;
+			int[] ports = server.findReceiverPorts();
+			assertEquals(expected, ports.length);
+			for (int receiverPort : ports) {
+				assertEquals(port, receiverPort);
+			}
+		}finally {
+			server.shutdown();
+		}
+		assertEquals(0, server.findReceiverPorts().length);
+	}
+
+}